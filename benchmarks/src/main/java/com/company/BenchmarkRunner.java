@@ -0,0 +1,174 @@
+package com.company;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Runs the {@link HotPathBenchmark} with the GC profiler and gates a deployment on the results. The throughput and
+ * the bytes allocated per call of each path are written as tab separated lines, and compared with the results of an
+ * earlier run: a path whose throughput dropped, or whose allocation rose, by more than {@link #TOLERANCE} is a
+ * regression and the runner exits with 1.
+ */
+public class BenchmarkRunner {
+
+    /** Fraction throughput may drop, or allocation rise, against the baseline before the comparison fails */
+    static final double TOLERANCE = 0.2;
+    /** System property overriding the number of synthetic patients */
+    static final String PATIENTS = "wolfhospital.bench.patients";
+    /** Secondary result of the GC profiler holding the bytes allocated per call */
+    private static final String ALLOCATION = "gc.alloc.rate.norm";
+
+    /**
+     * Runs the benchmark
+     *
+     * @param args path of the results file, and optionally the results file of an earlier run to compare with
+     * @throws RunnerException if the benchmark can not be run
+     * @throws IOException if a results file can not be read or written
+     */
+    public static void main(String[] args) throws RunnerException, IOException {
+        if (args.length < 1 || args.length > 2) {
+            System.err.println("Usage: BenchmarkRunner <results> [baseline]");
+            System.exit(2);
+        }
+        ChainedOptionsBuilder options = new OptionsBuilder()
+                .include(HotPathBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class);
+        String patients = System.getProperty(PATIENTS);
+        if (patients != null) {
+            options.param("patients", patients);
+        }
+
+        List<Measured> results = new ArrayList<Measured>();
+        for (RunResult run : new Runner(options.build()).run()) {
+            String benchmark = run.getParams().getBenchmark();
+            Result<?> allocation = run.getSecondaryResults().get(ALLOCATION);
+            results.add(new Measured(benchmark.substring(benchmark.lastIndexOf('.') + 1), run.getPrimaryResult().getScore(),
+                    allocation == null ? -1 : allocation.getScore()));
+        }
+        print(results, System.out);
+        write(results, Paths.get(args[0]));
+
+        if (args.length == 2) {
+            Path baseline = Paths.get(args[1]);
+            int regressions = compare(results, read(baseline), System.out);
+            System.out.println(regressions == 0 ? "No regressions against " + baseline : regressions + " regressions against " + baseline);
+            System.exit(regressions == 0 ? 0 : 1);
+        }
+    }
+
+    /**
+     * Writes results as tab separated lines, replacing the file if it exists
+     *
+     * @param results the results
+     * @param file file to write
+     * @throws IOException if the file can not be written
+     */
+    static void write(List<Measured> results, Path file) throws IOException {
+        try (BufferedWriter out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            for (Measured result : results) {
+                out.write(result.name + "\t" + result.opsPerSecond + "\t" + result.bytesPerOp);
+                out.newLine();
+            }
+        }
+    }
+
+    /**
+     * Reads results written by {@link #write(List, Path)}
+     *
+     * @param file file to read
+     * @return the results by path name
+     * @throws IOException if the file can not be read
+     */
+    static Map<String, Measured> read(Path file) throws IOException {
+        Map<String, Measured> results = new LinkedHashMap<String, Measured>();
+        for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+            String[] fields = line.split("\t");
+            if (fields.length != 3) {
+                continue;
+            }
+            try {
+                results.put(fields[0], new Measured(fields[0], Double.parseDouble(fields[1]), Double.parseDouble(fields[2])));
+            } catch (NumberFormatException e) {
+                throw new IOException("Malformed benchmark result: " + line);
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Compares results with a baseline and prints every path that got slower or allocates more than the
+     * {@link #TOLERANCE} allows. Paths missing from either side are not compared.
+     *
+     * @param results results of this run
+     * @param baseline results of the earlier run by path name
+     * @param out where the regressions are printed
+     * @return number of regressions
+     */
+    static int compare(List<Measured> results, Map<String, Measured> baseline, PrintStream out) {
+        int regressions = 0;
+        for (Measured result : results) {
+            Measured before = baseline.get(result.name);
+            if (before == null) {
+                continue;
+            }
+            if (result.opsPerSecond < before.opsPerSecond * (1 - TOLERANCE)) {
+                out.println(String.format("%s throughput dropped from %.1f to %.1f ops/s", result.name, before.opsPerSecond, result.opsPerSecond));
+                regressions++;
+            }
+            if (before.bytesPerOp >= 0 && result.bytesPerOp > before.bytesPerOp * (1 + TOLERANCE)) {
+                out.println(String.format("%s allocation rose from %.0f to %.0f bytes/op", result.name, before.bytesPerOp, result.bytesPerOp));
+                regressions++;
+            }
+        }
+        return regressions;
+    }
+
+    /**
+     * Prints a table of results
+     *
+     * @param results the results
+     * @param out where the table is printed
+     */
+    static void print(List<Measured> results, PrintStream out) {
+        out.println(String.format("%-28s %14s %12s %14s %14s", "Operation", "ops/s", "us/op", "bytes/op", "MB/s"));
+        for (Measured result : results) {
+            out.println(String.format("%-28s %14.1f %12.1f %14.0f %14.1f", result.name, result.opsPerSecond,
+                    1e6 / result.opsPerSecond, result.bytesPerOp, result.bytesPerOp * result.opsPerSecond / (1024 * 1024)));
+        }
+    }
+
+    /**
+     * Throughput and allocation of one path
+     */
+    static class Measured {
+        /** Name of the path */
+        final String name;
+        /** Calls completed per second */
+        final double opsPerSecond;
+        /** Bytes allocated per call, -1 if the profiler did not count them */
+        final double bytesPerOp;
+
+        Measured(String name, double opsPerSecond, double bytesPerOp) {
+            this.name = name;
+            this.opsPerSecond = opsPerSecond;
+            this.bytesPerOp = bytesPerOp;
+        }
+    }
+}
@@ -0,0 +1,252 @@
+package com.company;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of the hot paths of the hospital operations: assigning and releasing a bed, reading a medical record,
+ * reading a billing account and the monthly reports. The paths run against an {@link EmbeddedDatabase} seeded by the
+ * {@link SyntheticDataGenerator} with the given number of patients, and one ward per 100 patients and 10 fees per
+ * patient, so the default of a million patients has 10,000 wards and 10 million fees. Nothing is run against the
+ * database the application is configured for.
+ *
+ * Every call picks its key at random from all the stored keys, with a fixed seed, so the results reflect the whole
+ * data set rather than the first rows of a table. Run with the GC profiler to get the bytes allocated per call, as
+ * {@link BenchmarkRunner} does.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 10, time = 2)
+@Fork(1)
+@Threads(1)
+@State(Scope.Benchmark)
+public class HotPathBenchmark {
+
+    /** Seed of the synthetic data and of the keys picked */
+    private static final long SEED = 20;
+    /** Slices the synthetic data is written in at once */
+    private static final int GENERATOR_THREADS = 6;
+
+    /** Number of synthetic patients the database is seeded with */
+    @Param("1000000")
+    public int patients;
+
+    /** Database the paths run against */
+    private EmbeddedDatabase database;
+    /** Free beds of every ward */
+    private final WardAvailabilityIndex wardIndex = new WardAvailabilityIndex();
+    /** Patient, staff and ward rows by ID, as the application caches them */
+    private final EntityCache entityCache = Lookups.register(new EntityCache(10000, 60 * 1000));
+    /** IDs of new records */
+    private IdAllocator ids;
+    /** Patients without a bed */
+    private int[] bedless;
+    /** Patients with a medical record */
+    private int[] records;
+    /** Patients with a billing account */
+    private int[] accounts;
+    /** Capacity of the wards beds are assigned in, one with free beds */
+    private int wardCapacity;
+    /** Last month of the monthly census */
+    private DateRange month;
+
+    /**
+     * Starts the database, seeds it and reads the keys the calls pick from
+     *
+     * @throws SQLException if the database can not be seeded
+     */
+    @Setup(Level.Trial)
+    public void seed() throws SQLException {
+        database = new EmbeddedDatabase(GENERATOR_THREADS + 2);
+        ConnectionPool pool = database.getPool();
+        SyntheticDataGenerator.proportional(pool, SEED, patients, GENERATOR_THREADS, System.out).generate();
+        ids = new IdAllocator(pool, 50);
+
+        try (Connection connection = pool.borrow()) {
+            wardIndex.load(connection);
+            MonthlyCensus.rollForward(connection);
+            bedless = keys(connection, "SELECT id FROM Patient WHERE id NOT IN (SELECT patientId FROM WardBed) ORDER BY id");
+            records = keys(connection, "SELECT patientId FROM MedicalRecord ORDER BY patientId");
+            accounts = keys(connection, "SELECT patientId FROM BillingAccount ORDER BY patientId");
+            try (PreparedStatement select = connection.prepareStatement("SELECT MAX(yearMonth) FROM MonthlyCensusCount");
+                 ResultSet result = select.executeQuery()) {
+                if (!result.next() || result.getString(1) == null) {
+                    throw new IllegalStateException("The synthetic data has no monthly census");
+                }
+                month = DateRange.month(YearMonth.parse(result.getString(1)));
+            }
+        }
+        for (int capacity : new int[] {1, 2, 4}) {
+            if (wardIndex.freeBedCount(capacity) > 0) {
+                wardCapacity = capacity;
+                break;
+            }
+        }
+        if (bedless.length == 0 || records.length == 0 || accounts.length == 0 || wardCapacity == 0) {
+            throw new IllegalStateException("The synthetic data has too few patients to measure every path");
+        }
+    }
+
+    /**
+     * Stops the database, deleting the seeded data
+     */
+    @TearDown(Level.Trial)
+    public void stop() {
+        database.close();
+    }
+
+    /**
+     * Reads every key a query returns
+     *
+     * @param connection connection to the database
+     * @param sql query of the keys
+     * @return the keys
+     * @throws SQLException if the keys can not be read
+     */
+    private static int[] keys(Connection connection, String sql) throws SQLException {
+        List<Integer> keys = new ArrayList<Integer>();
+        try (PreparedStatement select = connection.prepareStatement(sql);
+             ResultSet result = select.executeQuery()) {
+            while (result.next()) {
+                keys.add(result.getInt(1));
+            }
+        }
+        return keys.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    /**
+     * Connection and service of one benchmark thread
+     */
+    @State(Scope.Thread)
+    public static class Session {
+        /** Connection of the thread */
+        private Connection connection;
+        /** Service on the connection */
+        private HospitalService service;
+        /** Picks the keys of the calls */
+        private SplittableRandom random;
+
+        /**
+         * Borrows the connection of the thread
+         *
+         * @param benchmark the seeded database
+         * @throws SQLException if no connection can be borrowed
+         */
+        @Setup(Level.Trial)
+        public void open(HotPathBenchmark benchmark) throws SQLException {
+            connection = benchmark.database.getPool().borrow();
+            service = new HospitalService(connection, benchmark.wardIndex, benchmark.entityCache, benchmark.ids);
+            random = new SplittableRandom(SEED);
+        }
+
+        /**
+         * Returns the connection of the thread
+         *
+         * @throws SQLException if the connection can not be returned
+         */
+        @TearDown(Level.Trial)
+        public void close() throws SQLException {
+            connection.close();
+        }
+
+        /**
+         * Picks a key at random
+         *
+         * @param keys keys to pick from
+         * @return the key
+         */
+        private int pick(int[] keys) {
+            return keys[random.nextInt(keys.length)];
+        }
+    }
+
+    /**
+     * Gives a patient without a bed a bed and releases it again, so the wards are left as they were
+     *
+     * @param session the benchmark thread
+     * @return the bed that was assigned
+     * @throws SQLException if the bed can not be assigned or released
+     */
+    @Benchmark
+    public Object assignAndReleaseBed(Session session) throws SQLException {
+        int patientId = session.pick(bedless);
+        HospitalService.Bed bed = session.service.assignBedToPatient(patientId, wardCapacity, 0);
+        session.service.releaseBed(bed.ward, patientId);
+        return bed;
+    }
+
+    /**
+     * Reads the medical record of a patient
+     *
+     * @param session the benchmark thread
+     * @return the record
+     * @throws SQLException if the record can not be read
+     */
+    @Benchmark
+    public Object getPatientMedicalRecord(Session session) throws SQLException {
+        return session.service.getPatientMedicalRecord(session.pick(records));
+    }
+
+    /**
+     * Reads the billing account of a patient
+     *
+     * @param session the benchmark thread
+     * @return the account
+     * @throws SQLException if the account can not be read
+     */
+    @Benchmark
+    public Object getBillingSummary(Session session) throws SQLException {
+        return session.service.getBillingSummary(session.pick(accounts));
+    }
+
+    /**
+     * Streams the patients of the last month of the census
+     *
+     * @param session the benchmark thread
+     * @return number of rows
+     * @throws SQLException if the report query fails
+     * @throws IOException never, the rows are discarded
+     */
+    @Benchmark
+    public long monthlyPatientsReport(Session session) throws SQLException, IOException {
+        return ReportExporter.write(session.connection, ReportExporter.patients(month), Writer.nullWriter(), ReportExporter.Format.CSV);
+    }
+
+    /**
+     * Streams the usage of every ward
+     *
+     * @param session the benchmark thread
+     * @return number of rows
+     * @throws SQLException if the report query fails
+     * @throws IOException never, the rows are discarded
+     */
+    @Benchmark
+    public long wardUsageReport(Session session) throws SQLException, IOException {
+        return ReportExporter.write(session.connection, ReportExporter.wardUsage(), Writer.nullWriter(), ReportExporter.Format.CSV);
+    }
+}
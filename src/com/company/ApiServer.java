@@ -0,0 +1,884 @@
+package com.company;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * HTTP interface to the hospital operations, so ward boards, nurse tablets and the billing office can use the
+ * database at the same time as the console. Requests and responses are JSON, and the reports are streamed as JSON
+ * Lines, or CSV with format=csv. Every request borrows its own connection from the pool for as long as it runs.
+ *
+ * Requests run on virtual threads when the JVM has them, so a request waiting for the database or for a free
+ * connection does not hold a platform thread. Older JVMs fall back to a fixed pool of request threads.
+ *
+ * <pre>
+ * GET    /patients/{id}                                     POST /patients
+ * PATCH  /patients/{id}                                     DELETE /patients/{id}
+ * POST   /patients/{id}/check-in                            POST /patients/{id}/check-out
+ * POST   /patients/{id}/bed                                 DELETE /wards/{number}/patients/{id}
+ * GET    /patients/{id}/medical-record                      POST /patients/{id}/medical-record
+ * POST   /patients/{id}/medical-record/tests                POST /patients/{id}/medical-record/prescriptions
+ * POST   /patients/{id}/medical-record/diagnoses            POST /patients/{id}/medical-record/end
+ * GET    /patients/{id}/billing                             POST /patients/{id}/billing/fees
+ * POST   /patients/{id}/billing                             DELETE /patients/{id}/billing/fees/{feeId}
+ * GET    /staff/{id}                                        POST /staff
+ * PATCH  /staff/{id}                                        DELETE /staff/{id}
+ * POST   /wards                                             GET /wards/{number}
+ * PATCH  /wards/{number}                                    DELETE /wards/{number}
+ * GET    /wards/free                                        GET /wards/occupancy
+ * GET    /reports/medical-records?patientId=&amp;year=&amp;period=  GET /reports/patients?year=&amp;period=
+ * GET    /reports/ward-usage                                GET /reports/doctor-patients?doctorId=
+ * GET    /reports/staff-by-role
+ * GET    /reports/{ward-usage|patients|doctor-patients}/pages?size=&amp;after=|before=
+ * </pre>
+ *
+ * A PATCH body holds only the fields to change, which are written with one UPDATE per table. It answers 204, or
+ * 200 with the updated record when the request has the header Prefer: return=representation.
+ *
+ * A POST that creates a patient, staff member, test, prescription, diagnosis or fee may leave out the ID of the
+ * record to have one allocated, and answers 201 with {"id": n}. A ward is created with the number it is given, and
+ * the patients placed in it are listed in patientIds, separated by commas.
+ *
+ * The pages of a report are read by key, the ward number or patient ID, and hold the rows after the key given as
+ * after, or before the one given as before, up to size rows. A page answers {"rows": [...]} with "before" and
+ * "after" members holding the keys of the previous and next pages when there are any.
+ *
+ * Invalid values answer 400, missing records 404 and operations that conflict with the stored records 409, each
+ * with the message the console would show.
+ *
+ * The server listens on the loopback address unless it is given another, and it only listens beyond this host when
+ * it has a token. With a token every request must carry the header Authorization: Bearer and the token, or it is
+ * answered 401.
+ */
+class ApiServer {
+
+    /** Connections waiting to be accepted */
+    private static final int BACKLOG = 1024;
+    /** Request threads used when the JVM has no virtual threads */
+    private static final int FALLBACK_THREADS = 64;
+    /** Largest request body accepted, in bytes */
+    private static final int MAX_BODY = 64 * 1024;
+    /** Rows on a report page when the request does not give a size */
+    private static final int PAGE_SIZE = 50;
+    /** Largest number of rows on a report page */
+    private static final int MAX_PAGE_SIZE = 1000;
+    /** Size of the buffer reports are streamed through, in characters */
+    private static final int REPORT_BUFFER = 64 * 1024;
+    /** Looks up the Person and Staff rows of a staff member */
+    private static final String STAFF_MEMBER = "SELECT * FROM Person INNER JOIN Staff ON Staff.id = Person.id WHERE Person.id = ?";
+
+    /** Pool the connections are borrowed from */
+    private final ConnectionPool pool;
+    /** Free beds of every ward, shared with the console sessions */
+    private final WardAvailabilityIndex wardIndex;
+    /** Patient, staff and ward rows by ID, shared with the console sessions */
+    private final EntityCache entityCache;
+    /** IDs of new records, shared with the console sessions */
+    private final IdAllocator ids;
+    /** Authorization header every request must carry, null if requests need none */
+    private final byte[] authorization;
+    /** The running server, null when stopped */
+    private HttpServer server;
+    /** Threads the requests run on */
+    private ExecutorService requests;
+
+    /**
+     * Creates a server that is not started yet
+     *
+     * @param pool pool the connections are borrowed from
+     * @param wardIndex free beds of every ward
+     * @param entityCache patient, staff and ward rows by ID
+     * @param ids IDs of new records
+     * @param token bearer token every request must carry, null or empty if requests need none
+     */
+    ApiServer(ConnectionPool pool, WardAvailabilityIndex wardIndex, EntityCache entityCache, IdAllocator ids, String token) {
+        this.pool = pool;
+        this.wardIndex = wardIndex;
+        this.entityCache = entityCache;
+        this.ids = ids;
+        this.authorization = token == null || token.isEmpty() ? null : ("Bearer " + token).getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Starts listening on the loopback address
+     *
+     * @param port port to listen on, 0 for any free port
+     * @throws IOException if the port can not be opened
+     */
+    void start(int port) throws IOException {
+        start(InetAddress.getLoopbackAddress(), port);
+    }
+
+    /**
+     * Starts listening
+     *
+     * @param address address to listen on, an address other than loopback needs a token
+     * @param port port to listen on, 0 for any free port
+     * @throws IOException if the port can not be opened
+     */
+    synchronized void start(InetAddress address, int port) throws IOException {
+        if (server != null) {
+            throw new IllegalStateException("The API server is already running on port " + getPort());
+        }
+        if (!address.isLoopbackAddress() && authorization == null) {
+            throw new IllegalStateException("The API server needs a token to listen on " + address.getHostAddress());
+        }
+        HttpServer s = HttpServer.create(new InetSocketAddress(address, port), BACKLOG);
+        requests = requestThreads();
+        s.setExecutor(requests);
+        s.createContext("/", this::handle);
+        s.start();
+        server = s;
+    }
+
+    /**
+     * Stops listening, giving running requests a second to finish
+     */
+    synchronized void stop() {
+        if (server == null) {
+            return;
+        }
+        server.stop(1);
+        requests.shutdown();
+        server = null;
+        requests = null;
+    }
+
+    /**
+     * Checks whether the server is listening
+     *
+     * @return true while started
+     */
+    synchronized boolean isRunning() {
+        return server != null;
+    }
+
+    /**
+     * Gets the port the server listens on
+     *
+     * @return the port
+     */
+    synchronized int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Creates the threads requests run on: one virtual thread per request when the JVM has them, otherwise a
+     * fixed pool of platform threads
+     *
+     * @return executor for the requests
+     */
+    private static ExecutorService requestThreads() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newFixedThreadPool(FALLBACK_THREADS, r -> {
+                Thread t = new Thread(r, "WolfHospital-http");
+                t.setDaemon(true);
+                return t;
+            });
+        }
+    }
+
+    /**
+     * Answers one request
+     *
+     * @param exchange the request and its response
+     */
+    private void handle(HttpExchange exchange) {
+        try {
+            if (!authorized(exchange)) {
+                exchange.getResponseHeaders().set("WWW-Authenticate", "Bearer");
+                error(exchange, 401, "The request needs a valid token");
+                return;
+            }
+            String[] path = segments(exchange.getRequestURI().getRawPath());
+            String method = exchange.getRequestMethod();
+
+            //The free bed counts come from the index and need no connection
+            if (method.equals("GET") && matches(path, "wards", "free")) {
+                StringBuilder sb = new StringBuilder("{");
+                for (Map.Entry<Integer, Integer> entry : wardIndex.freeBedCounts().entrySet()) {
+                    Json.appendMember(String.valueOf(entry.getKey()), entry.getValue(), sb);
+                }
+                send(exchange, 200, sb.append('}').toString());
+                return;
+            }
+
+            QueryMetrics.run(method + " " + template(path), () -> {
+                try (Connection connection = pool.borrow()) {
+                    route(exchange, method, path, new HospitalService(connection, wardIndex, entityCache, ids), connection);
+                }
+            });
+        } catch (NotFound | RecordNotFoundException e) {
+            error(exchange, 404, e.getMessage());
+        } catch (MethodNotAllowed e) {
+            exchange.getResponseHeaders().set("Allow", e.allowed);
+            error(exchange, 405, e.getMessage());
+        } catch (IllegalArgumentException e) {
+            error(exchange, 400, e.getMessage());
+        } catch (IllegalStateException e) {
+            error(exchange, 409, e.getMessage());
+        } catch (Exception e) {
+            //SQLException, IOException or an unexpected runtime failure
+            e.printStackTrace();
+            error(exchange, 500, "The request could not be completed");
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * Checks the token of a request, comparing it in constant time
+     *
+     * @param exchange the request
+     * @return true if the server needs no token or the request carries it
+     */
+    private boolean authorized(HttpExchange exchange) {
+        if (authorization == null) {
+            return true;
+        }
+        String header = exchange.getRequestHeaders().getFirst("Authorization");
+        return header != null && MessageDigest.isEqual(authorization, header.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Runs the operation a request asks for
+     *
+     * @param exchange the request and its response
+     * @param method HTTP method
+     * @param path segments of the request path
+     * @param service service on the connection of the request
+     * @param connection connection of the request
+     * @throws SQLException if the operation fails in the database
+     * @throws IOException if the response can not be written
+     */
+    private void route(HttpExchange exchange, String method, String[] path, HospitalService service, Connection connection)
+            throws SQLException, IOException {
+        if (matches(path, "patients")) {
+            allow(method, "POST");
+            Map<String, Object> p = body(exchange);
+            int id = service.newPatient(optionalId(p, "id"), Json.getString(p, "ssn"), Json.getString(p, "name"),
+                    Json.getDate(p, "dob"), Json.getString(p, "gender"), Json.getInt(p, "age"), Json.getString(p, "phone"),
+                    Json.getString(p, "address"), Json.getInt(p, "treatment"), Json.getString(p, "inWard"),
+                    Json.getString(p, "status"));
+            created(exchange, id);
+
+        } else if (matches(path, "patients", "*")) {
+            int id = id(path[1]);
+            if (method.equals("GET")) {
+                send(exchange, 200, row(connection, Lookups.PATIENT_BY_ID, id, "That Patient does not exist in the database"));
+            } else if (method.equals("PATCH")) {
+                EntityPatch patch = new EntityPatch(EntityPatch.Table.PATIENT, id);
+                EntityPatch.setAll(body(exchange), patch);
+                service.update(patch);
+                updated(exchange, connection, Lookups.PATIENT_BY_ID, id, "That Patient does not exist in the database");
+            } else {
+                allow(method, "GET", "PATCH", "DELETE");
+                if (!service.deletePatient(id)) {
+                    throw new NotFound("That Patient does not exist in the database");
+                }
+                send(exchange, 204, null);
+            }
+
+        } else if (matches(path, "patients", "*", "check-in")) {
+            allow(method, "POST");
+            Map<String, Object> p = body(exchange, path[1]);
+            service.createCheckInInfo(Json.getInt(p, "patientId"), Json.getInt(p, "wardNumber"), Json.getInt(p, "bedNumber"),
+                    Json.getDate(p, "startDate"), p.get("endDate") == null ? null : Json.getDate(p, "endDate"));
+            send(exchange, 201, null);
+
+        } else if (matches(path, "patients", "*", "check-out")) {
+            allow(method, "POST");
+            Map<String, Object> p = body(exchange, path[1]);
+            service.checkOut(Json.getInt(p, "patientId"), Json.getDate(p, "endDate"));
+            send(exchange, 204, null);
+
+        } else if (matches(path, "patients", "*", "bed")) {
+            allow(method, "POST");
+            Map<String, Object> p = body(exchange, path[1]);
+            HospitalService.Bed bed = service.assignBedToPatient(Json.getInt(p, "patientId"), Json.getInt(p, "capacity"),
+                    p.get("wardNumber") == null ? 0 : Json.getInt(p, "wardNumber"));
+            StringBuilder sb = new StringBuilder("{");
+            Json.appendMember("wardNumber", bed.ward, sb);
+            Json.appendMember("bedNumber", bed.bed, sb);
+            send(exchange, 201, sb.append('}').toString());
+
+        } else if (matches(path, "wards", "occupancy")) {
+            allow(method, "GET");
+            StringBuilder sb = new StringBuilder();
+            service.getOccupancy().appendJson(sb);
+            send(exchange, 200, sb.toString());
+
+        } else if (matches(path, "wards", "*", "patients", "*")) {
+            allow(method, "DELETE");
+            if (!service.releaseBed(id(path[1]), id(path[3]))) {
+                throw new NotFound("That patient is not in that ward");
+            }
+            send(exchange, 204, null);
+
+        } else if (matches(path, "wards")) {
+            allow(method, "POST");
+            Map<String, Object> p = body(exchange);
+            int number = Json.getInt(p, "number");
+            service.addWard(number, Json.getInt(p, "capacity"),
+                    WardBeds.parsePatientIds(p.get("patientIds") == null ? null : Json.getString(p, "patientIds")),
+                    Json.getDouble(p, "chargesPerDay"), Json.getInt(p, "responsibleNurse"));
+            created(exchange, number);
+
+        } else if (matches(path, "wards", "*")) {
+            int number = id(path[1]);
+            if (method.equals("GET")) {
+                send(exchange, 200, row(connection, Lookups.WARD_BY_NUMBER, number, "That ward does not exist in the database"));
+            } else if (method.equals("PATCH")) {
+                EntityPatch patch = new EntityPatch(EntityPatch.Table.WARD, number);
+                EntityPatch.setAll(body(exchange), patch);
+                service.update(patch);
+                updated(exchange, connection, Lookups.WARD_BY_NUMBER, number, "That ward does not exist in the database");
+            } else {
+                allow(method, "GET", "PATCH", "DELETE");
+                if (!service.deleteWard(number)) {
+                    throw new NotFound("That ward does not exist in the database");
+                }
+                send(exchange, 204, null);
+            }
+
+        } else if (matches(path, "patients", "*", "medical-record")) {
+            if (method.equals("GET")) {
+                MedicalRecordView record = service.getPatientMedicalRecord(id(path[1]));
+                if (record == null) {
+                    throw new NotFound("This patient doesn't have a Medical Record");
+                }
+                StringBuilder sb = new StringBuilder();
+                record.appendJson(sb);
+                send(exchange, 200, sb.toString());
+            } else {
+                allow(method, "POST");
+                Map<String, Object> p = body(exchange, path[1]);
+                service.createMedicalRecord(Json.getInt(p, "patientId"), Json.getDate(p, "startDate"),
+                        p.get("endDate") == null ? null : Json.getDate(p, "endDate"), Json.getInt(p, "responsibleDoctor"));
+                send(exchange, 201, null);
+            }
+
+        } else if (matches(path, "patients", "*", "medical-record", "tests")) {
+            allow(method, "POST");
+            Map<String, Object> p = body(exchange, path[1]);
+            created(exchange, service.addTest(Json.getInt(p, "patientId"), optionalId(p, "testId"), Json.getString(p, "name"),
+                    Json.getString(p, "results")));
+
+        } else if (matches(path, "patients", "*", "medical-record", "prescriptions")) {
+            allow(method, "POST");
+            Map<String, Object> p = body(exchange, path[1]);
+            created(exchange, service.addPrescription(Json.getInt(p, "patientId"), optionalId(p, "prescriptionId"),
+                    Json.getString(p, "name")));
+
+        } else if (matches(path, "patients", "*", "medical-record", "diagnoses")) {
+            allow(method, "POST");
+            Map<String, Object> p = body(exchange, path[1]);
+            created(exchange, service.addDiagnosis(Json.getInt(p, "patientId"), optionalId(p, "diagnosisId"),
+                    Json.getString(p, "details")));
+
+        } else if (matches(path, "patients", "*", "medical-record", "end")) {
+            allow(method, "POST");
+            Map<String, Object> p = body(exchange, path[1]);
+            service.endMedicalRecord(Json.getInt(p, "patientId"), Json.getDate(p, "endDate"));
+            send(exchange, 204, null);
+
+        } else if (matches(path, "patients", "*", "billing")) {
+            if (method.equals("GET")) {
+                BillingSummary summary = service.getBillingSummary(id(path[1]));
+                if (summary == null) {
+                    throw new NotFound("This patient doesn't have a Billing Account");
+                }
+                StringBuilder sb = new StringBuilder();
+                summary.appendJson(sb);
+                send(exchange, 200, sb.toString());
+            } else {
+                allow(method, "GET", "POST");
+                Map<String, Object> p = body(exchange, path[1]);
+                service.createBillingAccount(Json.getInt(p, "patientId"), Json.getString(p, "responsibleSSN"),
+                        Json.getString(p, "billingAddress"), Json.getDate(p, "visitDate"), Json.getString(p, "paymentMethod"),
+                        p.get("cardNumber") == null ? null : Json.getString(p, "cardNumber"), Json.getInt(p, "registrationFee"),
+                        Json.getString(p, "medicationPrescribed"),
+                        p.get("accommodationFee") == null ? null : Json.getInt(p, "accommodationFee"));
+                send(exchange, 201, null);
+            }
+
+        } else if (matches(path, "patients", "*", "billing", "fees")) {
+            allow(method, "POST");
+            Map<String, Object> p = body(exchange, path[1]);
+            created(exchange, service.addFeeToBillingRecord(Json.getInt(p, "patientId"), optionalId(p, "feeId"),
+                    Json.getString(p, "name"), Json.getDouble(p, "amount")));
+
+        } else if (matches(path, "patients", "*", "billing", "fees", "*")) {
+            allow(method, "DELETE");
+            if (!service.removeFee(id(path[1]), id(path[4]))) {
+                throw new NotFound("That fee is not on the patient's billing record");
+            }
+            send(exchange, 204, null);
+
+        } else if (matches(path, "staff")) {
+            allow(method, "POST");
+            Map<String, Object> p = body(exchange);
+            created(exchange, service.newStaff(optionalId(p, "id"), Json.getString(p, "name"), Json.getInt(p, "age"),
+                    Json.getString(p, "gender"), Json.getString(p, "address"), Json.getString(p, "phone"),
+                    Json.getString(p, "jobTitle"), Json.getString(p, "professionalTitle"), Json.getString(p, "department")));
+
+        } else if (matches(path, "staff", "*")) {
+            int id = id(path[1]);
+            if (method.equals("GET")) {
+                send(exchange, 200, row(connection, STAFF_MEMBER, id, "That Staff does not exist in the database"));
+            } else if (method.equals("PATCH")) {
+                EntityPatch person = new EntityPatch(EntityPatch.Table.PERSON, id);
+                EntityPatch staff = new EntityPatch(EntityPatch.Table.STAFF, id);
+                EntityPatch.setAll(body(exchange), person, staff);
+                service.update(person, staff);
+                updated(exchange, connection, STAFF_MEMBER, id, "That Staff does not exist in the database");
+            } else {
+                allow(method, "GET", "PATCH", "DELETE");
+                if (!service.deleteStaff(id)) {
+                    throw new NotFound("That Staff does not exist in the database");
+                }
+                send(exchange, 204, null);
+            }
+
+        } else if (matches(path, "reports", "*", "pages")) {
+            allow(method, "GET");
+            reportPage(exchange, path[1], connection);
+
+        } else if (path.length == 2 && path[0].equals("reports")) {
+            allow(method, "GET");
+            report(exchange, path[1], connection);
+
+        } else {
+            throw new NotFound("No such resource");
+        }
+    }
+
+    /**
+     * Streams one of the reports
+     *
+     * @param exchange the request and its response
+     * @param name name of the report
+     * @param connection connection of the request
+     * @throws SQLException if the report query fails
+     * @throws IOException if the response can not be written
+     */
+    private static void report(HttpExchange exchange, String name, Connection connection) throws SQLException, IOException {
+        Map<String, Object> p = parameters(exchange.getRequestURI().getRawQuery());
+        ReportExporter.Query query;
+        switch (name) {
+            case "medical-records" :
+                query = ReportExporter.medicalRecords(Json.getInt(p, "patientId"), range(p));
+                break;
+
+            case "patients" :
+                DateRange range = range(p);
+                MonthlyCensus.rollForward(connection);
+                query = ReportExporter.patients(range);
+                break;
+
+            case "ward-usage" :
+                query = ReportExporter.wardUsage();
+                break;
+
+            case "doctor-patients" :
+                query = ReportExporter.patientsOfDoctor(Json.getInt(p, "doctorId"));
+                break;
+
+            case "staff-by-role" :
+                query = ReportExporter.staffByRole();
+                break;
+
+            default:
+                throw new NotFound("No such report");
+        }
+
+        ReportExporter.Format format = "csv".equals(p.get("format")) ? ReportExporter.Format.CSV : ReportExporter.Format.JSONL;
+        exchange.getResponseHeaders().set("Content-Type", format == ReportExporter.Format.CSV ? "text/csv; charset=utf-8" : "application/x-ndjson");
+        exchange.sendResponseHeaders(200, 0);
+        try (Writer out = new BufferedWriter(new OutputStreamWriter(exchange.getResponseBody(), StandardCharsets.UTF_8), REPORT_BUFFER)) {
+            ReportExporter.write(connection, query, out, format);
+        }
+    }
+
+    /**
+     * Answers one page of a report
+     *
+     * @param exchange the request and its response
+     * @param name name of the report
+     * @param connection connection of the request
+     * @throws SQLException if the page can not be read
+     * @throws IOException if the response can not be written
+     */
+    private static void reportPage(HttpExchange exchange, String name, Connection connection) throws SQLException, IOException {
+        Map<String, Object> p = parameters(exchange.getRequestURI().getRawQuery());
+        ReportPage.Listing listing;
+        switch (name) {
+            case "patients" :
+                DateRange range = range(p);
+                MonthlyCensus.rollForward(connection);
+                listing = ReportPage.patients(range);
+                break;
+
+            case "ward-usage" :
+                listing = ReportPage.wardUsage();
+                break;
+
+            case "doctor-patients" :
+                listing = ReportPage.patientsOfDoctor(Json.getInt(p, "doctorId"));
+                break;
+
+            default:
+                throw new NotFound("No such paged report");
+        }
+
+        int size = p.get("size") == null ? PAGE_SIZE : Json.getInt(p, "size");
+        if (size < 1 || size > MAX_PAGE_SIZE) {
+            throw new IllegalArgumentException("size must be between 1 and " + MAX_PAGE_SIZE);
+        }
+        ReportPage page = p.get("before") != null ? ReportPage.before(connection, listing, Json.getInt(p, "before"), size)
+                : ReportPage.after(connection, listing, p.get("after") == null ? ReportPage.START : Json.getInt(p, "after"), size);
+
+        StringBuilder sb = new StringBuilder("{\"rows\":[");
+        for (Map<String, Object> row : page.getRows()) {
+            if (sb.charAt(sb.length() - 1) == '}') {
+                sb.append(',');
+            }
+            sb.append('{');
+            for (Map.Entry<String, Object> column : row.entrySet()) {
+                Json.appendMember(column.getKey(), column.getValue(), sb);
+            }
+            sb.append('}');
+        }
+        sb.append(']');
+        if (page.hasPrevious()) {
+            Json.appendMember("before", page.getFirstKey(), sb);
+        }
+        if (page.hasNext()) {
+            Json.appendMember("after", page.getLastKey(), sb);
+        }
+        send(exchange, 200, sb.append('}').toString());
+    }
+
+    /**
+     * Gets the period of a report from the year and period parameters
+     *
+     * @param p parameters of the request
+     * @return the period
+     */
+    private static DateRange range(Map<String, Object> p) {
+        return DateRange.parse(Json.getString(p, "year"), p.get("period") == null ? "all" : p.get("period").toString());
+    }
+
+    /**
+     * Reads one row by key as a JSON object, from the entity cache when the lookup is cached
+     *
+     * @param connection connection of the request
+     * @param sql lookup with one parameter
+     * @param key value of the parameter
+     * @param missing message when there is no such row
+     * @return the row
+     * @throws SQLException if the lookup fails
+     */
+    private String row(Connection connection, String sql, int key, String missing) throws SQLException {
+        if (entityCache.isCached(sql)) {
+            try (ResultSet result = entityCache.lookup(connection, sql, key)) {
+                return row(result, missing);
+            }
+        }
+        try (PreparedStatement select = connection.prepareStatement(sql)) {
+            select.setInt(1, key);
+            try (ResultSet result = select.executeQuery()) {
+                return row(result, missing);
+            }
+        }
+    }
+
+    /**
+     * Writes the first row of a result as a JSON object
+     *
+     * @param result rows found by a lookup
+     * @param missing message when there is no row
+     * @return the row
+     * @throws SQLException if the row can not be read
+     */
+    private static String row(ResultSet result, String missing) throws SQLException {
+        if (!result.next()) {
+            throw new NotFound(missing);
+        }
+        StringBuilder sb = new StringBuilder();
+        Json.appendRow(result, sb);
+        return sb.toString();
+    }
+
+    /**
+     * Reads the JSON object of a request body
+     *
+     * @param exchange the request
+     * @return members of the object
+     * @throws IOException if the body can not be read
+     */
+    private static Map<String, Object> body(HttpExchange exchange) throws IOException {
+        InputStream in = exchange.getRequestBody();
+        byte[] bytes = in.readNBytes(MAX_BODY + 1);
+        if (bytes.length > MAX_BODY) {
+            throw new IllegalArgumentException("Request body must be " + MAX_BODY + " bytes or less");
+        }
+        return Json.parseObject(new String(bytes, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Reads the JSON object of a request body about the patient named in the path
+     *
+     * @param exchange the request
+     * @param patientId patient ID from the path, which replaces any patientId in the body
+     * @return members of the object
+     * @throws IOException if the body can not be read
+     */
+    private static Map<String, Object> body(HttpExchange exchange, String patientId) throws IOException {
+        Map<String, Object> p = body(exchange);
+        p.put("patientId", (long) id(patientId));
+        return p;
+    }
+
+    /**
+     * Parses the parameters of a query string
+     *
+     * @param rawQuery query string as sent, null if there is none
+     * @return parameters by name, values as strings
+     */
+    private static Map<String, Object> parameters(String rawQuery) {
+        Map<String, Object> p = new LinkedHashMap<String, Object>();
+        if (rawQuery == null) {
+            return p;
+        }
+        for (String pair : rawQuery.split("&")) {
+            int eq = pair.indexOf('=');
+            if (eq > 0) {
+                p.put(decode(pair.substring(0, eq)), decode(pair.substring(eq + 1)));
+            }
+        }
+        return p;
+    }
+
+    /**
+     * Splits a request path into its segments
+     *
+     * @param rawPath path as sent
+     * @return decoded segments without the empty ones
+     */
+    private static String[] segments(String rawPath) {
+        String trimmed = rawPath.replaceAll("^/+|/+$", "");
+        if (trimmed.isEmpty()) {
+            return new String[0];
+        }
+        String[] segments = trimmed.split("/+");
+        for (int i = 0; i < segments.length; i++) {
+            segments[i] = decode(segments[i]);
+        }
+        return segments;
+    }
+
+    /**
+     * Names the route of a request path for the query metrics, with the IDs left out so every request to a route
+     * is counted together
+     *
+     * @param path segments of the request path
+     * @return the path with every numeric segment replaced by *
+     */
+    private static String template(String[] path) {
+        StringBuilder sb = new StringBuilder();
+        for (String segment : path) {
+            sb.append('/').append(segment.matches("-?\\d+") ? "*" : segment);
+        }
+        return sb.length() == 0 ? "/" : sb.toString();
+    }
+
+    private static String decode(String s) {
+        try {
+            return URLDecoder.decode(s, "UTF-8");
+        } catch (IOException | IllegalArgumentException e) {
+            throw new IllegalArgumentException("Malformed request " + s);
+        }
+    }
+
+    /**
+     * Checks whether a path has a given shape
+     *
+     * @param path segments of the request path
+     * @param pattern expected segments, * for any one segment
+     * @return true if the path matches
+     */
+    private static boolean matches(String[] path, String... pattern) {
+        if (path.length != pattern.length) {
+            return false;
+        }
+        for (int i = 0; i < path.length; i++) {
+            if (!pattern[i].equals("*") && !pattern[i].equals(path[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Parses an ID from the path
+     *
+     * @param segment segment holding the ID
+     * @return the ID
+     */
+    private static int id(String segment) {
+        try {
+            return Integer.parseInt(segment);
+        } catch (NumberFormatException e) {
+            throw new NotFound("No such resource");
+        }
+    }
+
+    /**
+     * Gets the ID of a record a request creates
+     *
+     * @param p body of the request
+     * @param key name of the ID member
+     * @return the ID, or 0 to allocate one when the member is left out
+     */
+    private static int optionalId(Map<String, Object> p, String key) {
+        return p.get(key) == null ? 0 : Json.getInt(p, key);
+    }
+
+    /**
+     * Answers a request that created a record with the ID of the record
+     *
+     * @param exchange the request and its response
+     * @param id ID of the new record
+     * @throws IOException if the response can not be written
+     */
+    private static void created(HttpExchange exchange, int id) throws IOException {
+        StringBuilder sb = new StringBuilder("{");
+        Json.appendMember("id", id, sb);
+        send(exchange, 201, sb.append('}').toString());
+    }
+
+    /**
+     * Answers a PATCH, with the updated record only when the client asks for it, so a plain update is not
+     * followed by a read
+     *
+     * @param exchange the request and its response
+     * @param connection connection of the request
+     * @param sql lookup of the record
+     * @param key key of the record
+     * @param missing message when there is no such record
+     * @throws SQLException if the record can not be read
+     * @throws IOException if the response can not be written
+     */
+    private void updated(HttpExchange exchange, Connection connection, String sql, int key, String missing)
+            throws SQLException, IOException {
+        String prefer = exchange.getRequestHeaders().getFirst("Prefer");
+        if (prefer != null && prefer.contains("return=representation")) {
+            send(exchange, 200, row(connection, sql, key, missing));
+        } else {
+            send(exchange, 204, null);
+        }
+    }
+
+    /**
+     * Rejects a method the resource does not support
+     *
+     * @param method method of the request
+     * @param allowed the methods the resource supports
+     */
+    private static void allow(String method, String... allowed) {
+        if (!Arrays.asList(allowed).contains(method)) {
+            throw new MethodNotAllowed(String.join(", ", allowed));
+        }
+    }
+
+    /**
+     * Sends a response
+     *
+     * @param exchange the request and its response
+     * @param status HTTP status
+     * @param json body of the response, null for none
+     * @throws IOException if the response can not be written
+     */
+    private static void send(HttpExchange exchange, int status, String json) throws IOException {
+        if (json == null) {
+            exchange.sendResponseHeaders(status, -1);
+            return;
+        }
+        byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    /**
+     * Sends an error response, unless a response was already started
+     *
+     * @param exchange the request and its response
+     * @param status HTTP status
+     * @param message why the request failed
+     */
+    private static void error(HttpExchange exchange, int status, String message) {
+        if (exchange.getResponseCode() != -1) {
+            return;
+        }
+        StringBuilder sb = new StringBuilder("{");
+        Json.appendMember("error", message, sb);
+        try {
+            send(exchange, status, sb.append('}').toString());
+        } catch (IOException e) {
+            //The client has gone away
+        }
+    }
+
+    /**
+     * A request for a resource or record that does not exist
+     */
+    private static class NotFound extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        NotFound(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * A request with a method the resource does not support
+     */
+    private static class MethodNotAllowed extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        /** The methods the resource supports */
+        final String allowed;
+
+        MethodNotAllowed(String allowed) {
+            super("This resource supports " + allowed);
+            this.allowed = allowed;
+        }
+    }
+}
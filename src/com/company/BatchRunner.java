@@ -0,0 +1,450 @@
+package com.company;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs a file of hospital operations without console prompts. Each line of the file is one JSON object naming the
+ * {@link HospitalService} operation and its parameters, for example
+ * {@code {"op":"assignBedToPatient","patientId":7,"capacity":2}}. Blank lines and lines starting with # are skipped.
+ * The updatePatient, updateStaff and updateWard operations name their record by id, or number for a ward, and hold
+ * only the fields to change, for example {@code {"op":"updatePatient","id":7,"phone":"9195550100","status":"yes"}}.
+ * The updateCheckIn, updateMedicalRecordDates and updateBillingAccount operations leave out the fields they keep.
+ * Operations that create a record may leave out its ID to have one allocated.
+ *
+ * Operations are pipelined over connections borrowed from the pool. Every operation goes to one of a fixed number
+ * of lanes picked from its patient ID, or its ID or ward number for operations without one, and each lane runs its
+ * operations one at a time in file order. Operations on the same patient or ward therefore keep their order while
+ * operations on different patients run in parallel. A failed operation is reported with its line number and does not stop the batch.
+ */
+class BatchRunner {
+
+    /** Operations read ahead of the lanes for each lane, so a large file is not held in memory */
+    private static final int QUEUED_PER_LANE = 64;
+
+    /** Pool the connections are borrowed from */
+    private final ConnectionPool pool;
+    /** Free beds of every ward, shared with the console sessions */
+    private final WardAvailabilityIndex wardIndex;
+    /** Patient, staff and ward rows by ID, shared with the console sessions */
+    private final EntityCache entityCache;
+    /** IDs of new records, shared with the console sessions */
+    private final IdAllocator ids;
+    /** Number of operations run at once */
+    private final int lanes;
+
+    /**
+     * Creates a runner
+     *
+     * @param pool pool the connections are borrowed from, one per lane
+     * @param wardIndex free beds of every ward
+     * @param entityCache patient, staff and ward rows by ID
+     * @param ids IDs of new records
+     * @param lanes number of operations run at once
+     */
+    BatchRunner(ConnectionPool pool, WardAvailabilityIndex wardIndex, EntityCache entityCache, IdAllocator ids, int lanes) {
+        if (lanes < 1) {
+            throw new IllegalArgumentException("A batch needs at least one lane");
+        }
+        this.pool = pool;
+        this.wardIndex = wardIndex;
+        this.entityCache = entityCache;
+        this.ids = ids;
+        this.lanes = lanes;
+    }
+
+    /**
+     * Runs every operation of a file and waits for the last one to finish
+     *
+     * @param file JSON lines file of operations
+     * @return latency of each kind of operation and the operations that failed
+     * @throws IOException if the file can not be read
+     */
+    Report run(Path file) throws IOException {
+        Report report = new Report();
+        ExecutorService[] laneWorkers = new ExecutorService[lanes];
+        for (int i = 0; i < lanes; i++) {
+            String name = "WolfHospital-batch-" + i;
+            laneWorkers[i] = Executors.newSingleThreadExecutor(r -> new Thread(r, name));
+        }
+        Semaphore queued = new Semaphore(lanes * QUEUED_PER_LANE);
+
+        long started = System.nanoTime();
+        try (BufferedReader in = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            int lineNumber = 0;
+            while ((line = in.readLine()) != null) {
+                lineNumber++;
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+
+                Map<String, Object> operation;
+                String op;
+                try {
+                    operation = Json.parseObject(line);
+                    op = Json.getString(operation, "op");
+                } catch (IllegalArgumentException e) {
+                    report.failed(lineNumber, "?", e.getMessage());
+                    continue;
+                }
+
+                queued.acquireUninterruptibly();
+                int number = lineNumber;
+                laneWorkers[lane(operation, lineNumber)].execute(() -> {
+                    long start = System.nanoTime();
+                    try {
+                        QueryMetrics.run("batch " + op, () -> {
+                            try (Connection connection = pool.borrow()) {
+                                execute(new HospitalService(connection, wardIndex, entityCache, ids), op, operation);
+                            }
+                        });
+                        report.succeeded(op, System.nanoTime() - start);
+                    } catch (SQLException | RuntimeException e) {
+                        report.failed(number, op, e.getMessage());
+                    } finally {
+                        queued.release();
+                    }
+                });
+            }
+        } finally {
+            for (ExecutorService worker : laneWorkers) {
+                worker.shutdown();
+            }
+            try {
+                for (ExecutorService worker : laneWorkers) {
+                    worker.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        report.elapsedNanos = System.nanoTime() - started;
+        return report;
+    }
+
+    /**
+     * Picks the lane of an operation from the patient, record or ward it works on
+     *
+     * @param operation the operation
+     * @param lineNumber line of the operation, used when it names no patient, ID or ward number
+     * @return index of the lane
+     */
+    private int lane(Map<String, Object> operation, int lineNumber) {
+        Object key = operation.containsKey("patientId") ? operation.get("patientId")
+                : operation.containsKey("id") ? operation.get("id") : operation.get("number");
+        long hash = key instanceof Number ? ((Number) key).longValue() : key == null ? lineNumber : key.hashCode();
+        return (int) Math.floorMod(hash, (long) lanes);
+    }
+
+    /**
+     * Runs one operation
+     *
+     * @param service service on the connection borrowed for the operation
+     * @param op name of the operation
+     * @param p parameters of the operation
+     * @throws SQLException if the operation fails in the database
+     */
+    private static void execute(HospitalService service, String op, Map<String, Object> p) throws SQLException {
+        switch (op) {
+            case "newPatient" :
+                service.newPatient(optionalId(p, "id"), Json.getString(p, "ssn"), Json.getString(p, "name"),
+                        Json.getDate(p, "dob"), Json.getString(p, "gender"), Json.getInt(p, "age"), Json.getString(p, "phone"),
+                        Json.getString(p, "address"), Json.getInt(p, "treatment"), Json.getString(p, "inWard"),
+                        Json.getString(p, "status"));
+                break;
+
+            case "newStaff" :
+                service.newStaff(optionalId(p, "id"), Json.getString(p, "name"), Json.getInt(p, "age"),
+                        Json.getString(p, "gender"), Json.getString(p, "address"), Json.getString(p, "phone"),
+                        Json.getString(p, "jobTitle"), Json.getString(p, "professionalTitle"), Json.getString(p, "department"));
+                break;
+
+            case "deletePatient" :
+                if (!service.deletePatient(Json.getInt(p, "id"))) {
+                    throw new IllegalStateException("That patient does not exist in the database");
+                }
+                break;
+
+            case "updatePatient" :
+                service.update(patch(p, "id", new EntityPatch(EntityPatch.Table.PATIENT, Json.getInt(p, "id"))));
+                break;
+
+            case "updateStaff" :
+                service.update(patch(p, "id", new EntityPatch(EntityPatch.Table.PERSON, Json.getInt(p, "id")),
+                        new EntityPatch(EntityPatch.Table.STAFF, Json.getInt(p, "id"))));
+                break;
+
+            case "updateWard" :
+                service.update(patch(p, "number", new EntityPatch(EntityPatch.Table.WARD, Json.getInt(p, "number"))));
+                break;
+
+            case "addWard" :
+                service.addWard(Json.getInt(p, "number"), Json.getInt(p, "capacity"),
+                        WardBeds.parsePatientIds(p.get("patientIds") == null ? null : Json.getString(p, "patientIds")),
+                        Json.getDouble(p, "chargesPerDay"), Json.getInt(p, "responsibleNurse"));
+                break;
+
+            case "deleteWard" :
+                if (!service.deleteWard(Json.getInt(p, "number"))) {
+                    throw new RecordNotFoundException("That ward does not exist in the database");
+                }
+                break;
+
+            case "deleteStaff" :
+                if (!service.deleteStaff(Json.getInt(p, "id"))) {
+                    throw new IllegalStateException("That staff member does not exist in the database");
+                }
+                break;
+
+            case "createMedicalRecord" :
+                service.createMedicalRecord(Json.getInt(p, "patientId"), Json.getDate(p, "startDate"),
+                        optionalDate(p, "endDate"), Json.getInt(p, "responsibleDoctor"));
+                break;
+
+            case "addTest" :
+                service.addTest(Json.getInt(p, "patientId"), optionalId(p, "testId"), Json.getString(p, "name"),
+                        Json.getString(p, "results"));
+                break;
+
+            case "addPrescription" :
+                service.addPrescription(Json.getInt(p, "patientId"), optionalId(p, "prescriptionId"), Json.getString(p, "name"));
+                break;
+
+            case "addDiagnosis" :
+                service.addDiagnosis(Json.getInt(p, "patientId"), optionalId(p, "diagnosisId"), Json.getString(p, "details"));
+                break;
+
+            case "endMedicalRecord" :
+                service.endMedicalRecord(Json.getInt(p, "patientId"), Json.getDate(p, "endDate"));
+                break;
+
+            case "updateMedicalRecordDates" :
+                service.updateMedicalRecordDates(Json.getInt(p, "patientId"), optionalDate(p, "startDate"), optionalDate(p, "endDate"));
+                break;
+
+            case "assignBedToPatient" :
+                service.assignBedToPatient(Json.getInt(p, "patientId"), Json.getInt(p, "capacity"),
+                        p.get("wardNumber") == null ? 0 : Json.getInt(p, "wardNumber"));
+                break;
+
+            case "releaseBed" :
+                if (!service.releaseBed(Json.getInt(p, "wardNumber"), Json.getInt(p, "patientId"))) {
+                    throw new IllegalStateException("That patient is not in that ward");
+                }
+                break;
+
+            case "createCheckInInfo" :
+                service.createCheckInInfo(Json.getInt(p, "patientId"), Json.getInt(p, "wardNumber"), Json.getInt(p, "bedNumber"),
+                        Json.getDate(p, "startDate"), optionalDate(p, "endDate"));
+                break;
+
+            case "updateCheckIn" :
+                service.updateCheckIn(Json.getInt(p, "patientId"), optionalId(p, "wardNumber"), optionalId(p, "bedNumber"),
+                        optionalDate(p, "startDate"), optionalDate(p, "endDate"));
+                break;
+
+            case "deleteCheckIn" :
+                if (!service.deleteCheckIn(Json.getInt(p, "patientId"))) {
+                    throw new RecordNotFoundException("That Patient does not have a Check-In");
+                }
+                break;
+
+            case "checkOut" :
+                service.checkOut(Json.getInt(p, "patientId"), Json.getDate(p, "endDate"));
+                break;
+
+            case "createBillingAccount" :
+                service.createBillingAccount(Json.getInt(p, "patientId"), Json.getString(p, "responsibleSSN"),
+                        Json.getString(p, "billingAddress"), Json.getDate(p, "visitDate"), Json.getString(p, "paymentMethod"),
+                        optionalString(p, "cardNumber"), Json.getInt(p, "registrationFee"), Json.getString(p, "medicationPrescribed"),
+                        p.get("accommodationFee") == null ? null : Json.getInt(p, "accommodationFee"));
+                break;
+
+            case "updateBillingAccount" :
+                service.updateBillingAccount(Json.getInt(p, "patientId"), optionalString(p, "responsibleSSN"),
+                        optionalString(p, "billingAddress"), optionalString(p, "paymentMethod"), optionalString(p, "cardNumber"),
+                        optionalString(p, "medicationPrescribed"));
+                break;
+
+            case "addFeeToBillingRecord" :
+                service.addFeeToBillingRecord(Json.getInt(p, "patientId"), optionalId(p, "feeId"), Json.getString(p, "name"),
+                        Json.getDouble(p, "amount"));
+                break;
+
+            case "removeFee" :
+                if (!service.removeFee(Json.getInt(p, "patientId"), Json.getInt(p, "feeId"))) {
+                    throw new IllegalStateException("That fee is not on the patient's billing record");
+                }
+                break;
+
+            case "getPatientMedicalRecord" :
+                if (service.getPatientMedicalRecord(Json.getInt(p, "patientId")) == null) {
+                    throw new IllegalStateException("That patient has no medical record");
+                }
+                break;
+
+            case "getBillingSummary" :
+                if (service.getBillingSummary(Json.getInt(p, "patientId")) == null) {
+                    throw new IllegalStateException("That patient has no billing account");
+                }
+                break;
+
+            default:
+                throw new IllegalArgumentException("Unknown operation " + op);
+        }
+    }
+
+    /**
+     * Gets the ID of a record an operation creates
+     *
+     * @param p parameters of the operation
+     * @param key name of the ID parameter
+     * @return the ID, or 0 to allocate one when the parameter is left out
+     */
+    private static int optionalId(Map<String, Object> p, String key) {
+        return p.get(key) == null ? 0 : Json.getInt(p, key);
+    }
+
+    /**
+     * Gets a date an operation may leave out
+     *
+     * @param p parameters of the operation
+     * @param key name of the date parameter
+     * @return the date, or null when the parameter is left out
+     */
+    private static LocalDate optionalDate(Map<String, Object> p, String key) {
+        return p.get(key) == null ? null : Json.getDate(p, key);
+    }
+
+    /**
+     * Gets a text an operation may leave out
+     *
+     * @param p parameters of the operation
+     * @param key name of the text parameter
+     * @return the text, or null when the parameter is left out
+     */
+    private static String optionalString(Map<String, Object> p, String key) {
+        return p.get(key) == null ? null : Json.getString(p, key);
+    }
+
+    /**
+     * Sets the fields of an update operation on the patches of its record
+     *
+     * @param p parameters of the operation
+     * @param key name of the parameter holding the key of the record
+     * @param patches patches of the tables of the record
+     * @return the patches
+     */
+    private static EntityPatch[] patch(Map<String, Object> p, String key, EntityPatch... patches) {
+        Map<String, Object> fields = new LinkedHashMap<String, Object>(p);
+        fields.remove("op");
+        fields.remove(key);
+        EntityPatch.setAll(fields, patches);
+        return patches;
+    }
+
+    /**
+     * Outcome of a batch: the latencies of each kind of operation and the operations that failed
+     */
+    static class Report {
+        /** Latency in nanoseconds of the successful operations, by operation name */
+        private final Map<String, LatencyHistogram> latencies = new TreeMap<String, LatencyHistogram>();
+        /** Operations that failed, in the order they finished */
+        private final List<Failure> failures = new ArrayList<Failure>();
+        /** Failure count by operation name */
+        private final Map<String, Integer> failureCounts = new TreeMap<String, Integer>();
+        /** Time from the first line read to the last operation finished */
+        private long elapsedNanos;
+
+        private synchronized void succeeded(String op, long nanos) {
+            latencies.computeIfAbsent(op, k -> new LatencyHistogram()).record(nanos);
+        }
+
+        private synchronized void failed(int lineNumber, String op, String message) {
+            failures.add(new Failure(lineNumber, op, message));
+            failureCounts.merge(op, 1, Integer::sum);
+        }
+
+        /**
+         * Gets the number of operations that failed
+         *
+         * @return number of failures
+         */
+        synchronized int getFailureCount() {
+            return failures.size();
+        }
+
+        /**
+         * Prints the count, mean, 50th and 95th percentile and maximum latency of each kind of operation, then the
+         * failures
+         *
+         * @param out where the report is printed
+         */
+        synchronized void print(PrintStream out) {
+            long total = failures.size();
+            out.println(String.format("%-24s %8s %8s %10s %10s %10s %10s", "Operation", "Count", "Failed", "Mean ms", "p50 ms", "p95 ms", "Max ms"));
+            for (Map.Entry<String, LatencyHistogram> entry : latencies.entrySet()) {
+                LatencyHistogram latency = entry.getValue();
+                total += latency.getCount();
+                out.println(String.format("%-24s %8d %8d %10.3f %10.3f %10.3f %10.3f", entry.getKey(), latency.getCount(),
+                        failureCounts.getOrDefault(entry.getKey(), 0), latency.getMean() / 1e6,
+                        latency.getValueAtPercentile(50) / 1e6, latency.getValueAtPercentile(95) / 1e6, latency.getMax() / 1e6));
+            }
+            for (Map.Entry<String, Integer> entry : failureCounts.entrySet()) {
+                if (!latencies.containsKey(entry.getKey())) {
+                    out.println(String.format("%-24s %8d %8d", entry.getKey(), 0, entry.getValue()));
+                }
+            }
+
+            double seconds = elapsedNanos / 1e9;
+            out.println(total + " operations in " + String.format("%.3f", seconds) + " s"
+                    + (seconds > 0 ? String.format(", %.1f operations per second", total / seconds) : ""));
+
+            if (!failures.isEmpty()) {
+                List<Failure> sortedFailures = new ArrayList<Failure>(failures);
+                Collections.sort(sortedFailures, (a, b) -> Integer.compare(a.lineNumber, b.lineNumber));
+                out.println(failures.size() + " operations failed:");
+                for (Failure failure : sortedFailures) {
+                    out.println("Line " + failure.lineNumber + " (" + failure.op + "): " + failure.message);
+                }
+            }
+        }
+    }
+
+    /**
+     * An operation that failed
+     */
+    private static class Failure {
+        /** Line of the operation in the batch file */
+        final int lineNumber;
+        /** Name of the operation */
+        final String op;
+        /** Why it failed */
+        final String message;
+
+        Failure(int lineNumber, String op, String message) {
+            this.lineNumber = lineNumber;
+            this.op = op;
+            this.message = message;
+        }
+    }
+}
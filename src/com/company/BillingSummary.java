@@ -0,0 +1,293 @@
+package com.company;
+
+import java.io.PrintStream;
+import java.sql.Date;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The billing account of one patient with every fee added to it and the totals owed. Everything is read with the
+ * single {@link #QUERY}: the fee subtotal and the grand total are aggregated by the database, and the account
+ * columns come back once per fee, so the view never deduplicates values on the client and two fees with the same
+ * name or amount are both kept.
+ *
+ * Fees are added to the billing record whose ID is the patient ID.
+ */
+class BillingSummary {
+
+    /**
+     * Reads a billing account, one row per fee or a single row if the account has no fees. The patient ID is
+     * bound to both parameters.
+     */
+    static final String QUERY =
+            "SELECT B.patientId, B.responsibleSSN, B.billingAddress, B.visitDate, B.paymentMethod, B.cardNumber, "
+            + "B.registrationFee, B.medicationPrescribed, B.accommodationFee, Fee.id AS feeId, Fee.name AS feeName, "
+            + "Fee.amount AS feeAmount, COALESCE(T.feeCount, 0) AS feeCount, COALESCE(T.feesTotal, 0) AS feesTotal, "
+            + "B.registrationFee + COALESCE(B.accommodationFee, 0) + COALESCE(T.feesTotal, 0) AS grandTotal "
+            + "FROM BillingAccount B "
+            + "LEFT JOIN AddFee ON AddFee.billingRecordId = B.patientId "
+            + "LEFT JOIN Fee ON Fee.id = AddFee.feeId "
+            + "LEFT JOIN (SELECT AddFee.billingRecordId, COUNT(*) AS feeCount, SUM(Fee.amount) AS feesTotal "
+            + "FROM AddFee JOIN Fee ON Fee.id = AddFee.feeId WHERE AddFee.billingRecordId = ? "
+            + "GROUP BY AddFee.billingRecordId) AS T ON T.billingRecordId = B.patientId "
+            + "WHERE B.patientId = ? ORDER BY Fee.id";
+
+    /** Number of parameters of {@link #QUERY}, each bound to the patient ID */
+    static final int QUERY_PARAMETERS = 2;
+
+    /** Patient the account belongs to */
+    private int patientId;
+    /** SSN of the person responsible for the bill */
+    private String responsibleSSN;
+    /** Address the bill is sent to */
+    private String billingAddress;
+    /** Date of the visit */
+    private Date visitDate;
+    /** How the bill is paid */
+    private String paymentMethod;
+    /** Card the bill is paid with, null when not paid by card */
+    private String cardNumber;
+    /** Registration fee */
+    private int registrationFee;
+    /** Whether medication was prescribed */
+    private String medicationPrescribed;
+    /** Accommodation fee, null while it is not known */
+    private Integer accommodationFee;
+    /** Additional fees, in ID order */
+    private final List<Fee> fees = new ArrayList<Fee>();
+    /** Sum of the additional fees */
+    private double feesTotal;
+    /** Registration, accommodation and additional fees together */
+    private double grandTotal;
+
+    /**
+     * Creates an empty summary, filled in by {@link #read(ResultSet)}
+     */
+    private BillingSummary() {
+    }
+
+    /**
+     * Builds the summary from the rows of {@link #QUERY}
+     *
+     * @param result rows of the query, read to the end but not closed
+     * @return the summary, or null if the patient has no billing account
+     * @throws SQLException if the rows can not be read
+     */
+    static BillingSummary read(ResultSet result) throws SQLException {
+        BillingSummary summary = null;
+        while (result.next()) {
+            if (summary == null) {
+                summary = new BillingSummary();
+                summary.patientId = result.getInt("patientId");
+                summary.responsibleSSN = result.getString("responsibleSSN");
+                summary.billingAddress = result.getString("billingAddress");
+                summary.visitDate = result.getDate("visitDate");
+                summary.paymentMethod = result.getString("paymentMethod");
+                summary.cardNumber = result.getString("cardNumber");
+                summary.registrationFee = result.getInt("registrationFee");
+                summary.medicationPrescribed = result.getString("medicationPrescribed");
+                int accommodation = result.getInt("accommodationFee");
+                summary.accommodationFee = result.wasNull() ? null : accommodation;
+                summary.feesTotal = result.getDouble("feesTotal");
+                summary.grandTotal = result.getDouble("grandTotal");
+            }
+            int feeId = result.getInt("feeId");
+            if (!result.wasNull()) {
+                summary.fees.add(new Fee(feeId, result.getString("feeName"), result.getDouble("feeAmount")));
+            }
+        }
+        return summary;
+    }
+
+    /**
+     * Gets the patient the account belongs to
+     *
+     * @return patient ID
+     */
+    int getPatientId() {
+        return patientId;
+    }
+
+    /**
+     * Gets the SSN of the person responsible for the bill
+     *
+     * @return responsible SSN
+     */
+    String getResponsibleSSN() {
+        return responsibleSSN;
+    }
+
+    /**
+     * Gets the address the bill is sent to
+     *
+     * @return billing address
+     */
+    String getBillingAddress() {
+        return billingAddress;
+    }
+
+    /**
+     * Gets the date of the visit
+     *
+     * @return visit date
+     */
+    Date getVisitDate() {
+        return visitDate;
+    }
+
+    /**
+     * Gets how the bill is paid
+     *
+     * @return payment method
+     */
+    String getPaymentMethod() {
+        return paymentMethod;
+    }
+
+    /**
+     * Gets the card the bill is paid with
+     *
+     * @return card number, null when not paid by card
+     */
+    String getCardNumber() {
+        return cardNumber;
+    }
+
+    /**
+     * Gets the registration fee
+     *
+     * @return registration fee
+     */
+    int getRegistrationFee() {
+        return registrationFee;
+    }
+
+    /**
+     * Gets whether medication was prescribed
+     *
+     * @return yes or no
+     */
+    String getMedicationPrescribed() {
+        return medicationPrescribed;
+    }
+
+    /**
+     * Gets the accommodation fee
+     *
+     * @return accommodation fee, null while it is not known
+     */
+    Integer getAccommodationFee() {
+        return accommodationFee;
+    }
+
+    /**
+     * Gets the additional fees
+     *
+     * @return fees in ID order
+     */
+    List<Fee> getFees() {
+        return Collections.unmodifiableList(fees);
+    }
+
+    /**
+     * Gets the sum of the additional fees
+     *
+     * @return fee subtotal
+     */
+    double getFeesTotal() {
+        return feesTotal;
+    }
+
+    /**
+     * Gets the registration, accommodation and additional fees together
+     *
+     * @return grand total
+     */
+    double getGrandTotal() {
+        return grandTotal;
+    }
+
+    /**
+     * Prints the account in the same layout as the rest of the console reports
+     *
+     * @param out where the account is printed
+     */
+    void print(PrintStream out) {
+        out.println("Billing Account");
+        out.println("--------------------------");
+        out.println("Patient ID: " + patientId);
+        out.println("Responsible SSN: " + responsibleSSN);
+        out.println("Billing Address: " + billingAddress);
+        out.println("Visit Date: " + visitDate);
+        out.println("Payment Method: " + paymentMethod);
+        out.println("Card Number: " + (cardNumber == null ? "NA" : cardNumber));
+        out.println("Registration Fee: " + registrationFee);
+        out.println("Medication Prescribed: " + medicationPrescribed);
+        out.println("Accommodation Fee: " + (accommodationFee == null ? "NA" : accommodationFee.toString()));
+        if (fees.isEmpty()) {
+            out.println("Additional Fees: NA");
+        } else {
+            out.println("Additional Fees:");
+            for (Fee fee : fees) {
+                out.println("    " + fee.id + " " + fee.name + ": " + fee.amount);
+            }
+        }
+        out.println("Additional Fees Subtotal: " + feesTotal);
+        out.println("Total: " + grandTotal);
+        out.println("--------------------------");
+    }
+
+    /**
+     * Appends the account as a JSON object
+     *
+     * @param sb where the account is appended
+     */
+    void appendJson(StringBuilder sb) {
+        sb.append('{');
+        Json.appendMember("patientId", patientId, sb);
+        Json.appendMember("responsibleSSN", responsibleSSN, sb);
+        Json.appendMember("billingAddress", billingAddress, sb);
+        Json.appendMember("visitDate", visitDate, sb);
+        Json.appendMember("paymentMethod", paymentMethod, sb);
+        Json.appendMember("cardNumber", cardNumber, sb);
+        Json.appendMember("registrationFee", registrationFee, sb);
+        Json.appendMember("medicationPrescribed", medicationPrescribed, sb);
+        Json.appendMember("accommodationFee", accommodationFee, sb);
+        sb.append(",\"fees\":[");
+        for (Fee fee : fees) {
+            if (sb.charAt(sb.length() - 1) != '[') {
+                sb.append(',');
+            }
+            sb.append('{');
+            Json.appendMember("id", fee.id, sb);
+            Json.appendMember("name", fee.name, sb);
+            Json.appendMember("amount", fee.amount, sb);
+            sb.append('}');
+        }
+        sb.append(']');
+        Json.appendMember("feesTotal", feesTotal, sb);
+        Json.appendMember("grandTotal", grandTotal, sb);
+        sb.append('}');
+    }
+
+    /**
+     * One additional fee of a billing account
+     */
+    static class Fee {
+        /** ID of the fee */
+        final int id;
+        /** Name of the fee */
+        final String name;
+        /** Amount of the fee */
+        final double amount;
+
+        Fee(int id, String name, double amount) {
+            this.id = id;
+            this.name = name;
+            this.amount = amount;
+        }
+    }
+}
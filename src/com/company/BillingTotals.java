@@ -0,0 +1,278 @@
+package com.company;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Keeps {@code BillingRecord.total} equal to the sum of the fees added to the record. Each fee added or removed
+ * moves the total by the fee amount in the same transaction as the AddFee row, so the balance of a billing record
+ * is always a primary key lookup. The billing record of a patient has the patient's ID.
+ *
+ * {@link #reconcile(ConnectionPool, int, boolean)} recomputes every total from the fees and reports, and optionally
+ * repairs, records whose stored total has drifted.
+ */
+class BillingTotals {
+
+    /** Totals closer than this to the sum of the fees are not reported as drift */
+    static final double TOLERANCE = 0.005;
+    /** Number of billing records each reconciliation task checks */
+    private static final int RECONCILE_SLICE = 1000;
+    /** Sum of the fees added to the billing record being updated */
+    private static final String FEES_TOTAL = "(SELECT COALESCE(SUM(Fee.amount), 0) FROM AddFee JOIN Fee ON Fee.id = AddFee.feeId "
+            + "WHERE AddFee.billingRecordId = BillingRecord.id)";
+
+    /**
+     * Adds a fee that already exists to a billing record and moves the total of the record by the fee amount,
+     * creating the record if the patient has none yet
+     *
+     * @param connection connection to the database
+     * @param recordId billing record ID, the patient ID
+     * @param feeId fee to add
+     * @throws SQLException if the fee does not exist or can not be added
+     */
+    static void addFee(Connection connection, int recordId, int feeId) throws SQLException {
+        WardBeds.inTransaction(connection, () -> {
+            double amount = amountOf(connection, feeId);
+            try (PreparedStatement upsert = connection.prepareStatement(
+                    "INSERT INTO BillingRecord(id, total) VALUES(?, ?) ON DUPLICATE KEY UPDATE total = total + VALUES(total)")) {
+                upsert.setInt(1, recordId);
+                upsert.setDouble(2, amount);
+                upsert.executeUpdate();
+            }
+            try (PreparedStatement add = connection.prepareStatement("INSERT INTO AddFee VALUES(?, ?)")) {
+                add.setInt(1, feeId);
+                add.setInt(2, recordId);
+                add.executeUpdate();
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Removes a fee from its billing record, deletes the fee and moves the total of the record back by the fee amount
+     *
+     * @param connection connection to the database
+     * @param recordId billing record the fee must belong to
+     * @param feeId fee to remove
+     * @return true if the fee was removed, false if it is not on that billing record
+     * @throws SQLException if the fee can not be removed
+     */
+    static boolean removeFee(Connection connection, int recordId, int feeId) throws SQLException {
+        return WardBeds.inTransaction(connection, () -> {
+            double amount;
+            try (PreparedStatement select = connection.prepareStatement("SELECT Fee.amount FROM AddFee JOIN Fee ON Fee.id = AddFee.feeId "
+                    + "WHERE AddFee.feeId = ? AND AddFee.billingRecordId = ? FOR UPDATE")) {
+                select.setInt(1, feeId);
+                select.setInt(2, recordId);
+                try (ResultSet result = select.executeQuery()) {
+                    if (!result.next()) {
+                        return false;
+                    }
+                    amount = result.getDouble("amount");
+                }
+            }
+            try (PreparedStatement delete = connection.prepareStatement("DELETE FROM AddFee WHERE feeId = ?")) {
+                delete.setInt(1, feeId);
+                delete.executeUpdate();
+            }
+            try (PreparedStatement delete = connection.prepareStatement("DELETE FROM Fee WHERE id = ?")) {
+                delete.setInt(1, feeId);
+                delete.executeUpdate();
+            }
+            try (PreparedStatement update = connection.prepareStatement("UPDATE BillingRecord SET total = total - ? WHERE id = ?")) {
+                update.setDouble(1, amount);
+                update.setInt(2, recordId);
+                update.executeUpdate();
+            }
+            return true;
+        });
+    }
+
+    /**
+     * Reads the stored total of a billing record
+     *
+     * @param connection connection to the database
+     * @param recordId billing record ID, the patient ID
+     * @return the total, 0 if the patient has no billing record
+     * @throws SQLException if the total can not be read
+     */
+    static double total(Connection connection, int recordId) throws SQLException {
+        try (PreparedStatement select = connection.prepareStatement("SELECT total FROM BillingRecord WHERE id = ?")) {
+            select.setInt(1, recordId);
+            try (ResultSet result = select.executeQuery()) {
+                return result.next() ? result.getDouble("total") : 0;
+            }
+        }
+    }
+
+    /**
+     * Recomputes the total of every billing record from its fees. The records are split into ID ranges that are
+     * checked in parallel, each on its own connection from the pool.
+     *
+     * @param pool pool the checking connections are borrowed from
+     * @param threads number of ranges checked at once
+     * @param repair whether to overwrite drifted totals with the recomputed sum
+     * @return the records whose stored total had drifted
+     * @throws SQLException if the records can not be read or repaired
+     */
+    static List<Drift> reconcile(ConnectionPool pool, int threads, boolean repair) throws SQLException {
+        int min, max;
+        try (Connection connection = pool.borrow();
+             Statement statement = connection.createStatement();
+             ResultSet result = statement.executeQuery("SELECT MIN(id), MAX(id) FROM BillingRecord")) {
+            result.next();
+            min = result.getInt(1);
+            if (result.wasNull()) {
+                return new ArrayList<Drift>();
+            }
+            max = result.getInt(2);
+        }
+
+        ExecutorService workers = Executors.newFixedThreadPool(Math.max(1, threads));
+        try {
+            List<Future<List<Drift>>> slices = new ArrayList<Future<List<Drift>>>();
+            for (long from = min; from <= max; from += RECONCILE_SLICE) {
+                int low = (int) from;
+                int high = (int) Math.min(max, from + RECONCILE_SLICE - 1);
+                slices.add(workers.submit(() -> reconcileRange(pool, low, high, repair)));
+            }
+
+            List<Drift> drifts = new ArrayList<Drift>();
+            for (Future<List<Drift>> slice : slices) {
+                drifts.addAll(slice.get());
+            }
+            return drifts;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while reconciling billing totals", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof SQLException) {
+                throw (SQLException) e.getCause();
+            }
+            throw new SQLException("Reconciling billing totals failed", e.getCause());
+        } finally {
+            workers.shutdownNow();
+        }
+    }
+
+    /**
+     * Overwrites the total of every billing record with the sum of its fees, one range of records per statement so
+     * no statement locks the whole table. Run once by the {@link SchemaMigrator}, since totals stored before fees moved
+     * them may not match the fees of the record.
+     *
+     * @param connection connection to the database
+     * @throws SQLException if the totals can not be written
+     */
+    static void recomputeAll(Connection connection) throws SQLException {
+        int min, max;
+        try (Statement statement = connection.createStatement();
+             ResultSet result = statement.executeQuery("SELECT MIN(id), MAX(id) FROM BillingRecord")) {
+            result.next();
+            min = result.getInt(1);
+            if (result.wasNull()) {
+                return;
+            }
+            max = result.getInt(2);
+        }
+
+        try (PreparedStatement update = connection.prepareStatement("UPDATE BillingRecord SET total = " + FEES_TOTAL
+                + " WHERE id BETWEEN ? AND ?")) {
+            for (long from = min; from <= max; from += RECONCILE_SLICE) {
+                update.setInt(1, (int) from);
+                update.setInt(2, (int) Math.min(max, from + RECONCILE_SLICE - 1));
+                update.executeUpdate();
+            }
+        }
+    }
+
+    /**
+     * Recomputes the totals of one range of billing records
+     *
+     * @param pool pool the connection is borrowed from
+     * @param low lowest billing record ID of the range
+     * @param high highest billing record ID of the range
+     * @param repair whether to overwrite drifted totals with the recomputed sum
+     * @return the records of the range whose stored total had drifted
+     * @throws SQLException if the records can not be read or repaired
+     */
+    private static List<Drift> reconcileRange(ConnectionPool pool, int low, int high, boolean repair) throws SQLException {
+        List<Drift> drifts = new ArrayList<Drift>();
+        try (Connection connection = pool.borrow()) {
+            try (PreparedStatement select = connection.prepareStatement("SELECT BillingRecord.id, BillingRecord.total, "
+                    + "COALESCE(SUM(Fee.amount), 0) AS feesTotal FROM BillingRecord "
+                    + "LEFT JOIN AddFee ON AddFee.billingRecordId = BillingRecord.id LEFT JOIN Fee ON Fee.id = AddFee.feeId "
+                    + "WHERE BillingRecord.id BETWEEN ? AND ? GROUP BY BillingRecord.id, BillingRecord.total")) {
+                select.setInt(1, low);
+                select.setInt(2, high);
+                try (ResultSet result = select.executeQuery()) {
+                    while (result.next()) {
+                        double stored = result.getDouble("total");
+                        double actual = result.getDouble("feesTotal");
+                        if (Math.abs(stored - actual) > TOLERANCE) {
+                            drifts.add(new Drift(result.getInt("id"), stored, actual));
+                        }
+                    }
+                }
+            }
+
+            if (repair && !drifts.isEmpty()) {
+                //Recompute inside the update so fees added since the check are counted
+                try (PreparedStatement update = connection.prepareStatement("UPDATE BillingRecord SET total = " + FEES_TOTAL + " WHERE id = ?")) {
+                    for (Drift drift : drifts) {
+                        update.setInt(1, drift.recordId);
+                        update.addBatch();
+                    }
+                    update.executeBatch();
+                }
+            }
+        }
+        return drifts;
+    }
+
+    /**
+     * Reads the amount of a fee
+     *
+     * @param connection connection to the database
+     * @param feeId fee ID
+     * @return the amount
+     * @throws SQLException if the fee does not exist
+     */
+    private static double amountOf(Connection connection, int feeId) throws SQLException {
+        try (PreparedStatement select = connection.prepareStatement("SELECT amount FROM Fee WHERE id = ?")) {
+            select.setInt(1, feeId);
+            try (ResultSet result = select.executeQuery()) {
+                if (!result.next()) {
+                    throw new SQLException("Fee " + feeId + " does not exist");
+                }
+                return result.getDouble("amount");
+            }
+        }
+    }
+
+    /**
+     * A billing record whose stored total does not match its fees
+     */
+    static class Drift {
+        /** Billing record ID */
+        final int recordId;
+        /** Total stored in the billing record */
+        final double stored;
+        /** Sum of the fees of the billing record */
+        final double actual;
+
+        Drift(int recordId, double stored, double actual) {
+            this.recordId = recordId;
+            this.stored = stored;
+            this.actual = actual;
+        }
+    }
+}
@@ -0,0 +1,352 @@
+package com.company;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.BatchUpdateException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Imports patients or staff in bulk from a CSV file. The file is streamed one line at a time and every row is
+ * checked with the same {@link RecordValidator} rules as the interactive entry screens. Valid rows are inserted
+ * with JDBC batches, one transaction per chunk, so loading tens of thousands of records takes a few round trips
+ * per chunk instead of several per record. If a chunk fails, for example because a value does not fit its column,
+ * its rows are inserted one at a time so only the offending rows are rejected.
+ *
+ * Every row is given its ID by the {@link IdAllocator}, like records entered on the screens, so imported rows never
+ * take an ID the allocator has already reserved for someone else.
+ *
+ * The first line of the file is a header and is skipped. Fields may be quoted with double quotes when they
+ * contain commas. Patient files have the columns
+ * {@code ssn,name,dob,gender,age,phone,address,treatment,inWard,status}
+ * and staff files have the columns
+ * {@code name,age,gender,address,phone,jobTitle,professionalTitle,department}.
+ */
+class BulkImporter {
+
+    /** Kind of record in a patient file */
+    static final String PATIENT = "patient";
+    /** Kind of record in a staff file */
+    static final String STAFF = "staff";
+
+    /** Number of columns in a patient file */
+    private static final int PATIENT_COLUMNS = 10;
+    /** Number of columns in a staff file */
+    private static final int STAFF_COLUMNS = 8;
+
+    /** Connection the records are inserted with */
+    private final Connection connection;
+    /** Allocator the IDs of the records are taken from */
+    private final IdAllocator ids;
+    /** Kind of record being imported */
+    private final String kind;
+    /** Number of rows inserted per transaction */
+    private final int chunkSize;
+    /** Where progress and rejected rows are reported */
+    private final PrintStream out;
+
+    /** Rows inserted so far */
+    private int imported = 0;
+    /** Rows rejected so far */
+    private int rejected = 0;
+
+    /**
+     * Creates an importer
+     *
+     * @param connection connection the records are inserted with
+     * @param ids allocator the IDs of the records are taken from
+     * @param kind {@link #PATIENT} or {@link #STAFF}
+     * @param chunkSize number of rows inserted per transaction
+     * @param out where progress and rejected rows are reported
+     */
+    BulkImporter(Connection connection, IdAllocator ids, String kind, int chunkSize, PrintStream out) {
+        if (!PATIENT.equals(kind) && !STAFF.equals(kind)) {
+            throw new IllegalArgumentException("Records must be " + PATIENT + " or " + STAFF);
+        }
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("Chunk size must be at least 1");
+        }
+        this.connection = connection;
+        this.ids = ids;
+        this.kind = kind;
+        this.chunkSize = chunkSize;
+        this.out = out;
+    }
+
+    /**
+     * Imports every row of the file
+     *
+     * @param file CSV file to import
+     * @throws IOException if the file can not be read
+     * @throws SQLException if the database fails in a way that is not caused by a single row
+     */
+    void importFile(Path file) throws IOException, SQLException {
+        long started = System.nanoTime();
+        List<Row> chunk = new ArrayList<Row>(chunkSize);
+        int chunkNumber = 0;
+
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            //Skip the header
+            String line = reader.readLine();
+            int lineNumber = 1;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.trim().isEmpty()) {
+                    continue;
+                }
+                Row row = new Row(lineNumber, parseLine(line));
+                String invalid = validate(row.fields);
+                if (invalid != null) {
+                    reject(row, invalid);
+                    continue;
+                }
+                row.id = ids.next(connection, PATIENT.equals(kind) ? IdAllocator.Sequence.PATIENT : IdAllocator.Sequence.PERSON);
+                chunk.add(row);
+                if (chunk.size() == chunkSize) {
+                    insertChunk(++chunkNumber, chunk);
+                    chunk.clear();
+                }
+            }
+        }
+        if (!chunk.isEmpty()) {
+            insertChunk(++chunkNumber, chunk);
+        }
+
+        double seconds = (System.nanoTime() - started) / 1e9;
+        out.println("Imported " + imported + " " + kind + " rows, rejected " + rejected + ", in "
+                + String.format("%.2f", seconds) + " s (" + String.format("%.0f", imported / Math.max(seconds, 1e-9)) + " rows/s)");
+    }
+
+    /**
+     * Gets the number of rows inserted
+     *
+     * @return rows inserted
+     */
+    int getImported() {
+        return imported;
+    }
+
+    /**
+     * Gets the number of rows rejected
+     *
+     * @return rows rejected
+     */
+    int getRejected() {
+        return rejected;
+    }
+
+    /**
+     * Inserts a chunk of valid rows in one transaction, falling back to one row at a time if the batch fails
+     *
+     * @param chunkNumber number of the chunk, for the progress report
+     * @param chunk rows to insert
+     * @throws SQLException if the database fails for a reason other than a bad row
+     */
+    private void insertChunk(int chunkNumber, List<Row> chunk) throws SQLException {
+        long started = System.nanoTime();
+        boolean autoCommit = connection.getAutoCommit();
+        connection.setAutoCommit(false);
+        try {
+            try {
+                insertBatch(chunk);
+                connection.commit();
+                imported += chunk.size();
+            } catch (BatchUpdateException e) {
+                connection.rollback();
+                for (Row row : chunk) {
+                    try {
+                        insertBatch(Collections.singletonList(row));
+                        connection.commit();
+                        imported++;
+                    } catch (SQLException rowError) {
+                        connection.rollback();
+                        reject(row, rowError.getMessage());
+                    }
+                }
+            }
+        } finally {
+            connection.setAutoCommit(autoCommit);
+        }
+
+        double millis = (System.nanoTime() - started) / 1e6;
+        out.println("Chunk " + chunkNumber + ": " + chunk.size() + " rows in " + String.format("%.1f", millis) + " ms ("
+                + String.format("%.0f", chunk.size() * 1000.0 / Math.max(millis, 1e-6)) + " rows/s)");
+    }
+
+    /**
+     * Adds the rows to the insert batches and executes them
+     *
+     * @param rows rows to insert
+     * @throws SQLException if the batch fails
+     */
+    private void insertBatch(List<Row> rows) throws SQLException {
+        if (PATIENT.equals(kind)) {
+            try (PreparedStatement patient = connection.prepareStatement("INSERT INTO Patient VALUES(?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)")) {
+                for (Row row : rows) {
+                    String[] f = row.fields;
+                    patient.setInt(1, row.id);
+                    patient.setString(2, f[0]);
+                    patient.setString(3, f[1]);
+                    patient.setDate(4, java.sql.Date.valueOf(f[2]));
+                    patient.setString(5, f[3]);
+                    patient.setInt(6, Integer.parseInt(f[4]));
+                    patient.setString(7, f[5]);
+                    patient.setString(8, f[6]);
+                    patient.setInt(9, Integer.parseInt(f[7]));
+                    patient.setString(10, f[8]);
+                    patient.setString(11, f[9]);
+                    patient.addBatch();
+                }
+                patient.executeBatch();
+            }
+        } else {
+            try (PreparedStatement person = connection.prepareStatement("INSERT INTO Person VALUES(?, ?, ?, ?, ?, ?)");
+                 PreparedStatement staff = connection.prepareStatement("INSERT INTO Staff VALUES(?, ?, ?, ?)")) {
+                for (Row row : rows) {
+                    String[] f = row.fields;
+                    person.setInt(1, row.id);
+                    person.setString(2, f[0]);
+                    person.setInt(3, Integer.parseInt(f[1]));
+                    person.setString(4, f[2]);
+                    person.setString(5, f[3]);
+                    person.setString(6, f[4]);
+                    person.addBatch();
+                    staff.setInt(1, row.id);
+                    staff.setString(2, f[5]);
+                    staff.setString(3, f[6]);
+                    staff.setString(4, f[7]);
+                    staff.addBatch();
+                }
+                person.executeBatch();
+                staff.executeBatch();
+            }
+        }
+    }
+
+    /**
+     * Checks a row with the same rules as the interactive entry screens
+     *
+     * @param f fields of the row
+     * @return null if the row is valid, otherwise the reason it is not
+     */
+    private String validate(String[] f) {
+        int expected = PATIENT.equals(kind) ? PATIENT_COLUMNS : STAFF_COLUMNS;
+        if (f.length != expected) {
+            return "Expected " + expected + " columns but found " + f.length;
+        }
+        String invalid;
+        if (PATIENT.equals(kind)) {
+            if ((invalid = RecordValidator.checkSSN(f[0])) != null
+                    || (invalid = RecordValidator.checkName(f[1])) != null
+                    || (invalid = RecordValidator.checkGender(f[3])) != null
+                    || (invalid = RecordValidator.checkPhone(f[5])) != null
+                    || (invalid = RecordValidator.checkAddress(f[6])) != null
+                    || (invalid = RecordValidator.checkYesNo(f[8])) != null
+                    || (invalid = RecordValidator.checkYesNo(f[9])) != null) {
+                return invalid;
+            }
+            try {
+                java.sql.Date.valueOf(f[2]);
+            } catch (IllegalArgumentException e) {
+                return "Date of birth must be in the form yyyy-mm-dd";
+            }
+            try {
+                Integer.parseInt(f[4]);
+            } catch (NumberFormatException e) {
+                return "Patient age must be an integer";
+            }
+            try {
+                Integer.parseInt(f[7]);
+            } catch (NumberFormatException e) {
+                return "Processing treatment plan must be an integer";
+            }
+        } else {
+            if ((invalid = RecordValidator.checkName(f[0])) != null
+                    || (invalid = RecordValidator.checkGender(f[2])) != null
+                    || (invalid = RecordValidator.checkAddress(f[3])) != null
+                    || (invalid = RecordValidator.checkPhone(f[4])) != null
+                    || (invalid = RecordValidator.checkTitle("Job title", f[5])) != null
+                    || (invalid = RecordValidator.checkTitle("Professional title", f[6])) != null
+                    || (invalid = RecordValidator.checkTitle("Department", f[7])) != null) {
+                return invalid;
+            }
+            try {
+                Integer.parseInt(f[1]);
+            } catch (NumberFormatException e) {
+                return "Person age must be an integer";
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Reports a rejected row
+     *
+     * @param row the row
+     * @param reason why it was rejected
+     */
+    private void reject(Row row, String reason) {
+        rejected++;
+        out.println("Rejected line " + row.lineNumber + ": " + reason);
+    }
+
+    /**
+     * Splits one CSV line into fields. Fields may be quoted with double quotes, and a doubled double quote
+     * inside a quoted field stands for one double quote.
+     *
+     * @param line line of the file
+     * @return fields of the line
+     */
+    static String[] parseLine(String line) {
+        List<String> fields = new ArrayList<String>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString().trim());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        fields.add(field.toString().trim());
+        return fields.toArray(new String[0]);
+    }
+
+    /**
+     * A row of the file waiting to be inserted
+     */
+    private static class Row {
+        /** Line of the file the row came from */
+        final int lineNumber;
+        /** Fields of the row */
+        final String[] fields;
+        /** ID the row is inserted with, allocated once the row is valid */
+        int id;
+
+        Row(int lineNumber, String[] fields) {
+            this.lineNumber = lineNumber;
+            this.fields = fields;
+        }
+    }
+}
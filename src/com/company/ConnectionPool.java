@@ -0,0 +1,384 @@
+package com.company;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pool of JDBC connections to the WolfHospital database that is shared by every operator session running
+ * in the same JVM. Connections are borrowed for the length of one operation and handed back by closing them.
+ * Every statement created through a borrowed connection is closed when the connection is returned, so result
+ * sets and statements never leak from one operation into the next.
+ *
+ * Idle connections above the minimum size are evicted in the background and idle connections are checked with
+ * the validation query before they are handed out again. Each connection keeps a {@link StatementCache} of
+ * prepared statements, available from a borrowed connection through {@code unwrap(StatementCache.class)}.
+ * Physical connections are wrapped by {@link QueryMetrics} so the round trips of every operation are counted.
+ */
+class ConnectionPool {
+
+    /** How long a caller waits for a free connection before giving up */
+    private static final long BORROW_TIMEOUT_MILLIS = 30 * 1000;
+    /** Connections idle for less than this are handed out without running the validation query */
+    private static final long VALIDATION_INTERVAL_MILLIS = 5 * 1000;
+    /** Number of prepared statements cached on each connection */
+    private static final int STATEMENT_CACHE_SIZE = 64;
+
+    /** JDBC url of the database */
+    private final String url;
+    /** User name for the database */
+    private final String user;
+    /** Password for the database */
+    private final String password;
+    /** Number of connections kept open even when idle */
+    private final int minSize;
+    /** Maximum number of connections open at once */
+    private final int maxSize;
+    /** Idle connections above the minimum size are closed after this long */
+    private final long idleTimeoutMillis;
+    /** Query used to check that an idle connection is still usable */
+    private final String validationQuery;
+
+    /** Idle connections, most recently returned first */
+    private final LinkedBlockingDeque<PhysicalConnection> idle = new LinkedBlockingDeque<PhysicalConnection>();
+    /** One permit per connection that may still be borrowed */
+    private final Semaphore permits;
+    /** Number of physical connections currently open */
+    private final AtomicInteger open = new AtomicInteger();
+    /** Background task closing connections that have been idle too long */
+    private final ScheduledExecutorService evictor;
+    /** Whether the pool has been closed */
+    private volatile boolean closed = false;
+
+    /**
+     * Creates the pool and opens the minimum number of connections.
+     *
+     * @param url JDBC url of the database
+     * @param user user name for the database
+     * @param password password for the database
+     * @param minSize number of connections kept open even when idle
+     * @param maxSize maximum number of connections open at once
+     * @param idleTimeoutMillis idle connections above the minimum size are closed after this many milliseconds
+     * @param validationQuery query used to check that an idle connection is still usable
+     * @throws SQLException if the initial connections cannot be opened
+     */
+    ConnectionPool(String url, String user, String password, int minSize, int maxSize, long idleTimeoutMillis,
+                   String validationQuery) throws SQLException {
+        if (minSize < 0 || maxSize < 1 || minSize > maxSize) {
+            throw new IllegalArgumentException("Pool size must satisfy 0 <= min <= max and max >= 1");
+        }
+        this.url = url;
+        this.user = user;
+        this.password = password;
+        this.minSize = minSize;
+        this.maxSize = maxSize;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.validationQuery = validationQuery;
+        this.permits = new Semaphore(maxSize, true);
+
+        for (int i = 0; i < minSize; i++) {
+            idle.offerLast(openPhysical());
+        }
+
+        evictor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "WolfHospital-pool-evictor");
+            t.setDaemon(true);
+            return t;
+        });
+        long period = Math.max(1000, idleTimeoutMillis / 2);
+        evictor.scheduleWithFixedDelay(this::evictIdle, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Borrows a connection from the pool, waiting for one to be returned if the pool is at its maximum size.
+     * The connection must be closed to return it to the pool.
+     *
+     * @return a connection that is returned to the pool when closed
+     * @throws SQLException if no connection becomes available in time or a new connection cannot be opened
+     */
+    Connection borrow() throws SQLException {
+        if (closed) {
+            throw new SQLException("Connection pool is closed");
+        }
+        try {
+            if (!permits.tryAcquire(BORROW_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+                throw new SQLException("Timed out waiting for a database connection, all " + maxSize + " are in use");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a database connection", e);
+        }
+
+        try {
+            PhysicalConnection pc;
+            while ((pc = idle.pollFirst()) != null) {
+                if (isUsable(pc)) {
+                    return lease(pc);
+                }
+                discard(pc);
+            }
+            return lease(openPhysical());
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Gets the number of physical connections currently open
+     *
+     * @return number of open connections
+     */
+    int getOpenCount() {
+        return open.get();
+    }
+
+    /**
+     * Gets the number of open connections that are not borrowed
+     *
+     * @return number of idle connections
+     */
+    int getIdleCount() {
+        return idle.size();
+    }
+
+    /**
+     * Closes the pool and every idle connection. Borrowed connections are closed as they are returned.
+     */
+    void close() {
+        closed = true;
+        evictor.shutdownNow();
+        PhysicalConnection pc;
+        while ((pc = idle.pollFirst()) != null) {
+            discard(pc);
+        }
+    }
+
+    /**
+     * Opens a new physical connection to the database
+     *
+     * @return the new connection
+     * @throws SQLException if the connection cannot be opened
+     */
+    private PhysicalConnection openPhysical() throws SQLException {
+        Connection c = QueryMetrics.instrument(DriverManager.getConnection(url, user, password));
+        open.incrementAndGet();
+        return new PhysicalConnection(c);
+    }
+
+    /**
+     * Checks an idle connection before handing it out. Connections used very recently are trusted,
+     * others are checked with the validation query.
+     *
+     * @param pc idle connection
+     * @return true if the connection can be handed out
+     */
+    private boolean isUsable(PhysicalConnection pc) {
+        if (System.currentTimeMillis() - pc.lastUsed < VALIDATION_INTERVAL_MILLIS) {
+            return true;
+        }
+        try (Statement s = pc.connection.createStatement()) {
+            s.execute(validationQuery);
+            return true;
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Closes a physical connection that is leaving the pool
+     *
+     * @param pc connection to close
+     */
+    private void discard(PhysicalConnection pc) {
+        open.decrementAndGet();
+        pc.statements.close();
+        try {
+            pc.connection.close();
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Wraps a physical connection in a lease that returns it to the pool when closed
+     *
+     * @param pc connection being borrowed
+     * @return connection handed to the caller
+     */
+    private Connection lease(PhysicalConnection pc) {
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                new Class<?>[] { Connection.class }, new Lease(pc));
+    }
+
+    /**
+     * Takes a connection back from a closed lease
+     *
+     * @param pc connection being returned
+     * @param broken whether the connection failed while it was borrowed
+     */
+    private void giveBack(PhysicalConnection pc, boolean broken) {
+        try {
+            if (broken || closed) {
+                discard(pc);
+                return;
+            }
+            try {
+                if (!pc.connection.getAutoCommit()) {
+                    pc.connection.rollback();
+                    pc.connection.setAutoCommit(true);
+                }
+            } catch (SQLException e) {
+                discard(pc);
+                return;
+            }
+            pc.lastUsed = System.currentTimeMillis();
+            idle.offerFirst(pc);
+        } finally {
+            permits.release();
+        }
+    }
+
+    /**
+     * Closes connections that have been idle longer than the idle timeout while keeping at least
+     * the minimum number of connections open
+     */
+    private void evictIdle() {
+        long now = System.currentTimeMillis();
+        Iterator<PhysicalConnection> it = idle.descendingIterator();
+        while (it.hasNext() && open.get() > minSize) {
+            PhysicalConnection pc = it.next();
+            if (now - pc.lastUsed > idleTimeoutMillis && idle.remove(pc)) {
+                discard(pc);
+            }
+        }
+        while (!closed && open.get() < minSize) {
+            try {
+                idle.offerLast(openPhysical());
+            } catch (SQLException e) {
+                e.printStackTrace();
+                return;
+            }
+        }
+    }
+
+    /**
+     * A physical connection owned by the pool
+     */
+    private static class PhysicalConnection {
+        /** The open JDBC connection */
+        final Connection connection;
+        /** Prepared statements kept open on this connection */
+        final StatementCache statements;
+        /** When the connection was last returned to the pool */
+        volatile long lastUsed = System.currentTimeMillis();
+
+        PhysicalConnection(Connection connection) {
+            this.connection = connection;
+            this.statements = new StatementCache(connection, STATEMENT_CACHE_SIZE);
+        }
+    }
+
+    /**
+     * One borrow of a physical connection. Tracks the statements created during the borrow so they can be closed
+     * when the connection is returned, and stops the caller from using the connection after it has been returned.
+     */
+    private class Lease implements InvocationHandler {
+        /** Connection being borrowed */
+        private final PhysicalConnection pc;
+        /** Statements created through this lease */
+        private final List<Statement> statements = new ArrayList<Statement>();
+        /** Whether this lease has been returned */
+        private boolean returned = false;
+        /** Whether the connection threw a fatal error while borrowed */
+        private boolean broken = false;
+
+        Lease(PhysicalConnection pc) {
+            this.pc = pc;
+        }
+
+        @Override
+        public synchronized Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            switch (name) {
+                case "close":
+                    if (!returned) {
+                        returned = true;
+                        for (Statement s : statements) {
+                            try {
+                                s.close();
+                            } catch (SQLException e) {
+                                broken = true;
+                            }
+                        }
+                        statements.clear();
+                        pc.statements.release();
+                        giveBack(pc, broken);
+                    }
+                    return null;
+                case "isClosed":
+                    return returned || pc.connection.isClosed();
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "Pooled " + pc.connection;
+                case "unwrap":
+                    if (args[0] == StatementCache.class) {
+                        return pc.statements;
+                    }
+                    break;
+                case "isWrapperFor":
+                    if (args[0] == StatementCache.class) {
+                        return true;
+                    }
+                    break;
+                default:
+                    break;
+            }
+            if (returned) {
+                throw new SQLException("Connection has already been returned to the pool");
+            }
+
+            try {
+                Object value = method.invoke(pc.connection, args);
+                if (value instanceof Statement) {
+                    statements.add((Statement) value);
+                }
+                return value;
+            } catch (InvocationTargetException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof SQLException && isFatal((SQLException) cause)) {
+                    broken = true;
+                }
+                throw cause;
+            }
+        }
+
+        /**
+         * Checks whether an error means the connection itself can no longer be used
+         *
+         * @param e error thrown by the driver
+         * @return true if the connection should be discarded
+         */
+        private boolean isFatal(SQLException e) {
+            String state = e.getSQLState();
+            return state != null && state.startsWith("08");
+        }
+    }
+}
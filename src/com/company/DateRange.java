@@ -0,0 +1,244 @@
+package com.company;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.time.DateTimeException;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.Year;
+import java.time.YearMonth;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.IsoFields;
+import java.time.temporal.TemporalAdjusters;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A half-open range of days, from the first day up to but not including the end day, used by the reports that
+ * cover a week, month, quarter or year. Half-open ranges need no "last day of the month" arithmetic and the
+ * predicates built from them compare a bare column with a bound parameter, so the database can answer them with a
+ * range scan of an index on that column.
+ */
+class DateRange {
+
+    /** First day of the range */
+    private final LocalDate start;
+    /** First day after the range */
+    private final LocalDate end;
+    /** How the range is shown to the user */
+    private final String label;
+
+    /**
+     * Creates a range
+     *
+     * @param start first day of the range
+     * @param end first day after the range
+     * @param label how the range is shown to the user
+     */
+    private DateRange(LocalDate start, LocalDate end, String label) {
+        if (!start.isBefore(end)) {
+            throw new IllegalArgumentException("Range must end after " + start);
+        }
+        this.start = start;
+        this.end = end;
+        this.label = label;
+    }
+
+    /**
+     * Creates a range of arbitrary days
+     *
+     * @param start first day of the range
+     * @param end first day after the range
+     * @return the range
+     */
+    static DateRange of(LocalDate start, LocalDate end) {
+        return new DateRange(start, end, start + " to " + end.minusDays(1));
+    }
+
+    /**
+     * Creates a range covering one month
+     *
+     * @param month the month
+     * @return the range
+     */
+    static DateRange month(YearMonth month) {
+        return new DateRange(month.atDay(1), month.plusMonths(1).atDay(1), month.toString());
+    }
+
+    /**
+     * Creates a range covering one quarter of a year
+     *
+     * @param year the year
+     * @param quarter quarter from 1 to 4
+     * @return the range
+     */
+    static DateRange quarter(int year, int quarter) {
+        if (quarter < 1 || quarter > 4) {
+            throw new IllegalArgumentException("Quarter must be from 1 to 4");
+        }
+        YearMonth first = YearMonth.of(year, 3 * quarter - 2);
+        return new DateRange(first.atDay(1), first.plusMonths(3).atDay(1), year + "-Q" + quarter);
+    }
+
+    /**
+     * Creates a range covering one year
+     *
+     * @param year the year
+     * @return the range
+     */
+    static DateRange year(int year) {
+        return new DateRange(Year.of(year).atDay(1), Year.of(year + 1).atDay(1), String.valueOf(year));
+    }
+
+    /**
+     * Creates a range covering one ISO week, Monday to Sunday
+     *
+     * @param year the week based year
+     * @param week week of the year from 1 to 52 or 53
+     * @return the range
+     */
+    static DateRange week(int year, int week) {
+        LocalDate monday;
+        try {
+            monday = LocalDate.of(year, 1, 4)
+                    .with(IsoFields.WEEK_OF_WEEK_BASED_YEAR, week)
+                    .with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY));
+        } catch (DateTimeException e) {
+            throw new IllegalArgumentException(year + " has no week " + week);
+        }
+        if (monday.get(IsoFields.WEEK_BASED_YEAR) != year) {
+            throw new IllegalArgumentException(year + " has no week " + week);
+        }
+        return new DateRange(monday, monday.plusWeeks(1), String.format("%d-W%02d", year, week));
+    }
+
+    /**
+     * Parses a range of a year entered at the console
+     *
+     * @param year year in form yyyy
+     * @param period month in form mm, quarter q1 to q4, week w01 to w53, or all for the whole year
+     * @return the range
+     * @throws IllegalArgumentException if the year or period is not valid
+     */
+    static DateRange parse(String year, String period) {
+        int y;
+        try {
+            y = Year.parse(year.trim()).getValue();
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("Please enter year in form yyyy. No space allowed");
+        }
+        String p = period.trim().toLowerCase();
+        try {
+            if (p.isEmpty() || p.equals("all")) {
+                return year(y);
+            } else if (p.startsWith("q")) {
+                return quarter(y, Integer.parseInt(p.substring(1)));
+            } else if (p.startsWith("w")) {
+                return week(y, Integer.parseInt(p.substring(1)));
+            }
+            int month = Integer.parseInt(p);
+            if (month < 1 || month > 12) {
+                throw new IllegalArgumentException("Month must be from 01 to 12");
+            }
+            return month(YearMonth.of(y, month));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Please enter a month in form mm, a quarter q1 to q4, a week w01 to w53 or all");
+        }
+    }
+
+    /**
+     * Gets the first day of the range
+     *
+     * @return first day
+     */
+    LocalDate getStart() {
+        return start;
+    }
+
+    /**
+     * Gets the first day after the range
+     *
+     * @return first day after the range
+     */
+    LocalDate getEnd() {
+        return end;
+    }
+
+    /**
+     * Checks whether the range starts and ends on a month boundary, so it covers whole months only
+     *
+     * @return true if the range is made of whole months
+     */
+    boolean isWholeMonths() {
+        return start.getDayOfMonth() == 1 && end.getDayOfMonth() == 1;
+    }
+
+    /**
+     * Gets the months the range touches
+     *
+     * @return months in order
+     */
+    List<YearMonth> months() {
+        List<YearMonth> months = new ArrayList<YearMonth>();
+        YearMonth last = YearMonth.from(end.minusDays(1));
+        for (YearMonth m = YearMonth.from(start); !m.isAfter(last); m = m.plusMonths(1)) {
+            months.add(m);
+        }
+        return months;
+    }
+
+    /**
+     * Builds a predicate matching a date column inside the range. Bind it with {@link #bindWithin}.
+     *
+     * @param column date column
+     * @return {@code column >= ? AND column < ?}
+     */
+    static String within(String column) {
+        return column + " >= ? AND " + column + " < ?";
+    }
+
+    /**
+     * Binds the parameters of {@link #within}
+     *
+     * @param ps statement holding the predicate
+     * @param index index of the first parameter of the predicate
+     * @return index of the parameter after the predicate
+     * @throws SQLException if the parameters can not be bound
+     */
+    int bindWithin(PreparedStatement ps, int index) throws SQLException {
+        ps.setDate(index, java.sql.Date.valueOf(start));
+        ps.setDate(index + 1, java.sql.Date.valueOf(end));
+        return index + 2;
+    }
+
+    /**
+     * Builds a predicate matching a stay from a start date to an end date, null while the stay is open, that
+     * overlaps the range. The end date is the last day of the stay. Bind it with {@link #bindOverlaps}.
+     *
+     * @param startColumn column holding the first day of the stay
+     * @param endColumn column holding the last day of the stay
+     * @return {@code startColumn < ? AND (endColumn IS NULL OR endColumn >= ?)}
+     */
+    static String overlaps(String startColumn, String endColumn) {
+        return startColumn + " < ? AND (" + endColumn + " IS NULL OR " + endColumn + " >= ?)";
+    }
+
+    /**
+     * Binds the parameters of {@link #overlaps}
+     *
+     * @param ps statement holding the predicate
+     * @param index index of the first parameter of the predicate
+     * @return index of the parameter after the predicate
+     * @throws SQLException if the parameters can not be bound
+     */
+    int bindOverlaps(PreparedStatement ps, int index) throws SQLException {
+        ps.setDate(index, java.sql.Date.valueOf(end));
+        ps.setDate(index + 1, java.sql.Date.valueOf(start));
+        return index + 2;
+    }
+
+    @Override
+    public String toString() {
+        return label;
+    }
+}
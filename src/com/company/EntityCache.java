@@ -0,0 +1,293 @@
+package com.company;
+
+import javax.sql.rowset.CachedRowSet;
+import javax.sql.rowset.RowSetFactory;
+import javax.sql.rowset.RowSetProvider;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Read-through cache of the Patient, Person and Staff, and Ward rows looked up by ID. Each lookup query is
+ * registered with the entity it reads, and the rows it returns are kept as a disconnected {@link CachedRowSet}.
+ * Every caller gets its own copy of the rows, so a caller may move through or close its result freely. Entries
+ * expire after a time to live and the least recently used entries are evicted above the maximum size. Lookups that
+ * find no row are not cached, so inserts need no invalidation.
+ *
+ * The cache is shared by every operator session, so every update and delete of a cached entity must call
+ * {@link #invalidate(Entity, int)} once it is written. A lookup that started before an invalidation does not store
+ * its rows, so it can not put back a row the invalidation removed. Changes made outside this JVM are seen once the
+ * entry expires.
+ */
+class EntityCache {
+
+    /**
+     * Kind of row the cache holds
+     */
+    enum Entity {
+        /** Patient rows by patient ID */
+        PATIENT,
+        /** Person and Staff rows by staff ID */
+        STAFF,
+        /** Ward rows by ward number */
+        WARD
+    }
+
+    /** Creates the row sets */
+    private static final RowSetFactory ROW_SETS;
+
+    static {
+        try {
+            ROW_SETS = RowSetProvider.newFactory();
+        } catch (SQLException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    /** Maximum number of entries kept */
+    private final int maxEntries;
+    /** How long an entry is served before it is read again */
+    private final long timeToLiveNanos;
+    /** Entity each registered lookup query reads */
+    private final Map<String, Entity> queries = new LinkedHashMap<String, Entity>();
+    /** Registered lookup queries of each entity */
+    private final Map<Entity, Set<String>> queriesByEntity = new EnumMap<Entity, Set<String>>(Entity.class);
+    /** Cached rows, least recently used first */
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<Key, Entry>(16, 0.75f, true);
+    /** Number of invalidations so far, a lookup only stores its rows if none happened while it ran */
+    private long generation = 0;
+
+    /** Lookups answered from the cache */
+    private long hits = 0;
+    /** Lookups that read the database */
+    private long misses = 0;
+    /** Entries removed by invalidation */
+    private long invalidations = 0;
+    /** Entries removed because they expired or the cache was full */
+    private long evictions = 0;
+
+    /**
+     * Creates an empty cache
+     *
+     * @param maxEntries maximum number of entries kept
+     * @param timeToLiveMillis how long an entry is served before it is read again
+     */
+    EntityCache(int maxEntries, long timeToLiveMillis) {
+        if (maxEntries < 1 || timeToLiveMillis < 1) {
+            throw new IllegalArgumentException("Cache size and time to live must be positive");
+        }
+        this.maxEntries = maxEntries;
+        this.timeToLiveNanos = timeToLiveMillis * 1000000L;
+        for (Entity entity : Entity.values()) {
+            queriesByEntity.put(entity, new LinkedHashSet<String>());
+        }
+    }
+
+    /**
+     * Registers a lookup query whose rows may be cached
+     *
+     * @param sql lookup query with a single integer parameter, the ID of the entity
+     * @param entity entity the query reads
+     * @return this cache
+     */
+    synchronized EntityCache register(String sql, Entity entity) {
+        queries.put(sql, entity);
+        queriesByEntity.get(entity).add(sql);
+        return this;
+    }
+
+    /**
+     * Checks whether the rows of a lookup query may be cached
+     *
+     * @param sql lookup query
+     * @return true if it was registered
+     */
+    synchronized boolean isCached(String sql) {
+        return queries.containsKey(sql);
+    }
+
+    /**
+     * Runs a registered lookup query, answering from the cache when it holds a fresh copy of the rows
+     *
+     * @param connection connection used on a miss
+     * @param sql registered lookup query
+     * @param key ID of the entity
+     * @return the rows found, positioned before the first row
+     * @throws SQLException if the query fails
+     */
+    ResultSet lookup(Connection connection, String sql, int key) throws SQLException {
+        Key k = new Key(sql, key);
+        long started;
+        CachedRowSet cached = null;
+        synchronized (this) {
+            if (!queries.containsKey(sql)) {
+                throw new IllegalArgumentException("Lookup is not cached: " + sql);
+            }
+            Entry entry = entries.get(k);
+            if (entry != null && System.nanoTime() - entry.loadedAt < timeToLiveNanos) {
+                hits++;
+                cached = (CachedRowSet) entry.rows.createShared();
+            } else if (entry != null) {
+                entries.remove(k);
+                evictions++;
+            }
+            if (cached == null) {
+                misses++;
+            }
+            started = generation;
+        }
+        if (cached != null) {
+            return copyOf(cached);
+        }
+
+        CachedRowSet rows = ROW_SETS.createCachedRowSet();
+        PreparedStatement lookup = connection.unwrap(StatementCache.class).prepare(sql);
+        lookup.setInt(1, key);
+        try (ResultSet result = lookup.executeQuery()) {
+            rows.populate(result);
+        }
+
+        synchronized (this) {
+            if (rows.size() > 0 && generation == started) {
+                entries.put(k, new Entry(rows, System.nanoTime()));
+                evictOverflow();
+            }
+        }
+        return copyOf((CachedRowSet) rows.createShared());
+    }
+
+    /**
+     * Copies cached rows for one caller. A copy made with {@link CachedRowSet#createShared()} only has its own
+     * cursor and closing it would clear the rows of every other copy, so the rows themselves are copied.
+     *
+     * @param shared cursor over the cached rows, used by this call only
+     * @return a copy of the rows positioned before the first row
+     * @throws SQLException if the rows can not be copied
+     */
+    private static CachedRowSet copyOf(CachedRowSet shared) throws SQLException {
+        shared.beforeFirst();
+        CachedRowSet copy = ROW_SETS.createCachedRowSet();
+        copy.populate(shared);
+        return copy;
+    }
+
+    /**
+     * Drops the cached rows of one entity, to be called once a change to it is written
+     *
+     * @param entity kind of entity that changed
+     * @param key ID of the entity
+     */
+    synchronized void invalidate(Entity entity, int key) {
+        generation++;
+        for (String sql : queriesByEntity.get(entity)) {
+            if (entries.remove(new Key(sql, key)) != null) {
+                invalidations++;
+            }
+        }
+    }
+
+    /**
+     * Drops the cached rows of every entity of a kind, for changes that touch many rows at once
+     *
+     * @param entity kind of entity that changed
+     */
+    synchronized void invalidateAll(Entity entity) {
+        generation++;
+        Set<String> sqls = queriesByEntity.get(entity);
+        for (Iterator<Key> it = entries.keySet().iterator(); it.hasNext(); ) {
+            if (sqls.contains(it.next().sql)) {
+                it.remove();
+                invalidations++;
+            }
+        }
+    }
+
+    /**
+     * Removes the least recently used entries above the maximum size
+     */
+    private void evictOverflow() {
+        for (Iterator<Key> it = entries.keySet().iterator(); entries.size() > maxEntries && it.hasNext(); ) {
+            it.next();
+            it.remove();
+            evictions++;
+        }
+    }
+
+    /**
+     * Gets the share of lookups answered from the cache
+     *
+     * @return hits divided by lookups, 0 before the first lookup
+     */
+    synchronized double getHitRate() {
+        long lookups = hits + misses;
+        return lookups == 0 ? 0 : (double) hits / lookups;
+    }
+
+    /**
+     * Describes the size and hit rate of the cache
+     *
+     * @return one line per figure
+     */
+    synchronized String describe() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("Entries: ").append(entries.size()).append(" of ").append(maxEntries).append('\n');
+        sb.append("Hits: ").append(hits).append('\n');
+        sb.append("Misses: ").append(misses).append('\n');
+        sb.append(String.format("Hit rate: %.1f%%%n", getHitRate() * 100));
+        sb.append("Invalidations: ").append(invalidations).append('\n');
+        sb.append("Evictions: ").append(evictions).append('\n');
+        return sb.toString();
+    }
+
+    /**
+     * A lookup query and its parameter
+     */
+    private static class Key {
+        /** Lookup query */
+        final String sql;
+        /** ID of the entity */
+        final int key;
+
+        Key(String sql, int key) {
+            this.sql = sql;
+            this.key = key;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return key == other.key && sql.equals(other.sql);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(sql, key);
+        }
+    }
+
+    /**
+     * Cached rows of one lookup
+     */
+    private static class Entry {
+        /** The rows, only ever read through {@link CachedRowSet#createShared()} cursors */
+        final CachedRowSet rows;
+        /** When the rows were read */
+        final long loadedAt;
+
+        Entry(CachedRowSet rows, long loadedAt) {
+            this.rows = rows;
+            this.loadedAt = loadedAt;
+        }
+    }
+}
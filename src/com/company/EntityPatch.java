@@ -0,0 +1,473 @@
+package com.company;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Function;
+
+/**
+ * Changes to one Patient, Person, Staff or Ward row, written with a single UPDATE of the changed columns. A null
+ * value leaves the column unchanged, as in the updatePatientInfo, updateStaffInfo and updateWardInfo interfaces of
+ * the design. Values are checked with the same {@link RecordValidator} rules as new records when they are set.
+ *
+ * When the patch is given the current row with {@link #baseline(ResultSet)}, a value equal to the stored one is not
+ * a change, so a patch that changes nothing sends nothing. Patches are written together with
+ * {@link #applyAll(Connection, EntityCache, List)}, which runs as one {@link UnitOfWork} and sends patches of the
+ * same table and columns as one JDBC batch.
+ */
+class EntityPatch {
+
+    /**
+     * Table a patch changes, with the columns that may be changed
+     */
+    enum Table {
+        /** Patient rows by patient ID */
+        PATIENT("Patient", "id", EntityCache.Entity.PATIENT,
+                Column.text("ssn", RecordValidator::checkSSN),
+                Column.text("name", RecordValidator::checkName),
+                Column.date("dob", "Date of birth"),
+                Column.text("gender", RecordValidator::checkGender),
+                Column.integer("age", "Patient age"),
+                Column.text("phone", RecordValidator::checkPhone),
+                Column.text("address", RecordValidator::checkAddress),
+                Column.integer("treatment", "Processing treatment plan"),
+                Column.text("inWard", RecordValidator::checkYesNo),
+                Column.text("status", RecordValidator::checkYesNo)),
+        /** Person rows of the staff by staff ID */
+        PERSON("Person", "id", EntityCache.Entity.STAFF,
+                Column.text("name", RecordValidator::checkName),
+                Column.integer("age", "Person age"),
+                Column.text("gender", RecordValidator::checkGender),
+                Column.text("address", RecordValidator::checkAddress),
+                Column.text("phone", RecordValidator::checkPhone)),
+        /** Staff rows by staff ID */
+        STAFF("Staff", "id", EntityCache.Entity.STAFF,
+                Column.text("jobTitle", title -> RecordValidator.checkTitle("Job title", title)),
+                Column.text("professionalTitle", title -> RecordValidator.checkTitle("Professional title", title)),
+                Column.text("department", title -> RecordValidator.checkTitle("Department", title))),
+        /** Ward rows by ward number, the occupied beds are changed through {@link WardBeds} instead */
+        WARD("Ward", "number", EntityCache.Entity.WARD,
+                Column.integer("capacity", "Ward capacity", RecordValidator::checkCapacity).guardedBy("occupants <= ?"),
+                Column.decimal("chargesPerDay", "Charges per day"),
+                Column.integer("responsibleNurse", "Responsible nurse id"));
+
+        /** Name of the table */
+        final String tableName;
+        /** Key column of the table */
+        final String keyColumn;
+        /** Entity cache entries the table is read into */
+        final EntityCache.Entity entity;
+        /** Columns that may be changed, by name */
+        private final Map<String, Column> columns = new LinkedHashMap<String, Column>();
+
+        Table(String tableName, String keyColumn, EntityCache.Entity entity, Column... columns) {
+            this.tableName = tableName;
+            this.keyColumn = keyColumn;
+            this.entity = entity;
+            for (Column column : columns) {
+                this.columns.put(column.name, column);
+            }
+        }
+
+        /**
+         * Finds a column that may be changed
+         *
+         * @param name name of the column
+         * @return the column
+         * @throws IllegalArgumentException if the table has no such column or it may not be changed
+         */
+        private Column column(String name) {
+            Column column = columns.get(name);
+            if (column == null) {
+                throw new IllegalArgumentException(tableName + " has no field " + name + " that can be updated");
+            }
+            return column;
+        }
+
+        /**
+         * Checks whether a column may be changed
+         *
+         * @param name name of the column
+         * @return true if the table has the column and it may be changed
+         */
+        boolean hasColumn(String name) {
+            return columns.containsKey(name);
+        }
+    }
+
+    /** Table the patch changes */
+    private final Table table;
+    /** Key of the row the patch changes */
+    private final int key;
+    /** Stored values of the row, empty unless a baseline was given */
+    private final Map<String, Object> stored = new LinkedHashMap<String, Object>();
+    /** Changed values by column, in the order they were set */
+    private final Map<String, Object> changes = new LinkedHashMap<String, Object>();
+
+    /**
+     * Creates a patch that changes nothing yet
+     *
+     * @param table table the patch changes
+     * @param key key of the row the patch changes
+     */
+    EntityPatch(Table table, int key) {
+        this.table = table;
+        this.key = key;
+    }
+
+    /**
+     * Records the stored values of the row, so values equal to them are not changes
+     *
+     * @param row result positioned on the row, it may hold columns of other tables as well
+     * @return this patch
+     * @throws SQLException if the row can not be read
+     */
+    EntityPatch baseline(ResultSet row) throws SQLException {
+        for (Column column : table.columns.values()) {
+            Object value = row.getObject(column.name);
+            stored.put(column.name, value == null ? null : column.convert(value));
+        }
+        changes.entrySet().removeIf(change -> isStored(change.getKey(), change.getValue()));
+        return this;
+    }
+
+    /**
+     * Changes one column
+     *
+     * @param column name of the column
+     * @param value new value, null to leave the column unchanged
+     * @return this patch
+     * @throws IllegalArgumentException if the column may not be changed or the value is not valid for it
+     */
+    EntityPatch set(String column, Object value) {
+        Column c = table.column(column);
+        if (value == null) {
+            return this;
+        }
+        Object converted = c.convert(value);
+        String invalid = c.check.apply(converted);
+        if (invalid != null) {
+            throw new IllegalArgumentException(invalid);
+        }
+        if (isStored(column, converted)) {
+            changes.remove(column);
+        } else {
+            changes.put(column, converted);
+        }
+        return this;
+    }
+
+    /**
+     * Changes the columns named by a map of fields, for callers that take the fields of a record by name
+     *
+     * @param fields new value by column, null values leave their column unchanged
+     * @param patches patches of the tables of the record, a field goes to the first table that has its column
+     * @throws IllegalArgumentException if no table has a column or a value is not valid for it
+     */
+    static void setAll(Map<String, Object> fields, EntityPatch... patches) {
+        for (Map.Entry<String, Object> field : fields.entrySet()) {
+            EntityPatch target = null;
+            for (EntityPatch patch : patches) {
+                if (patch.table.hasColumn(field.getKey())) {
+                    target = patch;
+                    break;
+                }
+            }
+            if (target == null) {
+                throw new IllegalArgumentException("There is no field " + field.getKey() + " that can be updated");
+            }
+            target.set(field.getKey(), field.getValue());
+        }
+    }
+
+    /**
+     * Checks whether a value equals the stored value of its column
+     *
+     * @param column name of the column
+     * @param value value to compare
+     * @return true if the baseline holds the same value
+     */
+    private boolean isStored(String column, Object value) {
+        return stored.containsKey(column) && Objects.equals(stored.get(column), value);
+    }
+
+    /**
+     * Gets the table the patch changes
+     *
+     * @return the table
+     */
+    Table getTable() {
+        return table;
+    }
+
+    /**
+     * Gets the key of the row the patch changes
+     *
+     * @return the key
+     */
+    int getKey() {
+        return key;
+    }
+
+    /**
+     * Checks whether the patch changes anything
+     *
+     * @return true if at least one column changes
+     */
+    boolean isDirty() {
+        return !changes.isEmpty();
+    }
+
+    /**
+     * Checks whether the patch changes a column
+     *
+     * @param column name of the column
+     * @return true if the column changes
+     */
+    boolean changes(String column) {
+        return changes.containsKey(column);
+    }
+
+    /**
+     * Gets the changed values
+     *
+     * @return new value by column, in the order they were set
+     */
+    Map<String, Object> getChanges() {
+        return Collections.unmodifiableMap(changes);
+    }
+
+    /**
+     * Builds the UPDATE of the changed columns. A changed column with a guard only matches the row while the guard
+     * holds for the new value, so the UPDATE matches no row when it does not.
+     *
+     * @return parameterized UPDATE, the changed values followed by the key and the values of the guards
+     */
+    String toSql() {
+        StringBuilder sb = new StringBuilder("UPDATE ").append(table.tableName).append(" SET ");
+        String separator = "";
+        for (String column : changes.keySet()) {
+            sb.append(separator).append(column).append(" = ?");
+            separator = ", ";
+        }
+        sb.append(" WHERE ").append(table.keyColumn).append(" = ?");
+        for (String column : changes.keySet()) {
+            String guard = table.column(column).guard;
+            if (guard != null) {
+                sb.append(" AND ").append(guard);
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Gets the values of the UPDATE
+     *
+     * @return the changed values followed by the key and the values of the guards, in the order of {@link #toSql()}
+     */
+    private Object[] parameters() {
+        List<Object> values = new ArrayList<Object>(changes.values());
+        values.add(key);
+        for (Map.Entry<String, Object> change : changes.entrySet()) {
+            if (table.column(change.getKey()).guard != null) {
+                values.add(change.getValue());
+            }
+        }
+        return values.toArray();
+    }
+
+    /**
+     * Writes patches as one {@link UnitOfWork}, joining the transaction of the connection if one is open. Patches
+     * that change nothing are skipped, and patches with the same UPDATE are sent as one batch. The entity cache
+     * entries of the changed rows are invalidated once the patches are committed.
+     *
+     * @param connection connection to write on
+     * @param entityCache cache of the changed rows
+     * @param patches patches to write
+     * @return for each patch, the number of rows it matched, 0 for a patch that changes nothing or whose row does
+     * not exist
+     * @throws SQLException if an update fails, no patch is written then
+     */
+    static int[] applyAll(Connection connection, EntityCache entityCache, List<EntityPatch> patches) throws SQLException {
+        //Group the patches by their UPDATE so each group is sent as one batch
+        Map<String, List<EntityPatch>> batches = new LinkedHashMap<String, List<EntityPatch>>();
+        for (EntityPatch patch : patches) {
+            if (patch.isDirty()) {
+                batches.computeIfAbsent(patch.toSql(), sql -> new ArrayList<EntityPatch>()).add(patch);
+            }
+        }
+        int[] rows = new int[patches.size()];
+        if (batches.isEmpty()) {
+            return rows;
+        }
+
+        List<EntityPatch> sent = new ArrayList<EntityPatch>();
+        int[] matched;
+        try (UnitOfWork unit = new UnitOfWork(connection)) {
+            for (Map.Entry<String, List<EntityPatch>> batch : batches.entrySet()) {
+                for (EntityPatch patch : batch.getValue()) {
+                    unit.add(batch.getKey(), patch.parameters());
+                    unit.afterCommit(() -> entityCache.invalidate(patch.table.entity, patch.key));
+                    sent.add(patch);
+                }
+            }
+            matched = unit.flush();
+            unit.commit();
+        }
+
+        Map<EntityPatch, Integer> counts = new IdentityHashMap<EntityPatch, Integer>();
+        for (int i = 0; i < sent.size(); i++) {
+            //A rewritten batch may not report the rows of each statement, the row is then taken to exist
+            counts.put(sent.get(i), matched[i] == Statement.SUCCESS_NO_INFO ? 1 : matched[i]);
+        }
+        for (int i = 0; i < patches.size(); i++) {
+            Integer count = counts.get(patches.get(i));
+            rows[i] = count == null ? 0 : count;
+        }
+        return rows;
+    }
+
+    /**
+     * A column a patch may change
+     */
+    private static class Column {
+        /** Name of the column */
+        final String name;
+        /** Converts a given or stored value to the type kept in the patch */
+        final Function<Object, Object> converter;
+        /** {@link RecordValidator} rule of the column, null if valid, otherwise the reason it is not */
+        final Function<Object, String> check;
+        /** Condition on the stored row with one parameter bound to the new value, null if there is none */
+        final String guard;
+
+        private Column(String name, Function<Object, Object> converter, Function<Object, String> check) {
+            this(name, converter, check, null);
+        }
+
+        private Column(String name, Function<Object, Object> converter, Function<Object, String> check, String guard) {
+            this.name = name;
+            this.converter = converter;
+            this.check = check;
+            this.guard = guard;
+        }
+
+        /**
+         * Makes a change of the column only match the row while a condition on the stored row holds, for rules
+         * that depend on other columns and must hold when the row is written
+         *
+         * @param condition condition with one parameter, bound to the new value
+         * @return the guarded column
+         */
+        Column guardedBy(String condition) {
+            return new Column(name, converter, check, condition);
+        }
+
+        /**
+         * A text column
+         *
+         * @param name name of the column
+         * @param check rule of the column
+         * @return the column
+         */
+        static Column text(String name, Function<String, String> check) {
+            return new Column(name, value -> value.toString(), value -> check.apply((String) value));
+        }
+
+        /**
+         * An integer column
+         *
+         * @param name name of the column
+         * @param label name of the field in messages
+         * @return the column
+         */
+        static Column integer(String name, String label) {
+            return integer(name, label, value -> null);
+        }
+
+        /**
+         * An integer column with a rule
+         *
+         * @param name name of the column
+         * @param label name of the field in messages
+         * @param check rule of the column
+         * @return the column
+         */
+        static Column integer(String name, String label, Function<Integer, String> check) {
+            return new Column(name, value -> {
+                try {
+                    if (value instanceof Number) {
+                        double number = ((Number) value).doubleValue();
+                        if (number != Math.rint(number) || Math.abs(number) > Integer.MAX_VALUE) {
+                            throw new NumberFormatException();
+                        }
+                        return (int) number;
+                    }
+                    return Integer.parseInt(value.toString().trim());
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException(label + " must be an integer");
+                }
+            }, value -> check.apply((Integer) value));
+        }
+
+        /**
+         * A decimal column
+         *
+         * @param name name of the column
+         * @param label name of the field in messages
+         * @return the column
+         */
+        static Column decimal(String name, String label) {
+            return new Column(name, value -> {
+                try {
+                    return value instanceof Number ? ((Number) value).doubleValue() : Double.parseDouble(value.toString().trim());
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException(label + " must be a number");
+                }
+            }, value -> null);
+        }
+
+        /**
+         * A date column
+         *
+         * @param name name of the column
+         * @param label name of the field in messages
+         * @return the column
+         */
+        static Column date(String name, String label) {
+            return new Column(name, value -> {
+                if (value instanceof LocalDate) {
+                    return value;
+                }
+                if (value instanceof java.sql.Date) {
+                    return ((java.sql.Date) value).toLocalDate();
+                }
+                try {
+                    return LocalDate.parse(value.toString().trim());
+                } catch (DateTimeParseException e) {
+                    throw new IllegalArgumentException(label + " must be a date in form yyyy-mm-dd");
+                }
+            }, value -> null);
+        }
+
+        /**
+         * Converts a value to the type kept in the patch
+         *
+         * @param value given or stored value
+         * @return the converted value
+         * @throws IllegalArgumentException if the value has the wrong type
+         */
+        Object convert(Object value) {
+            return converter.apply(value);
+        }
+    }
+}
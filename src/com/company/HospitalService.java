@@ -0,0 +1,1015 @@
+package com.company;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The hospital operations with typed parameters and no console input or output, named after the application
+ * program interfaces of the design. The console screens collect their answers and then call these methods, and
+ * {@link BatchRunner} calls them for each line of a batch file.
+ *
+ * Invalid values are rejected with an {@link IllegalArgumentException} holding the same message the console shows,
+ * a record that does not exist with a {@link RecordNotFoundException} and a record that already exists with an
+ * {@link IllegalStateException}. The operations that create a record take its ID, or 0 to give it the next free ID
+ * from the {@link IdAllocator}, and return the ID. An ID already in use is found by the insert itself, not by a lookup before it.
+ */
+class HospitalService {
+
+    /** MySQL error code for a key that is already in use */
+    private static final int DUPLICATE_ENTRY = 1062;
+
+    /** Connection every operation runs on */
+    private final Connection connection;
+    /** Free beds of every ward, kept up to date by ward assignments */
+    private final WardAvailabilityIndex wardIndex;
+    /** Patient, staff and ward rows by ID, invalidated by the operations that change them */
+    private final EntityCache entityCache;
+    /** IDs of new records */
+    private final IdAllocator ids;
+
+    /**
+     * Creates a service running on one connection
+     *
+     * @param connection connection every operation runs on, borrowed from the pool
+     * @param wardIndex free beds of every ward
+     * @param entityCache patient, staff and ward rows by ID
+     * @param ids IDs of new records
+     */
+    HospitalService(Connection connection, WardAvailabilityIndex wardIndex, EntityCache entityCache, IdAllocator ids) {
+        this.connection = connection;
+        this.wardIndex = wardIndex;
+        this.entityCache = entityCache;
+        this.ids = ids;
+    }
+
+    /**
+     * Registers a new patient
+     *
+     * @param id patient ID, must not be in use, or 0 to allocate one
+     * @param ssn SSN, na if not applicable
+     * @param name name
+     * @param dob date of birth
+     * @param gender F or M
+     * @param age age
+     * @param phone phone number
+     * @param address address
+     * @param treatment processing treatment plan
+     * @param inWard whether the patient is in a ward, yes or no
+     * @param status whether the patient has completed treatment, yes or no
+     * @return the patient ID
+     * @throws SQLException if the patient can not be inserted
+     */
+    int newPatient(int id, String ssn, String name, LocalDate dob, String gender, int age, String phone, String address,
+                    int treatment, String inWard, String status) throws SQLException {
+        check(RecordValidator.checkSSN(ssn));
+        check(RecordValidator.checkName(name));
+        check(RecordValidator.checkGender(gender));
+        check(RecordValidator.checkPhone(phone));
+        check(RecordValidator.checkAddress(address));
+        check(RecordValidator.checkYesNo(inWard));
+        check(RecordValidator.checkYesNo(status));
+        if (dob == null) {
+            throw new IllegalArgumentException("Date of birth is required");
+        }
+        int patientId = id != 0 ? id : ids.next(connection, IdAllocator.Sequence.PATIENT);
+
+        try (PreparedStatement insert = connection.prepareStatement("INSERT INTO Patient VALUES(?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)")) {
+            insert.setInt(1, patientId);
+            insert.setString(2, ssn);
+            insert.setString(3, name);
+            insert.setDate(4, java.sql.Date.valueOf(dob));
+            insert.setString(5, gender);
+            insert.setInt(6, age);
+            insert.setString(7, phone);
+            insert.setString(8, address);
+            insert.setInt(9, treatment);
+            insert.setString(10, inWard);
+            insert.setString(11, status);
+            insert.executeUpdate();
+        } catch (SQLException e) {
+            throw duplicate(e, "That person already exist in the database");
+        }
+        return patientId;
+    }
+
+    /**
+     * Registers a new staff member
+     *
+     * @param id staff ID, must not be in use, or 0 to allocate one
+     * @param name name
+     * @param age age
+     * @param gender F or M
+     * @param address address
+     * @param phone phone number
+     * @param jobTitle job title such as Doctor or Nurse
+     * @param professionalTitle professional title
+     * @param department department
+     * @return the staff ID
+     * @throws SQLException if the staff member can not be inserted
+     */
+    int newStaff(int id, String name, int age, String gender, String address, String phone, String jobTitle,
+                  String professionalTitle, String department) throws SQLException {
+        check(RecordValidator.checkName(name));
+        check(RecordValidator.checkGender(gender));
+        check(RecordValidator.checkAddress(address));
+        check(RecordValidator.checkPhone(phone));
+        check(RecordValidator.checkTitle("Job title", jobTitle));
+        check(RecordValidator.checkTitle("Professional title", professionalTitle));
+        check(RecordValidator.checkTitle("Department", department));
+        int staffId = id != 0 ? id : ids.next(connection, IdAllocator.Sequence.PERSON);
+
+        try (UnitOfWork unit = new UnitOfWork(connection)) {
+            unit.add("INSERT INTO Person VALUES(?, ?, ?, ?, ?, ?)", staffId, name, age, gender, address, phone);
+            unit.add("INSERT INTO Staff VALUES(?, ?, ?, ?)", staffId, jobTitle, professionalTitle, department);
+            unit.commit();
+        } catch (SQLException e) {
+            throw duplicate(e, "That person already exist in the database");
+        }
+        return staffId;
+    }
+
+    /**
+     * Deletes a patient, releasing their bed first
+     *
+     * @param id patient ID
+     * @return true if the patient was deleted, false if there was no such patient
+     * @throws SQLException if the patient can not be deleted
+     */
+    boolean deletePatient(int id) throws SQLException {
+        int[] ward = new int[1];
+        boolean deleted = WardBeds.inTransaction(connection, () -> {
+            ward[0] = WardBeds.releasePatient(connection, id);
+            try (PreparedStatement delete = connection.prepareStatement("DELETE FROM Patient WHERE id = ?")) {
+                delete.setInt(1, id);
+                return delete.executeUpdate() > 0;
+            }
+        });
+        //The ward is only known once the bed is released, so it is re-read rather than moved by one bed
+        if (ward[0] > 0) {
+            wardIndex.refresh(connection, ward[0]);
+            entityCache.invalidate(EntityCache.Entity.WARD, ward[0]);
+        }
+        entityCache.invalidate(EntityCache.Entity.PATIENT, id);
+        return deleted;
+    }
+
+    /**
+     * Deletes a staff member from Person and Staff
+     *
+     * @param id staff ID
+     * @return true if the staff member was deleted, false if there was no such person
+     * @throws SQLException if the staff member can not be deleted
+     */
+    boolean deleteStaff(int id) throws SQLException {
+        boolean deleted = WardBeds.inTransaction(connection, () -> {
+            try (PreparedStatement staff = connection.prepareStatement("DELETE FROM Staff WHERE id = ?");
+                 PreparedStatement person = connection.prepareStatement("DELETE FROM Person WHERE id = ?")) {
+                staff.setInt(1, id);
+                staff.executeUpdate();
+                person.setInt(1, id);
+                return person.executeUpdate() > 0;
+            }
+        });
+        entityCache.invalidate(EntityCache.Entity.STAFF, id);
+        return deleted;
+    }
+
+    /**
+     * Writes changes to patient, staff and ward rows with one UPDATE per changed row, the updatePatientInfo,
+     * updateStaffInfo and updateWardInfo interfaces of the design. The patches are written in one transaction, and
+     * a staff member's Person and Staff patches may be given together.
+     *
+     * @param patches changes to write, a patch that changes nothing only checks its row exists
+     * @throws IllegalStateException if a ward's new capacity is below its occupants, or a row does not exist
+     * @throws SQLException if the changes can not be written
+     */
+    void update(EntityPatch... patches) throws SQLException {
+        for (EntityPatch patch : patches) {
+            if (patch.changes("responsibleNurse")) {
+                requireNurse((Integer) patch.getChanges().get("responsibleNurse"));
+            }
+            if (!patch.isDirty() && !cached(lookupOf(patch.getTable()), patch.getKey())) {
+                throw new RecordNotFoundException(missing(patch.getTable()));
+            }
+        }
+
+        int[] rows = EntityPatch.applyAll(connection, entityCache, Arrays.asList(patches));
+        for (int i = 0; i < patches.length; i++) {
+            EntityPatch patch = patches[i];
+            if (patch.isDirty() && rows[i] == 0) {
+                //A new capacity is only written while the ward holds no more patients than it
+                if (patch.changes("capacity") && cached(lookupOf(patch.getTable()), patch.getKey())) {
+                    throw new IllegalStateException("Ward can not hold more patients than its capacity");
+                }
+                throw new RecordNotFoundException(missing(patch.getTable()));
+            }
+            if (patch.changes("capacity")) {
+                wardIndex.refresh(connection, patch.getKey());
+            }
+        }
+    }
+
+    /**
+     * Gives a patient a free bed in a ward of the requested capacity
+     *
+     * @param patientId patient ID
+     * @param capacity capacity of the ward, 1, 2 or 4
+     * @param wardNumber ward wanted, which must have the requested capacity, or 0 to take any ward of that capacity with a free bed
+     * @return the ward and bed the patient was given
+     * @throws SQLException if the bed can not be claimed
+     */
+    Bed assignBedToPatient(int patientId, int capacity, int wardNumber) throws SQLException {
+        String invalid = RecordValidator.checkCapacity(capacity);
+        if (invalid != null) {
+            throw new IllegalArgumentException(invalid);
+        }
+        if (!cached(Lookups.PATIENT_BY_ID, patientId)) {
+            throw new RecordNotFoundException("That patient does not exist in the database");
+        }
+        boolean anyWard = wardNumber == 0;
+        if (!anyWard) {
+            try (ResultSet ward = entityCache.lookup(connection, Lookups.WARD_BY_NUMBER, wardNumber)) {
+                if (!ward.next()) {
+                    throw new RecordNotFoundException("That ward does not exist in the database");
+                }
+                if (ward.getInt("capacity") != capacity) {
+                    throw new IllegalArgumentException("That ward does not have the requested capacity.");
+                }
+            }
+        }
+        int number = anyWard ? wardIndex.anyFreeWard(capacity) : wardNumber;
+        if (number == 0) {
+            throw new IllegalStateException("No ward available for given request.");
+        }
+
+        long version = wardIndex.version(number);
+        int bed = WardBeds.assign(connection, number, patientId);
+
+        //The index was stale for that ward, refresh it and take the next free ward if any ward will do
+        while (bed == WardBeds.WARD_FULL || bed == WardBeds.NO_SUCH_WARD) {
+            wardIndex.refresh(connection, number);
+            entityCache.invalidate(EntityCache.Entity.WARD, number);
+            int next = anyWard ? wardIndex.anyFreeWard(capacity) : 0;
+            if (next == 0) {
+                break;
+            }
+            number = next;
+            version = wardIndex.version(number);
+            bed = WardBeds.assign(connection, number, patientId);
+        }
+
+        if (anyWard && (bed == WardBeds.WARD_FULL || bed == WardBeds.NO_SUCH_WARD)) {
+            throw new IllegalStateException("No ward available for given request.");
+        }
+        if (bed == WardBeds.ALREADY_ASSIGNED) {
+            throw new IllegalStateException("Given patient already has a bed in a ward.");
+        } else if (bed == WardBeds.WARD_FULL) {
+            throw new IllegalStateException("That ward has no free bed left.");
+        } else if (bed == WardBeds.NO_SUCH_WARD) {
+            throw new RecordNotFoundException("That ward does not exist in the database");
+        }
+        wardIndex.onAssigned(connection, number, version);
+        entityCache.invalidate(EntityCache.Entity.WARD, number);
+        return new Bed(number, bed);
+    }
+
+    /**
+     * Releases the bed of a patient in a ward
+     *
+     * @param wardNumber ward number
+     * @param patientId patient ID
+     * @return true if the bed was released, false if the patient was not in that ward
+     * @throws SQLException if the bed can not be released
+     */
+    boolean releaseBed(int wardNumber, int patientId) throws SQLException {
+        long version = wardIndex.version(wardNumber);
+        if (!WardBeds.release(connection, wardNumber, patientId)) {
+            return false;
+        }
+        wardIndex.onReleased(connection, wardNumber, version);
+        entityCache.invalidate(EntityCache.Entity.WARD, wardNumber);
+        return true;
+    }
+
+    /**
+     * Adds a ward and places the given patients in its beds
+     *
+     * @param number ward number, must not be in use
+     * @param capacity capacity of the ward, 1, 2 or 4
+     * @param patientIds patients to place in the ward, no more than its capacity
+     * @param chargesPerDay charges per day
+     * @param nurseId staff ID of the responsible nurse
+     * @throws SQLException if the ward can not be inserted
+     */
+    void addWard(int number, int capacity, Set<Integer> patientIds, double chargesPerDay, int nurseId) throws SQLException {
+        check(RecordValidator.checkCapacity(capacity));
+        if (patientIds.size() > capacity) {
+            throw new IllegalArgumentException("Ward can not hold more patients than its capacity");
+        }
+        for (int patientId : patientIds) {
+            if (!cached(Lookups.PATIENT_BY_ID, patientId)) {
+                throw new RecordNotFoundException("That Patient does not exist in the database");
+            }
+        }
+        requireNurse(nurseId);
+
+        try {
+            WardBeds.inTransaction(connection, () -> {
+                try (PreparedStatement insert = connection.prepareStatement(
+                        "INSERT INTO Ward(number, capacity, patientIds, chargesPerDay, occupants, responsibleNurse) VALUES(?, ?, NULL, ?, 0, ?)")) {
+                    insert.setInt(1, number);
+                    insert.setInt(2, capacity);
+                    insert.setDouble(3, chargesPerDay);
+                    insert.setInt(4, nurseId);
+                    insert.executeUpdate();
+                }
+                if (!WardBeds.replaceOccupants(connection, number, patientIds)) {
+                    throw new IllegalStateException("A patient already has a bed in another ward");
+                }
+                return null;
+            });
+        } catch (SQLException e) {
+            throw duplicate(e, "That ward already exist in the database");
+        }
+        wardIndex.put(number, capacity, patientIds.size());
+        entityCache.invalidate(EntityCache.Entity.WARD, number);
+    }
+
+    /**
+     * Deletes a ward, the beds of its patients go with it
+     *
+     * @param number ward number
+     * @return true if the ward was deleted, false if there was no such ward
+     * @throws SQLException if the ward can not be deleted
+     */
+    boolean deleteWard(int number) throws SQLException {
+        boolean deleted;
+        try (PreparedStatement delete = connection.prepareStatement("DELETE FROM Ward WHERE number = ?")) {
+            delete.setInt(1, number);
+            deleted = delete.executeUpdate() > 0;
+        }
+        wardIndex.remove(number);
+        entityCache.invalidate(EntityCache.Entity.WARD, number);
+        return deleted;
+    }
+
+    /**
+     * Records the check-in of a patient and adds the stay to the monthly census
+     *
+     * @param patientId patient ID, the patient must not already have a check-in
+     * @param wardNumber ward number
+     * @param bedNumber bed number
+     * @param startDate first day of the stay
+     * @param endDate last day of the stay, null while the stay is open
+     * @throws SQLException if the check-in can not be inserted
+     */
+    void createCheckInInfo(int patientId, int wardNumber, int bedNumber, LocalDate startDate, LocalDate endDate) throws SQLException {
+        if (startDate == null) {
+            throw new IllegalArgumentException("Start date is required");
+        }
+        if (endDate != null && endDate.isBefore(startDate)) {
+            throw new IllegalArgumentException("End date must be on or after the start date.");
+        }
+        String checkedIn = "This patient already has a check-in associated with their Medical Record.";
+        if (exists("SELECT 1 FROM CheckInInformation WHERE patientId = ?", patientId)) {
+            throw new IllegalStateException(checkedIn);
+        }
+
+        //A check-in written by another session since the lookup is found by the insert
+        try {
+            WardBeds.inTransaction(connection, () -> {
+                try (PreparedStatement insert = connection.prepareStatement("INSERT INTO CheckInInformation VALUES(?, ?, ?, ?, ?)")) {
+                    insert.setInt(1, patientId);
+                    insert.setInt(2, wardNumber);
+                    insert.setInt(3, bedNumber);
+                    insert.setDate(4, java.sql.Date.valueOf(startDate));
+                    insert.setDate(5, endDate == null ? null : java.sql.Date.valueOf(endDate));
+                    insert.executeUpdate();
+                }
+                MonthlyCensus.sync(connection, patientId);
+                return null;
+            });
+        } catch (SQLException e) {
+            throw duplicate(e, checkedIn);
+        }
+    }
+
+    /**
+     * Sets the last day of a patient's stay and updates the monthly census
+     *
+     * @param patientId patient ID
+     * @param endDate last day of the stay, on or after the first day
+     * @throws SQLException if the check-in can not be updated
+     */
+    void checkOut(int patientId, LocalDate endDate) throws SQLException {
+        if (endDate == null) {
+            throw new IllegalArgumentException("End date is required");
+        }
+        updateCheckIn(patientId, 0, 0, null, endDate);
+    }
+
+    /**
+     * Changes the ward, bed or dates of a patient's check-in and updates the monthly census in the same transaction
+     *
+     * @param patientId patient ID
+     * @param wardNumber new ward number, or 0 to leave it unchanged
+     * @param bedNumber new bed number, or 0 to leave it unchanged
+     * @param startDate new first day of the stay, or null to leave it unchanged
+     * @param endDate new last day of the stay, or null to leave it unchanged
+     * @throws SQLException if the check-in can not be updated
+     */
+    void updateCheckIn(int patientId, int wardNumber, int bedNumber, LocalDate startDate, LocalDate endDate) throws SQLException {
+        if (wardNumber != 0 && !cached(Lookups.WARD_BY_NUMBER, wardNumber)) {
+            throw new RecordNotFoundException("That ward does not exist in the database");
+        }
+        WardBeds.inTransaction(connection, () -> {
+            int ward;
+            int bed;
+            LocalDate start;
+            LocalDate end;
+            try (PreparedStatement select = connection.prepareStatement(
+                    "SELECT wardNumber, bedNumber, startDate, endDate FROM CheckInInformation WHERE patientId = ? FOR UPDATE")) {
+                select.setInt(1, patientId);
+                try (ResultSet result = select.executeQuery()) {
+                    if (!result.next()) {
+                        throw new RecordNotFoundException("That Patient does not have a Check-In");
+                    }
+                    ward = wardNumber != 0 ? wardNumber : result.getInt("wardNumber");
+                    bed = bedNumber != 0 ? bedNumber : result.getInt("bedNumber");
+                    start = startDate != null ? startDate : result.getDate("startDate").toLocalDate();
+                    java.sql.Date stored = result.getDate("endDate");
+                    end = endDate != null ? endDate : stored == null ? null : stored.toLocalDate();
+                }
+            }
+            if (end != null && end.isBefore(start)) {
+                throw new IllegalArgumentException("End date must be on or after the start date.");
+            }
+            //A stay that is still open may not be moved to start after today
+            if (end == null && startDate != null && startDate.isAfter(LocalDate.now())) {
+                throw new IllegalArgumentException("Start date must be on or before today.");
+            }
+            try (PreparedStatement update = connection.prepareStatement(
+                    "UPDATE CheckInInformation SET wardNumber = ?, bedNumber = ?, startDate = ?, endDate = ? WHERE patientId = ?")) {
+                update.setInt(1, ward);
+                update.setInt(2, bed);
+                update.setDate(3, java.sql.Date.valueOf(start));
+                update.setDate(4, end == null ? null : java.sql.Date.valueOf(end));
+                update.setInt(5, patientId);
+                update.executeUpdate();
+            }
+            MonthlyCensus.sync(connection, patientId);
+            return null;
+        });
+    }
+
+    /**
+     * Deletes the check-in of a patient and removes the stay from the monthly census
+     *
+     * @param patientId patient ID
+     * @return true if the check-in was deleted, false if the patient had none
+     * @throws SQLException if the check-in can not be deleted
+     */
+    boolean deleteCheckIn(int patientId) throws SQLException {
+        return WardBeds.inTransaction(connection, () -> {
+            boolean deleted;
+            try (PreparedStatement delete = connection.prepareStatement("DELETE FROM CheckInInformation WHERE patientId = ?")) {
+                delete.setInt(1, patientId);
+                deleted = delete.executeUpdate() > 0;
+            }
+            MonthlyCensus.sync(connection, patientId);
+            return deleted;
+        });
+    }
+
+    /**
+     * Opens the medical record of a patient
+     *
+     * @param patientId patient ID, the patient must not already have a medical record
+     * @param startDate first day of the record
+     * @param endDate last day of the record, null while it is open
+     * @param doctorId staff ID of the responsible doctor
+     * @throws SQLException if the record can not be inserted
+     */
+    void createMedicalRecord(int patientId, LocalDate startDate, LocalDate endDate, int doctorId) throws SQLException {
+        if (startDate == null) {
+            throw new IllegalArgumentException("Start date is required");
+        }
+        if (endDate != null && endDate.isBefore(startDate)) {
+            throw new IllegalArgumentException("End date must be on or after the start date.");
+        }
+        if (!cached(Lookups.PATIENT_BY_ID, patientId)) {
+            throw new RecordNotFoundException("That Patient does not exist in the database");
+        }
+        if (!cached(Lookups.DOCTOR_BY_ID, doctorId)) {
+            throw new RecordNotFoundException("That Doctor does not exist in the database");
+        }
+        if (exists("SELECT 1 FROM MedicalRecord WHERE patientId = ?", patientId)) {
+            throw new IllegalStateException("This patient already has a Medical Record, you may choose to update this record instead.");
+        }
+
+        try (PreparedStatement insert = connection.prepareStatement("INSERT INTO MedicalRecord VALUES(?, ?, ?, ?)")) {
+            insert.setInt(1, patientId);
+            insert.setDate(2, java.sql.Date.valueOf(startDate));
+            insert.setDate(3, endDate == null ? null : java.sql.Date.valueOf(endDate));
+            insert.setInt(4, doctorId);
+            insert.executeUpdate();
+        }
+    }
+
+    /**
+     * Creates a test and adds it to the medical record of a patient
+     *
+     * @param patientId patient ID, the patient must have a medical record
+     * @param testId test ID, must not be in use, or 0 to allocate one
+     * @param name name of the test
+     * @param results results of the test
+     * @return the test ID
+     * @throws SQLException if the test can not be added
+     */
+    int addTest(int patientId, int testId, String name, String results) throws SQLException {
+        check(RecordValidator.checkTitle("Test name", name));
+        if (results == null || results.length() > 200) {
+            throw new IllegalArgumentException("Test results must be 200 characters or less");
+        }
+        requireMedicalRecord(patientId);
+        int id = testId != 0 ? testId : ids.next(connection, IdAllocator.Sequence.TEST);
+
+        try (UnitOfWork unit = new UnitOfWork(connection)) {
+            unit.add("INSERT INTO Test VALUES(?, ?, ?)", id, name, results);
+            unit.add("INSERT INTO AddTest VALUES(?, ?)", id, patientId);
+            unit.commit();
+        } catch (SQLException e) {
+            throw duplicate(e, "That Test already exists in the database.");
+        }
+        return id;
+    }
+
+    /**
+     * Creates a prescription and adds it to the medical record of a patient
+     *
+     * @param patientId patient ID, the patient must have a medical record
+     * @param prescriptionId prescription ID, must not be in use, or 0 to allocate one
+     * @param name name of the prescription or treatment
+     * @return the prescription ID
+     * @throws SQLException if the prescription can not be added
+     */
+    int addPrescription(int patientId, int prescriptionId, String name) throws SQLException {
+        check(RecordValidator.checkTitle("Prescription name", name));
+        requireMedicalRecord(patientId);
+        int id = prescriptionId != 0 ? prescriptionId : ids.next(connection, IdAllocator.Sequence.PRESCRIPTION);
+
+        try (UnitOfWork unit = new UnitOfWork(connection)) {
+            unit.add("INSERT INTO Prescription VALUES(?, ?)", id, name);
+            unit.add("INSERT INTO AddPrescription VALUES(?, ?)", id, patientId);
+            unit.commit();
+        } catch (SQLException e) {
+            throw duplicate(e, "That Prescription already exists in the database.");
+        }
+        return id;
+    }
+
+    /**
+     * Creates diagnosis details and adds them to the medical record of a patient
+     *
+     * @param patientId patient ID, the patient must have a medical record
+     * @param diagnosisId diagnosis ID, must not be in use, or 0 to allocate one
+     * @param details the diagnosis
+     * @return the diagnosis ID
+     * @throws SQLException if the diagnosis can not be added
+     */
+    int addDiagnosis(int patientId, int diagnosisId, String details) throws SQLException {
+        if (details == null || details.trim().isEmpty() || details.length() > 200) {
+            throw new IllegalArgumentException("Diagnosis details must be 1 to 200 characters");
+        }
+        requireMedicalRecord(patientId);
+        int id = diagnosisId != 0 ? diagnosisId : ids.next(connection, IdAllocator.Sequence.DIAGNOSIS);
+
+        try (UnitOfWork unit = new UnitOfWork(connection)) {
+            unit.add("INSERT INTO DiagnosisDetails VALUES(?, ?)", id, details);
+            unit.add("INSERT INTO AddDiagnosis VALUES(?, ?)", id, patientId);
+            unit.commit();
+        } catch (SQLException e) {
+            throw duplicate(e, "That Diagnosis already exists in the database.");
+        }
+        return id;
+    }
+
+    /**
+     * Sets the last day of the medical record of a patient
+     *
+     * @param patientId patient ID
+     * @param endDate last day of the record, on or after the first day
+     * @throws SQLException if the record can not be updated
+     */
+    void endMedicalRecord(int patientId, LocalDate endDate) throws SQLException {
+        if (endDate == null) {
+            throw new IllegalArgumentException("End date is required");
+        }
+        updateMedicalRecordDates(patientId, null, endDate);
+    }
+
+    /**
+     * Changes the first or last day of the medical record of a patient
+     *
+     * @param patientId patient ID
+     * @param startDate new first day of the record, or null to leave it unchanged
+     * @param endDate new last day of the record, or null to leave it unchanged
+     * @throws SQLException if the record can not be updated
+     */
+    void updateMedicalRecordDates(int patientId, LocalDate startDate, LocalDate endDate) throws SQLException {
+        WardBeds.inTransaction(connection, () -> {
+            LocalDate start;
+            LocalDate end;
+            try (PreparedStatement select = connection.prepareStatement("SELECT startDate, endDate FROM MedicalRecord WHERE patientId = ? FOR UPDATE")) {
+                select.setInt(1, patientId);
+                try (ResultSet result = select.executeQuery()) {
+                    if (!result.next()) {
+                        throw new RecordNotFoundException("This patient doesn't have a Medical Record");
+                    }
+                    start = startDate != null ? startDate : result.getDate("startDate").toLocalDate();
+                    java.sql.Date stored = result.getDate("endDate");
+                    end = endDate != null ? endDate : stored == null ? null : stored.toLocalDate();
+                }
+            }
+            if (end != null && end.isBefore(start)) {
+                throw new IllegalArgumentException("End date must be on or after the start date.");
+            }
+            try (PreparedStatement update = connection.prepareStatement("UPDATE MedicalRecord SET startDate = ?, endDate = ? WHERE patientId = ?")) {
+                update.setDate(1, java.sql.Date.valueOf(start));
+                update.setDate(2, end == null ? null : java.sql.Date.valueOf(end));
+                update.setInt(3, patientId);
+                update.executeUpdate();
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Opens the billing account of a patient
+     *
+     * @param patientId patient ID, the patient must not already have a billing account
+     * @param responsibleSSN SSN of the person responsible for the account
+     * @param billingAddress billing address
+     * @param visitDate date of the visit
+     * @param paymentMethod payment method
+     * @param cardNumber card number, null if not applicable
+     * @param registrationFee registration fee
+     * @param medicationPrescribed whether medication has been prescribed, yes or no
+     * @param accommodationFee accommodation fee, null if not applicable
+     * @throws SQLException if the account can not be inserted
+     */
+    void createBillingAccount(int patientId, String responsibleSSN, String billingAddress, LocalDate visitDate, String paymentMethod,
+                              String cardNumber, int registrationFee, String medicationPrescribed, Integer accommodationFee) throws SQLException {
+        checkBillingAccount(responsibleSSN, billingAddress, paymentMethod, cardNumber, medicationPrescribed);
+        if (responsibleSSN == null || billingAddress == null || paymentMethod == null || medicationPrescribed == null) {
+            throw new IllegalArgumentException("Responsible SSN, billing address, payment method and medication prescribed are required");
+        }
+        if (visitDate == null) {
+            throw new IllegalArgumentException("Visit date is required");
+        }
+        if (!cached(Lookups.PATIENT_BY_ID, patientId)) {
+            throw new RecordNotFoundException("That Patient does not exist in the database");
+        }
+
+        try (PreparedStatement insert = connection.prepareStatement("INSERT INTO BillingAccount(patientId, responsibleSSN, billingAddress, "
+                + "visitDate, paymentMethod, cardNumber, registrationFee, medicationPrescribed, accommodationFee) VALUES(?, ?, ?, ?, ?, ?, ?, ?, ?)")) {
+            insert.setInt(1, patientId);
+            insert.setString(2, responsibleSSN);
+            insert.setString(3, billingAddress);
+            insert.setDate(4, java.sql.Date.valueOf(visitDate));
+            insert.setString(5, paymentMethod);
+            insert.setString(6, cardNumber);
+            insert.setInt(7, registrationFee);
+            insert.setString(8, medicationPrescribed);
+            if (accommodationFee == null) {
+                insert.setNull(9, java.sql.Types.INTEGER);
+            } else {
+                insert.setInt(9, accommodationFee);
+            }
+            insert.executeUpdate();
+        } catch (SQLException e) {
+            throw duplicate(e, "This patient already has a Billing Account, you may choose to update this account instead.");
+        }
+    }
+
+    /**
+     * Changes the billing account of a patient
+     *
+     * @param patientId patient ID
+     * @param responsibleSSN new responsible SSN, or null to leave it unchanged
+     * @param billingAddress new billing address, or null to leave it unchanged
+     * @param paymentMethod new payment method, or null to leave it unchanged
+     * @param cardNumber new card number, na to clear it, or null to leave it unchanged
+     * @param medicationPrescribed whether medication has been prescribed, or null to leave it unchanged
+     * @throws SQLException if the account can not be updated
+     */
+    void updateBillingAccount(int patientId, String responsibleSSN, String billingAddress, String paymentMethod, String cardNumber,
+                              String medicationPrescribed) throws SQLException {
+        boolean clearCard = cardNumber != null && cardNumber.toLowerCase().equals("na");
+        checkBillingAccount(responsibleSSN, billingAddress, paymentMethod, clearCard ? null : cardNumber, medicationPrescribed);
+
+        Map<String, Object> changes = new LinkedHashMap<String, Object>();
+        changes.put("responsibleSSN", responsibleSSN);
+        changes.put("billingAddress", billingAddress);
+        changes.put("paymentMethod", paymentMethod);
+        changes.put("cardNumber", cardNumber);
+        changes.put("medicationPrescribed", medicationPrescribed);
+        changes.values().removeIf(value -> value == null);
+        if (changes.isEmpty()) {
+            if (!exists("SELECT 1 FROM BillingAccount WHERE patientId = ?", patientId)) {
+                throw new RecordNotFoundException("This patient doesn't have a Billing Account");
+            }
+            return;
+        }
+
+        StringBuilder sql = new StringBuilder("UPDATE BillingAccount SET ");
+        String separator = "";
+        for (String column : changes.keySet()) {
+            sql.append(separator).append(column).append(" = ?");
+            separator = ", ";
+        }
+        sql.append(" WHERE patientId = ?");
+        try (PreparedStatement update = connection.prepareStatement(sql.toString())) {
+            int i = 0;
+            for (Map.Entry<String, Object> change : changes.entrySet()) {
+                boolean cleared = change.getKey().equals("cardNumber") && clearCard;
+                update.setString(++i, cleared ? null : change.getValue().toString());
+            }
+            update.setInt(++i, patientId);
+            if (update.executeUpdate() == 0) {
+                throw new RecordNotFoundException("This patient doesn't have a Billing Account");
+            }
+        }
+    }
+
+    /**
+     * Creates a fee and adds it to the billing record of a patient, moving the record total by the fee amount
+     *
+     * @param patientId patient ID, the billing record ID, the patient must have a billing account
+     * @param feeId fee ID, must not be in use, or 0 to allocate one
+     * @param name name of the fee
+     * @param amount amount of the fee, a positive number
+     * @return the fee ID
+     * @throws SQLException if the fee can not be added
+     */
+    int addFeeToBillingRecord(int patientId, int feeId, String name, double amount) throws SQLException {
+        check(RecordValidator.checkTitle("Fee name", name));
+        if (!(amount > 0) || Double.isInfinite(amount)) {
+            throw new IllegalArgumentException("Fee amount must be a positive number");
+        }
+        if (!exists("SELECT 1 FROM BillingAccount WHERE patientId = ?", patientId)) {
+            throw new RecordNotFoundException("This patient doesn't have a Billing Account");
+        }
+        int id = feeId != 0 ? feeId : ids.next(connection, IdAllocator.Sequence.FEE);
+
+        //The fee must be written before the billing record total can be moved by it
+        try (UnitOfWork unit = new UnitOfWork(connection)) {
+            unit.add("INSERT INTO Fee VALUES(?, ?, ?)", id, name, amount);
+            unit.flush();
+            BillingTotals.addFee(connection, patientId, id);
+            unit.commit();
+        } catch (SQLException e) {
+            throw duplicate(e, "That Fee already exists in the database.");
+        }
+        return id;
+    }
+
+    /**
+     * Removes a fee from the billing record of a patient
+     *
+     * @param patientId patient ID, the billing record ID
+     * @param feeId fee ID
+     * @return true if the fee was removed, false if it is not on the patient's billing record
+     * @throws SQLException if the fee can not be removed
+     */
+    boolean removeFee(int patientId, int feeId) throws SQLException {
+        return BillingTotals.removeFee(connection, patientId, feeId);
+    }
+
+    /**
+     * Reads the medical record of a patient
+     *
+     * @param patientId patient ID
+     * @return the record, or null if the patient has no medical record
+     * @throws SQLException if the record can not be read
+     */
+    MedicalRecordView getPatientMedicalRecord(int patientId) throws SQLException {
+        try (PreparedStatement select = connection.prepareStatement(MedicalRecordView.QUERY)) {
+            for (int i = 1; i <= MedicalRecordView.QUERY_PARAMETERS; i++) {
+                select.setInt(i, patientId);
+            }
+            try (ResultSet result = select.executeQuery()) {
+                return MedicalRecordView.read(patientId, result);
+            }
+        }
+    }
+
+    /**
+     * Reads the billing account of a patient with its fees and totals
+     *
+     * @param patientId patient ID
+     * @return the account, or null if the patient has no billing account
+     * @throws SQLException if the account can not be read
+     */
+    BillingSummary getBillingSummary(int patientId) throws SQLException {
+        try (PreparedStatement select = connection.prepareStatement(BillingSummary.QUERY)) {
+            for (int i = 1; i <= BillingSummary.QUERY_PARAMETERS; i++) {
+                select.setInt(i, patientId);
+            }
+            try (ResultSet result = select.executeQuery()) {
+                return BillingSummary.read(result);
+            }
+        }
+    }
+
+    /**
+     * Reads the occupied and available beds and wards of the hospital, by ward capacity and by nurse
+     *
+     * @return the snapshot
+     * @throws SQLException if the wards can not be read
+     */
+    OccupancyAnalytics getOccupancy() throws SQLException {
+        try (PreparedStatement select = connection.prepareStatement(OccupancyAnalytics.QUERY);
+             ResultSet result = select.executeQuery()) {
+            return OccupancyAnalytics.read(result);
+        }
+    }
+
+    /**
+     * Checks whether a lookup by key finds a row
+     *
+     * @param sql lookup with one parameter
+     * @param key value of the parameter
+     * @return true if a row was found
+     * @throws SQLException if the lookup fails
+     */
+    private boolean exists(String sql, int key) throws SQLException {
+        try (PreparedStatement select = connection.prepareStatement(sql)) {
+            select.setInt(1, key);
+            try (ResultSet result = select.executeQuery()) {
+                return result.next();
+            }
+        }
+    }
+
+    /**
+     * Checks whether a patient, staff or ward lookup finds a row, answering from the entity cache when it can
+     *
+     * @param sql lookup registered with the entity cache
+     * @param key value of the parameter
+     * @return true if a row was found
+     * @throws SQLException if the lookup fails
+     */
+    private boolean cached(String sql, int key) throws SQLException {
+        try (ResultSet result = entityCache.lookup(connection, sql, key)) {
+            return result.next();
+        }
+    }
+
+    /**
+     * Gets the lookup by key of a table a patch can change
+     *
+     * @param table the table
+     * @return lookup registered with the entity cache
+     */
+    private static String lookupOf(EntityPatch.Table table) {
+        switch (table) {
+            case PATIENT :
+                return Lookups.PATIENT_BY_ID;
+
+            case PERSON :
+                return Lookups.PERSON_BY_ID;
+
+            case STAFF :
+                return Lookups.STAFF_BY_ID;
+
+            default:
+                return Lookups.WARD_BY_NUMBER;
+        }
+    }
+
+    /**
+     * Gets the message for a row of a table that does not exist
+     *
+     * @param table the table
+     * @return the message the console shows
+     */
+    private static String missing(EntityPatch.Table table) {
+        switch (table) {
+            case PATIENT :
+                return "That Patient does not exist in the database";
+
+            case PERSON :
+            case STAFF :
+                return "That Person does not exist in the database";
+
+            default:
+                return "That ward does not exist in the database";
+        }
+    }
+
+    /**
+     * Rejects an update of a medical record the patient does not have
+     *
+     * @param patientId patient ID
+     * @throws SQLException if the lookup fails
+     */
+    private void requireMedicalRecord(int patientId) throws SQLException {
+        if (!exists("SELECT 1 FROM MedicalRecord WHERE patientId = ?", patientId)) {
+            throw new RecordNotFoundException("This patient doesn't have a Medical Record, you must create a Medical Record for the patient before it can be updated.");
+        }
+    }
+
+    /**
+     * Rejects billing account fields the console would not accept, null fields are not checked
+     *
+     * @param responsibleSSN responsible SSN
+     * @param billingAddress billing address
+     * @param paymentMethod payment method
+     * @param cardNumber card number
+     * @param medicationPrescribed whether medication has been prescribed
+     */
+    private static void checkBillingAccount(String responsibleSSN, String billingAddress, String paymentMethod, String cardNumber,
+                                            String medicationPrescribed) {
+        if (responsibleSSN != null && responsibleSSN.length() != 9) {
+            throw new IllegalArgumentException("SSN must be exactly 9 digits.");
+        }
+        if (billingAddress != null && billingAddress.length() > 200) {
+            throw new IllegalArgumentException("Billing address must be 200 characters or less.");
+        }
+        if (paymentMethod != null && paymentMethod.length() > 128) {
+            throw new IllegalArgumentException("Payment method must be 128 characters or less.");
+        }
+        if (cardNumber != null && cardNumber.length() != 16) {
+            throw new IllegalArgumentException("Card number must be exactly 16 digits.");
+        }
+        if (medicationPrescribed != null) {
+            check(RecordValidator.checkYesNo(medicationPrescribed));
+        }
+    }
+
+    /**
+     * Rejects a responsible nurse who is not in the database or is not a nurse
+     *
+     * @param nurseId staff ID of the nurse
+     * @throws SQLException if the lookup fails
+     */
+    private void requireNurse(int nurseId) throws SQLException {
+        try (ResultSet staff = entityCache.lookup(connection, Lookups.STAFF_BY_ID, nurseId)) {
+            if (!staff.next()) {
+                throw new IllegalStateException("Responsible nurse must be in the database");
+            }
+            String job = staff.getString("jobTitle");
+            if (job == null || !job.toLowerCase().equals("nurse")) {
+                throw new IllegalArgumentException("Responsible staff must be a nurse");
+            }
+        }
+    }
+
+    /**
+     * Turns the failure of an insert whose ID is already in use into the message the console shows
+     *
+     * @param e failure of the insert
+     * @param message message for an ID already in use
+     * @return the failure to throw, e itself unless it is a duplicate key
+     */
+    private static SQLException duplicate(SQLException e, String message) {
+        if (e.getErrorCode() == DUPLICATE_ENTRY) {
+            throw new IllegalStateException(message);
+        }
+        return e;
+    }
+
+    /**
+     * Rejects a value that failed a {@link RecordValidator} check
+     *
+     * @param invalid message of the check, null if the value was valid
+     */
+    private static void check(String invalid) {
+        if (invalid != null) {
+            throw new IllegalArgumentException(invalid);
+        }
+    }
+
+    /**
+     * A bed given to a patient
+     */
+    static class Bed {
+        /** Ward number */
+        final int ward;
+        /** Bed number in the ward */
+        final int bed;
+
+        Bed(int ward, int bed) {
+            this.ward = ward;
+            this.bed = bed;
+        }
+    }
+}
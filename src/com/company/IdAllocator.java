@@ -0,0 +1,173 @@
+package com.company;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Hands out IDs for new patients, staff, tests, prescriptions, diagnosis details and fees, so operators no longer
+ * type an ID and check it is free first. IDs are reserved from the IdSequence table a block at a time with a single
+ * atomic UPDATE, and the IDs of a block are then handed out from memory (hi/lo). Desks and application instances
+ * reserve different blocks, so they never hand out the same ID, and most new records need no round trip for their
+ * ID at all.
+ *
+ * The IDs left in a block when the application stops are never used, so IDs have gaps. A block always starts above
+ * the highest ID already in its table, so a database restored from a dump without the IdSequence table carries on
+ * from where its records end.
+ *
+ * Tables are keyed with INT columns that other tables reference with foreign keys, which MySQL does not allow to be
+ * turned into AUTO_INCREMENT columns in place, so the sequence lives in its own table.
+ */
+class IdAllocator {
+
+    /**
+     * Table an ID is allocated for
+     */
+    enum Sequence {
+        /** Patient IDs */
+        PATIENT("Patient"),
+        /** Person and Staff IDs */
+        PERSON("Person"),
+        /** Test IDs */
+        TEST("Test"),
+        /** Prescription IDs */
+        PRESCRIPTION("Prescription"),
+        /** Diagnosis details IDs */
+        DIAGNOSIS("DiagnosisDetails"),
+        /** Fee IDs */
+        FEE("Fee");
+
+        /** Table keyed by the IDs, also the name of the sequence */
+        final String table;
+
+        Sequence(String table) {
+            this.table = table;
+        }
+    }
+
+    /** Pool a connection is borrowed from when the caller's connection is in a transaction */
+    private final ConnectionPool pool;
+    /** Number of IDs reserved at a time */
+    private final int blockSize;
+    /** Block currently handed out for each sequence */
+    private final Map<Sequence, Block> blocks = new EnumMap<Sequence, Block>(Sequence.class);
+
+    /**
+     * Creates an allocator that has reserved no IDs yet
+     *
+     * @param pool pool a connection is borrowed from when the caller's connection is in a transaction
+     * @param blockSize number of IDs reserved at a time
+     */
+    IdAllocator(ConnectionPool pool, int blockSize) {
+        if (blockSize < 1) {
+            throw new IllegalArgumentException("Block size must be positive");
+        }
+        this.pool = pool;
+        this.blockSize = blockSize;
+        for (Sequence sequence : Sequence.values()) {
+            blocks.put(sequence, new Block());
+        }
+    }
+
+    /**
+     * Creates the IdSequence table and starts each sequence above the highest ID already in its table
+     *
+     * @param connection connection to the database
+     * @throws SQLException if the table can not be created
+     */
+    static void ensureSchema(Connection connection) throws SQLException {
+        try (PreparedStatement create = connection.prepareStatement("CREATE TABLE IF NOT EXISTS IdSequence"
+                + "(name VARCHAR(64) NOT NULL, nextId BIGINT NOT NULL, primary key(name))")) {
+            create.executeUpdate();
+        }
+        for (Sequence sequence : Sequence.values()) {
+            seed(connection, sequence);
+        }
+    }
+
+    /**
+     * Adds the row of a sequence if it is missing
+     *
+     * @param connection connection to the database
+     * @param sequence the sequence
+     * @throws SQLException if the row can not be added
+     */
+    private static void seed(Connection connection, Sequence sequence) throws SQLException {
+        try (PreparedStatement insert = connection.prepareStatement("INSERT IGNORE INTO IdSequence(name, nextId) "
+                + "SELECT ?, COALESCE(MAX(id), 0) + 1 FROM " + sequence.table)) {
+            insert.setString(1, sequence.table);
+            insert.executeUpdate();
+        }
+    }
+
+    /**
+     * Hands out the next ID of a sequence, reserving a new block when the current one is used up
+     *
+     * @param connection connection of the caller, used to reserve a block unless it is in a transaction
+     * @param sequence the sequence
+     * @return an ID no other caller is given
+     * @throws SQLException if a block can not be reserved
+     */
+    int next(Connection connection, Sequence sequence) throws SQLException {
+        Block block = blocks.get(sequence);
+        synchronized (block) {
+            if (block.next >= block.end) {
+                //A block reserved inside the caller's transaction would be handed out again if it rolled back
+                if (connection.getAutoCommit()) {
+                    reserve(connection, sequence, block);
+                } else {
+                    try (Connection own = pool.borrow()) {
+                        reserve(own, sequence, block);
+                    }
+                }
+            }
+            return (int) block.next++;
+        }
+    }
+
+    /**
+     * Reserves the next block of a sequence
+     *
+     * @param connection connection in autocommit mode
+     * @param sequence the sequence
+     * @param block block to refill
+     * @throws SQLException if the block can not be reserved
+     */
+    private void reserve(Connection connection, Sequence sequence, Block block) throws SQLException {
+        StatementCache statements = connection.unwrap(StatementCache.class);
+        PreparedStatement update = statements.prepare("UPDATE IdSequence SET nextId = LAST_INSERT_ID(GREATEST(nextId, "
+                + "(SELECT COALESCE(MAX(id), 0) + 1 FROM " + sequence.table + ")) + ?) WHERE name = ?");
+        update.setInt(1, blockSize);
+        update.setString(2, sequence.table);
+        if (update.executeUpdate() == 0) {
+            seed(connection, sequence);
+            update.setInt(1, blockSize);
+            update.setString(2, sequence.table);
+            update.executeUpdate();
+        }
+
+        long end;
+        try (ResultSet result = statements.prepare("SELECT LAST_INSERT_ID()").executeQuery()) {
+            result.next();
+            end = result.getLong(1);
+        }
+        if (end - 1 > Integer.MAX_VALUE) {
+            throw new IllegalStateException("No " + sequence.table + " IDs are left");
+        }
+        block.next = end - blockSize;
+        block.end = end;
+    }
+
+    /**
+     * IDs reserved for one sequence and not handed out yet
+     */
+    private static class Block {
+        /** Next ID to hand out */
+        long next = 0;
+        /** First ID after the block */
+        long end = 0;
+    }
+}
@@ -0,0 +1,352 @@
+package com.company;
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Just enough JSON for batch files and the HTTP interface: parsing one flat object whose values are strings,
+ * numbers, booleans or null, and appending strings, members and rows when writing JSON.
+ */
+class Json {
+
+    /**
+     * Parses one flat JSON object
+     *
+     * @param text the object
+     * @return its members in order, numbers as Long when they are integers and Double otherwise
+     * @throws IllegalArgumentException if the text is not a flat JSON object
+     */
+    static Map<String, Object> parseObject(String text) {
+        Parser parser = new Parser(text);
+        parser.skipSpace();
+        Map<String, Object> members = parser.object();
+        parser.skipSpace();
+        if (parser.pos != text.length()) {
+            throw parser.error("Unexpected text after the object");
+        }
+        return members;
+    }
+
+    /**
+     * Gets a required member
+     *
+     * @param members members of an object
+     * @param key name of the member
+     * @return its value
+     * @throws IllegalArgumentException if the member is missing or null
+     */
+    private static Object getRequired(Map<String, Object> members, String key) {
+        Object value = members.get(key);
+        if (value == null) {
+            throw new IllegalArgumentException("Missing " + key);
+        }
+        return value;
+    }
+
+    /**
+     * Gets a required string member, numbers are taken as their text
+     *
+     * @param members members of an object
+     * @param key name of the member
+     * @return its value
+     * @throws IllegalArgumentException if the member is missing
+     */
+    static String getString(Map<String, Object> members, String key) {
+        return getRequired(members, key).toString();
+    }
+
+    /**
+     * Gets a required integer member, also given as a string
+     *
+     * @param members members of an object
+     * @param key name of the member
+     * @return its value
+     * @throws IllegalArgumentException if the member is missing or not an integer
+     */
+    static int getInt(Map<String, Object> members, String key) {
+        Object value = getRequired(members, key);
+        try {
+            return value instanceof Long ? Math.toIntExact((Long) value) : Integer.parseInt(value.toString().trim());
+        } catch (ArithmeticException | NumberFormatException e) {
+            throw new IllegalArgumentException(key + " must be an integer");
+        }
+    }
+
+    /**
+     * Gets a required decimal member, also given as a string
+     *
+     * @param members members of an object
+     * @param key name of the member
+     * @return its value
+     * @throws IllegalArgumentException if the member is missing or not a number
+     */
+    static double getDouble(Map<String, Object> members, String key) {
+        Object value = getRequired(members, key);
+        try {
+            return value instanceof Number ? ((Number) value).doubleValue() : Double.parseDouble(value.toString().trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(key + " must be a number");
+        }
+    }
+
+    /**
+     * Gets a required date member in form yyyy-mm-dd
+     *
+     * @param members members of an object
+     * @param key name of the member
+     * @return its value
+     * @throws IllegalArgumentException if the member is missing or not a date
+     */
+    static LocalDate getDate(Map<String, Object> members, String key) {
+        String value = getString(members, key);
+        try {
+            return LocalDate.parse(value);
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException(key + " must be in form yyyy-mm-dd");
+        }
+    }
+
+    /**
+     * Appends one member of an object being written, with the comma before it unless it is the first member
+     *
+     * @param key name of the member
+     * @param value value of the member, numbers and booleans are written as they are and everything else as a string
+     * @param sb object being written, ending with its opening brace or a previous member
+     */
+    static void appendMember(String key, Object value, StringBuilder sb) {
+        char last = sb.charAt(sb.length() - 1);
+        if (last != '{' && last != '[') {
+            sb.append(',');
+        }
+        appendString(key, sb);
+        sb.append(':');
+        if (value == null) {
+            sb.append("null");
+        } else if (value instanceof Number || value instanceof Boolean) {
+            sb.append(value);
+        } else {
+            appendString(value.toString(), sb);
+        }
+    }
+
+    /**
+     * Appends the current row of a result as an object keyed by the column labels
+     *
+     * @param result result positioned on a row
+     * @param sb where the object is appended
+     * @throws SQLException if the row can not be read
+     */
+    static void appendRow(ResultSet result, StringBuilder sb) throws SQLException {
+        ResultSetMetaData meta = result.getMetaData();
+        sb.append('{');
+        for (int i = 1; i <= meta.getColumnCount(); i++) {
+            appendMember(meta.getColumnLabel(i), result.getObject(i), sb);
+        }
+        sb.append('}');
+    }
+
+    /**
+     * Appends a JSON string with its quotes, escaping the characters JSON requires
+     *
+     * @param value value to append
+     * @param sb where the value is appended
+     */
+    static void appendString(String value, StringBuilder sb) {
+        sb.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\' || c < 0x20) {
+                sb.append(escape(c));
+            } else {
+                sb.append(c);
+            }
+        }
+        sb.append('"');
+    }
+
+    /**
+     * Gets the JSON escape of a character that can not appear in a JSON string as is
+     *
+     * @param c the character
+     * @return its escape
+     */
+    static String escape(char c) {
+        switch (c) {
+            case '"':
+                return "\\\"";
+            case '\\':
+                return "\\\\";
+            case '\n':
+                return "\\n";
+            case '\r':
+                return "\\r";
+            case '\t':
+                return "\\t";
+            default:
+                return String.format("\\u%04x", (int) c);
+        }
+    }
+
+    /**
+     * Reads the members of one object from text
+     */
+    private static class Parser {
+        /** Text being parsed */
+        private final String text;
+        /** Position of the next character */
+        private int pos = 0;
+
+        Parser(String text) {
+            this.text = text;
+        }
+
+        Map<String, Object> object() {
+            Map<String, Object> members = new LinkedHashMap<String, Object>();
+            expect('{');
+            skipSpace();
+            if (peek() == '}') {
+                pos++;
+                return members;
+            }
+            while (true) {
+                skipSpace();
+                String key = string();
+                skipSpace();
+                expect(':');
+                skipSpace();
+                members.put(key, value());
+                skipSpace();
+                char c = next();
+                if (c == '}') {
+                    return members;
+                } else if (c != ',') {
+                    throw error("Expected , or }");
+                }
+            }
+        }
+
+        Object value() {
+            char c = peek();
+            if (c == '"') {
+                return string();
+            } else if (c == '-' || (c >= '0' && c <= '9')) {
+                return number();
+            } else if (text.startsWith("true", pos)) {
+                pos += 4;
+                return Boolean.TRUE;
+            } else if (text.startsWith("false", pos)) {
+                pos += 5;
+                return Boolean.FALSE;
+            } else if (text.startsWith("null", pos)) {
+                pos += 4;
+                return null;
+            }
+            throw error("Expected a string, number, boolean or null");
+        }
+
+        String string() {
+            expect('"');
+            StringBuilder sb = new StringBuilder();
+            while (true) {
+                char c = next();
+                if (c == '"') {
+                    return sb.toString();
+                } else if (c != '\\') {
+                    sb.append(c);
+                    continue;
+                }
+                char e = next();
+                switch (e) {
+                    case '"':
+                    case '\\':
+                    case '/':
+                        sb.append(e);
+                        break;
+                    case 'b':
+                        sb.append('\b');
+                        break;
+                    case 'f':
+                        sb.append('\f');
+                        break;
+                    case 'n':
+                        sb.append('\n');
+                        break;
+                    case 'r':
+                        sb.append('\r');
+                        break;
+                    case 't':
+                        sb.append('\t');
+                        break;
+                    case 'u':
+                        if (pos + 4 > text.length()) {
+                            throw error("Incomplete unicode escape");
+                        }
+                        try {
+                            sb.append((char) Integer.parseInt(text.substring(pos, pos + 4), 16));
+                        } catch (NumberFormatException ex) {
+                            throw error("Invalid unicode escape");
+                        }
+                        pos += 4;
+                        break;
+                    default:
+                        throw error("Invalid escape \\" + e);
+                }
+            }
+        }
+
+        Object number() {
+            int start = pos;
+            boolean decimal = false;
+            while (pos < text.length()) {
+                char c = text.charAt(pos);
+                if (c == '.' || c == 'e' || c == 'E') {
+                    decimal = true;
+                } else if (!(c == '-' || c == '+' || (c >= '0' && c <= '9'))) {
+                    break;
+                }
+                pos++;
+            }
+            String n = text.substring(start, pos);
+            try {
+                return decimal ? (Object) Double.valueOf(n) : (Object) Long.valueOf(n);
+            } catch (NumberFormatException e) {
+                throw error("Invalid number " + n);
+            }
+        }
+
+        void skipSpace() {
+            while (pos < text.length() && Character.isWhitespace(text.charAt(pos))) {
+                pos++;
+            }
+        }
+
+        char peek() {
+            if (pos >= text.length()) {
+                throw error("Unexpected end of text");
+            }
+            return text.charAt(pos);
+        }
+
+        char next() {
+            char c = peek();
+            pos++;
+            return c;
+        }
+
+        void expect(char c) {
+            if (next() != c) {
+                pos--;
+                throw error("Expected " + c);
+            }
+        }
+
+        IllegalArgumentException error(String message) {
+            return new IllegalArgumentException(message + " at position " + pos);
+        }
+    }
+}
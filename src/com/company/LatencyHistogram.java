@@ -0,0 +1,124 @@
+package com.company;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Latency histogram with buckets of fixed relative width, in the style of HdrHistogram. Every power of two is split
+ * into {@link #SUB_BUCKETS} linear buckets, so a recorded value is off by at most about 3% whether it is a
+ * microsecond or a minute, and the histogram takes the same fixed memory however many values it holds. Values are
+ * recorded without locking, so every operation can record into a shared histogram.
+ */
+class LatencyHistogram {
+
+    /** Bits of a value kept below its highest bit */
+    private static final int SUB_BUCKET_BITS = 5;
+    /** Buckets per power of two */
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    /** Number of values in each bucket */
+    private final AtomicLongArray counts = new AtomicLongArray(64 * SUB_BUCKETS);
+    /** Number of values recorded */
+    private final AtomicLong count = new AtomicLong();
+    /** Sum of the values recorded */
+    private final AtomicLong sum = new AtomicLong();
+    /** Largest value recorded */
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Records a value
+     *
+     * @param nanos the value, negative values are recorded as 0
+     */
+    void record(long nanos) {
+        long value = Math.max(0, nanos);
+        counts.incrementAndGet(bucketOf(value));
+        count.incrementAndGet();
+        sum.addAndGet(value);
+        long seen = max.get();
+        while (value > seen && !max.compareAndSet(seen, value)) {
+            seen = max.get();
+        }
+    }
+
+    /**
+     * Gets the bucket of a value
+     *
+     * @param value a value that is not negative
+     * @return index of the bucket
+     */
+    private static int bucketOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int sub = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    /**
+     * Gets the largest value that falls in a bucket
+     *
+     * @param bucket index of the bucket
+     * @return the value
+     */
+    private static long highestIn(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        long sub = bucket % SUB_BUCKETS;
+        long low = (1L << exponent) | (sub << (exponent - SUB_BUCKET_BITS));
+        return low + (1L << (exponent - SUB_BUCKET_BITS)) - 1;
+    }
+
+    /**
+     * Gets the value below which a fraction of the recorded values fall
+     *
+     * @param percentile the fraction in percent, such as 99.9
+     * @return the value, within the width of its bucket, 0 if nothing was recorded
+     */
+    long getValueAtPercentile(double percentile) {
+        long total = count.get();
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * total));
+        long seen = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            seen += counts.get(i);
+            if (seen >= rank) {
+                return Math.min(highestIn(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    /**
+     * Gets the number of values recorded
+     *
+     * @return number of values
+     */
+    long getCount() {
+        return count.get();
+    }
+
+    /**
+     * Gets the mean of the values recorded
+     *
+     * @return the mean, 0 if nothing was recorded
+     */
+    double getMean() {
+        long total = count.get();
+        return total == 0 ? 0 : (double) sum.get() / total;
+    }
+
+    /**
+     * Gets the largest value recorded
+     *
+     * @return the value, 0 if nothing was recorded
+     */
+    long getMax() {
+        return max.get();
+    }
+}
@@ -0,0 +1,48 @@
+package com.company;
+
+/**
+ * Lookups of one record by its key, shared by the console, the {@link HospitalService} and the {@link ApiServer}.
+ * The patient, staff and ward lookups are answered from an {@link EntityCache} once {@link #register(EntityCache)}
+ * has registered them with it.
+ */
+class Lookups {
+
+    /** Looks up a patient by ID */
+    static final String PATIENT_BY_ID = "SELECT * FROM Patient WHERE id = ?";
+    /** Looks up a person by ID */
+    static final String PERSON_BY_ID = "SELECT * FROM Person WHERE id = ?";
+    /** Looks up a staff member by ID */
+    static final String STAFF_BY_ID = "SELECT * FROM Staff WHERE id = ?";
+    /** Looks up a doctor by staff ID */
+    static final String DOCTOR_BY_ID = "SELECT * FROM Staff WHERE id = ? AND jobTitle = 'Doctor'";
+    /** Looks up a ward by number */
+    static final String WARD_BY_NUMBER = "SELECT " + WardBeds.WARD_COLUMNS + " FROM Ward WHERE number = ?";
+    /** Looks up the medical record of a patient */
+    static final String MEDICAL_RECORD_BY_PATIENT = "SELECT * FROM MedicalRecord WHERE patientId = ?";
+    /** Looks up the check-in information of a patient */
+    static final String CHECK_IN_BY_PATIENT = "SELECT * FROM CheckInInformation WHERE patientId = ?";
+    /** Looks up the billing account of a patient */
+    static final String BILLING_ACCOUNT_BY_PATIENT = "SELECT * FROM BillingAccount WHERE patientId = ?";
+    /** Looks up a test by ID */
+    static final String TEST_BY_ID = "SELECT * FROM Test WHERE id = ?";
+    /** Looks up a prescription by ID */
+    static final String PRESCRIPTION_BY_ID = "SELECT * FROM Prescription WHERE id = ?";
+    /** Looks up diagnosis details by ID */
+    static final String DIAGNOSIS_BY_ID = "SELECT * FROM DiagnosisDetails WHERE id = ?";
+    /** Looks up a fee by ID */
+    static final String FEE_BY_ID = "SELECT * FROM Fee WHERE id = ?";
+
+    /**
+     * Registers the patient, staff and ward lookups with an entity cache
+     *
+     * @param cache the cache
+     * @return the cache
+     */
+    static EntityCache register(EntityCache cache) {
+        return cache.register(PATIENT_BY_ID, EntityCache.Entity.PATIENT)
+                .register(PERSON_BY_ID, EntityCache.Entity.STAFF)
+                .register(STAFF_BY_ID, EntityCache.Entity.STAFF)
+                .register(DOCTOR_BY_ID, EntityCache.Entity.STAFF)
+                .register(WARD_BY_NUMBER, EntityCache.Entity.WARD);
+    }
+}
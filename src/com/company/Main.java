@@ -1,9 +1,13 @@
 package com.company;
 
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.sql.Connection;
 
 
-import java.sql.DriverManager;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
@@ -11,7 +15,9 @@ import java.sql.Statement;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.time.LocalDate;
+import java.time.YearMonth;
 import java.util.*;
+import java.util.function.Consumer;
 
 /**
  * Set of applications for running the WolfHospital database system using JDBC and the
@@ -28,27 +34,99 @@ import java.util.*;
 
 class WolfHospital {
 
-    /** Connection the database */
-    private static Connection connection = null;
-    /** Statement for updating and querying the database */
-    private static Statement statement = null;
-    /** ResultSet for iterating through query results */
-    private static ResultSet result = null;
-    /** Prepared Statement to execute updates on the database */
-    private static PreparedStatement ps = null;
+    /** Number of batch operations run at once, each on its own connection from the pool, two fewer than the pool holds */
+    private static final int BATCH_LANES = 8;
+    /** Number of slices of synthetic data written at once, each on its own connection from the pool */
+    private static final int GENERATOR_THREADS = 6;
+    /** Statements at least this slow are written to the slow query log, until changed from the menu */
+    private static final long SLOW_QUERY_MILLIS = 200;
+    /** Files of the slow query log, %g is the number of the file */
+    private static final String SLOW_QUERY_LOG = "slow-queries.%g.log";
+    /** Size a slow query log file is rotated at */
+    private static final int SLOW_QUERY_LOG_BYTES = 10 * 1024 * 1024;
+    /** Number of slow query log files kept */
+    private static final int SLOW_QUERY_LOG_FILES = 5;
+    /** Rows shown at a time by the ward and patient reports */
+    private static final int REPORT_PAGE_SIZE = 20;
+    /** Number of IDs reserved at a time for new records */
+    private static final int ID_BLOCK_SIZE = 50;
+    /** Environment variable holding the address the HTTP API listens on, loopback when not set */
+    private static final String HTTP_ADDRESS_VARIABLE = "WOLFHOSPITAL_HTTP_ADDRESS";
+    /** Environment variable holding the bearer token HTTP API requests must carry */
+    private static final String HTTP_TOKEN_VARIABLE = "WOLFHOSPITAL_HTTP_TOKEN";
+
+    /** Pool of connections to the database shared by every operator session */
+    private static ConnectionPool pool = null;
+    /** Free beds of every ward by capacity, shared by every operator session */
+    private static final WardAvailabilityIndex wardIndex = new WardAvailabilityIndex();
+
+    /** Statements slower than its threshold with their plans, null if the log could not be opened */
+    private static SlowQueryLog slowQueryLog = null;
+
+    /** IDs of new records, shared by every operator session */
+    private static IdAllocator ids = null;
+
+    /** HTTP interface to the same pool and ward index, started from the menu or with --http */
+    private static ApiServer apiServer = null;
+
+    /** Patient, staff and ward rows by ID, shared by every operator session */
+    private static final EntityCache entityCache = Lookups.register(new EntityCache(10000, 60 * 1000));
+
+    /** Menu option being run, the query metrics of its operation are counted under it */
+    private String menuOption = null;
+    /** Connection borrowed from the pool for the operation currently running */
+    private Connection connection = null;
+    /** Statement for updating and querying the database, scoped to the current operation */
+    private Statement statement = null;
+    /** ResultSet for iterating through query results, scoped to the current operation */
+    private ResultSet result = null;
+    /** Prepared Statement to execute updates on the database, scoped to the current operation */
+    private PreparedStatement ps = null;
 
 
 
     /**
      * Starts the program. Initializes the connection to the server and creates the database tables. Presents
      * the user with a menu of options. The user can quit whenever they desire and the connection to the database
-     * will be closed.
+     * will be closed. Started with --batch and a file, runs that batch file of operations instead and exits.
+     * Started with --http and a port, serves the HTTP API on that port until the process is stopped.
+     * Started with --generate, a seed and a number of patients, writes that many synthetic patients with staff
+     * and wards in proportion and exits.
      *
-     * @param args
+     * @param args nothing for the menu, --batch and the path of a batch file, --http and a port, or --generate, a
+     *             seed and a number of patients
      */
     public static void main(String[] args) {
 
         initialize();
+        if (args.length == 2 && args[0].equals("--batch")) {
+            int failures = runBatchFile(Paths.get(args[1]));
+            close();
+            System.exit(failures == 0 ? 0 : 1);
+        }
+        if (args.length == 3 && args[0].equals("--generate")) {
+            boolean generated = false;
+            try {
+                generated = generate(SyntheticDataGenerator.proportional(pool, Long.parseLong(args[1]), Integer.parseInt(args[2]),
+                        GENERATOR_THREADS, System.out));
+            } catch (IllegalArgumentException e) {
+                System.err.println(e.getMessage());
+            }
+            close();
+            System.exit(generated ? 0 : 1);
+        }
+        if (args.length == 2 && args[0].equals("--http")) {
+            Runtime.getRuntime().addShutdownHook(new Thread(WolfHospital::close));
+            try {
+                startApiServer(Integer.parseInt(args[1]));
+            } catch (IOException | IllegalStateException | NumberFormatException e) {
+                System.err.println("Can not serve on port " + args[1] + ": " + e.getMessage());
+                close();
+                System.exit(1);
+            }
+            System.out.println("Serving the HTTP API on port " + apiServer.getPort());
+            return;
+        }
         WolfHospital wh = new WolfHospital();
         wh.presentMenu();
     }
@@ -64,115 +142,171 @@ class WolfHospital {
         while (true) {
             String in = input.nextLine();
             in = in.toLowerCase();
+            menuOption = in;
             switch(in) {
 
                 case "1" :
-                    enterNewStaffInformation(input);
+                    runOperation(() -> enterNewStaffInformation(input));
                     printReturnToMenu();
                     break;
 
                 case "2" :
-                    updateStaffInformation(input);
+                    runOperation(() -> updateStaffInformation(input));
                     printReturnToMenu();
                     break;
 
                 case "3" :
-                    enterNewPatientInformation(input);
+                    runOperation(() -> enterNewPatientInformation(input));
                     printReturnToMenu();
                     break;
 
                 case "4" :
-                    updatePatientInformation(input);
+                    runOperation(() -> updatePatientInformation(input));
                     printReturnToMenu();
                     break;
 
                 case "5" :
-                    enterNewWardInformation(input);
+                    runOperation(() -> enterNewWardInformation(input));
                     printReturnToMenu();
                     break;
 
                 case "6" :
-                    updateWardInformation(input);
+                    runOperation(() -> updateWardInformation(input));
                     printReturnToMenu();
                     break;
 
                 case "7" :
-                    enterNewCheckInInformation(input);
+                    runOperation(() -> enterNewCheckInInformation(input));
                     printReturnToMenu();
                     break;
 
                 case "8" :
-                    updateCheckInInformation(input);
+                    runOperation(() -> updateCheckInInformation(input));
                     printReturnToMenu();
                     break;
 
                 case "9" :
-                    assignWardUponRequest(input);
+                    runOperation(() -> assignWardUponRequest(input));
                     printReturnToMenu();
                     break;
 
                 case "10" :
-                    releaseWards(input);
+                    runOperation(() -> releaseWards(input));
                     printReturnToMenu();
                     break;
 
                 case "11" :
-                    enterNewMedicalRecord(input);
+                    runOperation(() -> enterNewMedicalRecord(input));
                     printReturnToMenu();
                     break;
 
                 case "12" :
-                    updateMedicalRecord(input);
+                    runOperation(() -> updateMedicalRecord(input));
                     printReturnToMenu();
                     break;
 
                 case "13" :
-                    viewMedicalRecord(input);
+                    runOperation(() -> viewMedicalRecord(input));
                     printReturnToMenu();
                     break;
 
                 case "14" :
-                    enterNewBillingAccount(input);
+                    runOperation(() -> enterNewBillingAccount(input));
                     printReturnToMenu();
                     break;
 
                 case "15" :
-                    updateBillingAccount(input);
+                    runOperation(() -> updateBillingAccount(input));
                     printReturnToMenu();
                     break;
 
                 case "16" :
-                    viewBillingAccount(input);
+                    runOperation(() -> viewBillingAccount(input));
                     printReturnToMenu();
                     break;
 
                 case "17" :
-                    checkAvailableWards(input);
+                    runOperation(() -> checkAvailableWards(input));
                     printReturnToMenu();
                     break;
 
                 case "18" :
-                    viewMonthlyMedicalRecord(input);
+                    runOperation(() -> viewMonthlyMedicalRecord(input));
                     printReturnToMenu();
                     break;
 
                 case "19" :
-                    viewMonthlyPatientList(input);
+                    runOperation(() -> viewMonthlyPatientList(input));
                     printReturnToMenu();
                     break;
 
                 case "20" :
-                    viewWardUsagePercentage(input);
+                    runOperation(() -> viewWardUsagePercentage(input));
                     printReturnToMenu();
                     break;
 
                 case "21" :
-                    viewPatientListOfDoctor(input);
+                    runOperation(() -> viewPatientListOfDoctor(input));
                     printReturnToMenu();
                     break;
 
                 case "22" :
-                    viewStaffInformationGroupedByRole(input);
+                    runOperation(() -> viewStaffInformationGroupedByRole(input));
+                    printReturnToMenu();
+                    break;
+
+                case "23" :
+                    runOperation(() -> bulkImport(input));
+                    printReturnToMenu();
+                    break;
+
+                case "24" :
+                    runOperation(() -> reconcileBillingTotals(input));
+                    printReturnToMenu();
+                    break;
+
+                case "25" :
+                    runOperation(() -> rebuildMonthlyCensus(input));
+                    printReturnToMenu();
+                    break;
+
+                case "26" :
+                    runOperation(() -> exportReport(input));
+                    printReturnToMenu();
+                    break;
+
+                case "27" :
+                    runBatch(input);
+                    printReturnToMenu();
+                    break;
+
+                case "28" :
+                    toggleApiServer(input);
+                    printReturnToMenu();
+                    break;
+
+                case "29" :
+                    System.out.print(entityCache.describe());
+                    printReturnToMenu();
+                    break;
+
+                case "30" :
+                    generateSyntheticData(input);
+                    printReturnToMenu();
+                    break;
+
+                case "31" :
+                    System.out.print(QueryMetrics.report());
+                    printReturnToMenu();
+                    break;
+
+                case "32" :
+                    setSlowQueryThreshold(input);
+                    printReturnToMenu();
+                    break;
+
+                case "33" :
+                    runOperation(() -> viewOccupancy(input));
                     printReturnToMenu();
                     break;
 
@@ -194,6 +328,79 @@ class WolfHospital {
         }
     }
 
+    /**
+     * Runs one operation on a connection borrowed from the pool. The statement and result sets the operation
+     * uses are scoped to it and are closed when the connection is returned to the pool, so several operator
+     * sessions can run operations at the same time. Its latency and round trips are counted in the query
+     * metrics under the menu option that started it.
+     *
+     * @param operation the operation to run
+     */
+    public void runOperation(Runnable operation) {
+        QueryMetrics.run("menu " + menuOption, () -> {
+            try {
+                connection = pool.borrow();
+                statement = connection.createStatement();
+            } catch (SQLException e) {
+                e.printStackTrace();
+                endOperation();
+                return;
+            }
+
+            try {
+                operation.run();
+            } finally {
+                endOperation();
+            }
+        });
+    }
+
+    /**
+     * Returns the connection of the current operation to the pool, which also closes every statement
+     * and result set the operation opened.
+     */
+    private void endOperation() {
+        if (connection != null) {
+            try {
+                connection.close();
+            } catch (SQLException e) {
+                e.printStackTrace();
+            }
+        }
+        connection = null;
+        statement = null;
+        result = null;
+        ps = null;
+    }
+
+    /**
+     * Gets the hospital operations running on the connection of the current operation
+     *
+     * @return the operations
+     */
+    private HospitalService service() {
+        return new HospitalService(connection, wardIndex, entityCache, ids);
+    }
+
+    /**
+     * Runs one of the recurring lookups by key using the prepared statement cached on the current connection,
+     * so the database does not parse the query again on every call. Patient, staff and ward lookups are answered
+     * from the entity cache when it holds the row.
+     *
+     * @param sql lookup query with a single integer parameter
+     * @param key value of the parameter
+     * @return the rows found
+     * @throws SQLException if the query fails
+     */
+    private ResultSet lookup(String sql, int key) throws SQLException {
+        if (entityCache.isCached(sql)) {
+            return entityCache.lookup(connection, sql, key);
+        }
+        PreparedStatement lookup = connection.unwrap(StatementCache.class).prepare(sql);
+        lookup.setInt(1, key);
+        return lookup.executeQuery();
+    }
+
     /**
      * Prints the menu options for the user
      */
@@ -225,6 +432,17 @@ class WolfHospital {
         System.out.println("20 - View the ward-usage percentage");
         System.out.println("21 - View all patient a doctor is currently responsible for");
         System.out.println("22 - View staff information grouped by role");
+        System.out.println("23 - Bulk import Patients or Staff from a CSV file");
+        System.out.println("24 - Reconcile Billing Record totals with their fees");
+        System.out.println("25 - Rebuild the monthly census from the Check-In information");
+        System.out.println("26 - Export report 18 to 22 to a CSV or JSON Lines file");
+        System.out.println("27 - Run a batch file of operations");
+        System.out.println("28 - Start or stop the HTTP API server");
+        System.out.println("29 - Show the entity cache size and hit rate");
+        System.out.println("30 - Generate synthetic data for load testing");
+        System.out.println("31 - Show latency, round trips and rows fetched of every operation");
+        System.out.println("32 - Set the slow query log threshold");
+        System.out.println("33 - Show occupied and available beds and wards");
         System.out.println("p - Print menu options");
         System.out.println("exit - Exit the application");
     }
@@ -241,6 +459,49 @@ class WolfHospital {
         System.out.println();
     }
 
+    /**
+     * Asks for the new value of one field and keeps it with the other changes of the record until they are saved
+     * @param input Scanner for user input
+     * @param prompt question asking for the value
+     * @param changes changes of the record
+     * @param column column of the field
+     */
+    private void stageChange(Scanner input, String prompt, EntityPatch changes, String column) {
+        System.out.println(prompt);
+        try {
+            changes.set(column, input.nextLine());
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+        }
+    }
+
+    /**
+     * Writes the kept changes of a record, one update per changed row
+     * @param changes changes of the record
+     * @return true if the changes were written or there were none
+     */
+    private boolean saveChanges(EntityPatch... changes) {
+        boolean dirty = false;
+        for (EntityPatch patch : changes) {
+            dirty |= patch.isDirty();
+        }
+        if (!dirty) {
+            System.out.println("No changes to save");
+            return false;
+        }
+
+        try {
+            service().update(changes);
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            System.err.println(e.getMessage());
+            return false;
+        } catch (SQLException e) {
+            e.printStackTrace();
+            return false;
+        }
+        return true;
+    }
+
     /**
      * Enters a new Medical record for a given patient. Looks up the given patient ID to ensure that the patient
      * exists, then creates a new medical record for the patient given the start date and end date (optional).
@@ -269,7 +530,7 @@ class WolfHospital {
 
         //Query database for given patient
         try {
-            result = statement.executeQuery("SELECT * FROM Patient WHERE id = " + pId);
+            result = lookup(Lookups.PATIENT_BY_ID, pId);
         } catch (SQLException e) {
             e.printStackTrace();
             return;
@@ -291,7 +552,7 @@ class WolfHospital {
 
         //Check if patient already has medical record
         try {
-            result = statement.executeQuery("SELECT * FROM MedicalRecord WHERE patientId = " + pId);
+            result = lookup(Lookups.MEDICAL_RECORD_BY_PATIENT, pId);
         } catch (SQLException e) {
             e.printStackTrace();
             return;
@@ -383,7 +644,7 @@ class WolfHospital {
 
         //Query database for given doctor
         try {
-            result = statement.executeQuery("SELECT * FROM Staff WHERE id = " + sId + " AND jobTitle = 'Doctor'");
+            result = lookup(Lookups.DOCTOR_BY_ID, sId);
         } catch (SQLException e) {
             e.printStackTrace();
             return;
@@ -408,7 +669,7 @@ class WolfHospital {
         //Execute the update
         try {
             ps.executeUpdate();
-            result = statement.executeQuery("SELECT * FROM MedicalRecord WHERE patientId = " + pId);
+            result = lookup(Lookups.MEDICAL_RECORD_BY_PATIENT, pId);
 
         } catch (SQLException e) {
             e.printStackTrace();
@@ -463,7 +724,7 @@ class WolfHospital {
 
         //Query database for given patient
         try {
-            result = statement.executeQuery("SELECT * FROM Patient WHERE id = " + pId);
+            result = lookup(Lookups.PATIENT_BY_ID, pId);
         } catch (SQLException e) {
             e.printStackTrace();
             return;
@@ -485,7 +746,7 @@ class WolfHospital {
 
         //Check if patient already has medical record
         try {
-            result = statement.executeQuery("SELECT * FROM MedicalRecord WHERE patientId = " + pId);
+            result = lookup(Lookups.MEDICAL_RECORD_BY_PATIENT, pId);
         } catch (SQLException e) {
             e.printStackTrace();
             return;
@@ -544,6 +805,11 @@ class WolfHospital {
                     printMedicalRecordUpdateOptions();
                     break;
 
+                case "7" :
+                    updateStartDateForMedicalRecord(input, pId);
+                    printMedicalRecordUpdateOptions();
+                    break;
+
                 case "p" :
                     printMedicalRecordUpdateOptions();
                     break;
@@ -576,6 +842,7 @@ class WolfHospital {
         System.out.println("4 - Add Diagnosis Details");
         System.out.println("5 - Update End date for Medical Record");
         System.out.println("6 - Update End date for Check-In");
+        System.out.println("7 - Update Start date for Medical Record");
         System.out.println("p - Print options");
         System.out.println("exit - Return to main menu");
     }
@@ -587,51 +854,8 @@ class WolfHospital {
      * @param input Scanner for user input
      */
     public void updateWithTest(Scanner input, int pId) {
-        String query = "INSERT INTO Test VALUES(?, ?, ?)";
-        try {
-            ps = connection.prepareStatement(query);
-        } catch (SQLException e) {
-            e.printStackTrace();
-            return;
-        }
-
-        System.out.println("Please enter the test ID.");
         int testId = 0;
 
-        //Get the test ID from input
-        try {
-            testId = Integer.parseInt(input.nextLine());
-        } catch (NumberFormatException e) {
-            System.err.println("Test ID must be an integer");
-            return;
-        }
-
-
-        //Query database for given test
-        try {
-            result = statement.executeQuery("SELECT * FROM Test WHERE id = " + testId);
-        } catch (SQLException e) {
-            e.printStackTrace();
-            return;
-        }
-
-
-        //If test exists quit
-        try {
-
-            if (result.next()) {
-                System.err.println("That Test already exists in the database.");
-                return;
-            } else {
-                ps.setInt(1, testId);
-            }
-
-        } catch (SQLException e) {
-            e.printStackTrace();
-            return;
-        }
-
-
         System.out.println("Please enter the name of the Test.");
         String name = null;
 
@@ -668,21 +892,13 @@ class WolfHospital {
         }
 
 
-        //Set the name and results
+        //Insert the test and add it to the medical record as one unit
         try {
-            ps.setString(2, name);
-            ps.setString(3, results);
-        } catch (SQLException e) {
-            e.printStackTrace();
+            testId = service().addTest(pId, 0, name, results);
+            result = lookup(Lookups.TEST_BY_ID, testId);
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            System.err.println(e.getMessage());
             return;
-        }
-
-
-        //Execute the update
-        try {
-            ps.executeUpdate();
-            result = statement.executeQuery("SELECT * FROM Test WHERE id = " + testId);
-
         } catch (SQLException e) {
             e.printStackTrace();
             return;
@@ -706,17 +922,6 @@ class WolfHospital {
         System.out.println("New Test created with: ID = " + id + ", Name = " + n + ", Results = " + r);
 
 
-        query = "INSERT INTO AddTest VALUES(?, ?)";
-        try {
-            ps = connection.prepareStatement(query);
-            ps.setInt(1,  testId);
-            ps.setInt(2, pId);
-            ps.executeUpdate();
-        } catch (SQLException e) {
-            e.printStackTrace();
-            return;
-        }
-
         System.out.println("Test ID " + testId + " added to Medical Record of patient with ID " + pId);
 
         try {
@@ -771,51 +976,8 @@ class WolfHospital {
      * @param pId patient ID
      */
     public void addNewPrescription(Scanner input, int pId) {
-        String query = "INSERT INTO Prescription VALUES(?, ?)";
-        try {
-            ps = connection.prepareStatement(query);
-        } catch (SQLException e) {
-            e.printStackTrace();
-            return;
-        }
-
-        System.out.println("Please enter the prescription ID.");
         int preId = 0;
 
-        //Get the prescription ID from input
-        try {
-            preId = Integer.parseInt(input.nextLine());
-        } catch (NumberFormatException e) {
-            System.err.println("Prescription ID must be an integer");
-            return;
-        }
-
-
-        //Query database for given prescription
-        try {
-            result = statement.executeQuery("SELECT * FROM Prescription WHERE id = " + preId);
-        } catch (SQLException e) {
-            e.printStackTrace();
-            return;
-        }
-
-
-        //If prescription exists quit
-        try {
-
-            if (result.next()) {
-                System.err.println("That prescription already exists in the database.");
-                return;
-            } else {
-                ps.setInt(1, preId);
-            }
-
-        } catch (SQLException e) {
-            e.printStackTrace();
-            return;
-        }
-
-
         System.out.println("Please enter the name of the prescription.");
         String name = null;
 
@@ -833,20 +995,13 @@ class WolfHospital {
         }
 
 
-        //Set the name
+        //Insert the prescription and add it to the medical record as one unit
         try {
-            ps.setString(2, name);
-        } catch (SQLException e) {
-            e.printStackTrace();
+            preId = service().addPrescription(pId, 0, name);
+            result = lookup(Lookups.PRESCRIPTION_BY_ID, preId);
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            System.err.println(e.getMessage());
             return;
-        }
-
-
-        //Execute the update
-        try {
-            ps.executeUpdate();
-            result = statement.executeQuery("SELECT * FROM Prescription WHERE id = " + preId);
-
         } catch (SQLException e) {
             e.printStackTrace();
             return;
@@ -868,17 +1023,6 @@ class WolfHospital {
         System.out.println("New prescription created with: ID = " + id + ", Name = " + n);
 
 
-        query = "INSERT INTO AddPrescription VALUES(?, ?)";
-        try {
-            ps = connection.prepareStatement(query);
-            ps.setInt(1,  preId);
-            ps.setInt(2, pId);
-            ps.executeUpdate();
-        } catch (SQLException e) {
-            e.printStackTrace();
-            return;
-        }
-
         System.out.println("Prescription ID " + preId + " added to Medical Record of patient with ID " + pId);
 
         try {
@@ -932,40 +1076,6 @@ class WolfHospital {
      */
     public void addNewCheckInInfo(Scanner input, int pId) {
 
-        //Query database for given check in for patient
-        try {
-            result = statement.executeQuery("SELECT * FROM CheckInInformation WHERE patientId = " + pId);
-        } catch (SQLException e) {
-            e.printStackTrace();
-            return;
-        }
-
-
-        //If check-in exists exists quit
-        try {
-
-            if (result.next()) {
-                System.err.println("This patient already has a check-in associated with their Medical Record.");
-                return;
-            }
-
-        } catch (SQLException e) {
-            e.printStackTrace();
-            return;
-        }
-
-
-        String query = "INSERT INTO CheckInInformation VALUES(?, ?, ?, ?, ?)";
-
-        try {
-            ps = connection.prepareStatement(query);
-            ps.setInt(1,  pId);
-        } catch (SQLException e) {
-            e.printStackTrace();
-            return;
-        }
-
-
         System.out.println("Please enter the Ward number for Check-In.");
         int wardNum = 0;
 
@@ -991,77 +1101,47 @@ class WolfHospital {
 
 
         System.out.println("Please enter the start date in the form yyyy-mm-dd");
-        String startDate = null;
+        LocalDate startDate = null;
 
         //Get the start date from input
         try {
-            startDate = input.nextLine();
-        } catch (Exception e) {
-            System.err.println("Invalid input");
+            startDate = new java.sql.Date(new SimpleDateFormat("yyyy-MM-dd").parse(input.nextLine()).getTime()).toLocalDate();
+        } catch (ParseException e) {
+            e.printStackTrace();
             return;
         }
 
-        //Parse the given date into a Date object
-        Date startDateUtil = null;
-        java.sql.Date sqlStartDate = null;
+
+        System.out.println("Please enter the end date in the form yyyy-mm-dd, if still active type na (not applicable) and press enter to continue.");
+        LocalDate endDate = null;
+
+        //Get the end date from input, na leaves the stay open
         try {
-            startDateUtil = new SimpleDateFormat("yyyy-MM-dd").parse(startDate);
-            sqlStartDate = new java.sql.Date(startDateUtil.getTime());
-            ps.setInt(2, wardNum);
-            ps.setInt(3, bedNum);
-            ps.setDate(4, sqlStartDate);
-        } catch (ParseException | SQLException e) {
+            String end = input.nextLine();
+            if (!end.toLowerCase().equals("na")) {
+                endDate = new java.sql.Date(new SimpleDateFormat("yyyy-MM-dd").parse(end).getTime()).toLocalDate();
+            }
+        } catch (ParseException e) {
             e.printStackTrace();
             return;
         }
 
 
-        System.out.println("Please enter the end date in the form yyyy-mm-dd, if still active type na (not applicable) and press enter to continue.");
-        String endDate = null;
-
-        //Get the end date from input
+        //Execute the update
         try {
-            endDate = input.nextLine();
-        } catch (Exception e) {
-            System.err.println("Invalid input");
+            service().createCheckInInfo(pId, wardNum, bedNum, startDate, endDate);
+            result = lookup(Lookups.CHECK_IN_BY_PATIENT, pId);
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            System.err.println(e.getMessage());
+            return;
+        } catch (SQLException e) {
+            e.printStackTrace();
             return;
         }
 
-
-        //Set the appropriate end date depending on user input
-        Date endDateUtil = null;
-        try {
-            if (!endDate.toLowerCase().equals("na")) {
-                endDateUtil = new SimpleDateFormat("yyyy-MM-dd").parse(endDate);
-                java.sql.Date sqlEndDate = new java.sql.Date(endDateUtil.getTime());
-                if (sqlEndDate.before(sqlStartDate)) {
-                    System.err.println("End date must be on or after the start date.");
-                    return;
-                }
-                ps.setDate(5, sqlEndDate);
-            } else {
-                ps.setNull(5, java.sql.Types.DATE);
-            }
-        } catch (ParseException | SQLException e) {
-            e.printStackTrace();
-            return;
-        }
-
-
-
-        //Execute the update
-        try {
-            ps.executeUpdate();
-            result = statement.executeQuery("SELECT * FROM CheckInInformation WHERE patientId = " + pId);
-
-        } catch (SQLException e) {
-            e.printStackTrace();
-            return;
-        }
-
-        //Show the updates in the database via query
-        int id = 0, wN = 0, bN = 0;
-        Date sDate = null, eDate = null;
+        //Show the updates in the database via query
+        int id = 0, wN = 0, bN = 0;
+        Date sDate = null, eDate = null;
 
         try {
             while (result.next()) {
@@ -1143,51 +1223,8 @@ class WolfHospital {
      * @param pId Patient's ID for update
      */
     public void updateWithDiagnosisDetails(Scanner input, int pId) {
-        String query = "INSERT INTO DiagnosisDetails VALUES(?, ?)";
-        try {
-            ps = connection.prepareStatement(query);
-        } catch (SQLException e) {
-            e.printStackTrace();
-            return;
-        }
-
-        System.out.println("Please enter the Diagnosis Details ID.");
         int diagId = 0;
 
-        //Get the diagnosis details ID from input
-        try {
-            diagId = Integer.parseInt(input.nextLine());
-        } catch (NumberFormatException e) {
-            System.err.println("Diagnosis Details ID must be an integer");
-            return;
-        }
-
-
-        //Query database for given diagnosis details
-        try {
-            result = statement.executeQuery("SELECT * FROM DiagnosisDetails WHERE id = " + diagId);
-        } catch (SQLException e) {
-            e.printStackTrace();
-            return;
-        }
-
-
-        //If diagnosis details exists quit
-        try {
-
-            if (result.next()) {
-                System.err.println("The diagnosis details already exist in the database.");
-                return;
-            } else {
-                ps.setInt(1, diagId);
-            }
-
-        } catch (SQLException e) {
-            e.printStackTrace();
-            return;
-        }
-
-
         System.out.println("Please enter the name of the diagnosis details.");
         String details = null;
 
@@ -1205,20 +1242,13 @@ class WolfHospital {
         }
 
 
-        //Set the name
+        //Insert the diagnosis details and add them to the medical record as one unit
         try {
-            ps.setString(2, details);
-        } catch (SQLException e) {
-            e.printStackTrace();
+            diagId = service().addDiagnosis(pId, 0, details);
+            result = lookup(Lookups.DIAGNOSIS_BY_ID, diagId);
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            System.err.println(e.getMessage());
             return;
-        }
-
-
-        //Execute the update
-        try {
-            ps.executeUpdate();
-            result = statement.executeQuery("SELECT * FROM DiagnosisDetails WHERE id = " + diagId);
-
         } catch (SQLException e) {
             e.printStackTrace();
             return;
@@ -1240,17 +1270,6 @@ class WolfHospital {
         System.out.println("New diagnosis details created with: ID = " + id + ", Details = " + n);
 
 
-        query = "INSERT INTO AddDiagnosis VALUES(?, ?)";
-        try {
-            ps = connection.prepareStatement(query);
-            ps.setInt(1,  diagId);
-            ps.setInt(2, pId);
-            ps.executeUpdate();
-        } catch (SQLException e) {
-            e.printStackTrace();
-            return;
-        }
-
         System.out.println("Diagnosis Details ID " + diagId + " added to Medical Record of patient with ID " + pId);
 
         try {
@@ -1303,7 +1322,7 @@ class WolfHospital {
     public void updateEndDateForMedicalRecord(Scanner input, int pId) {
         Date sqlStartDate = null;
         try {
-            result = statement.executeQuery("SELECT startDate FROM MedicalRecord WHERE patientId = " + pId);
+            result = lookup(Lookups.MEDICAL_RECORD_BY_PATIENT, pId);
             if (result.next()) {
                 sqlStartDate = result.getDate("startDate");
             }
@@ -1329,13 +1348,11 @@ class WolfHospital {
         Date endDateUtil = null;
         try {
             endDateUtil = new SimpleDateFormat("yyyy-MM-dd").parse(endDate);
-            java.sql.Date sqlEndDate = new java.sql.Date(endDateUtil.getTime());
-            if (sqlEndDate.before(sqlStartDate)) {
-                System.err.println("End date must be on or after the start date.");
-                return;
-            }
-            statement.executeUpdate("UPDATE MedicalRecord SET endDate = DATE '" + sqlEndDate.toString() + "' WHERE patientId = " + pId);
-            result = statement.executeQuery("SELECT * FROM MedicalRecord WHERE patientId = " + pId);
+            service().endMedicalRecord(pId, new java.sql.Date(endDateUtil.getTime()).toLocalDate());
+            result = lookup(Lookups.MEDICAL_RECORD_BY_PATIENT, pId);
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            System.err.println(e.getMessage());
+            return;
         } catch (ParseException | SQLException e) {
             e.printStackTrace();
             return;
@@ -1361,6 +1378,42 @@ class WolfHospital {
 
     }
 
+    /**
+     * Updates the start date for the given Patient's Medical Record
+     *
+     * @param input Scanner for user input
+     * @param pId Patient ID for update
+     */
+    public void updateStartDateForMedicalRecord(Scanner input, int pId) {
+        System.out.println("Please enter the new start date in the form yyyy-mm-dd. Must be on or before the end date of the Medical Record.");
+        String startDate = null;
+
+        //Get the start date from input
+        try {
+            startDate = input.nextLine();
+        } catch (Exception e) {
+            System.err.println("Invalid input");
+            return;
+        }
+
+        //Execute the update
+        try {
+            Date startDateUtil = new SimpleDateFormat("yyyy-MM-dd").parse(startDate);
+            service().updateMedicalRecordDates(pId, new java.sql.Date(startDateUtil.getTime()).toLocalDate(), null);
+            result = lookup(Lookups.MEDICAL_RECORD_BY_PATIENT, pId);
+            if (result.next()) {
+                Date eD = result.getDate("endDate");
+                System.out.println();
+                System.out.println("Update Medical Record: Patient ID = " + pId + ", Start Date = " + result.getDate("startDate") + ", End Date = "
+                        + (eD == null ? "NA" : eD.toString()) + ", Responsible Doctor = " + result.getInt("responsibleDoctor"));
+            }
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            System.err.println(e.getMessage());
+        } catch (ParseException | SQLException e) {
+            e.printStackTrace();
+        }
+    }
+
     /**
      * Updates the end date for the given Patient's Check-In information
      *
@@ -1370,10 +1423,12 @@ class WolfHospital {
     public void updateEndDateForCheckIn(Scanner input, int pId) {
         Date sqlStartDate = null;
         try {
-            result = statement.executeQuery("SELECT startDate FROM CheckInInformation WHERE patientId = " + pId);
-            if (result.next()) {
-                sqlStartDate = result.getDate("startDate");
+            result = lookup(Lookups.CHECK_IN_BY_PATIENT, pId);
+            if (!result.next()) {
+                System.err.println("That Patient does not have a Check-In");
+                return;
             }
+            sqlStartDate = result.getDate("startDate");
         } catch (SQLException e) {
             e.printStackTrace();
             return;
@@ -1396,13 +1451,11 @@ class WolfHospital {
         Date endDateUtil = null;
         try {
             endDateUtil = new SimpleDateFormat("yyyy-MM-dd").parse(endDate);
-            java.sql.Date sqlEndDate = new java.sql.Date(endDateUtil.getTime());
-            if (sqlEndDate.before(sqlStartDate)) {
-                System.err.println("End date must be on or after the start date.");
-                return;
-            }
-            statement.executeUpdate("UPDATE CheckInInformation SET endDate = DATE '" + sqlEndDate.toString() + "' WHERE patientId = " + pId);
-            result = statement.executeQuery("SELECT * FROM CheckInInformation WHERE patientId = " + pId);
+            service().checkOut(pId, new java.sql.Date(endDateUtil.getTime()).toLocalDate());
+            result = lookup(Lookups.CHECK_IN_BY_PATIENT, pId);
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            System.err.println(e.getMessage());
+            return;
         } catch (ParseException | SQLException e) {
             e.printStackTrace();
             return;
@@ -1450,7 +1503,7 @@ class WolfHospital {
 
         //Query database for given patient
         try {
-            result = statement.executeQuery("SELECT * FROM Patient WHERE id = " + pId);
+            result = lookup(Lookups.PATIENT_BY_ID, pId);
         } catch (SQLException e) {
             e.printStackTrace();
             return;
@@ -1470,65 +1523,28 @@ class WolfHospital {
             return;
         }
 
-        //Get the complete record as shown with demo data
+        //Get the record and every prescription, diagnosis and test added to it in one query
+        MedicalRecordView record = null;
         try {
-            result = statement.executeQuery("SELECT MedicalRecord.patientId, startDate, endDate, responsibleDoctor, name AS prescription, details as diagnosisDetails "
-                    + "FROM MedicalRecord INNER JOIN (Prescription INNER JOIN AddPrescription ON AddPrescription.prescriptionId = Prescription.id "
-                    + "INNER JOIN (DiagnosisDetails INNER JOIN AddDiagnosis ON AddDiagnosis.diagnosisId = DiagnosisDetails.id) ON AddPrescription.patientId = AddDiagnosis.patientId)"
-                    + "ON MedicalRecord.patientId = AddPrescription.patientId WHERE MedicalRecord.patientId = " + pId );
+            PreparedStatement view = connection.unwrap(StatementCache.class).prepare(MedicalRecordView.QUERY);
+            for (int i = 1; i <= MedicalRecordView.QUERY_PARAMETERS; i++) {
+                view.setInt(i, pId);
+            }
+            result = view.executeQuery();
+            record = MedicalRecordView.read(pId, result);
         } catch (SQLException e) {
             e.printStackTrace();
             return;
         }
 
-        //Show the updates in the database via query
-        int id = 0, rD = 0;
-        Date sD = null, eD = null;
-        StringBuilder pre = new StringBuilder();
-        StringBuilder dets = new StringBuilder();
-        String res = null, res2 = null;
-        try {
-            while (result.next()) {
-                id = result.getInt("patientID");
-                sD = result.getDate("startDate");
-                eD = result.getDate("endDate");
-                rD = result.getInt("responsibleDoctor");
-                res = result.getString("prescription");
-                if (!pre.toString().contains(res)) {
-                    pre.append(res + ", ");
-                }
-                res2 = result.getString("diagnosisDetails");
-                if (!dets.toString().contains(res2)) {
-                    dets.append(res2 + ", ");
-                }
-            }
-        } catch (SQLException e) {
-            e.printStackTrace();
+        if (record == null) {
+            System.err.println("That Patient does not have a medical record");
+            return;
         }
 
         System.out.println();
         System.out.println();
-        if (eD == null) {
-            System.out.println("Medical Record");
-            System.out.println("--------------------------");
-            System.out.println("Patient ID: " + id);
-            System.out.println("Start Date: " + sD.toString());
-            System.out.println("End Date: NA");
-            System.out.println("Responsible Doctor: " + rD);
-            System.out.println("Prescription: " + pre.toString().substring(0, pre.length() - 2));
-            System.out.println("Diagnosis Details: " + dets.toString().substring(0, dets.length() - 2));
-            System.out.println("--------------------------");
-        } else {
-            System.out.println("Medical Record");
-            System.out.println("--------------------------");
-            System.out.println("Patient ID: " + id);
-            System.out.println("Start Date: " + sD.toString());
-            System.out.println("End Date: " + eD.toString());
-            System.out.println("Responsible Doctor: " + rD);
-            System.out.println("Prescription: " + pre.toString().substring(0, pre.length() - 2));
-            System.out.println("Diagnosis Details: " + dets.toString().substring(0, dets.length() - 2));
-            System.out.println("--------------------------");
-        }
+        record.print(System.out);
     }
 
     /**
@@ -1539,47 +1555,18 @@ class WolfHospital {
      * @param input input from command line
      */
     public void enterNewStaffInformation(Scanner input) {
-        String query = "INSERT INTO Person VALUES(?, ?, ?, ?, ?, ?)";
-        try {
-            ps = connection.prepareStatement(query);
-        } catch (SQLException e) {
-            e.printStackTrace();
-            return;
-        }
-
-        System.out.println("Please enter person ID, the person must NOT be present in the database.");
         int pId = 0;
-        try {
-            pId = Integer.parseInt(input.nextLine());
-        } catch (NumberFormatException e) {
-            System.err.println("Person ID must be an integer");
-            return;
-        }
-
-        //Query database for given person, quit if person exists
-        try {
-            result = statement.executeQuery("SELECT * FROM Person WHERE id = " + pId);
-            if (result.next()) {
-                System.err.println("That person already exist in the database");
-                return;
-            } else {
-                ps.setInt(1, pId);
-            }
-        } catch (SQLException e) {
-            e.printStackTrace();
-            return;
-        }
 
         System.out.println("Please enter name of new staff.");
         String name = null;
         try {
             name = input.nextLine();
-            if (name.length() > 128) {
-                System.out.println("Name must be 128 characters or less");
+            String invalid = RecordValidator.checkName(name);
+            if (invalid != null) {
+                System.out.println(invalid);
                 return;
             }
-            ps.setString(2, name);
-        } catch (SQLException e) {
+        } catch (Exception e) {
             System.err.println("Invalid input");
             return;
         }
@@ -1588,8 +1575,7 @@ class WolfHospital {
         int age = 0;
         try {
             age = Integer.parseInt(input.nextLine());
-            ps.setInt(3, age);
-        } catch (Exception e) {
+        } catch (NumberFormatException e) {
             System.err.println("Person age must be an integer");
             return;
         }
@@ -1598,12 +1584,12 @@ class WolfHospital {
         String gender = null;
         try {
             gender = input.nextLine();
-            if (gender.length() > 2) {
-                System.out.println("Gender must be 2 characters or less");
+            String invalid = RecordValidator.checkGender(gender);
+            if (invalid != null) {
+                System.out.println(invalid);
                 return;
             }
-            ps.setString(4, gender);
-        } catch (SQLException e) {
+        } catch (Exception e) {
             System.err.println("Invalid input");
             return;
         }
@@ -1612,12 +1598,12 @@ class WolfHospital {
         String addr = null;
         try {
             addr = input.nextLine();
-            if (addr.length() > 128) {
-                System.out.println("Address must be 128 characters or less");
+            String invalid = RecordValidator.checkAddress(addr);
+            if (invalid != null) {
+                System.out.println(invalid);
                 return;
             }
-            ps.setString(5, addr);
-        } catch (SQLException e) {
+        } catch (Exception e) {
             System.err.println("Invalid input");
             return;
         }
@@ -1626,65 +1612,23 @@ class WolfHospital {
         String phone = null;
         try {
             phone = input.nextLine();
-            if (phone.length() > 13) {
-                System.out.println("Phone number must be 13 characters or less");
+            String invalid = RecordValidator.checkPhone(phone);
+            if (invalid != null) {
+                System.out.println(invalid);
                 return;
             }
-            ps.setString(6, phone);
-        } catch (SQLException e) {
+        } catch (Exception e) {
             System.err.println("Invalid input");
             return;
         }
 
-        //Execute the update for person table
-        try {
-            ps.executeUpdate();
-            result = statement.executeQuery("SELECT * FROM Person WHERE Id = " + pId);
-
-        } catch (SQLException e) {
-            e.printStackTrace();
-            return;
-        }
-
-        //Show the updates in the database via query
-        int id = 0;
-        String pName = null;
-        int pAge = 0;
-        String pGender = null;
-        String pAddr = null;
-        String pPhone = null;
-        try {
-            while (result.next()) {
-                id = result.getInt("id");
-                pName = result.getString("name");
-                pAge = result.getInt("age");
-                pGender = result.getString("gender");
-                pAddr = result.getString("address");
-                pPhone = result.getString("phone");
-            }
-        } catch (SQLException e) {
-            e.printStackTrace();
-        }
-
-        System.out.println();
-        System.out.println();
-        System.out.println("New Person created with: ID = " + id + ", name = " + pName + ", age = " + pAge + ", gender = " + pGender + ", address = "
-                + pAddr + ", phone number = " + pPhone);
-
-        query = "INSERT INTO Staff VALUES(?, ?, ?, ?)";
-        try {
-            ps = connection.prepareStatement(query);
-        } catch (SQLException e) {
-            e.printStackTrace();
-            return;
-        }
-
         System.out.println("Please enter job title of new staff.");
         String jobTitle = null;
         try {
             jobTitle = input.nextLine();
-            if (jobTitle.length() > 128) {
-                System.out.println("Job title must be 128 characters or less");
+            String invalid = RecordValidator.checkTitle("Job title", jobTitle);
+            if (invalid != null) {
+                System.out.println(invalid);
                 return;
             }
         } catch (Exception e) {
@@ -1696,8 +1640,9 @@ class WolfHospital {
         String profTitle = null;
         try {
             profTitle = input.nextLine();
-            if (profTitle.length() > 128) {
-                System.out.println("Professional title must be 128 characters or less");
+            String invalid = RecordValidator.checkTitle("Professional title", profTitle);
+            if (invalid != null) {
+                System.out.println(invalid);
                 return;
             }
         } catch (Exception e) {
@@ -1709,8 +1654,9 @@ class WolfHospital {
         String department = null;
         try {
             department = input.nextLine();
-            if (department.length() > 128) {
-                System.out.println("Department must be 128 characters or less");
+            String invalid = RecordValidator.checkTitle("Department", department);
+            if (invalid != null) {
+                System.out.println(invalid);
                 return;
             }
         } catch (Exception e) {
@@ -1718,27 +1664,45 @@ class WolfHospital {
             return;
         }
 
-        //Set the staff information
+        //Insert the Person and Staff rows as one unit, so a failed Staff row leaves no Person behind
         try {
-            ps.setInt(1, pId);
-            ps.setString(2, jobTitle);
-            ps.setString(3, profTitle);
-            ps.setString(4, department);
+            pId = service().newStaff(0, name, age, gender, addr, phone, jobTitle, profTitle, department);
+            result = lookup(Lookups.PERSON_BY_ID, pId);
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            System.err.println(e.getMessage());
+            return;
         } catch (SQLException e) {
             e.printStackTrace();
             return;
         }
 
-        //Execute the update
+        //Show the updates in the database via query
+        int id = 0;
+        String pName = null;
+        int pAge = 0;
+        String pGender = null;
+        String pAddr = null;
+        String pPhone = null;
         try {
-            ps.executeUpdate();
-            result = statement.executeQuery("SELECT * FROM Staff WHERE id = " + pId);
-
+            while (result.next()) {
+                id = result.getInt("id");
+                pName = result.getString("name");
+                pAge = result.getInt("age");
+                pGender = result.getString("gender");
+                pAddr = result.getString("address");
+                pPhone = result.getString("phone");
+            }
+            result = lookup(Lookups.STAFF_BY_ID, pId);
         } catch (SQLException e) {
             e.printStackTrace();
             return;
         }
 
+        System.out.println();
+        System.out.println();
+        System.out.println("New Person created with: ID = " + id + ", name = " + pName + ", age = " + pAge + ", gender = " + pGender + ", address = "
+                + pAddr + ", phone number = " + pPhone);
+
         //Show the updates in the database via query
         int tId = 0;
         String jT = null;
@@ -1777,9 +1741,10 @@ class WolfHospital {
         }
 
         //Query database for given person, quit if person does not exist
+        EntityPatch[] changes;
         try {
-            result = statement.executeQuery("SELECT * FROM Person WHERE id = " + pId);
-            if (!result.next()) {
+            changes = staffChanges(pId);
+            if (changes == null) {
                 System.err.println("That Person does not exist in the database");
                 return;
             }
@@ -1788,6 +1753,7 @@ class WolfHospital {
             return;
         }
 
+        //Changes are kept until they are saved, then written with one update per table
         printPersonInformationUpdateOptions();
         while (true) {
             String in = input.nextLine();
@@ -1795,55 +1761,61 @@ class WolfHospital {
             switch(in) {
 
                 case "1" :
-                    updateName(input, pId);
+                    stageChange(input, "Please enter new name of the staff.", changes[0], "name");
                     printPersonInformationUpdateOptions();
                     break;
 
                 case "2" :
-                    updateAge(input, pId);
+                    stageChange(input, "Please enter new age of the staff.", changes[0], "age");
                     printPersonInformationUpdateOptions();
                     break;
 
                 case "3" :
-                    updateGender(input, pId);
+                    stageChange(input, "Please enter new gender of the staff (enter F for female or M for male).", changes[0], "gender");
                     printPersonInformationUpdateOptions();
                     break;
 
                 case "4" :
-                    updateAddress(input, pId);
+                    stageChange(input, "Please enter new address of the staff.", changes[0], "address");
                     printPersonInformationUpdateOptions();
                     break;
 
                 case "5" :
-                    updatePhoneNumber(input, pId);
+                    stageChange(input, "Please enter new phone number of the staff.", changes[0], "phone");
                     printPersonInformationUpdateOptions();
                     break;
 
                 case "6" :
-                    updateJobTitle(input, pId);
+                    stageChange(input, "Please enter new job title of the staff.", changes[1], "jobTitle");
                     printPersonInformationUpdateOptions();
                     break;
 
                 case "7" :
-                    updateProfessionalTitle(input, pId);
+                    stageChange(input, "Please enter new professional title of the staff, enter na if not applicable.", changes[1], "professionalTitle");
                     printPersonInformationUpdateOptions();
                     break;
 
                 case "8" :
-                    updateDepartment(input, pId);
+                    stageChange(input, "Please enter new department of the staff.", changes[1], "department");
+                    printPersonInformationUpdateOptions();
+                    break;
+
+                case "s" :
+                    changes = saveStaffChanges(changes);
                     printPersonInformationUpdateOptions();
                     break;
 
                 case "0" :
                     deletePerson(pId);
                     printReturnToMenu();
-                    break;
+                    return;
 
                 case "p" :
                     printPersonInformationUpdateOptions();
                     break;
 
                 case "exit" :
+                    saveStaffChanges(changes);
                     return;
 
                 default:
@@ -1871,148 +1843,155 @@ class WolfHospital {
         System.out.println("6 - Update Job Title");
         System.out.println("7 - Update Professional Title");
         System.out.println("8 - Update Department");
+        System.out.println("s - Save changes");
         System.out.println("0 - Delete Person");
         System.out.println("p - Print options");
-        System.out.println("exit - Return to main menu");
+        System.out.println("exit - Save changes and return to main menu");
     }
 
     /**
-     * Updates name for given person
-     * @param input Scanner for user input
+     * Reads a staff member and starts empty changes to their Person and Staff rows
      * @param pId person ID
+     * @return the Person changes followed by the Staff changes, or null if the person does not exist
+     * @throws SQLException if the lookup fails
      */
-    public void updateName(Scanner input, int pId) {
+    private EntityPatch[] staffChanges(int pId) throws SQLException {
+        result = lookup(Lookups.PERSON_BY_ID, pId);
+        if (!result.next()) {
+            return null;
+        }
+        EntityPatch person = new EntityPatch(EntityPatch.Table.PERSON, pId).baseline(result);
+        EntityPatch staff = new EntityPatch(EntityPatch.Table.STAFF, pId);
+        result = lookup(Lookups.STAFF_BY_ID, pId);
+        if (result.next()) {
+            staff.baseline(result);
+        }
+        return new EntityPatch[] {person, staff};
+    }
 
-        System.out.println("Please enter new name of the staff.");
-        String name = null;
-        try {
-            name = input.nextLine();
-            if (name.length() > 128) {
-                System.out.println("Name must be 128 characters or less");
-                return;
-            }
-        } catch (Exception e) {
-            System.err.println("Invalid input");
-            return;
+    /**
+     * Saves the changes of a staff member and shows the updated staff member
+     * @param changes the Person changes followed by the Staff changes
+     * @return changes to continue with, empty once saved and unchanged if the save failed
+     */
+    private EntityPatch[] saveStaffChanges(EntityPatch[] changes) {
+        if (!saveChanges(changes)) {
+            return changes;
         }
 
-        String query = "UPDATE Person SET name = " + "\"" + name + "\"" + "WHERE id = " + pId;
+        //Query database for given person
+        int pId = changes[0].getKey();
+        EntityPatch[] saved;
         try {
-            ps = connection.prepareStatement(query);
-            ps.executeUpdate();
+            saved = staffChanges(pId);
+            if (saved == null) {
+                return changes;
+            }
         } catch (SQLException e) {
             e.printStackTrace();
-            return;
+            return changes;
         }
 
-        //Query database for given person
+        //Show the updates in the database via query
         try {
-            result = statement.executeQuery("SELECT * FROM Person WHERE id = " + pId);
+            result = lookup(Lookups.PERSON_BY_ID, pId);
+            ResultSet staff = lookup(Lookups.STAFF_BY_ID, pId);
+            if (result.next()) {
+                boolean isStaff = staff.next();
+                System.out.println();
+                System.out.println();
+                System.out.println("Staff updated with: ID = " + pId + ", name = " + result.getString("name") + ", age = " + result.getInt("age")
+                        + ", gender = " + result.getString("gender") + ", address = " + result.getString("address") + ", phone number = " + result.getString("phone")
+                        + ", Job title = " + (isStaff ? staff.getString("jobTitle") : null) + ", Professional title = " + (isStaff ? staff.getString("professionalTitle") : null)
+                        + ", department = " + (isStaff ? staff.getString("department") : null));
+            }
         } catch (SQLException e) {
             e.printStackTrace();
-            return;
         }
+        return saved;
+    }
 
-        //Show the updates in the database via query
-        int id = 0;
-        String pName = null;
-        int pAge = 0;
-        String pGender = null;
-        String pAddr = null;
-        String pPhone = null;
+    /**
+     * Deletes information in Person table and Staff table
+     * @param pId person ID
+     */
+    public void deletePerson(int pId) {
         try {
-            while (result.next()) {
-                id = result.getInt("id");
-                pName = result.getString("name");
-                pAge = result.getInt("age");
-                pGender = result.getString("gender");
-                pAddr = result.getString("address");
-                pPhone = result.getString("phone");
+            if (service().deleteStaff(pId)) {
+                System.out.println("Person deleted with id = " + pId);
+            } else {
+                System.err.println("That Person does not exist in the database");
             }
         } catch (SQLException e) {
+            System.err.println("Person fail to delete");
             e.printStackTrace();
         }
-
-        System.out.println();
-        System.out.println();
-        System.out.println("Person name updated with: ID = " + id + ", name = " + pName + ", age = " + pAge + ", gender = " + pGender + ", address = "
-                + pAddr + ", phone number = " + pPhone);
-
     }
 
     /**
-     * Updates age for given person
-     * @param input Scanner for user input
-     * @param pId person ID
+     * Enters new patient information
+     * Create new tuple in Person table for basic information and
+     *
+     * @param input input from command line
      */
-    public void updateAge(Scanner input, int pId) {
+    public void enterNewPatientInformation(Scanner input) {
 
-        System.out.println("Please enter new age of the staff.");
-        int age = 0;
+        int pId = 0;
+
+        System.out.println("Please enter SSN of new patient, enter na if no SSN is applicable.");
+        String ssn = null;
         try {
-            age = Integer.parseInt(input.nextLine());
-        } catch (NumberFormatException e) {
-            System.err.println("Person age must be an integer");
+            ssn = input.nextLine();
+            String invalid = RecordValidator.checkSSN(ssn);
+            if (invalid != null) {
+                System.out.println(invalid);
+                return;
+            }
+        } catch (Exception e) {
+            System.err.println("Invalid input");
             return;
         }
 
-        String query = "UPDATE Person SET age = " + age + " WHERE id = " + pId;
+        System.out.println("Please enter name of new patient.");
+        String name = null;
         try {
-            ps = connection.prepareStatement(query);
-            ps.executeUpdate();
-        } catch (SQLException e) {
-            e.printStackTrace();
+            name = input.nextLine();
+            String invalid = RecordValidator.checkName(name);
+            if (invalid != null) {
+                System.out.println(invalid);
+                return;
+            }
+        } catch (Exception e) {
+            System.err.println("Invalid input");
             return;
         }
 
-        //Query database for given person
+        System.out.println("Please enter the date of birth of new patient in form yyyy-mm-dd");
+        String dob = null;
         try {
-            result = statement.executeQuery("SELECT * FROM Person WHERE id = " + pId);
-        } catch (SQLException e) {
-            e.printStackTrace();
+            dob = input.nextLine();
+        } catch (Exception e) {
+            System.err.println("Invalid input");
             return;
         }
-
-        //Show the updates in the database via query
-        int id = 0;
-        String pName = null;
-        int pAge = 0;
-        String pGender = null;
-        String pAddr = null;
-        String pPhone = null;
+        //Parse the given date into a Date object
+        Date dateOfBirth = null;
+        java.sql.Date sqlDate = null;
         try {
-            while (result.next()) {
-                id = result.getInt("id");
-                pName = result.getString("name");
-                pAge = result.getInt("age");
-                pGender = result.getString("gender");
-                pAddr = result.getString("address");
-                pPhone = result.getString("phone");
-            }
-        } catch (SQLException e) {
+            dateOfBirth = new SimpleDateFormat("yyyy-MM-dd").parse(dob);
+            sqlDate = new java.sql.Date(dateOfBirth.getTime());
+        } catch (Exception e) {
             e.printStackTrace();
+            return;
         }
 
-        System.out.println();
-        System.out.println();
-        System.out.println("Person age updated with: ID = " + id + ", name = " + pName + ", age = " + pAge + ", gender = " + pGender + ", address = "
-                + pAddr + ", phone number = " + pPhone);
-
-    }
-
-    /**
-     * Updates gender for given person
-     * @param input Scanner for user input
-     * @param pId person ID
-     */
-    public void updateGender(Scanner input, int pId) {
-
-        System.out.println("Please enter new gender of the staff.");
+        System.out.println("Please enter gender of new patient (enter F for female or M for male).");
         String gender = null;
         try {
             gender = input.nextLine();
-            if (gender.length() > 2) {
-                System.out.println("Gender must be 2 characters or less");
+            String invalid = RecordValidator.checkGender(gender);
+            if (invalid != null) {
+                System.out.println(invalid);
                 return;
             }
         } catch (Exception e) {
@@ -2020,63 +1999,59 @@ class WolfHospital {
             return;
         }
 
-        String query = "UPDATE Person SET gender = " + "\"" + gender + "\"" + "WHERE id = " + pId;
+        System.out.println("Please enter age of new patient in integer form.");
+        int age = 0;
         try {
-            ps = connection.prepareStatement(query);
-            ps.executeUpdate();
-        } catch (SQLException e) {
-            e.printStackTrace();
+            age = Integer.parseInt(input.nextLine());
+        } catch (Exception e) {
+            System.err.println("Patient age must be an integer");
             return;
         }
 
-        //Query database for given person
+        System.out.println("Please enter phone number of new patient.");
+        String phone = null;
         try {
-            result = statement.executeQuery("SELECT * FROM Person WHERE id = " + pId);
-        } catch (SQLException e) {
-            e.printStackTrace();
+            phone = input.nextLine();
+            String invalid = RecordValidator.checkPhone(phone);
+            if (invalid != null) {
+                System.out.println(invalid);
+                return;
+            }
+        } catch (Exception e) {
+            System.err.println("Invalid input");
             return;
         }
 
-        //Show the updates in the database via query
-        int id = 0;
-        String pName = null;
-        int pAge = 0;
-        String pGender = null;
-        String pAddr = null;
-        String pPhone = null;
+        System.out.println("Please enter address of new staff, use \",\" to seperate road name with city name.");
+        String addr = null;
         try {
-            while (result.next()) {
-                id = result.getInt("id");
-                pName = result.getString("name");
-                pAge = result.getInt("age");
-                pGender = result.getString("gender");
-                pAddr = result.getString("address");
-                pPhone = result.getString("phone");
+            addr = input.nextLine();
+            String invalid = RecordValidator.checkAddress(addr);
+            if (invalid != null) {
+                System.out.println(invalid);
+                return;
             }
-        } catch (SQLException e) {
-            e.printStackTrace();
+        } catch (Exception e) {
+            System.err.println("Invalid input");
+            return;
         }
 
-        System.out.println();
-        System.out.println();
-        System.out.println("Person gender updated with: ID = " + id + ", name = " + pName + ", age = " + pAge + ", gender = " + pGender + ", address = "
-                + pAddr + ", phone number = " + pPhone);
-
-    }
-
-    /**
-     * Updates address for given person
-     * @param input Scanner for user input
-     * @param pId person ID
-     */
-    public void updateAddress(Scanner input, int pId) {
+        System.out.println("Please enter processing treatment plan of new patient in integer form.");
+        int processingTreatment = 0;
+        try {
+            processingTreatment = Integer.parseInt(input.nextLine());
+        } catch (Exception e) {
+            System.err.println("Processing treatment plan must be an integer");
+            return;
+        }
 
-        System.out.println("Please enter new address of the staff.");
-        String addr = null;
+        System.out.println("Please indicate whether new patient is in ward (yes or no).");
+        String isInWard = null;
         try {
-            addr = input.nextLine();
-            if (addr.length() > 128) {
-                System.out.println("Address must be 128 characters or less");
+            isInWard = input.nextLine();
+            String invalid = RecordValidator.checkYesNo(isInWard);
+            if (invalid != null) {
+                System.out.println(invalid);
                 return;
             }
         } catch (Exception e) {
@@ -2084,18 +2059,27 @@ class WolfHospital {
             return;
         }
 
-        String query = "UPDATE Person SET address = " + "\"" + addr + "\"" + "WHERE id = " + pId;
+        System.out.println("Please indicate whether new patient has completed treatment (yes or no).");
+        String completedTreatment = null;
         try {
-            ps = connection.prepareStatement(query);
-            ps.executeUpdate();
-        } catch (SQLException e) {
-            e.printStackTrace();
+            completedTreatment = input.nextLine();
+            String invalid = RecordValidator.checkYesNo(completedTreatment);
+            if (invalid != null) {
+                System.out.println(invalid);
+                return;
+            }
+        } catch (Exception e) {
+            System.err.println("Invalid input");
             return;
         }
 
-        //Query database for given person
+        //Execute the update for patient table
         try {
-            result = statement.executeQuery("SELECT * FROM Person WHERE id = " + pId);
+            pId = service().newPatient(0, ssn, name, sqlDate.toLocalDate(), gender, age, phone, addr, processingTreatment, isInWard, completedTreatment);
+            result = lookup(Lookups.PATIENT_BY_ID, pId);
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            System.err.println(e.getMessage());
+            return;
         } catch (SQLException e) {
             e.printStackTrace();
             return;
@@ -2103,19 +2087,30 @@ class WolfHospital {
 
         //Show the updates in the database via query
         int id = 0;
+        String pSSN = null;
         String pName = null;
-        int pAge = 0;
+        Date pDOB = null;
         String pGender = null;
-        String pAddr = null;
+        int pAge = 0;
         String pPhone = null;
+        String pAddr = null;
+        int pPlan = 0;
+        String pIsInWard = null;
+        String pComp = null;
+
         try {
             while (result.next()) {
                 id = result.getInt("id");
+                pSSN = result.getString("ssn");
                 pName = result.getString("name");
-                pAge = result.getInt("age");
+                pDOB = result.getDate("dob");
                 pGender = result.getString("gender");
-                pAddr = result.getString("address");
+                pAge = result.getInt("age");
                 pPhone = result.getString("phone");
+                pAddr = result.getString("address");
+                pPlan = result.getInt("treatment");
+                pIsInWard = result.getString("inWard");
+                pComp = result.getString("status");
             }
         } catch (SQLException e) {
             e.printStackTrace();
@@ -2123,1391 +2118,177 @@ class WolfHospital {
 
         System.out.println();
         System.out.println();
-        System.out.println("Person address updated with: ID = " + id + ", name = " + pName + ", age = " + pAge + ", gender = " + pGender + ", address = "
-                + pAddr + ", phone number = " + pPhone);
+        System.out.println("New Patient created with: ID = " + id + ", SSN = " + pSSN + ", name = " + pName + ", date of birth = " + pDOB + ", gender = " + pGender + ", age = " + pAge + ", phone number = " + pPhone
+                + ", address = " + pAddr + ", processing treatment plan = " + pPlan + ", is in ward = " + pIsInWard + ", completing treatment = " + pComp);
 
     }
 
     /**
-     * Updates address for given person
-     * @param input Scanner for user input
-     * @param pId person ID
+     * Updates information of an existing staff
+     * @param input input from command line
      */
-    public void updatePhoneNumber(Scanner input, int pId) {
-
-        System.out.println("Please enter new phone number of the staff.");
-        String phone = null;
+    public void updatePatientInformation(Scanner input) {
+        System.out.println("Please enter patient ID, the patient must already be present in the database.");
+        int pId = 0;
         try {
-            phone = input.nextLine();
-            if (phone.length() > 13) {
-                System.out.println("Phone number must be 13 characters or less");
-                return;
-            }
-        } catch (Exception e) {
-            System.err.println("Invalid input");
+            pId = Integer.parseInt(input.nextLine());
+        } catch (NumberFormatException e) {
+            System.err.println("Person ID must be an integer");
             return;
         }
 
-        String query = "UPDATE Person SET phone = " + "\"" + phone + "\"" + "WHERE id = " + pId;
+        //Query database for given patient, quit if patient does not exist
+        EntityPatch changes;
         try {
-            ps = connection.prepareStatement(query);
-            ps.executeUpdate();
+            result = lookup(Lookups.PATIENT_BY_ID, pId);
+            if (!result.next()) {
+                System.err.println("That Patient does not exist in the database");
+                return;
+            }
+            changes = new EntityPatch(EntityPatch.Table.PATIENT, pId).baseline(result);
         } catch (SQLException e) {
             e.printStackTrace();
             return;
         }
 
-        //Query database for given person
-        try {
-            result = statement.executeQuery("SELECT * FROM Person WHERE id = " + pId);
-        } catch (SQLException e) {
-            e.printStackTrace();
-            return;
-        }
+        //Changes are kept until they are saved, then written with one update
+        printPatientInformationUpdateOptions();
+        while (true) {
+            String in = input.nextLine();
+            in = in.toLowerCase();
+            switch(in) {
 
-        //Show the updates in the database via query
-        int id = 0;
-        String pName = null;
-        int pAge = 0;
-        String pGender = null;
-        String pAddr = null;
-        String pPhone = null;
-        try {
-            while (result.next()) {
-                id = result.getInt("id");
-                pName = result.getString("name");
-                pAge = result.getInt("age");
-                pGender = result.getString("gender");
-                pAddr = result.getString("address");
-                pPhone = result.getString("phone");
-            }
-        } catch (SQLException e) {
-            e.printStackTrace();
-        }
-
-        System.out.println();
-        System.out.println();
-        System.out.println("Person phone number updated with: ID = " + id + ", name = " + pName + ", age = " + pAge + ", gender = " + pGender + ", address = "
-                + pAddr + ", phone number = " + pPhone);
-        System.out.println();
-
-
-    }
-
-    /**
-     * Updates job title for given person in staff table
-     * @param input Scanner for user input
-     * @param pId person ID
-     */
-    public void updateJobTitle(Scanner input, int pId) {
-        System.out.println("Please enter new job title of the staff.");
-        String jobTitle = null;
-        try {
-            jobTitle = input.nextLine();
-            if (jobTitle.length() > 128) {
-                System.out.println("Job title must be 128 characters or less");
-                return;
-            }
-        } catch (Exception e) {
-            System.err.println("Invalid input");
-            return;
-        }
-
-        String query = "UPDATE Staff SET jobTitle = " + "\"" + jobTitle + "\"" + "WHERE id = " + pId;
-        try {
-            ps = connection.prepareStatement(query);
-            ps.executeUpdate();
-        } catch (SQLException e) {
-            e.printStackTrace();
-            return;
-        }
-
-        //Query database for given person
-        try {
-            result = statement.executeQuery("SELECT * FROM Staff WHERE id = " + pId);
-        } catch (SQLException e) {
-            e.printStackTrace();
-            return;
-        }
-
-        //Show the updates in the database via query
-        int id = 0;
-        String jT = null;
-        String pT = null;
-        String dpt = null;
-        try {
-            while (result.next()) {
-                id = result.getInt("id");
-                jT = result.getString("jobTitle");
-                pT = result.getString("professionalTitle");
-                dpt = result.getString("department");
-            }
-        } catch (SQLException e) {
-            e.printStackTrace();
-        }
-
-        System.out.println();
-        System.out.println("Staff job title updated with: ID = " + id + ", Job title = " + jT + ", Professional title = " + pT + ", department = " + dpt);
-
-    }
-
-    /**
-     * Updates professional title for given person in staff table
-     * @param input Scanner for user input
-     * @param pId person ID
-     */
-    public void updateProfessionalTitle(Scanner input, int pId) {
-        System.out.println("Please enter new professional title of the staff, enter na if not applicable.");
-        String profTitle = null;
-        try {
-            profTitle = input.nextLine();
-            if (profTitle.length() > 128) {
-                System.out.println("Professional title must be 128 characters or less");
-                return;
-            }
-        } catch (Exception e) {
-            System.err.println("Invalid input");
-            return;
-        }
-
-        String query = "UPDATE Staff SET professionalTitle = " + "\"" + profTitle + "\"" + "WHERE id = " + pId;
-        try {
-            ps = connection.prepareStatement(query);
-            ps.executeUpdate();
-        } catch (SQLException e) {
-            e.printStackTrace();
-            return;
-        }
-
-        //Query database for given person
-        try {
-            result = statement.executeQuery("SELECT * FROM Staff WHERE id = " + pId);
-        } catch (SQLException e) {
-            e.printStackTrace();
-            return;
-        }
-
-        //Show the updates in the database via query
-        int id = 0;
-        String jT = null;
-        String pT = null;
-        String dpt = null;
-        try {
-            while (result.next()) {
-                id = result.getInt("id");
-                jT = result.getString("jobTitle");
-                pT = result.getString("professionalTitle");
-                dpt = result.getString("department");
-            }
-        } catch (SQLException e) {
-            e.printStackTrace();
-        }
-
-        System.out.println();
-        System.out.println("Staff professional title updated with: ID = " + id + ", Job title = " + jT + ", Professional title = " + pT + ", department = " + dpt);
-
-    }
-
-    /**
-     * Updates department for given person in staff table
-     * @param input Scanner for user input
-     * @param pId person ID
-     */
-    public void updateDepartment(Scanner input, int pId) {
-        System.out.println("Please enter new department of the staff.");
-        String department = null;
-        try {
-            department = input.nextLine();
-            if (department.length() > 128) {
-                System.out.println("Department must be 128 characters or less");
-                return;
-            }
-        } catch (Exception e) {
-            System.err.println("Invalid input");
-            return;
-        }
-
-        String query = "UPDATE Staff SET department = " + "\"" + department + "\"" + "WHERE id = " + pId;
-        try {
-            ps = connection.prepareStatement(query);
-            ps.executeUpdate();
-        } catch (SQLException e) {
-            e.printStackTrace();
-            return;
-        }
-
-        //Query database for given person
-        try {
-            result = statement.executeQuery("SELECT * FROM Staff WHERE id = " + pId);
-        } catch (SQLException e) {
-            e.printStackTrace();
-            return;
-        }
-
-        //Show the updates in the database via query
-        int id = 0;
-        String jT = null;
-        String pT = null;
-        String dpt = null;
-        try {
-            while (result.next()) {
-                id = result.getInt("id");
-                jT = result.getString("jobTitle");
-                pT = result.getString("professionalTitle");
-                dpt = result.getString("department");
-            }
-        } catch (SQLException e) {
-            e.printStackTrace();
-        }
-
-        System.out.println();
-        System.out.println("Staff department updated with: ID = " + id + ", Job title = " + jT + ", Professional title = " + pT + ", department = " + dpt);
-
-    }
-
-    /**
-     * Deletes information in Person table and Staff table
-     * @param pId person ID
-     */
-    public void deletePerson(int pId) {
-        String query = "DELETE FROM Person WHERE id = " + pId;
-        try {
-            ps = connection.prepareStatement(query);
-            ps.executeUpdate();
-        } catch (SQLException e) {
-            e.printStackTrace();
-            return;
-        }
-
-        query = "DELETE FROM Staff WHERE id = " + pId;
-        try {
-            ps = connection.prepareStatement(query);
-            ps.executeUpdate();
-        } catch (SQLException e) {
-            e.printStackTrace();
-            return;
-        }
-
-        try {
-            result = statement.executeQuery("SELECT * FROM Person WHERE id = " + pId);
-            if(!result.next()) {
-                System.out.println("Person deleted with id = " + pId);
-            } else {
-                System.err.println("Person fail to delete");
-                return;
-            }
-        } catch (SQLException e) {
-            e.printStackTrace();
-            return;
-        }
-
-    }
-
-    /**
-     * Enters new patient information
-     * Create new tuple in Person table for basic information and
-     *
-     * @param input input from command line
-     */
-    public void enterNewPatientInformation(Scanner input) {
-        String query = "INSERT INTO Patient VALUES(?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
-        try {
-            ps = connection.prepareStatement(query);
-        } catch (SQLException e) {
-            e.printStackTrace();
-            return;
-        }
-
-        System.out.println("Please enter patient ID, the patient must NOT be present in the database.");
-        int pId = 0;
-        try {
-            pId = Integer.parseInt(input.nextLine());
-        } catch (NumberFormatException e) {
-            System.err.println("Patient ID must be an integer");
-            return;
-        }
-
-        //Query database for given person, quit if person exists
-        try {
-            result = statement.executeQuery("SELECT * FROM Patient WHERE id = " + pId);
-            if (result.next()) {
-                System.err.println("That person already exist in the database");
-                return;
-            } else {
-                ps.setInt(1, pId);
-            }
-        } catch (SQLException e) {
-            e.printStackTrace();
-            return;
-        }
-
-        System.out.println("Please enter SSN of new patient, enter na if no SSN is applicable.");
-        String ssn = null;
-        try {
-            ssn = input.nextLine();
-            if (ssn.length() > 9) {
-                System.out.println("SSN must be 9 digits or less");
-                return;
-            }
-            ps.setString(2, ssn);
-        } catch (SQLException e) {
-            System.err.println("Invalid input");
-            return;
-        }
-
-        System.out.println("Please enter name of new patient.");
-        String name = null;
-        try {
-            name = input.nextLine();
-            if (name.length() > 128) {
-                System.out.println("Name must be 128 characters or less");
-                return;
-            }
-            ps.setString(3, name);
-        } catch (SQLException e) {
-            System.err.println("Invalid input");
-            return;
-        }
-
-        System.out.println("Please enter the date of birth of new patient in form yyyy-mm-dd");
-        String dob = null;
-        try {
-            dob = input.nextLine();
-        } catch (Exception e) {
-            System.err.println("Invalid input");
-            return;
-        }
-        //Parse the given date into a Date object
-        Date dateOfBirth = null;
-        java.sql.Date sqlDate = null;
-        try {
-            dateOfBirth = new SimpleDateFormat("yyyy-MM-dd").parse(dob);
-            sqlDate = new java.sql.Date(dateOfBirth.getTime());
-            ps.setDate(4, sqlDate);
-        } catch (Exception e) {
-            e.printStackTrace();
-            return;
-        }
-
-        System.out.println("Please enter gender of new patient (enter F for female or M for male).");
-        String gender = null;
-        try {
-            gender = input.nextLine();
-            if (gender.length() > 1) {
-                System.out.println("Please enter F for female or M for male.");
-                return;
-            }
-            ps.setString(5, gender);
-        } catch (SQLException e) {
-            System.err.println("Invalid input");
-            return;
-        }
-
-        System.out.println("Please enter age of new patient in integer form.");
-        int age = 0;
-        try {
-            age = Integer.parseInt(input.nextLine());
-            ps.setInt(6, age);
-        } catch (Exception e) {
-            System.err.println("Patient age must be an integer");
-            return;
-        }
-
-        System.out.println("Please enter phone number of new patient.");
-        String phone = null;
-        try {
-            phone = input.nextLine();
-            if (phone.length() > 10) {
-                System.out.println("Phone number must be 10 characters or less");
-                return;
-            }
-            ps.setString(7, phone);
-        } catch (SQLException e) {
-            System.err.println("Invalid input");
-            return;
-        }
-
-        System.out.println("Please enter address of new staff, use \",\" to seperate road name with city name.");
-        String addr = null;
-        try {
-            addr = input.nextLine();
-            if (addr.length() > 200) {
-                System.out.println("Address must be 200 characters or less");
-                return;
-            }
-            ps.setString(8, addr);
-        } catch (SQLException e) {
-            System.err.println("Invalid input");
-            return;
-        }
-
-        System.out.println("Please enter processing treatment plan of new patient in integer form.");
-        int processingTreatment = 0;
-        try {
-            processingTreatment = Integer.parseInt(input.nextLine());
-            ps.setInt(9, processingTreatment);
-        } catch (Exception e) {
-            System.err.println("Processing treatment plan must be an integer");
-            return;
-        }
-
-        System.out.println("Please indicate whether new patient is in ward (yes or no).");
-        String isInWard = null;
-        try {
-            isInWard = input.nextLine();
-            if (isInWard.length() > 3) {
-                System.out.println("Input must be 3 characters or less");
-                return;
-            }
-            ps.setString(10, isInWard);
-        } catch (SQLException e) {
-            System.err.println("Invalid input");
-            return;
-        }
-
-        System.out.println("Please indicate whether new patient has completed treatment (yes or no).");
-        String completedTreatment = null;
-        try {
-            completedTreatment = input.nextLine();
-            if (completedTreatment.length() > 3) {
-                System.out.println("Input must be 3 characters or less");
-                return;
-            }
-            ps.setString(11, completedTreatment);
-        } catch (SQLException e) {
-            System.err.println("Invalid input");
-            return;
-        }
-
-        //Execute the update for person table
-        try {
-            ps.executeUpdate();
-            result = statement.executeQuery("SELECT * FROM Patient WHERE Id = " + pId);
-
-        } catch (SQLException e) {
-            e.printStackTrace();
-            return;
-        }
-
-        //Show the updates in the database via query
-        int id = 0;
-        String pSSN = null;
-        String pName = null;
-        Date pDOB = null;
-        String pGender = null;
-        int pAge = 0;
-        String pPhone = null;
-        String pAddr = null;
-        int pPlan = 0;
-        String pIsInWard = null;
-        String pComp = null;
-
-        try {
-            while (result.next()) {
-                id = result.getInt("id");
-                pSSN = result.getString("ssn");
-                pName = result.getString("name");
-                pDOB = result.getDate("dob");
-                pGender = result.getString("gender");
-                pAge = result.getInt("age");
-                pPhone = result.getString("phone");
-                pAddr = result.getString("address");
-                pPlan = result.getInt("treatment");
-                pIsInWard = result.getString("inWard");
-                pComp = result.getString("status");
-            }
-        } catch (SQLException e) {
-            e.printStackTrace();
-        }
-
-        System.out.println();
-        System.out.println();
-        System.out.println("New Patient created with: ID = " + id + ", SSN = " + pSSN + ", name = " + pName + ", date of birth = " + pDOB + ", gender = " + pGender + ", age = " + pAge + ", phone number = " + pPhone
-                + ", address = " + pAddr + ", processing treatment plan = " + pPlan + ", is in ward = " + pIsInWard + ", completing treatment = " + pComp);
-
-    }
-
-    /**
-     * Updates information of an existing staff
-     * @param input input from command line
-     */
-    public void updatePatientInformation(Scanner input) {
-        System.out.println("Please enter patient ID, the patient must already be present in the database.");
-        int pId = 0;
-        try {
-            pId = Integer.parseInt(input.nextLine());
-        } catch (NumberFormatException e) {
-            System.err.println("Person ID must be an integer");
-            return;
-        }
-
-        //Query database for given patient, quit if patient does not exist
-        try {
-            result = statement.executeQuery("SELECT * FROM Patient WHERE id = " + pId);
-            if (!result.next()) {
-                System.err.println("That Patient does not exist in the database");
-                return;
-            }
-        } catch (SQLException e) {
-            e.printStackTrace();
-            return;
-        }
-
-        printPatientInformationUpdateOptions();
-        while (true) {
-            String in = input.nextLine();
-            in = in.toLowerCase();
-            switch(in) {
-
-                case "1" :
-                    updatePatientName(input, pId);
-                    printPatientInformationUpdateOptions();
-                    break;
-
-                case "2" :
-                    updatePatientAge(input, pId);
-                    printPatientInformationUpdateOptions();
-                    break;
-
-                case "3" :
-                    updatePatientGender(input, pId);
-                    printPatientInformationUpdateOptions();
-                    break;
-
-                case "4" :
-                    updatePatientAddress(input, pId);
-                    printPatientInformationUpdateOptions();
-                    break;
-
-                case "5" :
-                    updatePatientPhoneNumber(input, pId);
-                    printPatientInformationUpdateOptions();
-                    break;
-
-                case "6" :
-                    updatePatientSSN(input, pId);
-                    printPatientInformationUpdateOptions();
-                    break;
-
-                case "7" :
-                    updatePatientDateOfBirth(input, pId);
-                    printPatientInformationUpdateOptions();
-                    break;
-
-                case "8" :
-                    updateTreatmentPlan(input, pId);
-                    printPatientInformationUpdateOptions();
-                    break;
-
-                case "9" :
-                    updatePatientInWard(input, pId);
-                    printPatientInformationUpdateOptions();
-                    break;
-
-                case "10" :
-                    updateTreatmentStatus(input, pId);
-                    printPatientInformationUpdateOptions();
-                    break;
-
-                case "0" :
-                    deletePatient(pId);
-                    printReturnToMenu();
-                    break;
-
-                case "p" :
-                    printPatientInformationUpdateOptions();
-                    break;
-
-                case "exit" :
-                    return;
-
-                default:
-                    System.out.println("Invalid input");
-                    printPatientInformationUpdateOptions();
-                    break;
-            }
-        }
-    }
-
-    /**
-     * Prints the options for the information update menu
-     */
-    public void printPatientInformationUpdateOptions() {
-
-        System.out.println();
-        System.out.println();
-        System.out.println("What part of this patient's Information would you like to update?");
-        System.out.println();
-        System.out.println("1 - Update Name");
-        System.out.println("2 - Update Age");
-        System.out.println("3 - Update Gender");
-        System.out.println("4 - Update Address");
-        System.out.println("5 - Update Phone Number");
-        System.out.println("6 - Update SSN");
-        System.out.println("7 - Update Date of Birth");
-        System.out.println("8 - Update treatment plan");
-        System.out.println("9 - Update whether patient is in ward");
-        System.out.println("10 - Update whether patient is ccompleting treatment");
-        System.out.println("0 - Delete Patient");
-        System.out.println("p - Print options");
-        System.out.println("exit - Return to main menu");
-    }
-
-    /**
-     * Updates name for given patient
-     * @param input Scanner for user input
-     * @param pId patient ID
-     */
-    public void updatePatientName(Scanner input, int pId) {
-
-        System.out.println("Please enter new name of the patient.");
-        String name = null;
-        try {
-            name = input.nextLine();
-            if (name.length() > 128) {
-                System.out.println("Name must be 128 characters or less");
-                return;
-            }
-        } catch (Exception e) {
-            System.err.println("Invalid input");
-            return;
-        }
-
-        String query = "UPDATE Patient SET name = " + "\"" + name + "\"" + "WHERE id = " + pId;
-        try {
-            ps = connection.prepareStatement(query);
-            ps.executeUpdate();
-        } catch (SQLException e) {
-            e.printStackTrace();
-            return;
-        }
-
-        //Query database for given patient
-        try {
-            result = statement.executeQuery("SELECT * FROM Patient WHERE id = " + pId);
-        } catch (SQLException e) {
-            e.printStackTrace();
-            return;
-        }
-
-        //Show the updates in the database via query
-        int id = 0;
-        String pSSN = null;
-        String pName = null;
-        Date pDOB = null;
-        String pGender = null;
-        int pAge = 0;
-        String pPhone = null;
-        String pAddr = null;
-        int pPlan = 0;
-        String pIsInWard = null;
-        String pComp = null;
-
-        try {
-            while (result.next()) {
-                id = result.getInt("id");
-                pSSN = result.getString("ssn");
-                pName = result.getString("name");
-                pDOB = result.getDate("dob");
-                pGender = result.getString("gender");
-                pAge = result.getInt("age");
-                pPhone = result.getString("phone");
-                pAddr = result.getString("address");
-                pPlan = result.getInt("treatment");
-                pIsInWard = result.getString("inWard");
-                pComp = result.getString("status");
-            }
-        } catch (SQLException e) {
-            e.printStackTrace();
-        }
-
-        System.out.println();
-        System.out.println();
-        System.out.println("Patient name updated with: ID = " + id + ", SSN = " + pSSN + ", name = " + pName + ", date of birth = " + pDOB + ", gender = " + pGender + ", age = " + pAge + ", phone number = " + pPhone
-                + ", address = " + pAddr + ", processing treatment plan = " + pPlan + ", is in ward = " + pIsInWard + ", completing treatment = " + pComp);
-
-
-    }
-
-    /**
-     * Updates age for given patient
-     * @param input Scanner for user input
-     * @param pId person ID
-     */
-    public void updatePatientAge(Scanner input, int pId) {
-
-        System.out.println("Please enter new age of the patient.");
-        int age = 0;
-        try {
-            age = Integer.parseInt(input.nextLine());
-        } catch (NumberFormatException e) {
-            System.err.println("Patient age must be an integer");
-            return;
-        }
-
-        String query = "UPDATE Patient SET age = " + age + " WHERE id = " + pId;
-        try {
-            ps = connection.prepareStatement(query);
-            ps.executeUpdate();
-        } catch (SQLException e) {
-            e.printStackTrace();
-            return;
-        }
-
-        //Query database for given person
-        try {
-            result = statement.executeQuery("SELECT * FROM Patient WHERE id = " + pId);
-        } catch (SQLException e) {
-            e.printStackTrace();
-            return;
-        }
-
-        //Show the updates in the database via query
-        int id = 0;
-        String pSSN = null;
-        String pName = null;
-        Date pDOB = null;
-        String pGender = null;
-        int pAge = 0;
-        String pPhone = null;
-        String pAddr = null;
-        int pPlan = 0;
-        String pIsInWard = null;
-        String pComp = null;
-
-        try {
-            while (result.next()) {
-                id = result.getInt("id");
-                pSSN = result.getString("ssn");
-                pName = result.getString("name");
-                pDOB = result.getDate("dob");
-                pGender = result.getString("gender");
-                pAge = result.getInt("age");
-                pPhone = result.getString("phone");
-                pAddr = result.getString("address");
-                pPlan = result.getInt("treatment");
-                pIsInWard = result.getString("inWard");
-                pComp = result.getString("status");
-            }
-        } catch (SQLException e) {
-            e.printStackTrace();
-        }
-
-        System.out.println();
-        System.out.println();
-        System.out.println("Patient age updated with: ID = " + id + ", SSN = " + pSSN + ", name = " + pName + ", date of birth = " + pDOB + ", gender = " + pGender + ", age = " + pAge + ", phone number = " + pPhone
-                + ", address = " + pAddr + ", processing treatment plan = " + pPlan + ", is in ward = " + pIsInWard + ", completing treatment = " + pComp);
-
-
-    }
-
-    /**
-     * Updates gender for given patient
-     * @param input Scanner for user input
-     * @param pId patient ID
-     */
-    public void updatePatientGender(Scanner input, int pId) {
-
-        System.out.println("Please enter new gender of the patient.");
-        String gender = null;
-        try {
-            gender = input.nextLine();
-            if (gender.length() > 2) {
-                System.out.println("Gender must be 2 characters or less");
-                return;
-            }
-        } catch (Exception e) {
-            System.err.println("Invalid input");
-            return;
-        }
-
-        String query = "UPDATE Patient SET gender = " + "\"" + gender + "\"" + "WHERE id = " + pId;
-        try {
-            ps = connection.prepareStatement(query);
-            ps.executeUpdate();
-        } catch (SQLException e) {
-            e.printStackTrace();
-            return;
-        }
-
-        //Query database for given person
-        try {
-            result = statement.executeQuery("SELECT * FROM Patient WHERE id = " + pId);
-        } catch (SQLException e) {
-            e.printStackTrace();
-            return;
-        }
-
-        //Show the updates in the database via query
-        int id = 0;
-        String pSSN = null;
-        String pName = null;
-        Date pDOB = null;
-        String pGender = null;
-        int pAge = 0;
-        String pPhone = null;
-        String pAddr = null;
-        int pPlan = 0;
-        String pIsInWard = null;
-        String pComp = null;
-
-        try {
-            while (result.next()) {
-                id = result.getInt("id");
-                pSSN = result.getString("ssn");
-                pName = result.getString("name");
-                pDOB = result.getDate("dob");
-                pGender = result.getString("gender");
-                pAge = result.getInt("age");
-                pPhone = result.getString("phone");
-                pAddr = result.getString("address");
-                pPlan = result.getInt("treatment");
-                pIsInWard = result.getString("inWard");
-                pComp = result.getString("status");
-            }
-        } catch (SQLException e) {
-            e.printStackTrace();
-        }
-
-        System.out.println();
-        System.out.println();
-        System.out.println("Patient gender updated with: ID = " + id + ", SSN = " + pSSN + ", name = " + pName + ", date of birth = " + pDOB + ", gender = " + pGender + ", age = " + pAge + ", phone number = " + pPhone
-                + ", address = " + pAddr + ", processing treatment plan = " + pPlan + ", is in ward = " + pIsInWard + ", completing treatment = " + pComp);
-
-
-    }
-
-    /**
-     * Updates address for given patient
-     * @param input Scanner for user input
-     * @param pId patient ID
-     */
-    public void updatePatientAddress(Scanner input, int pId) {
-
-        System.out.println("Please enter new address of the patient.");
-        String addr = null;
-        try {
-            addr = input.nextLine();
-            if (addr.length() > 128) {
-                System.out.println("Address must be 128 characters or less");
-                return;
-            }
-        } catch (Exception e) {
-            System.err.println("Invalid input");
-            return;
-        }
-
-        String query = "UPDATE Patient SET address = " + "\"" + addr + "\"" + "WHERE id = " + pId;
-        try {
-            ps = connection.prepareStatement(query);
-            ps.executeUpdate();
-        } catch (SQLException e) {
-            e.printStackTrace();
-            return;
-        }
-
-        //Query database for given person
-        try {
-            result = statement.executeQuery("SELECT * FROM Patient WHERE id = " + pId);
-        } catch (SQLException e) {
-            e.printStackTrace();
-            return;
-        }
-
-        //Show the updates in the database via query
-        int id = 0;
-        String pSSN = null;
-        String pName = null;
-        Date pDOB = null;
-        String pGender = null;
-        int pAge = 0;
-        String pPhone = null;
-        String pAddr = null;
-        int pPlan = 0;
-        String pIsInWard = null;
-        String pComp = null;
-
-        try {
-            while (result.next()) {
-                id = result.getInt("id");
-                pSSN = result.getString("ssn");
-                pName = result.getString("name");
-                pDOB = result.getDate("dob");
-                pGender = result.getString("gender");
-                pAge = result.getInt("age");
-                pPhone = result.getString("phone");
-                pAddr = result.getString("address");
-                pPlan = result.getInt("treatment");
-                pIsInWard = result.getString("inWard");
-                pComp = result.getString("status");
-            }
-        } catch (SQLException e) {
-            e.printStackTrace();
-        }
-
-        System.out.println();
-        System.out.println();
-        System.out.println("Patient address updated with: ID = " + id + ", SSN = " + pSSN + ", name = " + pName + ", date of birth = " + pDOB + ", gender = " + pGender + ", age = " + pAge + ", phone number = " + pPhone
-                + ", address = " + pAddr + ", processing treatment plan = " + pPlan + ", is in ward = " + pIsInWard + ", completing treatment = " + pComp);
-
-
-    }
-
-    /**
-     * Updates address for given patient
-     * @param input Scanner for user input
-     * @param pId patient ID
-     */
-    public void updatePatientPhoneNumber(Scanner input, int pId) {
-
-        System.out.println("Please enter new phone number of the patient.");
-        String phone = null;
-        try {
-            phone = input.nextLine();
-            if (phone.length() > 13) {
-                System.out.println("Phone number must be 13 characters or less");
-                return;
-            }
-        } catch (Exception e) {
-            System.err.println("Invalid input");
-            return;
-        }
-
-        String query = "UPDATE Patient SET phone = " + "\"" + phone + "\"" + "WHERE id = " + pId;
-        try {
-            ps = connection.prepareStatement(query);
-            ps.executeUpdate();
-        } catch (SQLException e) {
-            e.printStackTrace();
-            return;
-        }
-
-        //Query database for given Patient
-        try {
-            result = statement.executeQuery("SELECT * FROM Patient WHERE id = " + pId);
-        } catch (SQLException e) {
-            e.printStackTrace();
-            return;
-        }
-
-        //Show the updates in the database via query
-        int id = 0;
-        String pSSN = null;
-        String pName = null;
-        Date pDOB = null;
-        String pGender = null;
-        int pAge = 0;
-        String pPhone = null;
-        String pAddr = null;
-        int pPlan = 0;
-        String pIsInWard = null;
-        String pComp = null;
-
-        try {
-            while (result.next()) {
-                id = result.getInt("id");
-                pSSN = result.getString("ssn");
-                pName = result.getString("name");
-                pDOB = result.getDate("dob");
-                pGender = result.getString("gender");
-                pAge = result.getInt("age");
-                pPhone = result.getString("phone");
-                pAddr = result.getString("address");
-                pPlan = result.getInt("treatment");
-                pIsInWard = result.getString("inWard");
-                pComp = result.getString("status");
-            }
-        } catch (SQLException e) {
-            e.printStackTrace();
-        }
-
-        System.out.println();
-        System.out.println();
-        System.out.println("Patient phone number updated with: ID = " + id + ", SSN = " + pSSN + ", name = " + pName + ", date of birth = " + pDOB + ", gender = " + pGender + ", age = " + pAge + ", phone number = " + pPhone
-                + ", address = " + pAddr + ", processing treatment plan = " + pPlan + ", is in ward = " + pIsInWard + ", completing treatment = " + pComp);
-
-
-    }
-
-    /**
-     * Updates SSN for given patient
-     * @param input Scanner for user input
-     * @param pId patient ID
-     */
-    public void updatePatientSSN(Scanner input, int pId) {
-
-        System.out.println("Please enter new SSN for patient.");
-        String ssn = null;
-        try {
-            ssn = input.nextLine();
-            if (ssn.length() > 9) {
-                System.out.println("SSN must be 9 digits or less");
-                return;
-            }
-        } catch (Exception e) {
-            System.err.println("Invalid input");
-            return;
-        }
-
-        String query = "UPDATE Patient SET ssn = " + "\"" + ssn + "\"" + "WHERE id = " + pId;
-        try {
-            ps = connection.prepareStatement(query);
-            ps.executeUpdate();
-        } catch (SQLException e) {
-            e.printStackTrace();
-            return;
-        }
-
-        //Query database for given person
-        try {
-            result = statement.executeQuery("SELECT * FROM Patient WHERE id = " + pId);
-        } catch (SQLException e) {
-            e.printStackTrace();
-            return;
-        }
-
-        //Show the updates in the database via query
-        int id = 0;
-        String pSSN = null;
-        String pName = null;
-        Date pDOB = null;
-        String pGender = null;
-        int pAge = 0;
-        String pPhone = null;
-        String pAddr = null;
-        int pPlan = 0;
-        String pIsInWard = null;
-        String pComp = null;
-
-        try {
-            while (result.next()) {
-                id = result.getInt("id");
-                pSSN = result.getString("ssn");
-                pName = result.getString("name");
-                pDOB = result.getDate("dob");
-                pGender = result.getString("gender");
-                pAge = result.getInt("age");
-                pPhone = result.getString("phone");
-                pAddr = result.getString("address");
-                pPlan = result.getInt("treatment");
-                pIsInWard = result.getString("inWard");
-                pComp = result.getString("status");
-            }
-        } catch (SQLException e) {
-            e.printStackTrace();
-        }
-
-        System.out.println();
-        System.out.println();
-        System.out.println("Patient gender updated with: ID = " + id + ", SSN = " + pSSN + ", name = " + pName + ", date of birth = " + pDOB + ", gender = " + pGender + ", age = " + pAge + ", phone number = " + pPhone
-                + ", address = " + pAddr + ", processing treatment plan = " + pPlan + ", is in ward = " + pIsInWard + ", completing treatment = " + pComp);
-
-
-    }
-
-    /**
-     * Updates date of birth for given patient
-     * @param input Scanner for user input
-     * @param pId patient ID
-     */
-    public void updatePatientDateOfBirth(Scanner input, int pId) {
-
-        System.out.println("Please enter the new date of birth of patient in form yyyy-mm-dd");
-        String dob = null;
-        try {
-            dob = input.nextLine();
-        } catch (Exception e) {
-            System.err.println("Invalid input");
-            return;
-        }
-        //Parse the given date into a Date object
-        Date dateOfBirth = null;
-        java.sql.Date sqlDate = null;
-        try {
-            dateOfBirth = new SimpleDateFormat("yyyy-MM-dd").parse(dob);
-            sqlDate = new java.sql.Date(dateOfBirth.getTime());
-        } catch (Exception e) {
-            e.printStackTrace();
-            return;
-        }
-
-        String query = "UPDATE Patient SET dob = " + "\"" + sqlDate + "\"" + "WHERE id = " + pId;
-        try {
-            ps = connection.prepareStatement(query);
-            ps.executeUpdate();
-        } catch (SQLException e) {
-            e.printStackTrace();
-            return;
-        }
-
-        //Query database for given person
-        try {
-            result = statement.executeQuery("SELECT * FROM Patient WHERE id = " + pId);
-        } catch (SQLException e) {
-            e.printStackTrace();
-            return;
-        }
-
-        //Show the updates in the database via query
-        int id = 0;
-        String pSSN = null;
-        String pName = null;
-        Date pDOB = null;
-        String pGender = null;
-        int pAge = 0;
-        String pPhone = null;
-        String pAddr = null;
-        int pPlan = 0;
-        String pIsInWard = null;
-        String pComp = null;
-
-        try {
-            while (result.next()) {
-                id = result.getInt("id");
-                pSSN = result.getString("ssn");
-                pName = result.getString("name");
-                pDOB = result.getDate("dob");
-                pGender = result.getString("gender");
-                pAge = result.getInt("age");
-                pPhone = result.getString("phone");
-                pAddr = result.getString("address");
-                pPlan = result.getInt("treatment");
-                pIsInWard = result.getString("inWard");
-                pComp = result.getString("status");
-            }
-        } catch (SQLException e) {
-            e.printStackTrace();
-        }
-
-        System.out.println();
-        System.out.println();
-        System.out.println("Patient date of birth updated with: ID = " + id + ", SSN = " + pSSN + ", name = " + pName + ", date of birth = " + pDOB + ", gender = " + pGender + ", age = " + pAge + ", phone number = " + pPhone
-                + ", address = " + pAddr + ", processing treatment plan = " + pPlan + ", is in ward = " + pIsInWard + ", completing treatment = " + pComp);
-
-
-    }
+                case "1" :
+                    stageChange(input, "Please enter new name of the patient.", changes, "name");
+                    printPatientInformationUpdateOptions();
+                    break;
 
-    /**
-     * Updates treatment plan for given patient
-     * @param input Scanner for user input
-     * @param pId patient ID
-     */
-    public void updateTreatmentPlan(Scanner input, int pId) {
+                case "2" :
+                    stageChange(input, "Please enter new age of the patient.", changes, "age");
+                    printPatientInformationUpdateOptions();
+                    break;
 
-        System.out.println("Please enter new processing treatment plan of patient in integer form.");
-        int processingTreatment = 0;
-        try {
-            processingTreatment = Integer.parseInt(input.nextLine());
-        } catch (Exception e) {
-            System.err.println("Processing treatment plan must be an integer");
-            return;
-        }
+                case "3" :
+                    stageChange(input, "Please enter new gender of the patient (enter F for female or M for male).", changes, "gender");
+                    printPatientInformationUpdateOptions();
+                    break;
 
-        String query = "UPDATE Patient SET treatment = " + "\"" + processingTreatment + "\"" + "WHERE id = " + pId;
-        try {
-            ps = connection.prepareStatement(query);
-            ps.executeUpdate();
-        } catch (SQLException e) {
-            e.printStackTrace();
-            return;
-        }
+                case "4" :
+                    stageChange(input, "Please enter new address of the patient.", changes, "address");
+                    printPatientInformationUpdateOptions();
+                    break;
 
-        //Query database for given Patient
-        try {
-            result = statement.executeQuery("SELECT * FROM Patient WHERE id = " + pId);
-        } catch (SQLException e) {
-            e.printStackTrace();
-            return;
-        }
+                case "5" :
+                    stageChange(input, "Please enter new phone number of the patient.", changes, "phone");
+                    printPatientInformationUpdateOptions();
+                    break;
 
-        //Show the updates in the database via query
-        int id = 0;
-        String pSSN = null;
-        String pName = null;
-        Date pDOB = null;
-        String pGender = null;
-        int pAge = 0;
-        String pPhone = null;
-        String pAddr = null;
-        int pPlan = 0;
-        String pIsInWard = null;
-        String pComp = null;
+                case "6" :
+                    stageChange(input, "Please enter new SSN for patient.", changes, "ssn");
+                    printPatientInformationUpdateOptions();
+                    break;
 
-        try {
-            while (result.next()) {
-                id = result.getInt("id");
-                pSSN = result.getString("ssn");
-                pName = result.getString("name");
-                pDOB = result.getDate("dob");
-                pGender = result.getString("gender");
-                pAge = result.getInt("age");
-                pPhone = result.getString("phone");
-                pAddr = result.getString("address");
-                pPlan = result.getInt("treatment");
-                pIsInWard = result.getString("inWard");
-                pComp = result.getString("status");
-            }
-        } catch (SQLException e) {
-            e.printStackTrace();
-        }
+                case "7" :
+                    stageChange(input, "Please enter the new date of birth of patient in form yyyy-mm-dd", changes, "dob");
+                    printPatientInformationUpdateOptions();
+                    break;
 
-        System.out.println();
-        System.out.println();
-        System.out.println("Patient phone number updated with: ID = " + id + ", SSN = " + pSSN + ", name = " + pName + ", date of birth = " + pDOB + ", gender = " + pGender + ", age = " + pAge + ", phone number = " + pPhone
-                + ", address = " + pAddr + ", processing treatment plan = " + pPlan + ", is in ward = " + pIsInWard + ", completing treatment = " + pComp);
+                case "8" :
+                    stageChange(input, "Please enter new processing treatment plan of patient in integer form.", changes, "treatment");
+                    printPatientInformationUpdateOptions();
+                    break;
 
+                case "9" :
+                    stageChange(input, "Please indicate whether patient is in ward (yes or no).", changes, "inWard");
+                    printPatientInformationUpdateOptions();
+                    break;
 
-    }
+                case "10" :
+                    stageChange(input, "Please indicate whether patient has completed treatment (yes or no).", changes, "status");
+                    printPatientInformationUpdateOptions();
+                    break;
 
-    /**
-     * Updates whether patient is in ward for given patient
-     * @param input Scanner for user input
-     * @param pId patient ID
-     */
-    public void updatePatientInWard(Scanner input, int pId) {
-        System.out.println("Please indicate whether patient is in ward (yes or no).");
-        String isInWard = null;
-        try {
-            isInWard = input.nextLine();
-            if (isInWard.length() > 3) {
-                System.out.println("Input must be 3 characters or less");
-                return;
-            }
-        } catch (Exception e) {
-            System.err.println("Invalid input");
-            return;
-        }
+                case "s" :
+                    changes = savePatientChanges(changes);
+                    printPatientInformationUpdateOptions();
+                    break;
 
-        String query = "UPDATE Patient SET inWard = " + "\"" + isInWard + "\"" + "WHERE id = " + pId;
-        try {
-            ps = connection.prepareStatement(query);
-            ps.executeUpdate();
-        } catch (SQLException e) {
-            e.printStackTrace();
-            return;
-        }
+                case "0" :
+                    deletePatient(pId);
+                    printReturnToMenu();
+                    return;
 
-        //Query database for given Patient
-        try {
-            result = statement.executeQuery("SELECT * FROM Patient WHERE id = " + pId);
-        } catch (SQLException e) {
-            e.printStackTrace();
-            return;
-        }
+                case "p" :
+                    printPatientInformationUpdateOptions();
+                    break;
 
-        //Show the updates in the database via query
-        int id = 0;
-        String pSSN = null;
-        String pName = null;
-        Date pDOB = null;
-        String pGender = null;
-        int pAge = 0;
-        String pPhone = null;
-        String pAddr = null;
-        int pPlan = 0;
-        String pIsInWard = null;
-        String pComp = null;
+                case "exit" :
+                    savePatientChanges(changes);
+                    return;
 
-        try {
-            while (result.next()) {
-                id = result.getInt("id");
-                pSSN = result.getString("ssn");
-                pName = result.getString("name");
-                pDOB = result.getDate("dob");
-                pGender = result.getString("gender");
-                pAge = result.getInt("age");
-                pPhone = result.getString("phone");
-                pAddr = result.getString("address");
-                pPlan = result.getInt("treatment");
-                pIsInWard = result.getString("inWard");
-                pComp = result.getString("status");
+                default:
+                    System.out.println("Invalid input");
+                    printPatientInformationUpdateOptions();
+                    break;
             }
-        } catch (SQLException e) {
-            e.printStackTrace();
         }
+    }
+
+    /**
+     * Prints the options for the information update menu
+     */
+    public void printPatientInformationUpdateOptions() {
 
         System.out.println();
         System.out.println();
-        System.out.println("Patient phone number updated with: ID = " + id + ", SSN = " + pSSN + ", name = " + pName + ", date of birth = " + pDOB + ", gender = " + pGender + ", age = " + pAge + ", phone number = " + pPhone
-                + ", address = " + pAddr + ", processing treatment plan = " + pPlan + ", is in ward = " + pIsInWard + ", completing treatment = " + pComp);
-
-
+        System.out.println("What part of this patient's Information would you like to update?");
+        System.out.println();
+        System.out.println("1 - Update Name");
+        System.out.println("2 - Update Age");
+        System.out.println("3 - Update Gender");
+        System.out.println("4 - Update Address");
+        System.out.println("5 - Update Phone Number");
+        System.out.println("6 - Update SSN");
+        System.out.println("7 - Update Date of Birth");
+        System.out.println("8 - Update treatment plan");
+        System.out.println("9 - Update whether patient is in ward");
+        System.out.println("10 - Update whether patient is ccompleting treatment");
+        System.out.println("s - Save changes");
+        System.out.println("0 - Delete Patient");
+        System.out.println("p - Print options");
+        System.out.println("exit - Save changes and return to main menu");
     }
 
     /**
-     * Updates address for given patient
-     * @param input Scanner for user input
-     * @param pId patient ID
+     * Saves the changes of a patient and shows the updated patient
+     * @param changes changes of the patient
+     * @return changes to continue with, empty once saved and unchanged if the save failed
      */
-    public void updateTreatmentStatus(Scanner input, int pId) {
-
-        System.out.println("Please indicate whether patient has completed treatment (yes or no).");
-        String completedTreatment = null;
-        try {
-            completedTreatment = input.nextLine();
-            if (completedTreatment.length() > 3) {
-                System.out.println("Input must be 3 characters or less");
-                return;
-            }
-        } catch (Exception e) {
-            System.err.println("Invalid input");
-            return;
-        }
-
-        String query = "UPDATE Patient SET status = " + "\"" + completedTreatment + "\"" + "WHERE id = " + pId;
-        try {
-            ps = connection.prepareStatement(query);
-            ps.executeUpdate();
-        } catch (SQLException e) {
-            e.printStackTrace();
-            return;
-        }
-
-        //Query database for given Patient
-        try {
-            result = statement.executeQuery("SELECT * FROM Patient WHERE id = " + pId);
-        } catch (SQLException e) {
-            e.printStackTrace();
-            return;
+    private EntityPatch savePatientChanges(EntityPatch changes) {
+        if (!saveChanges(changes)) {
+            return changes;
         }
 
-        //Show the updates in the database via query
-        int id = 0;
-        String pSSN = null;
-        String pName = null;
-        Date pDOB = null;
-        String pGender = null;
-        int pAge = 0;
-        String pPhone = null;
-        String pAddr = null;
-        int pPlan = 0;
-        String pIsInWard = null;
-        String pComp = null;
-
+        //Query database for given patient
+        int pId = changes.getKey();
         try {
-            while (result.next()) {
-                id = result.getInt("id");
-                pSSN = result.getString("ssn");
-                pName = result.getString("name");
-                pDOB = result.getDate("dob");
-                pGender = result.getString("gender");
-                pAge = result.getInt("age");
-                pPhone = result.getString("phone");
-                pAddr = result.getString("address");
-                pPlan = result.getInt("treatment");
-                pIsInWard = result.getString("inWard");
-                pComp = result.getString("status");
+            result = lookup(Lookups.PATIENT_BY_ID, pId);
+            if (!result.next()) {
+                return changes;
             }
+
+            //Show the updates in the database via query
+            System.out.println();
+            System.out.println();
+            System.out.println("Patient updated with: ID = " + pId + ", SSN = " + result.getString("ssn") + ", name = " + result.getString("name") + ", date of birth = " + result.getDate("dob")
+                    + ", gender = " + result.getString("gender") + ", age = " + result.getInt("age") + ", phone number = " + result.getString("phone")
+                    + ", address = " + result.getString("address") + ", processing treatment plan = " + result.getInt("treatment") + ", is in ward = " + result.getString("inWard")
+                    + ", completing treatment = " + result.getString("status"));
+            return new EntityPatch(EntityPatch.Table.PATIENT, pId).baseline(result);
         } catch (SQLException e) {
             e.printStackTrace();
+            return changes;
         }
-
-        System.out.println();
-        System.out.println();
-        System.out.println("Patient phone number updated with: ID = " + id + ", SSN = " + pSSN + ", name = " + pName + ", date of birth = " + pDOB + ", gender = " + pGender + ", age = " + pAge + ", phone number = " + pPhone
-                + ", address = " + pAddr + ", processing treatment plan = " + pPlan + ", is in ward = " + pIsInWard + ", completing treatment = " + pComp);
-
-
     }
 
     /**
@@ -3515,26 +2296,16 @@ class WolfHospital {
      * @param pId
      */
     public void deletePatient(int pId) {
-        String query = "DELETE FROM Patient WHERE id = " + pId;
-        try {
-            ps = connection.prepareStatement(query);
-            ps.executeUpdate();
-        } catch (SQLException e) {
-            e.printStackTrace();
-            return;
-        }
-
+        //The service frees the patient's bed first so the ward occupants stay correct
         try {
-            result = statement.executeQuery("SELECT * FROM Patient WHERE id = " + pId);
-            if(!result.next()) {
+            if (service().deletePatient(pId)) {
                 System.out.println("Patient deleted with id = " + pId);
             } else {
-                System.err.println("Patient fail to delete");
-                return;
+                System.err.println("That Patient does not exist in the database");
             }
         } catch (SQLException e) {
+            System.err.println("Patient fail to delete");
             e.printStackTrace();
-            return;
         }
     }
 
@@ -3544,14 +2315,6 @@ class WolfHospital {
      * @param input input from command line
      */
     public void enterNewWardInformation(Scanner input) {
-        String query = "INSERT INTO Ward VALUES(?, ?, ?, ?, ?, ?)";
-        try {
-            ps = connection.prepareStatement(query);
-        } catch (SQLException e) {
-            e.printStackTrace();
-            return;
-        }
-
         System.out.println("Please enter ward number, the ward must NOT be present in the database.");
         int number = 0;
         try {
@@ -3561,70 +2324,25 @@ class WolfHospital {
             return;
         }
 
-        //Query database for given ward, quit if ward exists
-        try {
-            result = statement.executeQuery("SELECT * FROM Ward WHERE number = " + number);
-            if (result.next()) {
-                System.err.println("That ward already exist in the database");
-                return;
-            } else {
-                ps.setInt(1, number);
-            }
-        } catch (SQLException e) {
-            e.printStackTrace();
-            return;
-        }
-
         System.out.println("Please enter capacity of new ward.");
         int capacity = 0;
         try {
             capacity = Integer.parseInt(input.nextLine());
-            ps.setInt(2, capacity);
         } catch (Exception e) {
             System.err.println("Ward capacity must be an integer");
             return;
         }
-
-        System.out.println("Please enter patient ids of new ward, use only \",\" to seperate different patient ids");
-        String patientIds = null;
-        try {
-            patientIds = input.nextLine();
-            if (patientIds.length() > 200) {
-                System.out.println("Input must be patient Ids");
-                return;
-            }
-        } catch (Exception e) {
-            System.err.println("Invalid input");
+        if (RecordValidator.checkCapacity(capacity) != null) {
+            System.err.println(RecordValidator.checkCapacity(capacity));
             return;
         }
 
-        List<String> patientList = Arrays.asList(patientIds.split(","));
-        for(String id : patientList) {
-            int pId = 0;
-            try {
-                pId = Integer.parseInt(id);
-            } catch (NumberFormatException e) {
-                System.err.println("Patient ID must be an integer");
-                return;
-            }
-
-            //Query database for given patient, quit if patient does not exist
-            try {
-                result = statement.executeQuery("SELECT * FROM Patient WHERE id = " + pId);
-                if (!result.next()) {
-                    System.err.println("That Patient does not exist in the database");
-                    return;
-                }
-            } catch (SQLException e) {
-                e.printStackTrace();
-                return;
-            }
-        }
-
+        System.out.println("Please enter patient ids of new ward, use only \",\" to seperate different patient ids. Leave blank if the ward is empty.");
+        Set<Integer> patientList = null;
         try {
-            ps.setString(3, patientIds);
-        } catch (SQLException e) {
-            System.err.println("Invalid input");
+            patientList = WardBeds.parsePatientIds(input.nextLine());
+        } catch (NumberFormatException e) {
+            System.err.println("Patient ID must be an integer");
             return;
         }
 
@@ -3632,22 +2350,11 @@ class WolfHospital {
         double charge = 0.0;
         try {
             charge = Double.parseDouble(input.nextLine());
-            ps.setDouble(4, charge);
-        } catch (SQLException e) {
+        } catch (NumberFormatException e) {
             System.err.println("Invalid input");
             return;
         }
 
-        System.out.println("Please enter number of occcupants of new ward.");
-        int occupants = 0;
-        try {
-            occupants = Integer.parseInt(input.nextLine());
-            ps.setInt(5, occupants);
-        } catch (Exception e) {
-            System.err.println("Number of occupants must be an integer");
-            return;
-        }
-
         System.out.println("Please enter id of responsible nurse of new ward in integer form.");
         int nId = 0;
         try {
@@ -3657,30 +2364,13 @@ class WolfHospital {
             return;
         }
 
-        //quit if staff is not nurse or nurse is not in the database
-        try{
-            result = statement.executeQuery("SELECT * FROM Staff WHERE Id = " + nId);
-            if(!result.next()) {
-                System.err.println("Responsible nurse must be in the database");
-                return;
-            }
-            String job = result.getString("jobTitle");
-            if(job == null || !job.toLowerCase().equals("nurse")) {
-                System.err.println("Responsible staff must be a nurse");
-                return;
-            }
-            ps.setInt(6, nId);
-        } catch (SQLException e) {
-            e.printStackTrace();
-            return;
-        }
-
-
-        //Execute the update for ward table
+        //Execute the update for ward table and place the patients in their beds
         try {
-            ps.executeUpdate();
-            result = statement.executeQuery("SELECT * FROM Ward WHERE number = " + number);
-
+            service().addWard(number, capacity, patientList, charge, nId);
+            result = lookup(Lookups.WARD_BY_NUMBER, number);
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            System.err.println(e.getMessage());
+            return;
         } catch (SQLException e) {
             e.printStackTrace();
             return;
@@ -3728,17 +2418,20 @@ class WolfHospital {
         }
 
         //Query database for given ward, quit if ward does not exist
+        EntityPatch changes;
         try {
-            result = statement.executeQuery("SELECT * FROM Ward WHERE number = " + number);
+            result = lookup(Lookups.WARD_BY_NUMBER, number);
             if (!result.next()) {
                 System.err.println("That ward does not exist in the database");
                 return;
             }
+            changes = new EntityPatch(EntityPatch.Table.WARD, number).baseline(result);
         } catch (SQLException e) {
             e.printStackTrace();
             return;
         }
 
+        //Capacity, charges and nurse are kept until they are saved, the patient list and recount run at once
         printWardInformationUpdateOptions();
         while (true) {
             String in = input.nextLine();
@@ -3746,7 +2439,7 @@ class WolfHospital {
             switch(in) {
 
                 case "1" :
-                    updateCapacity(input, number);
+                    stageChange(input, "Please enter new capacity of the ward.", changes, "capacity");
                     printWardInformationUpdateOptions();
                     break;
 
@@ -3756,7 +2449,7 @@ class WolfHospital {
                     break;
 
                 case "3" :
-                    updateChargesPerDay(input, number);
+                    stageChange(input, "Please enter new charges per day of the ward.", changes, "chargesPerDay");
                     printWardInformationUpdateOptions();
                     break;
 
@@ -3766,20 +2459,26 @@ class WolfHospital {
                     break;
 
                 case "5" :
-                    updateResponsibleNurse(input, number);
+                    stageChange(input, "Please enter new responsible nurse of the ward.", changes, "responsibleNurse");
+                    printWardInformationUpdateOptions();
+                    break;
+
+                case "s" :
+                    changes = saveWardChanges(changes);
                     printWardInformationUpdateOptions();
                     break;
 
                 case "0" :
                     deleteWard(number);
                     printReturnToMenu();
-                    break;
+                    return;
 
                 case "p" :
                     printWardInformationUpdateOptions();
                     break;
 
                 case "exit" :
+                    saveWardChanges(changes);
                     return;
 
                 default:
@@ -3802,70 +2501,42 @@ class WolfHospital {
         System.out.println("1 - Update Capacity");
         System.out.println("2 - Update Patient List");
         System.out.println("3 - Update Charges per day");
-        System.out.println("4 - Update Occupants Number");
+        System.out.println("4 - Recount Occupants Number");
         System.out.println("5 - Update Responsible Nurse");
+        System.out.println("s - Save changes");
         System.out.println("0 - Delete Ward");
         System.out.println("p - Print options");
-        System.out.println("exit - Return to main menu");
+        System.out.println("exit - Save changes and return to main menu");
     }
 
     /**
-     * Updates capacity for given ward
-     * @param input Scanner for user input
-     * @param pId ward number
+     * Saves the capacity, charges and nurse changes of a ward and shows the updated ward
+     * @param changes changes of the ward
+     * @return changes to continue with, empty once saved and unchanged if the save failed
      */
-    public void updateCapacity(Scanner input, int pId) {
-
-        System.out.println("Please enter new capacity of the ward.");
-        int capacity = 0;
-        try {
-            capacity = Integer.parseInt(input.nextLine());
-        } catch (NumberFormatException e) {
-            System.err.println("Ward capacity must be an integer");
-            return;
-        }
-
-        String query = "UPDATE Ward SET capacity = "  + capacity + " WHERE number = " + pId;
-        try {
-            ps = connection.prepareStatement(query);
-            ps.executeUpdate();
-        } catch (SQLException e) {
-            e.printStackTrace();
-            return;
+    private EntityPatch saveWardChanges(EntityPatch changes) {
+        if (!saveChanges(changes)) {
+            return changes;
         }
 
         //Query database for given ward
+        int number = changes.getKey();
         try {
-            result = statement.executeQuery("SELECT * FROM Ward WHERE number = " + pId);
-        } catch (SQLException e) {
-            e.printStackTrace();
-            return;
-        }
-
-        //Show the updates in the database via query
-        int wN = 0;
-        int wC = 0;
-        String pList = null;
-        double wCharges = 0;
-        int wO = 0;
-        int wRN = 0;
-        try {
-            while (result.next()) {
-                wN = result.getInt("number");
-                wC = result.getInt("capacity");
-                pList = result.getString("patientIds");
-                wCharges = result.getDouble("chargesPerDay");
-                wO = result.getInt("occupants");
-                wRN = result.getInt("responsibleNurse");
+            result = lookup(Lookups.WARD_BY_NUMBER, number);
+            if (!result.next()) {
+                return changes;
             }
+
+            //Show the updates in the database via query
+            System.out.println();
+            System.out.println();
+            System.out.println("Ward updated with: number = " + number + ", capacity = " + result.getInt("capacity") + ", patient IDs = " + result.getString("patientIds")
+                    + ", charges per day  = " + result.getDouble("chargesPerDay") + ", occupants = " + result.getInt("occupants") + ", responsible nurse = " + result.getInt("responsibleNurse"));
+            return new EntityPatch(EntityPatch.Table.WARD, number).baseline(result);
         } catch (SQLException e) {
             e.printStackTrace();
+            return changes;
         }
-
-        System.out.println();
-        System.out.println();
-        System.out.println("Ward capacity updated with: number = " + wN + ", capacity = " + wC + ", patient IDs = " + pList + ", charges per day  = " + wCharges + ", occupants = "
-                + wO + ", responsible nurse = " + wRN);
     }
 
     /**
@@ -3874,32 +2545,19 @@ class WolfHospital {
      * @param pId ward number
      */
     public void updateWardPatientList(Scanner input, int pId) {
-        System.out.println("Please enter new patient ids of new ward, use only \",\" to seperate different patient ids");
-        String patientIds = null;
+        System.out.println("Please enter new patient ids of new ward, use only \",\" to seperate different patient ids. Leave blank to empty the ward.");
+        Set<Integer> patientList = null;
         try {
-            patientIds = input.nextLine();
-            if (patientIds.length() > 200) {
-                System.out.println("Input must be patient Ids");
-                return;
-            }
-        } catch (Exception e) {
-            System.err.println("Invalid input");
+            patientList = WardBeds.parsePatientIds(input.nextLine());
+        } catch (NumberFormatException e) {
+            System.err.println("Patient ID must be an integer");
             return;
         }
 
-        List<String> patientList = Arrays.asList(patientIds.split(","));
-        for(String id : patientList) {
-            int patient = 0;
-            try {
-                patient = Integer.parseInt(id);
-            } catch (NumberFormatException e) {
-                System.err.println("Patient ID must be an integer");
-                return;
-            }
-
+        for(int patient : patientList) {
             //Query database for given patient, quit if patient does not exist
             try {
-                result = statement.executeQuery("SELECT * FROM Patient WHERE id = " + patient);
+                result = lookup(Lookups.PATIENT_BY_ID, patient);
                 if (!result.next()) {
                     System.err.println("That Patient does not exist in the database");
                     return;
@@ -3910,69 +2568,14 @@ class WolfHospital {
             }
         }
 
-        String query = "UPDATE Ward SET patientIds = "  + "\"" + patientIds + "\"" + " WHERE number = " + pId;
-        try {
-            ps = connection.prepareStatement(query);
-            ps.executeUpdate();
-        } catch (SQLException e) {
-            e.printStackTrace();
-            return;
-        }
-
-        //Query database for given ward
-        try {
-            result = statement.executeQuery("SELECT * FROM Ward WHERE number = " + pId);
-        } catch (SQLException e) {
-            e.printStackTrace();
-            return;
-        }
-
-        //Show the updates in the database via query
-        int wN = 0;
-        int wC = 0;
-        String pList = null;
-        double wCharges = 0;
-        int wO = 0;
-        int wRN = 0;
+        //Replace the occupied beds of the ward
         try {
-            while (result.next()) {
-                wN = result.getInt("number");
-                wC = result.getInt("capacity");
-                pList = result.getString("patientIds");
-                wCharges = result.getDouble("chargesPerDay");
-                wO = result.getInt("occupants");
-                wRN = result.getInt("responsibleNurse");
+            if (!WardBeds.replaceOccupants(connection, pId, patientList)) {
+                System.err.println("Patients must fit in the ward and must not have a bed in another ward");
+                return;
             }
-        } catch (SQLException e) {
-            e.printStackTrace();
-        }
-
-        System.out.println();
-        System.out.println();
-        System.out.println("Ward patient list updated with: number = " + wN + ", capacity = " + wC + ", patient IDs = " + pList + ", charges per day  = " + wCharges + ", occupants = "
-                + wO + ", responsible nurse = " + wRN);
-    }
-
-    /**
-     * Updates charges per day for given ward
-     * @param input Scanner for user input
-     * @param pId ward number
-     */
-    public void updateChargesPerDay(Scanner input, int pId) {
-
-        System.out.println("Please enter new charges per day of the ward.");
-        double charge = 0.0;
-        try {
-            charge = Double.parseDouble(input.nextLine());
-        } catch (Exception e) {
-            System.err.println("Invalid input");
-            return;
-        }
-
-        String query = "UPDATE Ward SET chargesPerDay  = "  + charge + " WHERE number = " + pId;
-        try {
-            ps = connection.prepareStatement(query);
-            ps.executeUpdate();
+            entityCache.invalidate(EntityCache.Entity.WARD, pId);
+            wardIndex.refresh(connection, pId);
         } catch (SQLException e) {
             e.printStackTrace();
             return;
@@ -3980,7 +2583,7 @@ class WolfHospital {
 
         //Query database for given ward
         try {
-            result = statement.executeQuery("SELECT * FROM Ward WHERE number = " + pId);
+            result = lookup(Lookups.WARD_BY_NUMBER, pId);
         } catch (SQLException e) {
             e.printStackTrace();
             return;
@@ -4008,106 +2611,21 @@ class WolfHospital {
 
         System.out.println();
         System.out.println();
-        System.out.println("Ward charges per day updated with: number = " + wN + ", capacity = " + wC + ", patient IDs = " + pList + ", charges per day  = " + wCharges + ", occupants = "
+        System.out.println("Ward patient list updated with: number = " + wN + ", capacity = " + wC + ", patient IDs = " + pList + ", charges per day  = " + wCharges + ", occupants = "
                 + wO + ", responsible nurse = " + wRN);
     }
 
     /**
-     * Updates occupant number for given ward
+     * Recounts the occupant number for given ward from its occupied beds
      * @param input Scanner for user input
      * @param pId ward number
      */
     public void updateOccupantNumber(Scanner input, int pId) {
 
-        System.out.println("Please enter new occupant number of the ward.");
-        int occupants = 0;
-        try {
-            occupants = Integer.parseInt(input.nextLine());
-        } catch (NumberFormatException e) {
-            System.err.println("Number of occupants must be an integer");
-            return;
-        }
-
-        String query = "UPDATE Ward SET occupants = "  + occupants + " WHERE number = " + pId;
-        try {
-            ps = connection.prepareStatement(query);
-            ps.executeUpdate();
-        } catch (SQLException e) {
-            e.printStackTrace();
-            return;
-        }
-
-        //Query database for given ward
-        try {
-            result = statement.executeQuery("SELECT * FROM Ward WHERE number = " + pId);
-        } catch (SQLException e) {
-            e.printStackTrace();
-            return;
-        }
-
-        //Show the updates in the database via query
-        int wN = 0;
-        int wC = 0;
-        String pList = null;
-        double wCharges = 0;
-        int wO = 0;
-        int wRN = 0;
-        try {
-            while (result.next()) {
-                wN = result.getInt("number");
-                wC = result.getInt("capacity");
-                pList = result.getString("patientIds");
-                wCharges = result.getDouble("chargesPerDay");
-                wO = result.getInt("occupants");
-                wRN = result.getInt("responsibleNurse");
-            }
-        } catch (SQLException e) {
-            e.printStackTrace();
-        }
-
-        System.out.println();
-        System.out.println();
-        System.out.println("Ward occupants updated with: number = " + wN + ", capacity = " + wC + ", patient IDs = " + pList + ", charges per day  = " + wCharges + ", occupants = "
-                + wO + ", responsible nurse = " + wRN);
-    }
-
-    /**
-     * Updates responsible nurse for given ward
-     * @param input Scanner for user input
-     * @param pId ward number
-     */
-    public void updateResponsibleNurse(Scanner input, int pId) {
-
-        System.out.println("Please enter new responsible nurse of the ward.");
-        int nId = 0;
-        try {
-            nId = Integer.parseInt(input.nextLine());
-        } catch (NumberFormatException e) {
-            System.err.println("Responsible nurse id must be an integer");
-            return;
-        }
-
-        //quit if staff is not nurse or nurse is not in the database
-        try{
-            result = statement.executeQuery("SELECT * FROM Staff WHERE Id = " + nId);
-            if(!result.next()) {
-                System.err.println("Responsible nurse must be in the database");
-                return;
-            }
-            String job = result.getString("jobTitle");
-            if(job == null || !job.toLowerCase().equals("nurse")) {
-                System.err.println("Responsible staff must be a nurse");
-                return;
-            }
-        } catch (SQLException e) {
-            e.printStackTrace();
-            return;
-        }
-
-        String query = "UPDATE Ward SET responsibleNurse = "  + nId + " WHERE number = " + pId;
         try {
-            ps = connection.prepareStatement(query);
-            ps.executeUpdate();
+            WardBeds.recount(connection, pId);
+            entityCache.invalidate(EntityCache.Entity.WARD, pId);
+            wardIndex.refresh(connection, pId);
         } catch (SQLException e) {
             e.printStackTrace();
             return;
@@ -4115,7 +2633,7 @@ class WolfHospital {
 
         //Query database for given ward
         try {
-            result = statement.executeQuery("SELECT * FROM Ward WHERE number = " + pId);
+            result = lookup(Lookups.WARD_BY_NUMBER, pId);
         } catch (SQLException e) {
             e.printStackTrace();
             return;
@@ -4143,7 +2661,7 @@ class WolfHospital {
 
         System.out.println();
         System.out.println();
-        System.out.println("Ward responsible nurse updated with: number = " + wN + ", capacity = " + wC + ", patient IDs = " + pList + ", charges per day  = " + wCharges + ", occupants = "
+        System.out.println("Ward occupants updated with: number = " + wN + ", capacity = " + wC + ", patient IDs = " + pList + ", charges per day  = " + wCharges + ", occupants = "
                 + wO + ", responsible nurse = " + wRN);
     }
 
@@ -4152,26 +2670,15 @@ class WolfHospital {
      * @param pId ward number
      */
     public void deleteWard(int pId) {
-        String query = "DELETE FROM Ward WHERE number = " + pId;
-        try {
-            ps = connection.prepareStatement(query);
-            ps.executeUpdate();
-        } catch (SQLException e) {
-            e.printStackTrace();
-            return;
-        }
-
         try {
-            result = statement.executeQuery("SELECT * FROM Ward WHERE number = " + pId);
-            if(!result.next()) {
+            if (service().deleteWard(pId)) {
                 System.out.println("Ward deleted with id = " + pId);
             } else {
-                System.err.println("Ward fail to delete");
-                return;
+                System.err.println("That ward does not exist in the database");
             }
         } catch (SQLException e) {
+            System.err.println("Ward fail to delete");
             e.printStackTrace();
-            return;
         }
     }
 
@@ -4207,40 +2714,6 @@ class WolfHospital {
             System.err.println("Patient ID must be an integer");
             return;
         }
-        //Query database for given check in for patient
-        try {
-            result = statement.executeQuery("SELECT * FROM CheckInInformation WHERE patientId = " + pId);
-        } catch (SQLException e) {
-            e.printStackTrace();
-            return;
-        }
-
-
-        //If check-in exists exists quit
-        try {
-
-            if (result.next()) {
-                System.err.println("This patient already has a check-in associated with their Medical Record.");
-                return;
-            }
-
-        } catch (SQLException e) {
-            e.printStackTrace();
-            return;
-        }
-
-
-        String query = "INSERT INTO CheckInInformation VALUES(?, ?, ?, ?, ?)";
-
-        try {
-            ps = connection.prepareStatement(query);
-            ps.setInt(1,  pId);
-        } catch (SQLException e) {
-            e.printStackTrace();
-            return;
-        }
-
-
         System.out.println("Please enter the Ward number for Check-In.");
         int wardNum = 0;
 
@@ -4266,69 +2739,39 @@ class WolfHospital {
 
 
         System.out.println("Please enter the start date in the form yyyy-mm-dd");
-        String startDate = null;
+        LocalDate startDate = null;
 
         //Get the start date from input
         try {
-            startDate = input.nextLine();
-        } catch (Exception e) {
-            System.err.println("Invalid input");
-            return;
-        }
-
-        //Parse the given date into a Date object
-        Date startDateUtil = null;
-        java.sql.Date sqlStartDate = null;
-        try {
-            startDateUtil = new SimpleDateFormat("yyyy-MM-dd").parse(startDate);
-            sqlStartDate = new java.sql.Date(startDateUtil.getTime());
-            ps.setInt(2, wardNum);
-            ps.setInt(3, bedNum);
-            ps.setDate(4, sqlStartDate);
-        } catch (ParseException | SQLException e) {
+            startDate = new java.sql.Date(new SimpleDateFormat("yyyy-MM-dd").parse(input.nextLine()).getTime()).toLocalDate();
+        } catch (ParseException e) {
             e.printStackTrace();
             return;
         }
 
 
         System.out.println("Please enter the end date in the form yyyy-mm-dd, if still active type na (not applicable) and press enter to continue.");
-        String endDate = null;
-
-        //Get the end date from input
-        try {
-            endDate = input.nextLine();
-        } catch (Exception e) {
-            System.err.println("Invalid input");
-            return;
-        }
-
+        LocalDate endDate = null;
 
-        //Set the appropriate end date depending on user input
-        Date endDateUtil = null;
+        //Get the end date from input, na leaves the stay open
         try {
-            if (!endDate.toLowerCase().equals("na")) {
-                endDateUtil = new SimpleDateFormat("yyyy-MM-dd").parse(endDate);
-                java.sql.Date sqlEndDate = new java.sql.Date(endDateUtil.getTime());
-                if (sqlEndDate.before(sqlStartDate)) {
-                    System.err.println("End date must be on or after the start date.");
-                    return;
-                }
-                ps.setDate(5, sqlEndDate);
-            } else {
-                ps.setNull(5, java.sql.Types.DATE);
+            String end = input.nextLine();
+            if (!end.toLowerCase().equals("na")) {
+                endDate = new java.sql.Date(new SimpleDateFormat("yyyy-MM-dd").parse(end).getTime()).toLocalDate();
             }
-        } catch (ParseException | SQLException e) {
+        } catch (ParseException e) {
             e.printStackTrace();
             return;
         }
 
 
-
         //Execute the update
         try {
-            ps.executeUpdate();
-            result = statement.executeQuery("SELECT * FROM CheckInInformation WHERE patientId = " + pId);
-
+            service().createCheckInInfo(pId, wardNum, bedNum, startDate, endDate);
+            result = lookup(Lookups.CHECK_IN_BY_PATIENT, pId);
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            System.err.println(e.getMessage());
+            return;
         } catch (SQLException e) {
             e.printStackTrace();
             return;
@@ -4380,7 +2823,7 @@ class WolfHospital {
 
         //Query database for given patient
         try {
-            result = statement.executeQuery("SELECT * FROM Patient WHERE id = " + pId);
+            result = lookup(Lookups.PATIENT_BY_ID, pId);
         } catch (SQLException e) {
             e.printStackTrace();
             return;
@@ -4402,7 +2845,7 @@ class WolfHospital {
 
         //Check if patient already has medical record
         try {
-            result = statement.executeQuery("SELECT * FROM CheckInInformation WHERE patientId = " + pId);
+            result = lookup(Lookups.CHECK_IN_BY_PATIENT, pId);
         } catch (SQLException e) {
             e.printStackTrace();
             return;
@@ -4503,32 +2946,13 @@ class WolfHospital {
             return;
         }
 
-        //Query database for given ward, quit if ward does not exist
-        try {
-            result = statement.executeQuery("SELECT * FROM Ward WHERE number = " + number);
-            if (!result.next()) {
-                System.err.println("That ward does not exist in the database");
-                return;
-            }
-        } catch (SQLException e) {
-            e.printStackTrace();
-            return;
-        }
-
-        //update ward number in check-in information
-        String query = "UPDATE CheckInInformation SET wardNumber = "  + number + " WHERE patientId = " + pId;
-        try {
-            ps = connection.prepareStatement(query);
-            ps.executeUpdate();
-        } catch (SQLException e) {
-            e.printStackTrace();
-            return;
-        }
         //Execute the update
         try {
-            ps.executeUpdate();
-            result = statement.executeQuery("SELECT * FROM CheckInInformation WHERE patientId = " + pId);
-
+            service().updateCheckIn(pId, number, 0, null, null);
+            result = lookup(Lookups.CHECK_IN_BY_PATIENT, pId);
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            System.err.println(e.getMessage());
+            return;
         } catch (SQLException e) {
             e.printStackTrace();
             return;
@@ -4578,20 +3002,13 @@ class WolfHospital {
             return;
         }
 
-        //update ward number in check-in information
-        String query = "UPDATE CheckInInformation SET bedNumber = "  + bedNum + " WHERE patientId = " + pId;
-        try {
-            ps = connection.prepareStatement(query);
-            ps.executeUpdate();
-        } catch (SQLException e) {
-            e.printStackTrace();
-            return;
-        }
         //Execute the update
         try {
-            ps.executeUpdate();
-            result = statement.executeQuery("SELECT * FROM CheckInInformation WHERE patientId = " + pId);
-
+            service().updateCheckIn(pId, 0, bedNum, null, null);
+            result = lookup(Lookups.CHECK_IN_BY_PATIENT, pId);
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            System.err.println(e.getMessage());
+            return;
         } catch (SQLException e) {
             e.printStackTrace();
             return;
@@ -4633,15 +3050,17 @@ class WolfHospital {
     public void updateStartDateForCheckIn(Scanner input, int pId) {
         java.sql.Date sqlEndDate = null;
         try {
-            result = statement.executeQuery("SELECT endDate FROM CheckInInformation WHERE patientId = " + pId);
-            if (result.next()) {
-                sqlEndDate = result.getDate("endDate");
+            result = lookup(Lookups.CHECK_IN_BY_PATIENT, pId);
+            if (!result.next()) {
+                System.err.println("That Patient does not have a Check-In");
+                return;
             }
+            sqlEndDate = result.getDate("endDate");
             if(sqlEndDate == null) {
                 LocalDate localDate = LocalDate.now();
                 sqlEndDate = java.sql.Date.valueOf(localDate);
             }
-        } catch (Exception e) {
+        } catch (SQLException e) {
             e.printStackTrace();
             return;
         }
@@ -4662,13 +3081,11 @@ class WolfHospital {
         Date startDateUtil = null;
         try {
             startDateUtil = new SimpleDateFormat("yyyy-MM-dd").parse(startDate);
-            java.sql.Date sqlStartDate = new java.sql.Date(startDateUtil.getTime());
-            if (sqlEndDate.before(sqlStartDate)) {
-                System.err.println("End date must be on or after the start date.");
-                return;
-            }
-            statement.executeUpdate("UPDATE CheckInInformation SET startDate = DATE '" + sqlStartDate.toString() + "' WHERE patientId = " + pId);
-            result = statement.executeQuery("SELECT * FROM CheckInInformation WHERE patientId = " + pId);
+            service().updateCheckIn(pId, 0, 0, new java.sql.Date(startDateUtil.getTime()).toLocalDate(), null);
+            result = lookup(Lookups.CHECK_IN_BY_PATIENT, pId);
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            System.err.println(e.getMessage());
+            return;
         } catch (ParseException | SQLException e) {
             e.printStackTrace();
             return;
@@ -4705,26 +3122,16 @@ class WolfHospital {
      * @param pId patient ID
      */
     public void deleteCheckIn(int pId) {
-        String query = "DELETE FROM CheckInInformation WHERE patientId  = " + pId;
-        try {
-            ps = connection.prepareStatement(query);
-            ps.executeUpdate();
-        } catch (SQLException e) {
-            e.printStackTrace();
-            return;
-        }
-
+        //The service removes the stay from the monthly census in the same transaction
         try {
-            result = statement.executeQuery("SELECT * FROM CheckInInformation WHERE patientId = " + pId);
-            if(!result.next()) {
+            if (service().deleteCheckIn(pId)) {
                 System.out.println("CheckIn Information deleted with patient id = " + pId);
             } else {
-                System.err.println("CheckIn Information fail to delete");
-                return;
+                System.err.println("That Patient does not have a Check-In");
             }
         } catch (SQLException e) {
+            System.err.println("CheckIn Information fail to delete");
             e.printStackTrace();
-            return;
         }
     }
 
@@ -4735,68 +3142,96 @@ class WolfHospital {
      * @param input input from command line
      */
     public void checkAvailableWards(Scanner input) {
-        displayAllWardUsage();
+        displayAllWardUsage(input);
 
-        //Query database for ward which have available beds
-        try {
-            result = statement.executeQuery("SELECT * FROM Ward WHERE capacity > occupants");
-        } catch (SQLException e) {
-            e.printStackTrace();
-            return;
-        }
+        System.out.println();
+        System.out.println("Free beds by ward capacity: ");
+        System.out.println(wardIndex.describe());
 
-        //Show the results in the database via query
+        //The wards with a free bed come from the index, like assigning a ward does
         System.out.println();
         System.out.println();
         System.out.println("Display Available Wards Information: ");
-        try {
-            while(result.next()) {
-                int wN = result.getInt("number");
-                int wC = result.getInt("capacity");
-                String pList = result.getString("patientIds");
-                double wCharges = result.getDouble("chargesPerDay");
-                int wO = result.getInt("occupants");
-                int wRN = result.getInt("responsibleNurse");
-                System.out.println("Ward number = " + wN + ", capacity = " + wC + ", patient IDs = " + pList + ", charges per day  = " + wCharges + ", occupants = "
-                        + wO + ", responsible nurse = " + wRN);
+        for (int capacity : wardIndex.freeBedCounts().keySet()) {
+            for (int wN : wardIndex.freeWards(capacity)) {
+                System.out.println("Ward number = " + wN + ", capacity = " + capacity + ", free beds = " + wardIndex.freeBeds(wN));
             }
-        } catch (SQLException e) {
-            e.printStackTrace();
         }
     }
 
     /**
-     * Displays information for all wards
+     * Displays information for all wards, a page at a time
+     *
+     * @param input input from command line
      */
-    private void displayAllWardUsage() {
-
-        //Query database for given ward
-        try {
-            result = statement.executeQuery("SELECT * FROM Ward");
-        } catch (SQLException e) {
-            e.printStackTrace();
-            return;
-        }
-
-        //Show the results in the database via query
+    private void displayAllWardUsage(Scanner input) {
         System.out.println();
         System.out.println();
         System.out.println("Display All Wards Information: ");
         try {
-            while(result.next()) {
-                int wN = result.getInt("number");
-                int wC = result.getInt("capacity");
-                String pList = result.getString("patientIds");
-                double wCharges = result.getDouble("chargesPerDay");
-                int wO = result.getInt("occupants");
-                int wRN = result.getInt("responsibleNurse");
-                System.out.println("Ward number = " + wN + ", capacity = " + wC + ", patient IDs = " + pList + ", charges per day  = " + wCharges + ", occupants = "
-                        + wO + ", responsible nurse = " + wRN);
-            }
+            browse(input, ReportPage.wardUsage(), row -> printWard(row, false));
         } catch (SQLException e) {
             e.printStackTrace();
         }
+    }
+
+    /**
+     * Shows a report a page at a time, moving to the next or previous page as the operator asks
+     *
+     * @param input input from command line
+     * @param listing the report
+     * @param printer prints one row of the report
+     * @throws SQLException if a page can not be read
+     */
+    private void browse(Scanner input, ReportPage.Listing listing, Consumer<Map<String, Object>> printer) throws SQLException {
+        ReportPage page = ReportPage.first(connection, listing, REPORT_PAGE_SIZE);
+        int number = 1;
+        while (true) {
+            if (page.getRows().isEmpty()) {
+                System.out.println("No rows to show");
+                return;
+            }
+            page.getRows().forEach(printer);
+            if (!page.hasNext() && !page.hasPrevious()) {
+                return;
+            }
+
+            System.out.println("Page " + number + (page.hasNext() ? ", n - next page" : "")
+                    + (page.hasPrevious() ? ", p - previous page" : "") + ", anything else to stop");
+            String choice = input.nextLine().trim();
+            if (choice.equals("n") && page.hasNext()) {
+                page = page.next(connection);
+                number++;
+            } else if (choice.equals("p") && page.hasPrevious()) {
+                page = page.previous(connection);
+                number--;
+            } else {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Prints one ward of a ward report
+     *
+     * @param row the ward, keyed by column label
+     * @param usage whether to print its usage percentage
+     */
+    private static void printWard(Map<String, Object> row, boolean usage) {
+        System.out.println("Ward number = " + row.get("number") + ", capacity = " + row.get("capacity") + ", patient IDs = " + row.get("patientIds")
+                + ", charges per day  = " + row.get("chargesPerDay") + ", occupants = " + row.get("occupants") + ", responsible nurse = "
+                + row.get("responsibleNurse") + (usage ? ", useage percentage = " + row.get("usagePercentage") : ""));
+    }
 
+    /**
+     * Prints one patient of a patient report
+     *
+     * @param row the patient, keyed by column label
+     */
+    private static void printPatient(Map<String, Object> row) {
+        System.out.println("Patient ID = " + row.get("id") + ", SSN = " + row.get("ssn") + ", name = " + row.get("name") + ", date of birth = " + row.get("dob")
+                + ", gender = " + row.get("gender") + ", age = " + row.get("age") + ", phone number = " + row.get("phone") + ", address = " + row.get("address")
+                + ", processing treatment plan = " + row.get("treatment") + ", is in ward = " + row.get("inWard") + ", completing treatment = " + row.get("status"));
     }
 
     /**
@@ -4815,69 +3250,42 @@ class WolfHospital {
                 return;
             }
         } catch (Exception e) {
-            e.printStackTrace();
+            System.err.println("Ward capacity must be an integer");
+            return;
         }
 
-        //query for all desired wards that have available beds
-        try {
-            result = statement.executeQuery("SELECT * FROM Ward WHERE capacity = " + cp + " AND capacity > occupants");
-        } catch (SQLException e) {
-            e.printStackTrace();
+        //Quit if no available ward, the availability index answers without querying the database
+        if (wardIndex.freeBedCount(cp) == 0) {
+            System.out.println("No ward available for given request.");
             return;
         }
 
-        //Show the results in the database via query, use hashset to store ward number
+        //Show the wards of that capacity that have free beds
         System.out.println();
         System.out.println("Display All Available Wards: ");
-        HashSet<Integer> wardSet = new HashSet<Integer>();
-        try {
-            while(result.next()) {
-                int wN = result.getInt("number");
-                wardSet.add(wN);
-                int wC = result.getInt("capacity");
-                String pList = result.getString("patientIds");
-                double wCharges = result.getDouble("chargesPerDay");
-                int wO = result.getInt("occupants");
-                int wRN = result.getInt("responsibleNurse");
-                System.out.println("Ward number = " + wN + ", capacity = " + wC + ", patient IDs = " + pList + ", charges per day  = " + wCharges + ", occupants = "
-                        + wO + ", responsible nurse = " + wRN);
-            }
-        } catch (SQLException e) {
-            e.printStackTrace();
-        }
-
-        //Quit if no available ward
-        if(wardSet.size() == 0) {
-            System.out.println("No ward available for given request.");
-            return;
+        List<Integer> wardList = wardIndex.freeWards(cp);
+        for (int wN : wardList) {
+            System.out.println("Ward number = " + wN + ", capacity = " + cp + ", free beds = " + wardIndex.freeBeds(wN));
         }
 
-        //Get the ward number patient chosen, quit if not in displayed list(hashset)
+        //Get the ward number patient chosen, quit if not in displayed list
         System.out.println();
-        System.out.println("Please enter one of the desired ward number in ABOVE LIST.");
-        int number = 0;
-        try {
-            number = Integer.parseInt(input.nextLine());
-            if(!wardSet.contains(number)) {
-                System.err.println("Ward number must be in above displayed list");
+        System.out.println("Please enter one of the desired ward number in ABOVE LIST, or press enter to take any available ward.");
+        int chosenWard = 0;
+        try {
+            String chosen = input.nextLine().trim();
+            if (!chosen.isEmpty()) {
+                chosenWard = Integer.parseInt(chosen);
+                if (!wardList.contains(chosenWard)) {
+                    System.err.println("Ward number must be in above displayed list");
+                    return;
+                }
             }
         } catch (Exception e) {
             System.err.println("Ward number must be an integer");
             return;
         }
 
-        //Query database for given ward
-        try {
-            result = statement.executeQuery("SELECT * FROM Ward WHERE number = " + number);
-            if (!result.next()) {
-                System.err.println("That ward does not exist in the database");
-                return;
-            }
-        } catch (SQLException e) {
-            e.printStackTrace();
-            return;
-        }
-
         //Get patient ID
         System.out.println("Please enter patient ID, the patient must be present in the database.");
         int pId = 0;
@@ -4888,64 +3296,22 @@ class WolfHospital {
             return;
         }
 
-        //Query database for given patient, quit if patient not exists
-        try {
-            result = statement.executeQuery("SELECT * FROM Patient WHERE id = " + pId);
-            if (!result.next()) {
-                System.err.println("That patient does not exist in the database");
-                return;
-            }
-        } catch (SQLException e) {
-            e.printStackTrace();
-            return;
-        }
-
-        //Check if patient is in patient list
-        String patientList = null;
-        HashSet<Integer> patients = new HashSet<Integer>();
-        try {
-            result = statement.executeQuery("SELECT * FROM Ward WHERE number = " + number);
-            if (!result.next()) {
-                System.err.println("That ward does not exist in the database");
-                return;
-            }
-            patientList = result.getString("patientIds");
-            List<String> list = Arrays.asList(patientList.split(","));
-            for (String s: list) {
-                patients.add(Integer.parseInt(s));
-            }
-            if (patients.contains(pId)) {
-                System.err.println("Given patient is already in that ward.");
-                return;
-            }
-        } catch (Exception e) {
-            e.printStackTrace();
-            return;
-        }
-
-        //Update occupants and patient list for given ward
-        int occupants = 0;
+        //Give the patient a free bed in the ward and count them as an occupant
+        HospitalService.Bed bed = null;
         try {
-            occupants = result.getInt("occupants");
-            occupants++;
-            patientList += "," + pId;
-        } catch (SQLException e) {
-            e.printStackTrace();
+            bed = service().assignBedToPatient(pId, cp, chosenWard);
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            System.err.println(e.getMessage());
             return;
-        }
-
-        String query = "UPDATE Ward SET patientIds = "  + "\"" + patientList + "\", occupants = " + occupants + " WHERE number = " + number;
-        try {
-            ps = connection.prepareStatement(query);
-            ps.executeUpdate();
         } catch (SQLException e) {
             e.printStackTrace();
             return;
         }
+        int number = bed.ward;
 
         //Query database for updated ward
         try {
-            result = statement.executeQuery("SELECT * FROM Ward WHERE number = " + number);
+            result = lookup(Lookups.WARD_BY_NUMBER, number);
         } catch (SQLException e) {
             e.printStackTrace();
             return;
@@ -4972,7 +3338,7 @@ class WolfHospital {
         }
 
         System.out.println();
-        System.out.println("Patient assigned to ward: number = " + wN + ", capacity = " + wC + ", patient IDs = " + pList + ", charges per day  = " + wCharges + ", occupants = "
+        System.out.println("Patient assigned to bed " + bed.bed + " of ward: number = " + wN + ", capacity = " + wC + ", patient IDs = " + pList + ", charges per day  = " + wCharges + ", occupants = "
                 + wO + ", responsible nurse = " + wRN);
         System.out.println();
 
@@ -4999,7 +3365,7 @@ class WolfHospital {
 
         //Query database for given ward, quit if ward not exists
         try {
-            result = statement.executeQuery("SELECT * FROM Ward WHERE number = " + number);
+            result = lookup(Lookups.WARD_BY_NUMBER, number);
             if (!result.next()) {
                 System.err.println("Ward must be in the database");
                 return;
@@ -5021,7 +3387,7 @@ class WolfHospital {
 
         //Query database for given patient, quit if patient not exists
         try {
-            result = statement.executeQuery("SELECT * FROM Patient WHERE id = " + pId);
+            result = lookup(Lookups.PATIENT_BY_ID, pId);
             if (!result.next()) {
                 System.err.println("That patient does not exist in the database");
                 return;
@@ -5031,51 +3397,12 @@ class WolfHospital {
             return;
         }
 
-        //Check if patient is in patient list
-        String patientList = null;
-        String updatedList = null;
-        HashSet<Integer> patients = new HashSet<Integer>();
-        try {
-            result = statement.executeQuery("SELECT * FROM Ward WHERE number = " + number);
-            if (!result.next()) {
-                System.err.println("Ward must be in the database");
-                return;
-            }
-            patientList = result.getString("patientIds");
-            List<String> list = Arrays.asList(patientList.split(","));
-            for (String s: list) {
-                int id = Integer.parseInt(s);
-                if(id != pId && updatedList == null) {
-                    updatedList = "" + s;
-                } else if(id != pId && updatedList != null) {
-                    updatedList = updatedList + "," + s;
-                }
-                patients.add(id);
-            }
-            if (!patients.contains(pId)) {
-                System.err.println("Given patient is not in that ward.");
-                return;
-            }
-        } catch (Exception e) {
-            e.printStackTrace();
-            return;
-        }
-
-        //Update occupants and patient list for given ward
-        int occupants = 0;
-        try {
-            occupants = result.getInt("occupants");
-            occupants--;
-            patients.remove(pId);
-        } catch (SQLException e) {
-            e.printStackTrace();
-            return;
-        }
-
-        String query = "UPDATE Ward SET patientIds = "  + "\"" + updatedList + "\", occupants = " + occupants + " WHERE number = " + number;
+        //Free the patient's bed and remove them from the occupants
         try {
-            ps = connection.prepareStatement(query);
-            ps.executeUpdate();
+            if (!service().releaseBed(number, pId)) {
+                System.err.println("Given patient is not in that ward.");
+                return;
+            }
         } catch (SQLException e) {
             e.printStackTrace();
             return;
@@ -5083,7 +3410,7 @@ class WolfHospital {
 
         //Query database for updated ward
         try {
-            result = statement.executeQuery("SELECT * FROM Ward WHERE number = " + number);
+            result = lookup(Lookups.WARD_BY_NUMBER, number);
         } catch (SQLException e) {
             e.printStackTrace();
             return;
@@ -5127,14 +3454,6 @@ class WolfHospital {
      */
     public void enterNewBillingAccount(Scanner input) {
 
-        String query = "INSERT INTO BillingAccount VALUES(?, ?, ?, ?, ?, ?, ?, ?, ?)";
-        try {
-            ps = connection.prepareStatement(query);
-        } catch (SQLException e) {
-            e.printStackTrace();
-            return;
-        }
-
         System.out.println("Please enter patient ID, the patient must already be present in the database.");
         int pId = 0;
         //Get the patient ID from input
@@ -5145,188 +3464,40 @@ class WolfHospital {
             return;
         }
 
-
-        //Query database for given patient
-        try {
-            result = statement.executeQuery("SELECT * FROM Patient WHERE id = " + pId);
-        } catch (SQLException e) {
-            e.printStackTrace();
-            return;
-        }
-
-
-        //If patient does not exist quit
-        try {
-
-            if (!result.next()) {
-                System.err.println("That Patient does not exist in the database");
-                return;
-            }
-
-        } catch (SQLException e) {
-            e.printStackTrace();
-            return;
-        }
-
-        //Check if patient already has billing account
-        try {
-            result = statement.executeQuery("SELECT * FROM BillingAccount WHERE patientId = " + pId);
-        } catch (SQLException e) {
-            e.printStackTrace();
-            return;
-        }
-
-
-        //If patient already has billing account quit
-        try {
-
-            if (result.next()) {
-                System.err.println("This patient already has a Billing Account, you may choose to update this account instead.");
-                return;
-            } else {
-                ps.setInt(1, pId);
-            }
-
-        } catch (SQLException e) {
-            e.printStackTrace();
-            return;
-        }
-
         //Get the responsible SSN
         System.out.println("Please enter the SSN of person responsible for Billing Account.");
-        String respSSN = null;
-
-        //Get the responsible SSN from input
-        try {
-            respSSN = input.nextLine();
-            if (respSSN.length() != 9) {
-                System.out.println("SSN must be exactly 9 digits.");
-                return;
-            }
-
-        } catch (Exception e) {
-            System.err.println("Invalid input");
-            return;
-        }
-
-
-        //Set the responsible SSN
-        try {
-            ps.setString(2, respSSN);
-        } catch (SQLException e) {
-            e.printStackTrace();
-            return;
-        }
+        String respSSN = input.nextLine();
 
 
         System.out.println("Please enter the billing address for Billing Account.");
-        String addr = null;
-
-        //Get the billing address from input
-        try {
-            addr = input.nextLine();
-            if (addr.length() > 200) {
-                System.out.println("Billing address must be 200 characters or less.");
-                return;
-            }
-
-        } catch (Exception e) {
-            System.err.println("Invalid input");
-            return;
-        }
-
-
-        //Set the address
-        try {
-            ps.setString(3, addr);
-        } catch (SQLException e) {
-            e.printStackTrace();
-            return;
-        }
+        String addr = input.nextLine();
 
 
         System.out.println("Please enter the visit date in the form yyyy-mm-dd");
-        String visitDate = null;
-
-        //Get the visit date from input
-        try {
-            visitDate = input.nextLine();
-        } catch (Exception e) {
-            System.err.println("Invalid input");
-            return;
-        }
+        LocalDate visitDate = null;
 
-        //Parse the given date into a Date object
-        Date startDateUtil = null;
-        java.sql.Date sqlVisitDate = null;
+        //Parse the given date from input
         try {
-            startDateUtil = new SimpleDateFormat("yyyy-MM-dd").parse(visitDate);
-            sqlVisitDate = new java.sql.Date(startDateUtil.getTime());
-            ps.setDate(4, sqlVisitDate);
-        } catch (ParseException | SQLException e) {
+            visitDate = new java.sql.Date(new SimpleDateFormat("yyyy-MM-dd").parse(input.nextLine()).getTime()).toLocalDate();
+        } catch (ParseException e) {
             e.printStackTrace();
             return;
         }
 
         //Get the payment method
         System.out.println("Please enter the payment method for Billing Account.");
-        String paymentMethod = null;
-
-        //Get the payment method from input
-        try {
-            paymentMethod = input.nextLine();
-            if (paymentMethod.length() > 128) {
-                System.out.println("Payment method must be 128 characters or less.");
-                return;
-            }
-
-        } catch (Exception e) {
-            System.err.println("Invalid input");
-            return;
-        }
-
-
-        //Set the payment method
-        try {
-            ps.setString(5, paymentMethod);
-        } catch (SQLException e) {
-            e.printStackTrace();
-            return;
-        }
+        String paymentMethod = input.nextLine();
 
 
         System.out.println("Please enter the card number for payment method, if not applicable type na and press enter to continue.");
-        String cardNumber = null;
-
-        //Get the card number from input
-        try {
-            cardNumber = input.nextLine();
-        } catch (Exception e) {
-            System.err.println("Invalid input");
-            return;
-        }
-
-
-        //Set the card number
-        try {
-            if (!cardNumber.toLowerCase().equals("na")) {
-                if (cardNumber.length() != 16) {
-                    System.err.println("Card number must be exactly 16 digits.");
-                    return;
-                }
-                ps.setString(6, cardNumber);
-            } else {
-                ps.setNull(6, java.sql.Types.CHAR);
-            }
-        } catch (SQLException e) {
-            e.printStackTrace();
-            return;
+        String cardNumber = input.nextLine();
+        if (cardNumber.toLowerCase().equals("na")) {
+            cardNumber = null;
         }
 
         //Get the registration fee from input
         System.out.println("Please enter the Registration fee for the Billing Account.");
         int regFee = 0;
-        //Get the patient ID from input
         try {
             regFee = Integer.parseInt(input.nextLine());
         } catch (NumberFormatException e) {
@@ -5335,77 +3506,32 @@ class WolfHospital {
         }
 
 
-        //Set the registration fee
-        try {
-            ps.setInt(7, regFee);
-        } catch (SQLException e) {
-            e.printStackTrace();
-            return;
-        }
-
-
         //Get medication prescribed
         System.out.println("Please enter yes or no indicating medication has been prescribed for this Billing Account.");
-        String meds = null;
-
-        //Get the medication prescribed from input
-        try {
-            meds = input.nextLine();
-            if (meds.length() > 3) {
-                System.out.println("Input should not be more than 3 characters.");
-                return;
-            }
-
-        } catch (Exception e) {
-            System.err.println("Invalid input");
-            return;
-        }
-
-        //Set the medication prescribed
-        try {
-            ps.setString(8, meds);
-        } catch (SQLException e) {
-            e.printStackTrace();
-            return;
-        }
+        String meds = input.nextLine();
 
 
         //Get the accommodation fee from input
         System.out.println("Please enter the Accomodation fee for the Billing Account. If not applicable type na and press enter to continue.");
-        String accFee = null;
-        //Get the patient ID from input
+        Integer accFee = null;
         try {
-            accFee = input.nextLine();
-        } catch (Exception e) {
-            System.err.println("Invalid input.");
-            return;
-        }
-
-
-        if (accFee.toLowerCase().equals("na")) {
-            //Set the registration fee
-            try {
-                ps.setNull(9, java.sql.Types.INTEGER);
-            } catch (SQLException e) {
-                e.printStackTrace();
-                return;
-            }
-        } else {
-            try {
-                ps.setInt(9, Integer.parseInt(accFee));
-            } catch (SQLException e) {
-                e.printStackTrace();
-                return;
+            String fee = input.nextLine();
+            if (!fee.toLowerCase().equals("na")) {
+                accFee = Integer.parseInt(fee);
             }
+        } catch (NumberFormatException e) {
+            System.err.println("Accommodation fee must be an integer");
+            return;
         }
 
 
-
         //Execute the update
         try {
-            ps.executeUpdate();
-            result = statement.executeQuery("SELECT * FROM BillingAccount WHERE patientId = " + pId);
-
+            service().createBillingAccount(pId, respSSN, addr, visitDate, paymentMethod, cardNumber, regFee, meds, accFee);
+            result = lookup(Lookups.BILLING_ACCOUNT_BY_PATIENT, pId);
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            System.err.println(e.getMessage());
+            return;
         } catch (SQLException e) {
             e.printStackTrace();
             return;
@@ -5478,7 +3604,7 @@ class WolfHospital {
 
         //Query database for given patient
         try {
-            result = statement.executeQuery("SELECT * FROM Patient WHERE id = " + pId);
+            result = lookup(Lookups.PATIENT_BY_ID, pId);
         } catch (SQLException e) {
             e.printStackTrace();
             return;
@@ -5500,7 +3626,7 @@ class WolfHospital {
 
         //Check if patient already has billing account
         try {
-            result = statement.executeQuery("SELECT * FROM BillingAccount WHERE patientId = " + pId);
+            result = lookup(Lookups.BILLING_ACCOUNT_BY_PATIENT, pId);
         } catch (SQLException e) {
             e.printStackTrace();
             return;
@@ -5557,6 +3683,11 @@ class WolfHospital {
                     printBillingAccountUpdateOptions();
                     break;
 
+                case "7" :
+                    removeFeeFromBillingAccount(input, pId);
+                    printBillingAccountUpdateOptions();
+                    break;
+
                 case "p" :
                     printBillingAccountUpdateOptions();
                     break;
@@ -5590,6 +3721,7 @@ class WolfHospital {
         System.out.println("4 - Update card number");
         System.out.println("5 - Update medication prescribed");
         System.out.println("6 - Add fee to billing account");
+        System.out.println("7 - Remove fee from billing account");
         System.out.println("p - Print options");
         System.out.println("exit - Return to main menu");
     }
@@ -5619,7 +3751,10 @@ class WolfHospital {
         }
 
         try {
-            statement.executeUpdate("UPDATE BillingAccount SET responsibleSSN = '" + respSSN + "' WHERE patientId = " + pId);
+            service().updateBillingAccount(pId, respSSN, null, null, null, null);
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            System.err.println(e.getMessage());
+            return;
         } catch (SQLException e) {
             e.printStackTrace();
             return;
@@ -5627,7 +3762,7 @@ class WolfHospital {
 
         //Query for update
         try {
-            result = statement.executeQuery("SELECT * FROM BillingAccount WHERE patientId = " + pId);
+            result = lookup(Lookups.BILLING_ACCOUNT_BY_PATIENT, pId);
         } catch (SQLException e) {
             e.printStackTrace();
             return;
@@ -5705,7 +3840,10 @@ class WolfHospital {
         }
 
         try {
-            statement.executeUpdate("UPDATE BillingAccount SET billingAddress = '" + addr + "' WHERE patientId = " + pId);
+            service().updateBillingAccount(pId, null, addr, null, null, null);
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            System.err.println(e.getMessage());
+            return;
         } catch (SQLException e) {
             e.printStackTrace();
             return;
@@ -5713,7 +3851,7 @@ class WolfHospital {
 
         //Query for update
         try {
-            result = statement.executeQuery("SELECT * FROM BillingAccount WHERE patientId = " + pId);
+            result = lookup(Lookups.BILLING_ACCOUNT_BY_PATIENT, pId);
         } catch (SQLException e) {
             e.printStackTrace();
             return;
@@ -5791,7 +3929,10 @@ class WolfHospital {
         }
 
         try {
-            statement.executeUpdate("UPDATE BillingAccount SET paymentMethod = '" + paymentMethod + "' WHERE patientId = " + pId);
+            service().updateBillingAccount(pId, null, null, paymentMethod, null, null);
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            System.err.println(e.getMessage());
+            return;
         } catch (SQLException e) {
             e.printStackTrace();
             return;
@@ -5799,7 +3940,7 @@ class WolfHospital {
 
         //Query for update
         try {
-            result = statement.executeQuery("SELECT * FROM BillingAccount WHERE patientId = " + pId);
+            result = lookup(Lookups.BILLING_ACCOUNT_BY_PATIENT, pId);
         } catch (SQLException e) {
             e.printStackTrace();
             return;
@@ -5859,13 +4000,6 @@ class WolfHospital {
      * @param pId patient ID for update
      */
     public void updateCardNumber(Scanner input, int pId) {
-        String query = "UPDATE BillingAccount SET cardNumber = ? WHERE patientId = " + pId;
-        try {
-            ps = connection.prepareStatement(query);
-        } catch (SQLException e) {
-            e.printStackTrace();
-            return;
-        }
         System.out.println("Please enter the card number for payment method, if not applicable type na and press enter to continue.");
         String cardNumber = null;
 
@@ -5877,25 +4011,12 @@ class WolfHospital {
             return;
         }
 
-
-        //Set the card number
+        //A card number of na clears it
         try {
-            if (!cardNumber.toLowerCase().equals("na")) {
-                if (cardNumber.length() != 16) {
-                    System.err.println("Card number must be exactly 16 digits.");
-                    return;
-                }
-                ps.setString(1,  cardNumber);
-            } else {
-                ps.setNull(1, java.sql.Types.CHAR);
-            }
-        } catch (SQLException e) {
-            e.printStackTrace();
+            service().updateBillingAccount(pId, null, null, null, cardNumber, null);
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            System.err.println(e.getMessage());
             return;
-        }
-
-        try {
-            ps.executeUpdate();
         } catch (SQLException e) {
             e.printStackTrace();
             return;
@@ -5903,7 +4024,7 @@ class WolfHospital {
 
         //Query for update
         try {
-            result = statement.executeQuery("SELECT * FROM BillingAccount WHERE patientId = " + pId);
+            result = lookup(Lookups.BILLING_ACCOUNT_BY_PATIENT, pId);
         } catch (SQLException e) {
             e.printStackTrace();
             return;
@@ -5969,7 +4090,10 @@ class WolfHospital {
         }
 
         try {
-            statement.executeUpdate("UPDATE BillingAccount SET medicationPrescribed = '" + meds + "' WHERE patientId = " + pId);
+            service().updateBillingAccount(pId, null, null, null, null, meds);
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            System.err.println(e.getMessage());
+            return;
         } catch (SQLException e) {
             e.printStackTrace();
             return;
@@ -5977,7 +4101,7 @@ class WolfHospital {
 
         //Query for update
         try {
-            result = statement.executeQuery("SELECT * FROM BillingAccount WHERE patientId = " + pId);
+            result = lookup(Lookups.BILLING_ACCOUNT_BY_PATIENT, pId);
         } catch (SQLException e) {
             e.printStackTrace();
             return;
@@ -6024,62 +4148,19 @@ class WolfHospital {
             System.out.println();
             System.out.println("Updated Billing Account: Patient ID = " + id + ", Responsible SSN = " + rSSN + ", Billing Address = " + billAddr
                     + ", Visit Date = " + vD.toString() + ", Payment Method = " + payMeth + ", Card Number = " + cardNum + ", Registration Fee = " + rF +
-                    ", Medication Prescribed = " + medsPre + ", Accommodation Fee = " + aF);
-        }
-
-    }
-
-    /**
-     * Adds a fee to the given patient's billing account.
-     *
-     * @param input Scanner for user input
-     * @param pId patient ID for update
-     */
-    public void addFeeToBillingAccount(Scanner input, int pId) {
-        String query = "INSERT INTO Fee VALUES(?, ?, ?)";
-        try {
-            ps = connection.prepareStatement(query);
-        } catch (SQLException e) {
-            e.printStackTrace();
-            return;
-        }
-
-        System.out.println("Please enter the Fee ID.");
-        int feeId = 0;
-
-        //Get the fee ID from input
-        try {
-            feeId = Integer.parseInt(input.nextLine());
-        } catch (NumberFormatException e) {
-            System.err.println("Fee ID must be an integer");
-            return;
-        }
-
-
-        //Query database for given fee
-        try {
-            result = statement.executeQuery("SELECT * FROM Fee WHERE id = " + feeId);
-        } catch (SQLException e) {
-            e.printStackTrace();
-            return;
+                    ", Medication Prescribed = " + medsPre + ", Accommodation Fee = " + aF);
         }
 
+    }
 
-        //If fee exists quit
-        try {
-
-            if (result.next()) {
-                System.err.println("That Fee already exists in the database.");
-                return;
-            } else {
-                ps.setInt(1, feeId);
-            }
-
-        } catch (SQLException e) {
-            e.printStackTrace();
-            return;
-        }
-
+    /**
+     * Adds a fee to the given patient's billing account.
+     *
+     * @param input Scanner for user input
+     * @param pId patient ID for update
+     */
+    public void addFeeToBillingAccount(Scanner input, int pId) {
+        int feeId = 0;
 
         System.out.println("Please enter the name of the Fee.");
         String name = null;
@@ -6110,21 +4191,13 @@ class WolfHospital {
         }
 
 
-        //Set the name and amount
+        //Insert the fee, add it to the billing record and move the record total in one transaction
         try {
-            ps.setString(2, name);
-            ps.setDouble(3, amount);
-        } catch (SQLException e) {
-            e.printStackTrace();
+            feeId = service().addFeeToBillingRecord(pId, 0, name, amount);
+            result = lookup(Lookups.FEE_BY_ID, feeId);
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            System.err.println(e.getMessage());
             return;
-        }
-
-
-        //Execute the update
-        try {
-            ps.executeUpdate();
-            result = statement.executeQuery("SELECT * FROM Fee WHERE id = " + feeId);
-
         } catch (SQLException e) {
             e.printStackTrace();
             return;
@@ -6146,80 +4219,97 @@ class WolfHospital {
 
         System.out.println();
         System.out.println("New Fee created with: ID = " + id + ", Name = " + n + ", Amount = " + amt);
+        System.out.println("Fee ID " + feeId + " added to BillingAccount of patient with ID " + pId);
 
-
-        query = "INSERT INTO AddFee VALUES(?, ?)";
+        //Show the update in the database via query
+        BillingSummary summary = null;
         try {
-            ps = connection.prepareStatement(query);
-            ps.setInt(1,  feeId);
-            ps.setInt(2, pId);
-            ps.executeUpdate();
+            summary = readBillingSummary(pId);
         } catch (SQLException e) {
             e.printStackTrace();
             return;
         }
 
-        System.out.println("Fee ID " + feeId + " added to BillingAccount of patient with ID " + pId);
+        if (summary != null) {
+            System.out.println();
+            System.out.println("Updated Billing Account:");
+            summary.print(System.out);
+        }
+    }
+
+
+    /**
+     * Removes a fee from the given patient's billing account.
+     *
+     * @param input Scanner for user input
+     * @param pId patient ID for update
+     */
+    public void removeFeeFromBillingAccount(Scanner input, int pId) {
+        System.out.println("Please enter the Fee ID.");
+        int feeId = 0;
 
+        //Get the fee ID from input
         try {
-            result = statement.executeQuery("SELECT BillingAccount.patientId, responsibleSSN, billingAddress, visitDate, "
-                    + "paymentMethod, cardNumber, registrationFee, medicationPrescribed, accommodationFee, name AS feeName, amount as feeAmount "
-                    + "FROM BillingAccount JOIN(SELECT * FROM Fee JOIN AddFee on AddFee.feeId = Fee.id)"
-                    + " AS F ON BillingAccount.patientId = F.patientId WHERE BillingAccount.patientId = " + pId + " AND feeId = " + feeId);
+            feeId = Integer.parseInt(input.nextLine());
+        } catch (NumberFormatException e) {
+            System.err.println("Fee ID must be an integer");
+            return;
+        }
 
+        //Remove the fee and move the record total back in one transaction
+        try {
+            if (!service().removeFee(pId, feeId)) {
+                System.err.println("That Fee is not on the Billing Account of this patient.");
+                return;
+            }
         } catch (SQLException e) {
             e.printStackTrace();
             return;
         }
 
+        System.out.println("Fee ID " + feeId + " removed from BillingAccount of patient with ID " + pId);
+
         //Show the update in the database via query
-        int pid = 0, rF = 0;
-        Integer aF = null;
-        String rSSN = null, billAddr = null, payMeth = null, cardNum = null, medsPre = null, fName = null;
-        Date vD = null;
-        Double fAmt = null;
+        BillingSummary summary = null;
         try {
-            while (result.next()) {
-                pid = result.getInt("patientId");
-                rSSN = result.getString("responsibleSSN");
-                billAddr = result.getString("billingAddress");
-                vD = result.getDate("visitDate");
-                payMeth = result.getString("paymentMethod");
-                cardNum = result.getString("cardNumber");
-                rF = result.getInt("registrationFee");
-                medsPre = result.getString("medicationPrescribed");
-                aF = result.getInt("accommodationFee");
-                fName = result.getString("feeName");
-                fAmt = result.getDouble("feeAmount");
-            }
+            summary = readBillingSummary(pId);
         } catch (SQLException e) {
             e.printStackTrace();
+            return;
         }
 
-
-        if (cardNum == null && aF == null) {
-            System.out.println();
-            System.out.println("Updated Billing Account: Patient ID = " + pid + ", Responsible SSN = " + rSSN + ", Billing Address = " + billAddr
-                    + ", Visit Date = " + vD.toString() + ", Payment Method = " + payMeth + ", Card Number = NA, Registration Fee = " + rF +
-                    ", Medication Prescribed = " + medsPre + ", Accommodation Fee = NA, Fee Name = " + fName + ", Fee Amount = " + fAmt);
-        } else if (cardNum == null && aF != null) {
-            System.out.println();
-            System.out.println("Updated Billing Account: Patient ID = " + pid + ", Responsible SSN = " + rSSN + ", Billing Address = " + billAddr
-                    + ", Visit Date = " + vD.toString() + ", Payment Method = " + payMeth + ", Card Number = NA, Registration Fee = " + rF +
-                    ", Medication Prescribed = " + medsPre + ", Accommodation Fee = " + aF + ", Fee Name = " + fName + ", Fee Amount = " + fAmt);
-        } else if (cardNum != null && aF == null) {
+        if (summary != null) {
             System.out.println();
-            System.out.println("Updated Billing Account: Patient ID = " + pid + ", Responsible SSN = " + rSSN + ", Billing Address = " + billAddr
-                    + ", Visit Date = " + vD.toString() + ", Payment Method = " + payMeth + ", Card Number = " + cardNum + ", Registration Fee = " + rF +
-                    ", Medication Prescribed = " + medsPre + ", Accommodation Fee = NA, Fee Name = " + fName + ", Fee Amount = " + fAmt);
-        } else {
-            System.out.println();
-            System.out.println("Updated Billing Account: Patient ID = " + pid + ", Responsible SSN = " + rSSN + ", Billing Address = " + billAddr
-                    + ", Visit Date = " + vD.toString() + ", Payment Method = " + payMeth + ", Card Number = " + cardNum + ", Registration Fee = " + rF +
-                    ", Medication Prescribed = " + medsPre + ", Accommodation Fee = " + aF + "Fee Name = " + fName + ", Fee Amount = " + fAmt);
+            System.out.println("Updated Billing Account:");
+            summary.print(System.out);
         }
     }
 
+    /**
+     * Recomputes every billing record total from its fees and reports the records that had drifted
+     * @param input input from command line
+     */
+    public void reconcileBillingTotals(Scanner input) {
+        System.out.println("Repair the totals that have drifted? Enter yes or no.");
+        boolean repair = "yes".equalsIgnoreCase(input.nextLine().trim());
+
+        long started = System.nanoTime();
+        List<BillingTotals.Drift> drifts = null;
+        try {
+            drifts = BillingTotals.reconcile(pool, 4, repair);
+        } catch (SQLException e) {
+            e.printStackTrace();
+            return;
+        }
+        long millis = (System.nanoTime() - started) / 1000000;
+
+        System.out.println();
+        for (BillingTotals.Drift drift : drifts) {
+            System.out.println("Billing record " + drift.recordId + ": stored total = " + drift.stored + ", sum of fees = " + drift.actual);
+        }
+        System.out.println(drifts.size() + " billing records had drifted" + (repair && !drifts.isEmpty() ? " and were repaired" : "")
+                + ", checked in " + millis + " ms");
+    }
 
     /**
      * Shows the Billing Account for a Patient that already has an existing Billing
@@ -6241,7 +4331,7 @@ class WolfHospital {
 
         //Query database for given patient
         try {
-            result = statement.executeQuery("SELECT * FROM Patient WHERE id = " + pId);
+            result = lookup(Lookups.PATIENT_BY_ID, pId);
         } catch (SQLException e) {
             e.printStackTrace();
             return;
@@ -6261,328 +4351,469 @@ class WolfHospital {
             return;
         }
 
-        //Get the complete record as shown with demo data
+        //Get the account, its fees and the totals in one query
+        BillingSummary summary = null;
+        try {
+            summary = readBillingSummary(pId);
+        } catch (SQLException e) {
+            e.printStackTrace();
+            return;
+        }
+
+        if (summary == null) {
+            System.err.println("That Patient does not have a Billing Account");
+            return;
+        }
+
+        System.out.println();
+        System.out.println();
+        summary.print(System.out);
+    }
+
+    /**
+     * Reads the billing account of a patient with its fees and totals
+     *
+     * @param pId patient ID
+     * @return the account, or null if the patient has no billing account
+     * @throws SQLException if the account can not be read
+     */
+    private BillingSummary readBillingSummary(int pId) throws SQLException {
+        PreparedStatement summary = connection.unwrap(StatementCache.class).prepare(BillingSummary.QUERY);
+        for (int i = 1; i <= BillingSummary.QUERY_PARAMETERS; i++) {
+            summary.setInt(i, pId);
+        }
+        result = summary.executeQuery();
+        return BillingSummary.read(result);
+    }
+
+    /**
+     * Generates report for monthly medical record for given patient
+     * @param input input from command line
+     */
+    public void viewMonthlyMedicalRecord(Scanner input) {
+        System.out.println("Please enter the patient ID for medical record.");
+        int pId = 0;
+        try {
+            pId = Integer.parseInt(input.nextLine());
+        } catch (NumberFormatException e) {
+            System.err.println("Patient ID must be an integer");
+            return;
+        }
+
+        //Query database for given patient, quit if patient does not exist
         try {
-            result = statement.executeQuery("SELECT BillingAccount.patientId, responsibleSSN, billingAddress, visitDate, "
-                    + "paymentMethod, cardNumber, registrationFee, medicationPrescribed, accommodationFee, name AS feeName, amount as feeAmount "
-                    + "FROM BillingAccount JOIN(SELECT * FROM Fee JOIN AddFee on AddFee.feeId = Fee.id)"
-                    + " AS F ON BillingAccount.patientId = F.patientId WHERE BillingAccount.patientId = " + pId);
+            result = lookup(Lookups.PATIENT_BY_ID, pId);
+            if (!result.next()) {
+                System.err.println("That Patient does not exist in the database");
+                return;
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+            return;
+        }
 
+        //Get the period for medical record
+        DateRange range = readDateRange(input, "medical record");
+        if (range == null) {
+            return;
+        }
+
+        //Query database for the medical record if it was open at any time in the period
+        try {
+            ps = connection.unwrap(StatementCache.class).prepare("SELECT * FROM MedicalRecord WHERE patientId = ? AND "
+                    + DateRange.overlaps("startDate", "endDate"));
+            ps.setInt(1, pId);
+            range.bindOverlaps(ps, 2);
+            result = ps.executeQuery();
         } catch (SQLException e) {
             e.printStackTrace();
             return;
         }
 
-        //Show the update in the database via query
-        int pid = 0, rF = 0;
-        Integer aF = null;
-        String rSSN = null, billAddr = null, payMeth = null, cardNum = null, medsPre = null, fN = null, fA = null;
-        Date vD = null;
-        Double fAmt = null;
-        StringBuilder fName = new StringBuilder();
-        StringBuilder feeAmounts = new StringBuilder();
+        //Show the updates in the database via query
         try {
             while (result.next()) {
-                pid = result.getInt("patientId");
-                rSSN = result.getString("responsibleSSN");
-                billAddr = result.getString("billingAddress");
-                vD = result.getDate("visitDate");
-                payMeth = result.getString("paymentMethod");
-                cardNum = result.getString("cardNumber");
-                rF = result.getInt("registrationFee");
-                medsPre = result.getString("medicationPrescribed");
-                aF = result.getInt("accommodationFee");
-                fN = result.getString("feeName");
-                if (!fName.toString().contains(fN)) {
-                    fName.append(fN + ", ");
-                }
-                fAmt = result.getDouble("feeAmount");
-                fA = fAmt.toString();
-                if (!feeAmounts.toString().contains(fA)) {
-                    feeAmounts.append(fA + ", ");
+                int id = 0, rD = 0;
+                Date sD = null, eD = null;
+                StringBuilder pre = new StringBuilder();
+                StringBuilder dets = new StringBuilder();
+                String res = null, res2 = null;
+                id = result.getInt("patientID");
+                sD = result.getDate("startDate");
+                eD = result.getDate("endDate");
+//				rD = result.getInt("responsibleDoctor");
+//				res = result.getString("prescription");
+//				if (!pre.toString().contains(res)) {
+//					pre.append(res + ", ");
+//				}
+//				res2 = result.getString("diagnosisDetails");
+//				if (!dets.toString().contains(res2)) {
+//					dets.append(res2 + ", ");
+//				}
+                System.out.println();
+                System.out.println();
+                if (eD == null) {
+                    System.out.println("Medical Record");
+                    System.out.println("--------------------------");
+                    System.out.println("Patient ID: " + id);
+                    System.out.println("Start Date: " + sD.toString());
+                    System.out.println("End Date: NA");
+//					System.out.println("Responsible Doctor: " + rD);
+//					System.out.println("Prescription: " + pre.toString().substring(0, pre.length() - 2));
+//					System.out.println("Diagnosis Details: " + dets.toString().substring(0, dets.length() - 2));
+                    System.out.println("--------------------------");
+                } else {
+                    System.out.println("Medical Record");
+                    System.out.println("--------------------------");
+                    System.out.println("Patient ID: " + id);
+                    System.out.println("Start Date: " + sD.toString());
+                    System.out.println("End Date: " + eD.toString());
+//					System.out.println("Responsible Doctor: " + rD);
+//					System.out.println("Prescription: " + pre.toString().substring(0, pre.length() - 2));
+//					System.out.println("Diagnosis Details: " + dets.toString().substring(0, dets.length() - 2));
+                    System.out.println("--------------------------");
                 }
-
             }
         } catch (SQLException e) {
             e.printStackTrace();
         }
 
+    }
 
-        if (cardNum == null && aF == null) {
-            System.out.println();
-            System.out.println();
-            System.out.println("Billing Account");
-            System.out.println("--------------------------");
-            System.out.println("Patient ID: " + pid);
-            System.out.println("Responsible SSN: " + rSSN);
-            System.out.println("Billing Address: " + billAddr);
-            System.out.println("Visit Date: " + vD.toString());
-            System.out.println("Payment Method: " + payMeth);
-            System.out.println("Card Number: NA");
-            System.out.println("Registration Fee: " + rF);
-            System.out.println("Medication Prescribed: " + medsPre);
-            System.out.println("Accommodation Fee: NA");
-            System.out.println("Additional Fees: " + fName.toString().substring(0, fName.length() - 2));
-            System.out.println("Fee Amounts: " + feeAmounts.toString().substring(0, feeAmounts.length() - 2));
-            System.out.println("--------------------------");
-        } else if (cardNum == null && aF != null) {
-            System.out.println();
-            System.out.println();
-            System.out.println("Billing Account");
-            System.out.println("--------------------------");
-            System.out.println("Patient ID: " + pid);
-            System.out.println("Responsible SSN: " + rSSN);
-            System.out.println("Billing Address: " + billAddr);
-            System.out.println("Visit Date: " + vD.toString());
-            System.out.println("Payment Method: " + payMeth);
-            System.out.println("Card Number: NA");
-            System.out.println("Registration Fee: " + rF);
-            System.out.println("Medication Prescribed: " + medsPre);
-            System.out.println("Accommodation Fee: " + aF);
-            System.out.println("Additional Fees: " + fName.toString().substring(0, fName.length() - 2));
-            System.out.println("Fee Amounts: " + feeAmounts.toString().substring(0, feeAmounts.length() - 2));
-            System.out.println("--------------------------");
-        } else if (cardNum != null && aF == null) {
-            System.out.println();
-            System.out.println();
-            System.out.println("Billing Account");
-            System.out.println("--------------------------");
-            System.out.println("Patient ID: " + pid);
-            System.out.println("Responsible SSN: " + rSSN);
-            System.out.println("Billing Address: " + billAddr);
-            System.out.println("Visit Date: " + vD.toString());
-            System.out.println("Payment Method: " + payMeth);
-            System.out.println("Card Number: " + cardNum);
-            System.out.println("Registration Fee: " + rF);
-            System.out.println("Medication Prescribed: " + medsPre);
-            System.out.println("Accommodation Fee: NA");
-            System.out.println("Additional Fees: " + fName.toString().substring(0, fName.length() - 2));
-            System.out.println("Fee Amounts: " + feeAmounts.toString().substring(0, feeAmounts.length() - 2));
-            System.out.println("--------------------------");
-        } else {
-            System.out.println();
-            System.out.println();
-            System.out.println("Billing Account");
-            System.out.println("--------------------------");
-            System.out.println("Patient ID: " + pid);
-            System.out.println("Responsible SSN: " + rSSN);
-            System.out.println("Billing Address: " + billAddr);
-            System.out.println("Visit Date: " + vD.toString());
-            System.out.println("Payment Method: " + payMeth);
-            System.out.println("Card Number: " + cardNum);
-            System.out.println("Registration Fee: " + rF);
-            System.out.println("Medication Prescribed: " + medsPre);
-            System.out.println("Accommodation Fee: " + aF);
-            System.out.println("Additional Fees: " + fName.toString().substring(0, fName.length() - 2));
-            System.out.println("Fee Amounts: " + feeAmounts.toString().substring(0, feeAmounts.length() - 2));
-            System.out.println("--------------------------");
+    /**
+     * Reads the period of a report, a month, quarter, week or whole year
+     *
+     * @param input input from command line
+     * @param report name of the report for the prompts
+     * @return the period, or null if the input was not valid
+     */
+    private DateRange readDateRange(Scanner input, String report) {
+        System.out.println("Please enter the year for " + report + " in form yyyy.");
+        String year = input.nextLine();
+        System.out.println("Please enter the month for " + report + " in form mm, a quarter q1 to q4, a week w01 to w53, or all for the whole year.");
+        String period = input.nextLine();
+        try {
+            return DateRange.parse(year, period);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Exports one of the reports 18 to 22 to a file, streaming the rows from the database
+     * @param input input from command line
+     */
+    public void exportReport(Scanner input) {
+        System.out.println("Please enter the report to export, 18 to 22.");
+        String report = input.nextLine().trim();
+
+        ReportExporter.Query query = null;
+        switch (report) {
+            case "18" : {
+                System.out.println("Please enter the patient ID for medical record.");
+                int pId = 0;
+                try {
+                    pId = Integer.parseInt(input.nextLine());
+                } catch (NumberFormatException e) {
+                    System.err.println("Patient ID must be an integer");
+                    return;
+                }
+                DateRange range = readDateRange(input, "medical record");
+                if (range == null) {
+                    return;
+                }
+                query = ReportExporter.medicalRecords(pId, range);
+                break;
+            }
+
+            case "19" : {
+                DateRange range = readDateRange(input, "patient list record");
+                if (range == null) {
+                    return;
+                }
+                try {
+                    MonthlyCensus.rollForward(connection);
+                } catch (SQLException e) {
+                    e.printStackTrace();
+                    return;
+                }
+                query = ReportExporter.patients(range);
+                break;
+            }
+
+            case "20" :
+                query = ReportExporter.wardUsage();
+                break;
+
+            case "21" : {
+                System.out.println("Please enter the staff ID of responsible doctor, doctor must be in the database");
+                int dId = 0;
+                try {
+                    dId = Integer.parseInt(input.nextLine());
+                } catch (NumberFormatException e) {
+                    System.err.println("Doctor ID must be an integer");
+                    return;
+                }
+                query = ReportExporter.patientsOfDoctor(dId);
+                break;
+            }
+
+            case "22" :
+                query = ReportExporter.staffByRole();
+                break;
+
+            default:
+                System.err.println("Only reports 18 to 22 can be exported");
+                return;
+        }
+
+        System.out.println("Please enter the format, csv or jsonl.");
+        ReportExporter.Format format = null;
+        try {
+            format = ReportExporter.Format.valueOf(input.nextLine().trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            System.err.println("Format must be csv or jsonl");
+            return;
+        }
+
+        System.out.println("Please enter the path of the file to write.");
+        Path file = Paths.get(input.nextLine().trim());
+
+        long started = System.nanoTime();
+        long rows = 0;
+        try {
+            rows = ReportExporter.export(connection, query, file, format);
+        } catch (IOException e) {
+            System.err.println("Can not write " + file + ": " + e.getMessage());
+            return;
+        } catch (SQLException e) {
+            e.printStackTrace();
+            return;
         }
+        System.out.println("Exported " + rows + " rows to " + file + " in " + (System.nanoTime() - started) / 1000000 + " ms");
+    }
+
+    /**
+     * Runs a JSON lines file of operations, see {@link BatchRunner}
+     * @param input input from command line
+     */
+    public void runBatch(Scanner input) {
+        System.out.println("Please enter the path of the batch file.");
+        runBatchFile(Paths.get(input.nextLine().trim()));
     }
 
     /**
-     * Generates report for monthly medical record for given patient
+     * Runs a batch file on connections from the pool and prints the latency of each kind of operation
+     *
+     * @param file JSON lines file of operations
+     * @return number of operations that failed, or -1 if the file could not be read
+     */
+    private static int runBatchFile(Path file) {
+        //The pool holds 10 connections, the 8 lanes leave one for the menu operation running the batch and one
+        //for the slow query log and the HTTP API
+        BatchRunner.Report report = null;
+        try {
+            report = new BatchRunner(pool, wardIndex, entityCache, ids, BATCH_LANES).run(file);
+        } catch (IOException e) {
+            System.err.println("Can not read " + file + ": " + e.getMessage());
+            return -1;
+        }
+        report.print(System.out);
+        return report.getFailureCount();
+    }
+
+    /**
+     * Generates synthetic patients, staff and wards for load testing
      * @param input input from command line
      */
-    public void viewMonthlyMedicalRecord(Scanner input) {
-        System.out.println("Please enter the patient ID for medical record.");
-        int pId = 0;
+    public void generateSyntheticData(Scanner input) {
+        System.out.println("Please enter the seed, the same seed on an empty database writes the same data.");
+        long seed = 0;
         try {
-            pId = Integer.parseInt(input.nextLine());
+            seed = Long.parseLong(input.nextLine().trim());
         } catch (NumberFormatException e) {
-            System.err.println("Patient ID must be an integer");
+            System.err.println("Seed must be an integer");
             return;
         }
 
-        //Query database for given patient, quit if patient does not exist
+        System.out.println("Please enter the number of patients.");
+        int patients = 0;
         try {
-            result = statement.executeQuery("SELECT * FROM Patient WHERE id = " + pId);
-            if (!result.next()) {
-                System.err.println("That Patient does not exist in the database");
-                return;
-            }
-        } catch (SQLException e) {
-            e.printStackTrace();
+            patients = Integer.parseInt(input.nextLine().trim());
+        } catch (NumberFormatException e) {
+            System.err.println("Number of patients must be an integer");
             return;
         }
 
-        //Get the year for medical record
-        System.out.println("Please enter the year for medical record in form yyyy.");
-        String year = null;
+        System.out.println("Please enter the number of wards, staff and fees per patient separated by spaces, "
+                + "leave blank for one ward per 100 patients, one staff member per 50 and 10 fees per patient.");
+        String in = input.nextLine().trim();
+        SyntheticDataGenerator generator = null;
         try {
-            year = input.nextLine();
-            if(year.length() > 4) {
-                System.err.println("Please enter year in form yyyy. No space allowed");
-                return;
+            if (in.isEmpty()) {
+                generator = SyntheticDataGenerator.proportional(pool, seed, patients, GENERATOR_THREADS, System.out);
+            } else {
+                String[] counts = in.split("\\s+");
+                if (counts.length != 3) {
+                    System.err.println("Please enter three numbers");
+                    return;
+                }
+                generator = new SyntheticDataGenerator(pool, seed, patients, Integer.parseInt(counts[0]), Integer.parseInt(counts[1]),
+                        Integer.parseInt(counts[2]), GENERATOR_THREADS, System.out);
             }
-        } catch (Exception e) {
-            System.err.println("Invalid input");
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
             return;
         }
+        generate(generator);
+    }
 
-        //Get the month for medical record
-        System.out.println("Please enter the month for medical record in form mm.");
-        String month = null;
+    /**
+     * Runs a synthetic data generator, then reloads the ward index and drops the cached rows it may have made stale
+     *
+     * @param generator the generator
+     * @return true if every row was written
+     */
+    private static boolean generate(SyntheticDataGenerator generator) {
         try {
-            month = input.nextLine();
-            if(month.length() != 2) {
-                System.err.println("Please enter month in form mm. No space allowed");
-                return;
+            Map<String, Long> rows = generator.generate();
+            for (Map.Entry<String, Long> entry : rows.entrySet()) {
+                System.out.println(String.format("%-20s %12d", entry.getKey(), entry.getValue()));
+            }
+            return true;
+        } catch (SQLException e) {
+            System.err.println("Generating data failed: " + e.getMessage());
+            return false;
+        } finally {
+            try (Connection connection = pool.borrow()) {
+                wardIndex.load(connection);
+            } catch (SQLException e) {
+                System.err.println("Can not reload the ward index: " + e.getMessage());
+            }
+            for (EntityCache.Entity entity : EntityCache.Entity.values()) {
+                entityCache.invalidateAll(entity);
             }
-        } catch (Exception e) {
-            System.err.println("Invalid input");
-            return;
         }
+    }
 
-        //Parse the start and end date
-        String nextMonth = String.valueOf(Integer.parseInt(month) + 1);
-        String start = year + "-" + month + "-01";
-        String end = year + "-" + nextMonth + "-01";
-        Date startUtil = null;
-        Date endUtil = null;
-        try {
-            startUtil = new SimpleDateFormat("yyyy-MM-dd").parse(start);
-            endUtil = new SimpleDateFormat("yyyy-MM-dd").parse(end);
-            java.sql.Date sqlStartDate = new java.sql.Date(startUtil.getTime());
-            java.sql.Date sqlEndDate = new java.sql.Date(endUtil.getTime());
-            result = statement.executeQuery("SELECT * FROM MedicalRecord WHERE startDate between Date' " + sqlStartDate.toString() + "' and Date '" + sqlEndDate.toString() + "' AND ( endDate is NULL OR endDate between Date '" + sqlStartDate.toString() + "' and Date'" + sqlEndDate.toString() + "') AND patientId = " + pId);
-        } catch (ParseException | SQLException e) {
-            e.printStackTrace();
+    /**
+     * Changes how slow a statement must be to be written to the slow query log
+     * @param input input from command line
+     */
+    public void setSlowQueryThreshold(Scanner input) {
+        if (slowQueryLog == null) {
+            System.err.println("The slow query log is not open");
             return;
         }
-
-        //Show the updates in the database via query
+        System.out.println("Statements of " + slowQueryLog.getThresholdMillis() + " ms or more are logged, "
+                + slowQueryLog.getDropped() + " were dropped. Please enter the new threshold in milliseconds.");
         try {
-            while (result.next()) {
-                int id = 0, rD = 0;
-                Date sD = null, eD = null;
-                StringBuilder pre = new StringBuilder();
-                StringBuilder dets = new StringBuilder();
-                String res = null, res2 = null;
-                id = result.getInt("patientID");
-                sD = result.getDate("startDate");
-                eD = result.getDate("endDate");
-//				rD = result.getInt("responsibleDoctor");
-//				res = result.getString("prescription");
-//				if (!pre.toString().contains(res)) {
-//					pre.append(res + ", ");
-//				}
-//				res2 = result.getString("diagnosisDetails");
-//				if (!dets.toString().contains(res2)) {
-//					dets.append(res2 + ", ");
-//				}
-                System.out.println();
-                System.out.println();
-                if (eD == null) {
-                    System.out.println("Medical Record");
-                    System.out.println("--------------------------");
-                    System.out.println("Patient ID: " + id);
-                    System.out.println("Start Date: " + sD.toString());
-                    System.out.println("End Date: NA");
-//					System.out.println("Responsible Doctor: " + rD);
-//					System.out.println("Prescription: " + pre.toString().substring(0, pre.length() - 2));
-//					System.out.println("Diagnosis Details: " + dets.toString().substring(0, dets.length() - 2));
-                    System.out.println("--------------------------");
-                } else {
-                    System.out.println("Medical Record");
-                    System.out.println("--------------------------");
-                    System.out.println("Patient ID: " + id);
-                    System.out.println("Start Date: " + sD.toString());
-                    System.out.println("End Date: " + eD.toString());
-//					System.out.println("Responsible Doctor: " + rD);
-//					System.out.println("Prescription: " + pre.toString().substring(0, pre.length() - 2));
-//					System.out.println("Diagnosis Details: " + dets.toString().substring(0, dets.length() - 2));
-                    System.out.println("--------------------------");
-                }
-            }
-        } catch (SQLException e) {
-            e.printStackTrace();
+            slowQueryLog.setThresholdMillis(Long.parseLong(input.nextLine().trim()));
+        } catch (IllegalArgumentException e) {
+            System.err.println(e instanceof NumberFormatException ? "Threshold must be an integer" : e.getMessage());
+            return;
         }
-
+        System.out.println("Statements of " + slowQueryLog.getThresholdMillis() + " ms or more are now logged");
     }
 
     /**
-     * Generates report for monthly patient List from check-in information table
+     * Starts the HTTP API server on a port, or stops it when it is running
      * @param input input from command line
      */
-    public void viewMonthlyPatientList(Scanner input) {
+    public void toggleApiServer(Scanner input) {
+        if (apiServer == null) {
+            System.err.println("Not connected to the database");
+            return;
+        }
+        if (apiServer.isRunning()) {
+            apiServer.stop();
+            System.out.println("HTTP API server stopped");
+            return;
+        }
 
-        //Get the year for patient list
-        System.out.println("Please enter the year for patient list record in form yyyy.");
-        String year = null;
+        System.out.println("Please enter the port to serve the HTTP API on.");
+        int port = 0;
         try {
-            year = input.nextLine();
-            if(year.length() > 4) {
-                System.err.println("Please enter year in form yyyy. No space allowed");
-                return;
-            }
-        } catch (Exception e) {
-            System.err.println("Invalid input");
+            port = Integer.parseInt(input.nextLine().trim());
+        } catch (NumberFormatException e) {
+            System.err.println("Port must be an integer");
             return;
         }
 
-        //Get the month for medical record
-        System.out.println("Please enter the month for patient list record in form mm.");
-        String month = null;
         try {
-            month = input.nextLine();
-            if(month.length() != 2) {
-                System.err.println("Please enter month in form mm. No space allowed");
-                return;
-            }
-        } catch (Exception e) {
-            System.err.println("Invalid input");
+            startApiServer(port);
+        } catch (IOException | IllegalStateException e) {
+            System.err.println("Can not serve on port " + port + ": " + e.getMessage());
             return;
         }
+        System.out.println("Serving the HTTP API on port " + apiServer.getPort());
+    }
+
+    /**
+     * Starts the HTTP API server on the address in the environment, or on the loopback address
+     * @param port port to listen on
+     * @throws IOException if the address is unknown or the port can not be opened
+     */
+    private static void startApiServer(int port) throws IOException {
+        String address = System.getenv(HTTP_ADDRESS_VARIABLE);
+        apiServer.start(address == null || address.isEmpty() ? InetAddress.getLoopbackAddress() : InetAddress.getByName(address), port);
+    }
 
-        //Parse the start and end date
-        String nextMonth = String.valueOf(Integer.parseInt(month) + 1);
-        String start = year + "-" + month + "-01";
-        String end = year + "-" + nextMonth + "-01";
-        Date startUtil = null;
-        Date endUtil = null;
+    /**
+     * Rebuilds the monthly census from every check-in
+     * @param input input from command line
+     */
+    public void rebuildMonthlyCensus(Scanner input) {
+        long started = System.nanoTime();
+        int rows = 0;
         try {
-            startUtil = new SimpleDateFormat("yyyy-MM-dd").parse(start);
-            endUtil = new SimpleDateFormat("yyyy-MM-dd").parse(end);
-            System.out.println("Start Date " + startUtil + " End Date " + endUtil);
-            java.sql.Date sqlStartDate = new java.sql.Date(startUtil.getTime());
-            java.sql.Date sqlEndDate = new java.sql.Date(endUtil.getTime());
-            result = statement.executeQuery("SELECT * FROM Patient INNER JOIN CheckInInformation ON Patient.id = CheckInInformation.patientId and (startDate BETWEEN Date '" + sqlStartDate.toString() + "' AND Date '" + sqlEndDate.toString() + "') AND ((endDate BETWEEN Date '" + sqlStartDate.toString() + "' AND '" + sqlEndDate.toString() + "') OR endDate is NULL )");
-        } catch (ParseException | SQLException e) {
+            rows = MonthlyCensus.backfill(pool, 4);
+        } catch (SQLException e) {
             e.printStackTrace();
             return;
         }
+        System.out.println("Monthly census rebuilt with " + rows + " patient months in " + (System.nanoTime() - started) / 1000000 + " ms");
+    }
 
-        System.out.println("Generating patient list in " + year + "-" + month);
-        try {
-            while (result.next()) {
-                int id = 0;
-                String pSSN = null;
-                String pName = null;
-                Date pDOB = null;
-                String pGender = null;
-                int pAge = 0;
-                String pPhone = null;
-                String pAddr = null;
-                int pPlan = 0;
-                String pIsInWard = null;
-                String pComp = null;
-                id = result.getInt("id");
-                pSSN = result.getString("ssn");
-                pName = result.getString("name");
-                pDOB = result.getDate("dob");
-                pGender = result.getString("gender");
-                pAge = result.getInt("age");
-                pPhone = result.getString("phone");
-                pAddr = result.getString("address");
-                pPlan = result.getInt("treatment");
-                pIsInWard = result.getString("inWard");
-                pComp = result.getString("status");
-                System.out.println("Patient ID = " + id + ", SSN = " + pSSN + ", name = " + pName + ", date of birth = " + pDOB + ", gender = " + pGender + ", age = " + pAge + ", phone number = " + pPhone
-                        + ", address = " + pAddr + ", processing treatment plan = " + pPlan + ", is in ward = " + pIsInWard + ", completing treatment = " + pComp);
+    /**
+     * Generates report for monthly patient List from check-in information table
+     * @param input input from command line
+     */
+    public void viewMonthlyPatientList(Scanner input) {
 
-            }
+        //Get the period for patient list
+        DateRange range = readDateRange(input, "patient list record");
+        if (range == null) {
+            return;
+        }
+
+        //Page through the census for whole months, other periods are matched against the check-ins
+        System.out.println("Generating patient list in " + range);
+        try {
+            MonthlyCensus.rollForward(connection);
+            browse(input, ReportPage.patients(range), WolfHospital::printPatient);
         } catch (SQLException e) {
             e.printStackTrace();
+            return;
+        }
+
+        //Show the number of patients of each month in the period
+        if (range.isWholeMonths()) {
+            try {
+                ps = connection.unwrap(StatementCache.class).prepare("SELECT yearMonth, patients FROM MonthlyCensusCount "
+                        + "WHERE yearMonth >= ? AND yearMonth < ? ORDER BY yearMonth");
+                ps.setString(1, YearMonth.from(range.getStart()).toString());
+                ps.setString(2, YearMonth.from(range.getEnd()).toString());
+                result = ps.executeQuery();
+                System.out.println();
+                System.out.println("Patients per month:");
+                while (result.next()) {
+                    System.out.println(result.getString("yearMonth") + " = " + result.getInt("patients"));
+                }
+            } catch (SQLException e) {
+                e.printStackTrace();
+            }
         }
         System.out.println();
         System.out.println();
@@ -6594,29 +4825,25 @@ class WolfHospital {
      * @param input input from command line
      */
     public void viewWardUsagePercentage(Scanner input) {
+        System.out.println();
+        System.out.println();
+        System.out.println("Generating report for ward usage");
         try {
-            result = statement.executeQuery("SELECT * FROM Ward");
+            browse(input, ReportPage.wardUsage(), row -> printWard(row, true));
+            System.out.println();
+            System.out.println("Hospital usage: " + service().getOccupancy().getTotal());
         } catch (SQLException e) {
             e.printStackTrace();
-            return;
         }
+    }
 
-        //Show the results in the database via query
-        System.out.println();
-        System.out.println();
-        System.out.println("Generating report for ward usage");
+    /**
+     * Shows the occupied and available beds and wards of the hospital, for each ward capacity and each nurse
+     * @param input input from command line
+     */
+    public void viewOccupancy(Scanner input) {
         try {
-            while(result.next()) {
-                int wN = result.getInt("number");
-                int wC = result.getInt("capacity");
-                String pList = result.getString("patientIds");
-                double wCharges = result.getDouble("chargesPerDay");
-                int wO = result.getInt("occupants");
-                int wRN = result.getInt("responsibleNurse");
-                double percentage = (double)wO / wC;
-                System.out.println("Ward number = " + wN + ", capacity = " + wC + ", patient IDs = " + pList + ", charges per day  = " + wCharges + ", occupants = "
-                        + wO + ", responsible nurse = " + wRN + ", useage percentage = " + percentage);
-            }
+            service().getOccupancy().print(System.out);
         } catch (SQLException e) {
             e.printStackTrace();
         }
@@ -6638,7 +4865,7 @@ class WolfHospital {
 
         //Query database for given doctor, quit if doctor does not exist
         try {
-            result = statement.executeQuery("SELECT * FROM Staff WHERE id = " + pId);
+            result = lookup(Lookups.STAFF_BY_ID, pId);
             if (!result.next()) {
                 System.err.println("That Doctor does not exist in the database");
                 return;
@@ -6650,7 +4877,7 @@ class WolfHospital {
 
         //Query database for given doctor, quit if staff is not a doctor
         try {
-            result = statement.executeQuery("SELECT * FROM Staff WHERE id = " + pId + " AND jobTitle = 'Doctor'");
+            result = lookup(Lookups.DOCTOR_BY_ID, pId);
             if (!result.next()) {
                 System.err.println("That staff is not a doctor");
                 return;
@@ -6660,49 +4887,61 @@ class WolfHospital {
             return;
         }
 
-        //Query database in medical record for patient have the responsible doctor
+        //Page through the patients the doctor has medical records of
+        System.out.println("Generating patient list for doctor Id " + pId);
         try {
-            result = statement.executeQuery("SELECT * FROM Patient INNER JOIN MedicalRecord ON Patient.id = MedicalRecord.patientId AND MedicalRecord.responsibleDoctor = " + pId );
+            browse(input, ReportPage.patientsOfDoctor(pId), WolfHospital::printPatient);
         } catch (SQLException e) {
             e.printStackTrace();
+        }
+        System.out.println();
+        System.out.println();
+
+    }
+
+    /**
+     * Imports patients or staff from a CSV file, see {@link BulkImporter} for the columns of each file
+     * @param input input from command line
+     */
+    public void bulkImport(Scanner input) {
+        System.out.println("Please enter the kind of record to import, patient or staff.");
+        String kind = input.nextLine().trim().toLowerCase();
+        if (!BulkImporter.PATIENT.equals(kind) && !BulkImporter.STAFF.equals(kind)) {
+            System.err.println("Records must be patient or staff");
             return;
         }
 
-        System.out.println("Generating patient list for doctor Id " + pId);
-        try {
-            while (result.next()) {
-                int id = 0;
-                String pSSN = null;
-                String pName = null;
-                Date pDOB = null;
-                String pGender = null;
-                int pAge = 0;
-                String pPhone = null;
-                String pAddr = null;
-                int pPlan = 0;
-                String pIsInWard = null;
-                String pComp = null;
-                id = result.getInt("id");
-                pSSN = result.getString("ssn");
-                pName = result.getString("name");
-                pDOB = result.getDate("dob");
-                pGender = result.getString("gender");
-                pAge = result.getInt("age");
-                pPhone = result.getString("phone");
-                pAddr = result.getString("address");
-                pPlan = result.getInt("treatment");
-                pIsInWard = result.getString("inWard");
-                pComp = result.getString("status");
-                System.out.println("Patient ID = " + id + ", SSN = " + pSSN + ", name = " + pName + ", date of birth = " + pDOB + ", gender = " + pGender + ", age = " + pAge + ", phone number = " + pPhone
-                        + ", address = " + pAddr + ", processing treatment plan = " + pPlan + ", is in ward = " + pIsInWard + ", completing treatment = " + pComp);
+        System.out.println("Please enter the path of the CSV file, the first line must be a header.");
+        Path file = Paths.get(input.nextLine().trim());
+        if (!Files.isReadable(file)) {
+            System.err.println("Can not read " + file);
+            return;
+        }
 
+        System.out.println("Please enter the number of rows inserted per transaction, leave blank for 1000.");
+        int chunkSize = 1000;
+        String in = input.nextLine().trim();
+        if (!in.isEmpty()) {
+            try {
+                chunkSize = Integer.parseInt(in);
+            } catch (NumberFormatException e) {
+                System.err.println("Chunk size must be an integer");
+                return;
+            }
+            if (chunkSize < 1) {
+                System.err.println("Chunk size must be at least 1");
+                return;
             }
+        }
+
+        BulkImporter importer = new BulkImporter(connection, ids, kind, chunkSize, System.out);
+        try {
+            importer.importFile(file);
+        } catch (IOException e) {
+            System.err.println("Can not read " + file + ": " + e.getMessage());
         } catch (SQLException e) {
             e.printStackTrace();
         }
-        System.out.println();
-        System.out.println();
-
     }
 
     /**
@@ -6737,143 +4976,32 @@ class WolfHospital {
 
 
     /**
-     * Initializes the program by establishing a connection to the database and creating the tables
-     * for the database.
+     * Initializes the program by establishing a connection to the database and bringing its tables
+     * up to the current schema version.
      */
     private static void initialize() {
         try {
             connectToDatabase();
-
-            //TODO remove the commented block to create the table, if you have tables in your db that have the same name you will get an error, you need to drop any existing tables. Then re-add the block after you've created the tables.
-            //Note that ward has a new attribute "occupants" and there is a new table DoctorResponsible so your old tables from the last report need to be updated. If you have all other tables just drop ward and create the new one
-            //then create the new DoctorResponsible table and it should be fine.
-
-            statement.executeUpdate("CREATE TABLE Person" +
-                "(id INT NOT NULL, name VARCHAR(128) NOT NULL, age INT NOT NULL," +
-                "gender CHAR (1) NOT NULL, address VARCHAR(200) NOT NULL, phone CHAR (10), "
-                + "PRIMARY KEY(id))");
-
-            statement.executeUpdate("CREATE TABLE Patient" +
-                    "(id INT NOT NULL, ssn CHAR (9), name VARCHAR(128) NOT NULL, dob DATE NOT NULL, gender CHAR (1) NOT NULL, "
-                    + "age INT NOT NULL, phone CHAR (10), address VARCHAR(200) NOT NULL, treatment INT NOT NULL, inWard VARCHAR(3) NOT NULL, status VARCHAR(3) NOT NULL, "
-                    + "primary key(id))");
-
-            statement.executeUpdate("CREATE TABLE Staff" +
-            		"(id INT NOT NULL, jobTitle VARCHAR(128) NOT NULL, professionalTitle VARCHAR(128) NOT NULL, department VARCHAR(128) NOT NULL, "
-                    + "primary key(id))");
-
-
-            statement.executeUpdate("CREATE TABLE Treats" +
-            		"(patientId INT NOT NULL, staffId INT NOT NULL, "
-                    + "primary key(patientId), foreign key(staffId) references Staff(id))");
-
-            statement.executeUpdate("CREATE TABLE Test" +
-                    "(id INT NOT NULL, name VARCHAR (128) NOT NULL, results VARCHAR(200) NOT NULL, "
-                    + "primary key(id))");
-
-            statement.executeUpdate("CREATE TABLE Recommends" +
-            		"(doctorId INT NOT NULL, testId INT NOT NULL, "
-                    + "primary key(doctorId), foreign key(testId) references Test(id))");
-
-            statement.executeUpdate("CREATE TABLE Performs" +
-            		"(specialistId INT NOT NULL, testId INT NOT NULL, "
-                    + "primary key(specialistId), foreign key(testId) references Test(id))");
-
-            statement.executeUpdate("CREATE TABLE AddTest" +
-            		"(testId INT NOT NULL, patientId INT NOT NULL, "
-                    + "primary key(testId), foreign key(patientId) references Patient(id))");
-
-            statement.executeUpdate("CREATE TABLE Prescription" +
-                    "(id INT NOT NULL, name VARCHAR (128) NOT NULL, "
-                    + "primary key(id))");
-
-            statement.executeUpdate("CREATE TABLE AddPrescription" +
-            		"(prescriptionId INT NOT NULL, patientId INT NOT NULL, "
-                    + "primary key(prescriptionId), foreign key(patientId) references Patient(id))");
-
-            statement.executeUpdate("CREATE TABLE DiagnosisDetails" +
-                    "(id INT NOT NULL, details VARCHAR (200) NOT NULL, "
-                    + "primary key(id))");
-
-            statement.executeUpdate("CREATE TABLE AddDiagnosis" +
-            		"(diagnosisId INT NOT NULL, patientId INT NOT NULL, "
-                    + "primary key(diagnosisId), foreign key(patientId) references Patient(id))");
-
-            statement.executeUpdate("CREATE TABLE MedicalRecord" +
-                    "(patientId INT NOT NULL, startDate DATE NOT NULL, endDate DATE, responsibleDoctor INT NOT NULL, "
-                    + "primary key(patientId))");
-
-            statement.executeUpdate("CREATE TABLE AssignPatient" +
-            		"(patientId INT NOT NULL, operatorId INT NOT NULL, wardNumber INT NOT NULL, "
-                    + "primary key(patientId), foreign key(operatorId) references Staff(id))");
-
-            statement.executeUpdate("CREATE TABLE Ward" +
-            		"(number INT NOT NULL, capacity INT NOT NULL, patientIds VARCHAR(200), chargesPerDay DOUBLE NOT NULL, occupants INT NOT NULL, responsibleNurse INT NOT NULL, "
-                    + "primary key(number))");
-
-            statement.executeUpdate("CREATE TABLE FirstTimePatient" +
-            		"(id INT NOT NULL, primary key(id))");
-
-            statement.executeUpdate("CREATE TABLE Registers" +
-            		"(firstTimePatientId INT NOT NULL, operatorId INT NOT NULL, "
-                    + "primary key(firstTimePatientId), foreign key(operatorId) references Staff(id))");
-
-            statement.executeUpdate("CREATE TABLE Bills" +
-            		"(patientId INT NOT NULL, operatorId INT NOT NULL, "
-                    + "primary key(patientId), foreign key(operatorId) references Staff(id))");
-
-            statement.executeUpdate("CREATE TABLE CheckInInformation" +
-                    "(patientId INT NOT NULL, wardNumber INT NOT NULL, bedNumber INT NOT NULL, "
-                    + "startDate DATE NOT NULL, endDate DATE, "
-                    + "primary key(patientId))");
-
-            statement.executeUpdate("CREATE TABLE ProcessCheckIn" +
-            		"(patientId INT NOT NULL, operatorId INT NOT NULL, "
-                    + "primary key(patientId), foreign key(operatorId) references Staff(id))");
-
-            statement.executeUpdate("CREATE TABLE TracksBilling" +
-            		"(patientId INT NOT NULL, operatorId INT NOT NULL, "
-                    + "primary key(patientId), foreign key(operatorId) references Staff(id))");
-
-            statement.executeUpdate("CREATE TABLE BillingAccount" +
-                    "(patientId INT NOT NULL, responsibleSSN CHAR(9) NOT NULL, billingAddress VARCHAR(200) NOT NULL, "
-                    + "visitDate DATE NOT NULL, paymentMethod VARCHAR(128) NOT NULL, cardNumber CHAR(16), registrationFee INT NOT NULL, "
-                    + "medicationPrescribed VARCHAR(3) NOT NULL, accommodationFee INT, "
-                    + "primary key(patientId))");
-
-            statement.executeUpdate("CREATE TABLE BillingRecord" +
-            		"(id INT NOT NULL, total DOUBLE NOT NULL, primary key(id))");
-
-            statement.executeUpdate("CREATE TABLE TrackFees" +
-            		"(billingRecordId INT NOT NULL, patientId INT NOT NULL, "
-                    + "primary key(billingRecordId), foreign key(patientId) references Patient(id))");
-
-            statement.executeUpdate("CREATE TABLE Fee" +
-            		"(id INT NOT NULL, name VARCHAR(128) NOT NULL, amount DOUBLE NOT NULL, primary key(id))");
-
-            statement.executeUpdate("CREATE TABLE AddFee" +
-            		"(feeId INT NOT NULL, billingRecordId INT NOT NULL, "
-                    + "primary key(feeId), foreign key(billingRecordId) references BillingRecord(id))");
-
-            statement.executeUpdate("CREATE TABLE NurseResponsible" +
-            		"(wardNumber INT NOT NULL, nurseId INT NOT NULL, "
-                    + "primary key(wardNumber), foreign key(nurseId) references Staff(id))");
-
-
-
-        } catch (ClassNotFoundException e) {
+        } catch (ClassNotFoundException | SQLException e) {
             e.printStackTrace();
+            return;
+        }
+
+        //Bring the schema up to date, then index the free beds
+        try (Connection connection = pool.borrow()) {
+            int version = new SchemaMigrator().migrate(connection);
+            System.out.println("Database schema version " + version);
+            wardIndex.load(connection);
+            MonthlyCensus.rollForward(connection);
         } catch (SQLException e) {
             e.printStackTrace();
         }
 
-
-
     }
 
     /**
-     * Connects to the Maria DB using JDBC with the given user name and password. Establishes the connection
-     * creates a new statement using the connection then cleans the database for use.
+     * Connects to the Maria DB using JDBC with the given user name and password. Creates the connection pool
+     * every operation borrows its connection from then cleans the database for use.
      *
      * @throws ClassNotFoundException
      * @throws SQLException
@@ -6884,8 +5012,23 @@ class WolfHospital {
         String user = "dbuser";
         String password = "dbpassword";
 
-        connection = DriverManager.getConnection("jdbc:mysql://localhost/wolfHospital", user, password);
-        statement = connection.createStatement();
+        //Pool sizing, raise the maximum when more operator desks share this application
+        int minPoolSize = 2;
+        int maxPoolSize = 10;
+        long idleTimeoutMillis = 5 * 60 * 1000;
+        String validationQuery = "SELECT 1";
+
+        pool = new ConnectionPool("jdbc:mysql://localhost/wolfHospital?useServerPrepStmts=true&rewriteBatchedStatements=true", user, password, minPoolSize, maxPoolSize,
+                idleTimeoutMillis, validationQuery);
+        QueryMetrics.registerMBean();
+        try {
+            slowQueryLog = new SlowQueryLog(pool, SLOW_QUERY_LOG, SLOW_QUERY_MILLIS, SLOW_QUERY_LOG_BYTES, SLOW_QUERY_LOG_FILES);
+            QueryMetrics.setSlowQueryLog(slowQueryLog);
+        } catch (IOException e) {
+            System.err.println("Can not open the slow query log: " + e.getMessage());
+        }
+        ids = new IdAllocator(pool, ID_BLOCK_SIZE);
+        apiServer = new ApiServer(pool, wardIndex, entityCache, ids, System.getenv(HTTP_TOKEN_VARIABLE));
 
         //This will drop all tables in the database, only uncomment this and run if you want to clean your db, will only work with the sequence of tables created in this code
 //
@@ -6918,6 +5061,8 @@ class WolfHospital {
 //            statement.executeUpdate("DROP TABLE Person");
 //            statement.executeUpdate("DROP TABLE Patient");
 //            statement.executeUpdate("DROP TABLE Staff");
+//            statement.executeUpdate("DROP TABLE WardBed");
+//            statement.executeUpdate("DROP TABLE SchemaVersion");
 //            statement.executeUpdate("SET FOREIGN_KEY_CHECKS = 1");
 //
 //        } catch (SQLException e) {
@@ -6928,31 +5073,20 @@ class WolfHospital {
     }
 
     /**
-     * Closes the Connection, Statement, and ResultSet
-     * associated with the connection to the database.
+     * Closes the connection pool and every connection
+     * it holds to the database.
      *
      */
     private static void close() {
-        if (connection != null) {
-            try {
-                connection.close();
-            } catch (SQLException e) {
-                e.printStackTrace();
-            }
+        if (apiServer != null) {
+            apiServer.stop();
         }
-        if (statement != null) {
-            try {
-                statement.close();
-            } catch (SQLException e) {
-                e.printStackTrace();
-            }
+        if (slowQueryLog != null) {
+            QueryMetrics.setSlowQueryLog(null);
+            slowQueryLog.close();
         }
-        if (result != null) {
-            try {
-                result.close();
-            } catch (SQLException e) {
-                e.printStackTrace();
-            }
+        if (pool != null) {
+            pool.close();
         }
     }
 }
@@ -0,0 +1,265 @@
+package com.company;
+
+import java.io.PrintStream;
+import java.sql.Date;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The complete medical record of one patient: the record itself and every prescription, diagnosis and test
+ * added to it. Everything is read with the single {@link #QUERY}, which returns one row per entry instead of
+ * joining prescriptions against diagnoses, so the number of rows grows with the number of entries rather than
+ * their product and nothing needs to be removed again on the client.
+ */
+class MedicalRecordView {
+
+    /** Row kind of the medical record itself */
+    private static final String RECORD = "R";
+    /** Row kind of a prescription */
+    private static final String PRESCRIPTION = "P";
+    /** Row kind of a diagnosis */
+    private static final String DIAGNOSIS = "D";
+    /** Row kind of a test */
+    private static final String TEST = "T";
+
+    /**
+     * Reads a medical record and its entries, one row per entry. The patient ID is bound to all four parameters.
+     */
+    static final String QUERY =
+            "SELECT 'R' AS kind, patientId AS id, startDate, endDate, responsibleDoctor, NULL AS name, NULL AS detail "
+            + "FROM MedicalRecord WHERE patientId = ? "
+            + "UNION ALL SELECT 'P', Prescription.id, NULL, NULL, NULL, Prescription.name, NULL "
+            + "FROM AddPrescription JOIN Prescription ON Prescription.id = AddPrescription.prescriptionId WHERE AddPrescription.patientId = ? "
+            + "UNION ALL SELECT 'D', DiagnosisDetails.id, NULL, NULL, NULL, NULL, DiagnosisDetails.details "
+            + "FROM AddDiagnosis JOIN DiagnosisDetails ON DiagnosisDetails.id = AddDiagnosis.diagnosisId WHERE AddDiagnosis.patientId = ? "
+            + "UNION ALL SELECT 'T', Test.id, NULL, NULL, NULL, Test.name, Test.results "
+            + "FROM AddTest JOIN Test ON Test.id = AddTest.testId WHERE AddTest.patientId = ? "
+            + "ORDER BY kind, id";
+
+    /** Number of parameters of {@link #QUERY}, each bound to the patient ID */
+    static final int QUERY_PARAMETERS = 4;
+
+    /** Patient the record belongs to */
+    private final int patientId;
+    /** Whether the patient has a medical record */
+    private boolean found = false;
+    /** Start date of the record */
+    private Date startDate;
+    /** End date of the record, null while the patient is still being treated */
+    private Date endDate;
+    /** Staff ID of the responsible doctor */
+    private int responsibleDoctor;
+    /** Prescriptions added to the record, in ID order */
+    private final List<Entry> prescriptions = new ArrayList<Entry>();
+    /** Diagnoses added to the record, in ID order */
+    private final List<Entry> diagnoses = new ArrayList<Entry>();
+    /** Tests added to the record, in ID order */
+    private final List<Entry> tests = new ArrayList<Entry>();
+
+    /**
+     * Creates an empty view
+     *
+     * @param patientId patient the record belongs to
+     */
+    private MedicalRecordView(int patientId) {
+        this.patientId = patientId;
+    }
+
+    /**
+     * Builds the view from the rows of {@link #QUERY}
+     *
+     * @param patientId patient the rows were read for
+     * @param result rows of the query, read to the end but not closed
+     * @return the view, or null if the patient has no medical record
+     * @throws SQLException if the rows can not be read
+     */
+    static MedicalRecordView read(int patientId, ResultSet result) throws SQLException {
+        MedicalRecordView view = new MedicalRecordView(patientId);
+        while (result.next()) {
+            String kind = result.getString("kind");
+            if (RECORD.equals(kind)) {
+                view.found = true;
+                view.startDate = result.getDate("startDate");
+                view.endDate = result.getDate("endDate");
+                view.responsibleDoctor = result.getInt("responsibleDoctor");
+            } else if (PRESCRIPTION.equals(kind)) {
+                view.prescriptions.add(new Entry(result.getInt("id"), result.getString("name"), null));
+            } else if (DIAGNOSIS.equals(kind)) {
+                view.diagnoses.add(new Entry(result.getInt("id"), null, result.getString("detail")));
+            } else if (TEST.equals(kind)) {
+                view.tests.add(new Entry(result.getInt("id"), result.getString("name"), result.getString("detail")));
+            }
+        }
+        return view.found ? view : null;
+    }
+
+    /**
+     * Gets the patient the record belongs to
+     *
+     * @return patient ID
+     */
+    int getPatientId() {
+        return patientId;
+    }
+
+    /**
+     * Gets the start date of the record
+     *
+     * @return start date
+     */
+    Date getStartDate() {
+        return startDate;
+    }
+
+    /**
+     * Gets the end date of the record
+     *
+     * @return end date, null while the patient is still being treated
+     */
+    Date getEndDate() {
+        return endDate;
+    }
+
+    /**
+     * Gets the responsible doctor
+     *
+     * @return staff ID of the doctor
+     */
+    int getResponsibleDoctor() {
+        return responsibleDoctor;
+    }
+
+    /**
+     * Gets the prescriptions added to the record
+     *
+     * @return prescriptions in ID order
+     */
+    List<Entry> getPrescriptions() {
+        return prescriptions;
+    }
+
+    /**
+     * Gets the diagnoses added to the record
+     *
+     * @return diagnoses in ID order
+     */
+    List<Entry> getDiagnoses() {
+        return diagnoses;
+    }
+
+    /**
+     * Gets the tests added to the record
+     *
+     * @return tests in ID order
+     */
+    List<Entry> getTests() {
+        return tests;
+    }
+
+    /**
+     * Prints the record in the same layout as the rest of the console reports
+     *
+     * @param out where the record is printed
+     */
+    void print(PrintStream out) {
+        out.println("Medical Record");
+        out.println("--------------------------");
+        out.println("Patient ID: " + patientId);
+        out.println("Start Date: " + startDate);
+        out.println("End Date: " + (endDate == null ? "NA" : endDate.toString()));
+        out.println("Responsible Doctor: " + responsibleDoctor);
+        out.println("Prescription: " + join(prescriptions, false));
+        out.println("Diagnosis Details: " + join(diagnoses, true));
+        out.println("Tests: " + join(tests, true));
+        out.println("--------------------------");
+    }
+
+    /**
+     * Appends the record as a JSON object
+     *
+     * @param sb where the record is appended
+     */
+    void appendJson(StringBuilder sb) {
+        sb.append('{');
+        Json.appendMember("patientId", patientId, sb);
+        Json.appendMember("startDate", startDate, sb);
+        Json.appendMember("endDate", endDate, sb);
+        Json.appendMember("responsibleDoctor", responsibleDoctor, sb);
+        appendJson("prescriptions", prescriptions, sb);
+        appendJson("diagnoses", diagnoses, sb);
+        appendJson("tests", tests, sb);
+        sb.append('}');
+    }
+
+    /**
+     * Appends entries as a JSON array member
+     *
+     * @param key name of the member
+     * @param entries entries to append
+     * @param sb object being written
+     */
+    private static void appendJson(String key, List<Entry> entries, StringBuilder sb) {
+        sb.append(',');
+        Json.appendString(key, sb);
+        sb.append(":[");
+        for (Entry e : entries) {
+            if (sb.charAt(sb.length() - 1) != '[') {
+                sb.append(',');
+            }
+            sb.append('{');
+            Json.appendMember("id", e.id, sb);
+            Json.appendMember("name", e.name, sb);
+            Json.appendMember("detail", e.detail, sb);
+            sb.append('}');
+        }
+        sb.append(']');
+    }
+
+    /**
+     * Joins entries into one comma separated line
+     *
+     * @param entries entries to join
+     * @param withDetail whether to show the detail of each entry
+     * @return the line, NA if there are no entries
+     */
+    private static String join(List<Entry> entries, boolean withDetail) {
+        if (entries.isEmpty()) {
+            return "NA";
+        }
+        StringBuilder sb = new StringBuilder();
+        for (Entry e : entries) {
+            if (sb.length() > 0) {
+                sb.append(", ");
+            }
+            if (e.name != null) {
+                sb.append(e.name);
+                if (withDetail && e.detail != null) {
+                    sb.append(" (").append(e.detail).append(')');
+                }
+            } else if (e.detail != null) {
+                sb.append(e.detail);
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * One prescription, diagnosis or test of a medical record
+     */
+    static class Entry {
+        /** ID of the prescription, diagnosis or test */
+        final int id;
+        /** Name of the prescription or test, null for a diagnosis */
+        final String name;
+        /** Diagnosis details or test results, null for a prescription */
+        final String detail;
+
+        Entry(int id, String name, String detail) {
+            this.id = id;
+            this.name = name;
+            this.detail = detail;
+        }
+    }
+}
@@ -0,0 +1,272 @@
+package com.company;
+
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Materialized monthly census of the checked in patients. MonthlyCensus holds one row for every month a patient's
+ * stay touches, from the month of the check-in start date to the month of the end date, or to the current month
+ * while the stay is open, and MonthlyCensusCount holds the number of patients of each month. The monthly reports
+ * read these tables by month instead of joining Patient with CheckInInformation.
+ *
+ * Every change to the dates of a stay must call {@link #sync(Connection, int)} in the same transaction.
+ * {@link #rollForward(Connection)} extends open stays into months that began since they were last synced.
+ */
+class MonthlyCensus {
+
+    /** Number of patients each backfill task rebuilds */
+    private static final int BACKFILL_SLICE = 1000;
+
+    /**
+     * Creates the census tables if they do not exist yet
+     *
+     * @param connection connection to the database
+     * @throws SQLException if the tables can not be created
+     */
+    static void ensureSchema(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.executeUpdate("CREATE TABLE IF NOT EXISTS MonthlyCensus" +
+                    "(yearMonth CHAR(7) NOT NULL, patientId INT NOT NULL, "
+                    + "primary key(yearMonth, patientId), key MonthlyCensus_patientId(patientId))");
+            statement.executeUpdate("CREATE TABLE IF NOT EXISTS MonthlyCensusCount" +
+                    "(yearMonth CHAR(7) NOT NULL, patients INT NOT NULL, primary key(yearMonth))");
+        }
+    }
+
+    /**
+     * Brings the census of one patient in line with the patient's check-in, adding the months the stay now covers
+     * and removing the months it no longer does
+     *
+     * @param connection connection to the database
+     * @param patientId patient whose check-in changed or was deleted
+     * @throws SQLException if the census can not be updated
+     */
+    static void sync(Connection connection, int patientId) throws SQLException {
+        WardBeds.inTransaction(connection, () -> {
+            Set<String> wanted = new LinkedHashSet<String>();
+            try (PreparedStatement select = connection.prepareStatement("SELECT startDate, endDate FROM CheckInInformation WHERE patientId = ?")) {
+                select.setInt(1, patientId);
+                try (ResultSet result = select.executeQuery()) {
+                    if (result.next()) {
+                        wanted.addAll(months(result.getDate("startDate"), result.getDate("endDate")));
+                    }
+                }
+            }
+
+            Set<String> current = new LinkedHashSet<String>();
+            try (PreparedStatement select = connection.prepareStatement("SELECT yearMonth FROM MonthlyCensus WHERE patientId = ? FOR UPDATE")) {
+                select.setInt(1, patientId);
+                try (ResultSet result = select.executeQuery()) {
+                    while (result.next()) {
+                        current.add(result.getString("yearMonth"));
+                    }
+                }
+            }
+
+            List<String> removed = new ArrayList<String>(current);
+            removed.removeAll(wanted);
+            List<String> added = new ArrayList<String>(wanted);
+            added.removeAll(current);
+
+            if (!removed.isEmpty()) {
+                try (PreparedStatement delete = connection.prepareStatement("DELETE FROM MonthlyCensus WHERE yearMonth = ? AND patientId = ?");
+                     PreparedStatement count = connection.prepareStatement("UPDATE MonthlyCensusCount SET patients = patients - 1 WHERE yearMonth = ? AND patients > 0")) {
+                    for (String month : removed) {
+                        delete.setString(1, month);
+                        delete.setInt(2, patientId);
+                        delete.addBatch();
+                        count.setString(1, month);
+                        count.addBatch();
+                    }
+                    delete.executeBatch();
+                    count.executeBatch();
+                }
+            }
+            if (!added.isEmpty()) {
+                try (PreparedStatement insert = connection.prepareStatement("INSERT INTO MonthlyCensus(yearMonth, patientId) VALUES(?, ?)");
+                     PreparedStatement count = connection.prepareStatement("INSERT INTO MonthlyCensusCount(yearMonth, patients) VALUES(?, 1) "
+                             + "ON DUPLICATE KEY UPDATE patients = patients + 1")) {
+                    for (String month : added) {
+                        insert.setString(1, month);
+                        insert.setInt(2, patientId);
+                        insert.addBatch();
+                        count.setString(1, month);
+                        count.addBatch();
+                    }
+                    insert.executeBatch();
+                    count.executeBatch();
+                }
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Extends every open stay into the current month, for stays last synced in an earlier month
+     *
+     * @param connection connection to the database
+     * @return number of patients whose census was extended
+     * @throws SQLException if the census can not be updated
+     */
+    static int rollForward(Connection connection) throws SQLException {
+        List<Integer> stale = new ArrayList<Integer>();
+        try (PreparedStatement select = connection.prepareStatement("SELECT patientId FROM CheckInInformation WHERE endDate IS NULL "
+                + "AND NOT EXISTS (SELECT 1 FROM MonthlyCensus WHERE MonthlyCensus.patientId = CheckInInformation.patientId AND yearMonth = ?)")) {
+            select.setString(1, YearMonth.now().toString());
+            try (ResultSet result = select.executeQuery()) {
+                while (result.next()) {
+                    stale.add(result.getInt("patientId"));
+                }
+            }
+        }
+        for (int patientId : stale) {
+            sync(connection, patientId);
+        }
+        return stale.size();
+    }
+
+    /**
+     * Rebuilds both census tables from the check-ins. Patients are split into ID ranges that are rebuilt in
+     * parallel, each on its own connection from the pool, then the monthly counts are recomputed. Check-ins
+     * should not be changed while the backfill runs.
+     *
+     * @param pool pool the connections are borrowed from
+     * @param threads number of ranges rebuilt at once
+     * @return number of census rows written
+     * @throws SQLException if the census can not be rebuilt
+     */
+    static int backfill(ConnectionPool pool, int threads) throws SQLException {
+        int min, max;
+        try (Connection connection = pool.borrow();
+             Statement statement = connection.createStatement()) {
+            statement.executeUpdate("DELETE FROM MonthlyCensus");
+            try (ResultSet result = statement.executeQuery("SELECT MIN(patientId), MAX(patientId) FROM CheckInInformation")) {
+                result.next();
+                min = result.getInt(1);
+                max = result.getInt(2);
+                if (result.wasNull()) {
+                    statement.executeUpdate("DELETE FROM MonthlyCensusCount");
+                    return 0;
+                }
+            }
+        }
+
+        int rows = 0;
+        ExecutorService workers = Executors.newFixedThreadPool(Math.max(1, threads));
+        try {
+            List<Future<Integer>> slices = new ArrayList<Future<Integer>>();
+            for (long from = min; from <= max; from += BACKFILL_SLICE) {
+                int low = (int) from;
+                int high = (int) Math.min(max, from + BACKFILL_SLICE - 1);
+                slices.add(workers.submit(() -> {
+                    try (Connection connection = pool.borrow()) {
+                        return backfillRange(connection, low, high);
+                    }
+                }));
+            }
+            for (Future<Integer> slice : slices) {
+                rows += slice.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while rebuilding the monthly census", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof SQLException) {
+                throw (SQLException) e.getCause();
+            }
+            throw new SQLException("Rebuilding the monthly census failed", e.getCause());
+        } finally {
+            workers.shutdownNow();
+        }
+
+        try (Connection connection = pool.borrow()) {
+            recount(connection);
+        }
+        return rows;
+    }
+
+    /**
+     * Writes the census rows of the patients in one ID range
+     *
+     * @param connection connection to the database
+     * @param low lowest patient ID of the range
+     * @param high highest patient ID of the range
+     * @return number of census rows written
+     * @throws SQLException if the rows can not be written
+     */
+    static int backfillRange(Connection connection, int low, int high) throws SQLException {
+        return WardBeds.inTransaction(connection, () -> {
+            int rows = 0;
+            try (PreparedStatement select = connection.prepareStatement("SELECT patientId, startDate, endDate FROM CheckInInformation "
+                    + "WHERE patientId BETWEEN ? AND ?");
+                 PreparedStatement insert = connection.prepareStatement("INSERT IGNORE INTO MonthlyCensus(yearMonth, patientId) VALUES(?, ?)")) {
+                select.setInt(1, low);
+                select.setInt(2, high);
+                try (ResultSet result = select.executeQuery()) {
+                    while (result.next()) {
+                        int patientId = result.getInt("patientId");
+                        for (String month : months(result.getDate("startDate"), result.getDate("endDate"))) {
+                            insert.setString(1, month);
+                            insert.setInt(2, patientId);
+                            insert.addBatch();
+                            rows++;
+                        }
+                    }
+                }
+                insert.executeBatch();
+            }
+            return rows;
+        });
+    }
+
+    /**
+     * Recomputes MonthlyCensusCount from MonthlyCensus
+     *
+     * @param connection connection to the database
+     * @throws SQLException if the counts can not be written
+     */
+    static void recount(Connection connection) throws SQLException {
+        WardBeds.inTransaction(connection, () -> {
+            try (Statement statement = connection.createStatement()) {
+                statement.executeUpdate("DELETE FROM MonthlyCensusCount");
+                statement.executeUpdate("INSERT INTO MonthlyCensusCount(yearMonth, patients) "
+                        + "SELECT yearMonth, COUNT(*) FROM MonthlyCensus GROUP BY yearMonth");
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Gets the months a stay touches
+     *
+     * @param start first day of the stay
+     * @param end last day of the stay, null while the stay is open
+     * @return months in form yyyy-mm, in order
+     */
+    static List<String> months(Date start, Date end) {
+        List<String> months = new ArrayList<String>();
+        if (start == null) {
+            return months;
+        }
+        LocalDate last = end == null ? LocalDate.now() : end.toLocalDate();
+        YearMonth lastMonth = YearMonth.from(last);
+        for (YearMonth m = YearMonth.from(start.toLocalDate()); !m.isAfter(lastMonth); m = m.plusMonths(1)) {
+            months.add(m.toString());
+        }
+        return months;
+    }
+}
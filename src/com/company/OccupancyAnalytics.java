@@ -0,0 +1,263 @@
+package com.company;
+
+import java.io.PrintStream;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Snapshot of how full the hospital is: occupied and available beds and wards and the usage rate, for the whole
+ * hospital, for each ward capacity and for each responsible nurse. Everything is read with the single
+ * {@link #QUERY}, which lets the database sum the wards by capacity and nurse, so a snapshot costs one round trip
+ * and a handful of rows however many wards there are. The totals for each capacity, each nurse and the hospital
+ * are added up from those rows.
+ *
+ * A ward is occupied when it has at least one patient and available when it has at least one free bed, so a ward
+ * that is neither empty nor full counts as both.
+ */
+class OccupancyAnalytics {
+
+    /**
+     * Sums the wards of each capacity and responsible nurse
+     */
+    static final String QUERY =
+            "SELECT capacity, responsibleNurse, COUNT(*) AS wards, SUM(capacity) AS beds, SUM(occupants) AS occupiedBeds, "
+            + "SUM(occupants > 0) AS occupiedWards, SUM(occupants < capacity) AS availableWards "
+            + "FROM Ward GROUP BY capacity, responsibleNurse";
+
+    /** Usage of every ward */
+    private final Usage total = new Usage();
+    /** Usage of the wards of each capacity, by capacity */
+    private final Map<Integer, Usage> byCapacity = new TreeMap<Integer, Usage>();
+    /** Usage of the wards of each nurse, by staff ID of the responsible nurse */
+    private final Map<Integer, Usage> byNurse = new TreeMap<Integer, Usage>();
+
+    /**
+     * Creates an empty snapshot
+     */
+    private OccupancyAnalytics() {
+    }
+
+    /**
+     * Builds the snapshot from the rows of {@link #QUERY}
+     *
+     * @param result rows of the query, read to the end but not closed
+     * @return the snapshot
+     * @throws SQLException if the rows can not be read
+     */
+    static OccupancyAnalytics read(ResultSet result) throws SQLException {
+        OccupancyAnalytics snapshot = new OccupancyAnalytics();
+        while (result.next()) {
+            Usage group = new Usage();
+            group.wards = result.getInt("wards");
+            group.beds = result.getInt("beds");
+            group.occupiedBeds = result.getInt("occupiedBeds");
+            group.occupiedWards = result.getInt("occupiedWards");
+            group.availableWards = result.getInt("availableWards");
+            snapshot.total.add(group);
+            snapshot.byCapacity.computeIfAbsent(result.getInt("capacity"), k -> new Usage()).add(group);
+            snapshot.byNurse.computeIfAbsent(result.getInt("responsibleNurse"), k -> new Usage()).add(group);
+        }
+        return snapshot;
+    }
+
+    /**
+     * Gets the usage of the whole hospital
+     *
+     * @return usage of every ward
+     */
+    Usage getTotal() {
+        return total;
+    }
+
+    /**
+     * Gets the usage of the wards of each capacity
+     *
+     * @return usage by ward capacity, in capacity order
+     */
+    Map<Integer, Usage> getByCapacity() {
+        return Collections.unmodifiableMap(byCapacity);
+    }
+
+    /**
+     * Gets the usage of the wards each nurse is responsible for
+     *
+     * @return usage by staff ID of the responsible nurse, in ID order
+     */
+    Map<Integer, Usage> getByNurse() {
+        return Collections.unmodifiableMap(byNurse);
+    }
+
+    /**
+     * Prints the snapshot for the console
+     *
+     * @param out where the snapshot is printed
+     */
+    void print(PrintStream out) {
+        out.println("Hospital Occupancy");
+        out.println("--------------------------");
+        out.println("All wards: " + total);
+        out.println("By ward capacity:");
+        for (Map.Entry<Integer, Usage> entry : byCapacity.entrySet()) {
+            out.println("    " + entry.getKey() + "-bed wards: " + entry.getValue());
+        }
+        out.println("By responsible nurse:");
+        for (Map.Entry<Integer, Usage> entry : byNurse.entrySet()) {
+            out.println("    Nurse " + entry.getKey() + ": " + entry.getValue());
+        }
+        out.println("--------------------------");
+    }
+
+    /**
+     * Appends the snapshot as a JSON object
+     *
+     * @param sb where the snapshot is appended
+     */
+    void appendJson(StringBuilder sb) {
+        sb.append("{\"total\":");
+        total.appendJson(sb);
+        appendJson("byCapacity", byCapacity, sb);
+        appendJson("byNurse", byNurse, sb);
+        sb.append('}');
+    }
+
+    /**
+     * Appends groups of wards as a member holding an object keyed by group
+     *
+     * @param key name of the member
+     * @param groups usage of each group
+     * @param sb object being written
+     */
+    private static void appendJson(String key, Map<Integer, Usage> groups, StringBuilder sb) {
+        sb.append(',');
+        Json.appendString(key, sb);
+        sb.append(":{");
+        for (Map.Entry<Integer, Usage> entry : groups.entrySet()) {
+            if (sb.charAt(sb.length() - 1) != '{') {
+                sb.append(',');
+            }
+            Json.appendString(String.valueOf(entry.getKey()), sb);
+            sb.append(':');
+            entry.getValue().appendJson(sb);
+        }
+        sb.append('}');
+    }
+
+    /**
+     * Bed and ward counts of a group of wards
+     */
+    static class Usage {
+        /** Number of wards */
+        private int wards;
+        /** Number of beds */
+        private int beds;
+        /** Number of beds with a patient */
+        private int occupiedBeds;
+        /** Number of wards with at least one patient */
+        private int occupiedWards;
+        /** Number of wards with at least one free bed */
+        private int availableWards;
+
+        /**
+         * Adds the counts of another group of wards
+         *
+         * @param other the other group
+         */
+        private void add(Usage other) {
+            wards += other.wards;
+            beds += other.beds;
+            occupiedBeds += other.occupiedBeds;
+            occupiedWards += other.occupiedWards;
+            availableWards += other.availableWards;
+        }
+
+        /**
+         * Gets the number of wards
+         *
+         * @return number of wards
+         */
+        int getWards() {
+            return wards;
+        }
+
+        /**
+         * Gets the number of beds
+         *
+         * @return number of beds
+         */
+        int getBeds() {
+            return beds;
+        }
+
+        /**
+         * Gets the number of beds with a patient
+         *
+         * @return number of beds
+         */
+        int getOccupiedBeds() {
+            return occupiedBeds;
+        }
+
+        /**
+         * Gets the number of free beds
+         *
+         * @return number of beds
+         */
+        int getAvailableBeds() {
+            return beds - occupiedBeds;
+        }
+
+        /**
+         * Gets the number of wards with at least one patient
+         *
+         * @return number of wards
+         */
+        int getOccupiedWards() {
+            return occupiedWards;
+        }
+
+        /**
+         * Gets the number of wards with at least one free bed
+         *
+         * @return number of wards
+         */
+        int getAvailableWards() {
+            return availableWards;
+        }
+
+        /**
+         * Gets the share of the beds that have a patient
+         *
+         * @return occupied beds over beds, 0 if there are no beds
+         */
+        double getUsageRate() {
+            return beds == 0 ? 0 : (double) occupiedBeds / beds;
+        }
+
+        /**
+         * Appends the counts as a JSON object
+         *
+         * @param sb where the counts are appended
+         */
+        void appendJson(StringBuilder sb) {
+            sb.append('{');
+            Json.appendMember("wards", wards, sb);
+            Json.appendMember("beds", beds, sb);
+            Json.appendMember("occupiedBeds", occupiedBeds, sb);
+            Json.appendMember("availableBeds", getAvailableBeds(), sb);
+            Json.appendMember("occupiedWards", occupiedWards, sb);
+            Json.appendMember("availableWards", availableWards, sb);
+            Json.appendMember("usageRate", getUsageRate(), sb);
+            sb.append('}');
+        }
+
+        @Override
+        public String toString() {
+            return wards + " wards, " + occupiedBeds + " of " + beds + " beds occupied, " + getAvailableBeds() + " available, "
+                    + occupiedWards + " wards occupied, " + availableWards + " available, usage rate "
+                    + String.format("%.1f%%", getUsageRate() * 100);
+        }
+    }
+}
@@ -0,0 +1,478 @@
+package com.company;
+
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.JMException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanOperationInfo;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.ReflectionException;
+
+/**
+ * Latency, round trips and rows fetched of every logical operation, such as a menu option, a batch operation or an
+ * HTTP route. An operation is started with {@link #begin(String)} on the thread that runs it, and every statement
+ * executed on that thread until the scope is closed is counted against it. Physical connections are wrapped by
+ * {@link #instrument(Connection)} when the pool opens them, so every statement is seen, the cached ones included.
+ *
+ * A round trip is a prepare, an execute, a batch, a commit or a rollback. Rows are counted as the caller reads them.
+ * Statements run outside any operation, such as pool validation and background rebuilds, are counted under
+ * {@link #UNTAGGED}.
+ *
+ * Statements slower than the threshold of the {@link SlowQueryLog} set with {@link #setSlowQueryLog(SlowQueryLog)}
+ * are handed to it with their SQL and bound values.
+ *
+ * The numbers can be printed with {@link #report()} and are published over JMX as
+ * {@code com.company:type=QueryMetrics}, with the calls, latency percentiles, round trips and rows per call of
+ * every operation as attributes.
+ */
+class QueryMetrics {
+
+    /** Operation the statements run outside any operation are counted under */
+    static final String UNTAGGED = "(none)";
+    /** Name the metrics are published under over JMX */
+    static final String OBJECT_NAME = "com.company:type=QueryMetrics";
+
+    /** Statistics by operation */
+    private static final Map<String, Stats> operations = new ConcurrentHashMap<String, Stats>();
+    /** Operation running on each thread */
+    private static final ThreadLocal<Scope> current = new ThreadLocal<Scope>();
+    /** Where statements slower than its threshold are written, null when there is none */
+    private static volatile SlowQueryLog slowQueryLog = null;
+
+    private QueryMetrics() {
+    }
+
+    /**
+     * Starts counting an operation on the current thread. An operation started while another one runs on the
+     * same thread is counted as part of the outer one.
+     *
+     * @param operation name of the operation
+     * @return scope that records the operation when closed
+     */
+    static Scope begin(String operation) {
+        if (current.get() != null) {
+            return Scope.NESTED;
+        }
+        Scope scope = new Scope(operation, stats(operation));
+        current.set(scope);
+        return scope;
+    }
+
+    /**
+     * Runs an operation on the current thread and counts it, as a scope from {@link #begin(String)} closed when the
+     * operation ends would
+     *
+     * @param operation name of the operation
+     * @param work the operation
+     * @param <E> type of the exception the operation throws
+     * @throws E if the operation fails
+     */
+    static <E extends Exception> void run(String operation, Work<E> work) throws E {
+        Scope scope = begin(operation);
+        try {
+            work.run();
+        } finally {
+            scope.close();
+        }
+    }
+
+    /**
+     * Gets the statistics of an operation, creating them on first use
+     *
+     * @param operation name of the operation
+     * @return the statistics
+     */
+    private static Stats stats(String operation) {
+        return operations.computeIfAbsent(operation, k -> new Stats());
+    }
+
+    /**
+     * Gets the operation running on the current thread
+     *
+     * @return name of the operation, {@link #UNTAGGED} outside any operation
+     */
+    static String currentOperation() {
+        Scope scope = current.get();
+        return scope == null ? UNTAGGED : scope.operation;
+    }
+
+    /**
+     * Sends every statement slower than the threshold of a log to that log
+     *
+     * @param log the log, or null to stop logging slow statements
+     */
+    static void setSlowQueryLog(SlowQueryLog log) {
+        slowQueryLog = log;
+    }
+
+    /**
+     * Counts a round trip against the operation running on the current thread
+     *
+     * @param nanos time the round trip took
+     */
+    private static void roundTrip(long nanos) {
+        Scope scope = current.get();
+        if (scope != null) {
+            scope.roundTrips++;
+            scope.dbNanos += nanos;
+        } else {
+            Stats untagged = stats(UNTAGGED);
+            untagged.roundTrips.incrementAndGet();
+            untagged.dbNanos.addAndGet(nanos);
+        }
+    }
+
+    /**
+     * Counts a row read against the operation running on the current thread
+     */
+    private static void rowFetched() {
+        Scope scope = current.get();
+        if (scope != null) {
+            scope.rows++;
+        } else {
+            stats(UNTAGGED).rows.incrementAndGet();
+        }
+    }
+
+    /**
+     * Wraps a physical connection so the statements and result sets it creates are counted
+     *
+     * @param connection connection opened by the driver
+     * @return the wrapped connection
+     */
+    static Connection instrument(Connection connection) {
+        return wrap(connection, Connection.class);
+    }
+
+    private static <T> T wrap(T target, Class<T> type) {
+        return wrap(target, type, null);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T wrap(T target, Class<T> type, String sql) {
+        return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] { type }, new Counting(target, sql));
+    }
+
+    /**
+     * Forgets every count, for example before measuring a change
+     */
+    static void reset() {
+        operations.clear();
+    }
+
+    /**
+     * Prints the calls, latency percentiles, round trips and rows per call of every operation, slowest 99th
+     * percentile first
+     *
+     * @return the report
+     */
+    static String report() {
+        List<Map.Entry<String, Stats>> entries = new ArrayList<Map.Entry<String, Stats>>(operations.entrySet());
+        entries.sort((a, b) -> Long.compare(b.getValue().latency.getValueAtPercentile(99), a.getValue().latency.getValueAtPercentile(99)));
+
+        StringBuilder sb = new StringBuilder(String.format("%-32s %8s %9s %9s %9s %9s %10s %10s %10s %8s%n", "Operation", "Calls",
+                "p50 ms", "p95 ms", "p99 ms", "Max ms", "Trips/call", "Max trips", "Rows/call", "DB %"));
+        for (Map.Entry<String, Stats> entry : entries) {
+            Stats stats = entry.getValue();
+            LatencyHistogram latency = stats.latency;
+            long calls = latency.getCount();
+            long totalNanos = (long) (latency.getMean() * calls);
+            sb.append(String.format("%-32s %8d %9.3f %9.3f %9.3f %9.3f %10.1f %10d %10.1f %8s%n", entry.getKey(), calls,
+                    latency.getValueAtPercentile(50) / 1e6, latency.getValueAtPercentile(95) / 1e6,
+                    latency.getValueAtPercentile(99) / 1e6, latency.getMax() / 1e6,
+                    perCall(stats.roundTrips.get(), calls), stats.maxRoundTrips.get(), perCall(stats.rows.get(), calls),
+                    totalNanos == 0 ? "-" : String.format("%.0f", 100.0 * stats.dbNanos.get() / totalNanos)));
+        }
+        return sb.toString();
+    }
+
+    private static double perCall(long total, long calls) {
+        return calls == 0 ? total : (double) total / calls;
+    }
+
+    /**
+     * Publishes the metrics over JMX, once per JVM
+     */
+    static synchronized void registerMBean() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (!server.isRegistered(name)) {
+                server.registerMBean(new MBean(), name);
+            }
+        } catch (JMException e) {
+            System.err.println("Can not publish the query metrics over JMX: " + e.getMessage());
+        }
+    }
+
+    /**
+     * An operation counted by {@link #run(String, Work)}
+     *
+     * @param <E> type of the exception the operation throws
+     */
+    interface Work<E extends Exception> {
+        void run() throws E;
+    }
+
+    /**
+     * One run of an operation on a thread. Counts are kept in plain fields while it runs, since only its own thread
+     * touches them, and added to the shared statistics when it is closed.
+     */
+    static class Scope implements AutoCloseable {
+        /** Scope of an operation started inside another one, closing it does nothing */
+        private static final Scope NESTED = new Scope(null, null);
+
+        /** Name of the operation */
+        private final String operation;
+        /** Statistics the run is added to */
+        private final Stats stats;
+        /** When the run started */
+        private final long started = System.nanoTime();
+        /** Round trips so far */
+        private long roundTrips = 0;
+        /** Rows read so far */
+        private long rows = 0;
+        /** Time spent in round trips so far */
+        private long dbNanos = 0;
+
+        private Scope(String operation, Stats stats) {
+            this.operation = operation;
+            this.stats = stats;
+        }
+
+        @Override
+        public void close() {
+            if (stats == null) {
+                return;
+            }
+            current.remove();
+            stats.latency.record(System.nanoTime() - started);
+            stats.roundTrips.addAndGet(roundTrips);
+            stats.rows.addAndGet(rows);
+            stats.dbNanos.addAndGet(dbNanos);
+            long seen = stats.maxRoundTrips.get();
+            while (roundTrips > seen && !stats.maxRoundTrips.compareAndSet(seen, roundTrips)) {
+                seen = stats.maxRoundTrips.get();
+            }
+        }
+    }
+
+    /**
+     * Statistics of one operation
+     */
+    private static class Stats {
+        /** Latency of each call */
+        final LatencyHistogram latency = new LatencyHistogram();
+        /** Round trips of every call */
+        final AtomicLong roundTrips = new AtomicLong();
+        /** Most round trips of one call */
+        final AtomicLong maxRoundTrips = new AtomicLong();
+        /** Rows read by every call */
+        final AtomicLong rows = new AtomicLong();
+        /** Time spent in round trips by every call */
+        final AtomicLong dbNanos = new AtomicLong();
+    }
+
+    /**
+     * Passes calls through to a connection, statement or result set, timing the calls that go to the server and
+     * wrapping the statements and result sets they return. A prepared statement also keeps its SQL and the values
+     * bound to it, for the slow query log.
+     */
+    private static class Counting implements InvocationHandler {
+        /** Object the calls go to */
+        private final Object target;
+        /** SQL of a prepared statement, null for other objects */
+        private final String sql;
+        /** Values bound to a prepared statement by parameter index, index 0 unused */
+        private final List<Object> parameters = new ArrayList<Object>();
+
+        Counting(Object target, String sql) {
+            this.target = target;
+            this.sql = sql;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if (name.equals("equals")) {
+                return proxy == args[0];
+            }
+            if (name.equals("hashCode")) {
+                return System.identityHashCode(proxy);
+            }
+
+            if (sql != null) {
+                track(name, args);
+            }
+
+            boolean timed = name.startsWith("execute") || name.startsWith("prepare") || name.equals("commit") || name.equals("rollback");
+            long start = timed ? System.nanoTime() : 0;
+            Object value;
+            try {
+                value = method.invoke(target, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            } finally {
+                if (timed) {
+                    long nanos = System.nanoTime() - start;
+                    roundTrip(nanos);
+                    SlowQueryLog log = slowQueryLog;
+                    if (log != null && name.startsWith("execute") && nanos >= log.getThresholdNanos()) {
+                        //A plain statement gets its SQL with the call, a prepared one when it was prepared
+                        boolean plain = args != null && args.length > 0 && args[0] instanceof String;
+                        log.offer(plain ? (String) args[0] : sql, plain ? null : parameters.toArray(), nanos, currentOperation());
+                    }
+                }
+            }
+
+            if (name.equals("next") && target instanceof ResultSet && Boolean.TRUE.equals(value)) {
+                rowFetched();
+            }
+            String prepared = name.startsWith("prepare") && args != null && args[0] instanceof String ? (String) args[0] : null;
+            return wrapResult(value, method.getReturnType(), prepared);
+        }
+
+        /**
+         * Keeps the values bound to a prepared statement
+         *
+         * @param name name of the method called
+         * @param args arguments of the call
+         */
+        private void track(String name, Object[] args) {
+            if (name.equals("clearParameters")) {
+                parameters.clear();
+            } else if (name.startsWith("set") && args != null && args.length >= 2 && args[0] instanceof Integer) {
+                int index = (Integer) args[0];
+                while (parameters.size() <= index) {
+                    parameters.add(null);
+                }
+                parameters.set(index, name.equals("setNull") ? null : args[1]);
+            }
+        }
+
+        /**
+         * Wraps a statement or result set returned by a call so its own calls are counted too
+         *
+         * @param value value returned by the call
+         * @param type declared return type of the call
+         * @param sql SQL the call prepared, null if it prepared nothing
+         * @return the wrapped value, or the value itself
+         */
+        private static Object wrapResult(Object value, Class<?> type, String sql) {
+            if (value == null || Proxy.isProxyClass(value.getClass()) && Proxy.getInvocationHandler(value) instanceof Counting) {
+                return value;
+            }
+            if (type == CallableStatement.class) {
+                return wrap((CallableStatement) value, CallableStatement.class, sql);
+            } else if (type == PreparedStatement.class) {
+                return wrap((PreparedStatement) value, PreparedStatement.class, sql);
+            } else if (type == Statement.class) {
+                return wrap((Statement) value, Statement.class);
+            } else if (type == ResultSet.class) {
+                return wrap((ResultSet) value, ResultSet.class);
+            }
+            return value;
+        }
+    }
+
+    /**
+     * The metrics over JMX, with attributes named after each operation, for example {@code menu 7.p99Millis}
+     */
+    private static class MBean implements DynamicMBean {
+        /** Statistics published for every operation */
+        private static final String[] FIELDS = { "calls", "p50Millis", "p95Millis", "p99Millis", "maxMillis",
+                "roundTripsPerCall", "maxRoundTrips", "rowsPerCall" };
+
+        @Override
+        public Object getAttribute(String attribute) throws AttributeNotFoundException {
+            if (attribute.equals("report")) {
+                return report();
+            }
+            int dot = attribute.lastIndexOf('.');
+            Stats stats = dot < 0 ? null : operations.get(attribute.substring(0, dot));
+            if (stats == null) {
+                throw new AttributeNotFoundException(attribute);
+            }
+            long calls = stats.latency.getCount();
+            switch (attribute.substring(dot + 1)) {
+                case "calls" : return calls;
+                case "p50Millis" : return stats.latency.getValueAtPercentile(50) / 1e6;
+                case "p95Millis" : return stats.latency.getValueAtPercentile(95) / 1e6;
+                case "p99Millis" : return stats.latency.getValueAtPercentile(99) / 1e6;
+                case "maxMillis" : return stats.latency.getMax() / 1e6;
+                case "roundTripsPerCall" : return perCall(stats.roundTrips.get(), calls);
+                case "maxRoundTrips" : return stats.maxRoundTrips.get();
+                case "rowsPerCall" : return perCall(stats.rows.get(), calls);
+                default: throw new AttributeNotFoundException(attribute);
+            }
+        }
+
+        @Override
+        public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+            throw new AttributeNotFoundException("Query metrics are read only");
+        }
+
+        @Override
+        public AttributeList getAttributes(String[] attributes) {
+            AttributeList list = new AttributeList();
+            for (String attribute : attributes) {
+                try {
+                    list.add(new Attribute(attribute, getAttribute(attribute)));
+                } catch (AttributeNotFoundException e) {
+                    //Left out, as the JMX contract asks
+                }
+            }
+            return list;
+        }
+
+        @Override
+        public AttributeList setAttributes(AttributeList attributes) {
+            return new AttributeList();
+        }
+
+        @Override
+        public Object invoke(String actionName, Object[] params, String[] signature) throws ReflectionException {
+            if (actionName.equals("reset")) {
+                reset();
+                return null;
+            }
+            throw new ReflectionException(new NoSuchMethodException(actionName));
+        }
+
+        @Override
+        public MBeanInfo getMBeanInfo() {
+            List<MBeanAttributeInfo> attributes = new ArrayList<MBeanAttributeInfo>();
+            attributes.add(new MBeanAttributeInfo("report", String.class.getName(), "Table of every operation", true, false, false));
+            for (String operation : new TreeMap<String, Stats>(operations).keySet()) {
+                for (String field : FIELDS) {
+                    boolean count = field.equals("calls") || field.equals("maxRoundTrips");
+                    attributes.add(new MBeanAttributeInfo(operation + "." + field, count ? Long.class.getName() : Double.class.getName(),
+                            field + " of " + operation, true, false, false));
+                }
+            }
+            MBeanOperationInfo reset = new MBeanOperationInfo("reset", "Forgets every count", null, "void", MBeanOperationInfo.ACTION);
+            return new MBeanInfo(QueryMetrics.class.getName(), "Latency, round trips and rows fetched by operation",
+                    attributes.toArray(new MBeanAttributeInfo[0]), null, new MBeanOperationInfo[] { reset }, null);
+        }
+    }
+}
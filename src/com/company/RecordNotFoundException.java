@@ -0,0 +1,20 @@
+package com.company;
+
+/**
+ * A record an operation needs does not exist, such as the patient, staff member or ward it names or the medical
+ * record, check-in or billing account of a patient. It is an {@link IllegalStateException} so the console and batch
+ * runs show it like any other rejected operation, while the {@link ApiServer} answers it with 404 instead of 409.
+ */
+class RecordNotFoundException extends IllegalStateException {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Creates the exception
+     *
+     * @param message the message the console shows
+     */
+    RecordNotFoundException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,112 @@
+package com.company;
+
+/**
+ * Validation rules for the basic information of patients and staff, shared by the interactive entry screens
+ * and the bulk importer so both accept exactly the same records. Each check returns null when the value is
+ * valid, otherwise the message shown to the user.
+ */
+class RecordValidator {
+
+    /** Longest name the Person and Patient tables hold */
+    static final int MAX_NAME = 128;
+    /** Longest address the Person and Patient tables hold */
+    static final int MAX_ADDRESS = 200;
+    /** Longest phone number the Person and Patient tables hold */
+    static final int MAX_PHONE = 10;
+    /** Longest SSN the Patient table holds */
+    static final int MAX_SSN = 9;
+    /** Longest yes or no answer the Patient table holds */
+    static final int MAX_YES_NO = 3;
+    /** Longest job title, professional title or department the Staff table holds */
+    static final int MAX_TITLE = 128;
+
+    /**
+     * Checks a name
+     *
+     * @param name name to check
+     * @return null if valid, otherwise the reason it is not
+     */
+    static String checkName(String name) {
+        if (name == null || name.isEmpty()) {
+            return "Name is required";
+        }
+        return name.length() > MAX_NAME ? "Name must be " + MAX_NAME + " characters or less" : null;
+    }
+
+    /**
+     * Checks an address
+     *
+     * @param address address to check
+     * @return null if valid, otherwise the reason it is not
+     */
+    static String checkAddress(String address) {
+        if (address == null || address.isEmpty()) {
+            return "Address is required";
+        }
+        return address.length() > MAX_ADDRESS ? "Address must be " + MAX_ADDRESS + " characters or less" : null;
+    }
+
+    /**
+     * Checks a phone number
+     *
+     * @param phone phone number to check
+     * @return null if valid, otherwise the reason it is not
+     */
+    static String checkPhone(String phone) {
+        return phone != null && phone.length() > MAX_PHONE ? "Phone number must be " + MAX_PHONE + " characters or less" : null;
+    }
+
+    /**
+     * Checks a gender
+     *
+     * @param gender gender to check
+     * @return null if valid, otherwise the reason it is not
+     */
+    static String checkGender(String gender) {
+        return gender == null || gender.length() != 1 ? "Please enter F for female or M for male." : null;
+    }
+
+    /**
+     * Checks an SSN, na is accepted when no SSN applies
+     *
+     * @param ssn SSN to check
+     * @return null if valid, otherwise the reason it is not
+     */
+    static String checkSSN(String ssn) {
+        return ssn != null && ssn.length() > MAX_SSN ? "SSN must be " + MAX_SSN + " digits or less" : null;
+    }
+
+    /**
+     * Checks a yes or no answer
+     *
+     * @param answer answer to check
+     * @return null if valid, otherwise the reason it is not
+     */
+    static String checkYesNo(String answer) {
+        return answer == null || answer.length() > MAX_YES_NO ? "Input must be " + MAX_YES_NO + " characters or less" : null;
+    }
+
+    /**
+     * Checks the capacity of a ward
+     *
+     * @param capacity number of beds
+     * @return null if valid, otherwise the reason it is not
+     */
+    static String checkCapacity(int capacity) {
+        return capacity == 1 || capacity == 2 || capacity == 4 ? null : "Please choose capacity from 1, 2, 4.";
+    }
+
+    /**
+     * Checks a job title, professional title or department
+     *
+     * @param field description of the field for the message
+     * @param title value to check
+     * @return null if valid, otherwise the reason it is not
+     */
+    static String checkTitle(String field, String title) {
+        if (title == null || title.isEmpty()) {
+            return field + " is required";
+        }
+        return title.length() > MAX_TITLE ? field + " must be " + MAX_TITLE + " characters or less" : null;
+    }
+}
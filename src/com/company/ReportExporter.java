@@ -0,0 +1,325 @@
+package com.company;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.time.YearMonth;
+
+/**
+ * Streams the rows of a report query straight into a CSV or JSON Lines file. The query runs on a forward-only,
+ * read-only statement with the MySQL streaming fetch size, so the driver hands over one row at a time instead of
+ * reading the whole result into memory, and every value is escaped directly into one buffered writer. Memory use
+ * therefore stays the same however many rows the report has.
+ *
+ * A streaming result holds its connection until it is read to the end, so nothing else may run on the connection
+ * during an export.
+ */
+class ReportExporter {
+
+    /** Fetch size that makes MySQL Connector/J stream rows one at a time */
+    private static final int STREAMING_FETCH_SIZE = Integer.MIN_VALUE;
+    /** Size of the file buffer in characters */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Format of an exported file
+     */
+    enum Format {
+        /** Comma separated values with a header line */
+        CSV,
+        /** One JSON object per line */
+        JSONL
+    }
+
+    /**
+     * Sets the parameters of a report query
+     */
+    interface Binder {
+        /**
+         * Binds the parameters
+         *
+         * @param ps statement of the report query
+         * @throws SQLException if a parameter can not be bound
+         */
+        void bind(PreparedStatement ps) throws SQLException;
+    }
+
+    /**
+     * A report query with its parameters
+     */
+    static class Query {
+        /** The query */
+        final String sql;
+        /** Sets the parameters of the query */
+        final Binder binder;
+
+        Query(String sql, Binder binder) {
+            this.sql = sql;
+            this.binder = binder;
+        }
+    }
+
+    /**
+     * Report 18, the medical record of a patient that overlaps a period
+     *
+     * @param patientId patient ID
+     * @param range the period
+     * @return the query
+     */
+    static Query medicalRecords(int patientId, DateRange range) {
+        return new Query("SELECT * FROM MedicalRecord WHERE patientId = ? AND " + DateRange.overlaps("startDate", "endDate"), ps -> {
+            ps.setInt(1, patientId);
+            range.bindOverlaps(ps, 2);
+        });
+    }
+
+    /**
+     * Report 19, the patients checked in during a period. Whole months are read from the monthly census, which
+     * should be rolled forward first, other periods are matched against the check-ins.
+     *
+     * @param range the period
+     * @return the query
+     */
+    static Query patients(DateRange range) {
+        if (range.isWholeMonths()) {
+            return new Query("SELECT * FROM Patient WHERE id IN (SELECT patientId FROM MonthlyCensus WHERE yearMonth >= ? AND yearMonth < ?)", ps -> {
+                ps.setString(1, YearMonth.from(range.getStart()).toString());
+                ps.setString(2, YearMonth.from(range.getEnd()).toString());
+            });
+        }
+        return new Query("SELECT Patient.* FROM CheckInInformation INNER JOIN Patient ON Patient.id = CheckInInformation.patientId WHERE "
+                + DateRange.overlaps("CheckInInformation.startDate", "CheckInInformation.endDate"), ps -> range.bindOverlaps(ps, 1));
+    }
+
+    /**
+     * Report 20, the usage of every ward
+     *
+     * @return the query
+     */
+    static Query wardUsage() {
+        return new Query("SELECT " + WardBeds.WARD_COLUMNS + ", Ward.occupants / Ward.capacity AS usagePercentage FROM Ward", ps -> { });
+    }
+
+    /**
+     * Report 21, the patients of a doctor
+     *
+     * @param doctorId staff ID of the responsible doctor
+     * @return the query
+     */
+    static Query patientsOfDoctor(int doctorId) {
+        return new Query("SELECT Patient.* FROM MedicalRecord INNER JOIN Patient ON Patient.id = MedicalRecord.patientId "
+                + "WHERE MedicalRecord.responsibleDoctor = ?", ps -> ps.setInt(1, doctorId));
+    }
+
+    /**
+     * Report 22, the number of staff in each job title
+     *
+     * @return the query
+     */
+    static Query staffByRole() {
+        return new Query("SELECT jobTitle, COUNT(id) AS staff FROM Staff GROUP BY jobTitle", ps -> { });
+    }
+
+    /**
+     * Runs a report query and writes every row to a file, replacing the file if it exists
+     *
+     * @param connection connection to the database, used only by the export until it returns
+     * @param query report query
+     * @param file file to write
+     * @param format format of the file
+     * @return number of rows written
+     * @throws SQLException if the query fails
+     * @throws IOException if the file can not be written
+     */
+    static long export(Connection connection, Query query, Path file, Format format) throws SQLException, IOException {
+        try (Writer out = new BufferedWriter(new OutputStreamWriter(Files.newOutputStream(file), StandardCharsets.UTF_8), BUFFER_SIZE)) {
+            return write(connection, query, out, format);
+        }
+    }
+
+    /**
+     * Runs a report query and writes every row to a writer, which is left open
+     *
+     * @param connection connection to the database, used only by the export until it returns
+     * @param query report query
+     * @param out where the rows are written
+     * @param format format of the rows
+     * @return number of rows written
+     * @throws SQLException if the query fails
+     * @throws IOException if the rows can not be written
+     */
+    static long write(Connection connection, Query query, Writer out, Format format) throws SQLException, IOException {
+        try (PreparedStatement ps = connection.prepareStatement(query.sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+            ps.setFetchSize(STREAMING_FETCH_SIZE);
+            query.binder.bind(ps);
+            try (ResultSet result = ps.executeQuery()) {
+                return format == Format.CSV ? writeCsv(result, out) : writeJsonLines(result, out);
+            }
+        }
+    }
+
+    /**
+     * Writes rows as CSV with a header line of the column labels
+     *
+     * @param result rows to write
+     * @param out where the rows are written
+     * @return number of rows written
+     * @throws SQLException if a row can not be read
+     * @throws IOException if a row can not be written
+     */
+    private static long writeCsv(ResultSet result, Writer out) throws SQLException, IOException {
+        ResultSetMetaData meta = result.getMetaData();
+        int columns = meta.getColumnCount();
+        for (int i = 1; i <= columns; i++) {
+            if (i > 1) {
+                out.write(',');
+            }
+            writeCsvValue(meta.getColumnLabel(i), out);
+        }
+        out.write('\n');
+
+        long rows = 0;
+        while (result.next()) {
+            for (int i = 1; i <= columns; i++) {
+                if (i > 1) {
+                    out.write(',');
+                }
+                String value = result.getString(i);
+                if (value != null) {
+                    writeCsvValue(value, out);
+                }
+            }
+            out.write('\n');
+            rows++;
+        }
+        return rows;
+    }
+
+    /**
+     * Writes one CSV value, quoting it only when it holds a separator, quote or line break
+     *
+     * @param value value to write
+     * @param out where the value is written
+     * @throws IOException if the value can not be written
+     */
+    private static void writeCsvValue(String value, Writer out) throws IOException {
+        boolean quote = false;
+        for (int i = 0; i < value.length() && !quote; i++) {
+            char c = value.charAt(i);
+            quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!quote) {
+            out.write(value);
+            return;
+        }
+        out.write('"');
+        int from = 0;
+        for (int i = 0; i < value.length(); i++) {
+            if (value.charAt(i) == '"') {
+                out.write(value, from, i + 1 - from);
+                out.write('"');
+                from = i + 1;
+            }
+        }
+        out.write(value, from, value.length() - from);
+        out.write('"');
+    }
+
+    /**
+     * Writes rows as JSON Lines keyed by the column labels. Numeric columns are written as JSON numbers and
+     * everything else as strings.
+     *
+     * @param result rows to write
+     * @param out where the rows are written
+     * @return number of rows written
+     * @throws SQLException if a row can not be read
+     * @throws IOException if a row can not be written
+     */
+    private static long writeJsonLines(ResultSet result, Writer out) throws SQLException, IOException {
+        ResultSetMetaData meta = result.getMetaData();
+        int columns = meta.getColumnCount();
+        String[] keys = new String[columns + 1];
+        boolean[] numeric = new boolean[columns + 1];
+        for (int i = 1; i <= columns; i++) {
+            StringBuilder key = new StringBuilder();
+            key.append(i == 1 ? "{" : ",");
+            Json.appendString(meta.getColumnLabel(i), key);
+            key.append(':');
+            keys[i] = key.toString();
+            numeric[i] = isNumeric(meta.getColumnType(i));
+        }
+
+        long rows = 0;
+        while (result.next()) {
+            for (int i = 1; i <= columns; i++) {
+                out.write(keys[i]);
+                String value = result.getString(i);
+                if (value == null) {
+                    out.write("null");
+                } else if (numeric[i]) {
+                    out.write(value);
+                } else {
+                    writeJsonString(value, out);
+                }
+            }
+            out.write(columns == 0 ? "{}\n" : "}\n");
+            rows++;
+        }
+        return rows;
+    }
+
+    /**
+     * Writes a JSON string with its quotes, escaping the characters JSON requires
+     *
+     * @param value value to write
+     * @param out where the value is written
+     * @throws IOException if the value can not be written
+     */
+    private static void writeJsonString(String value, Writer out) throws IOException {
+        out.write('"');
+        int from = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\' || c < 0x20) {
+                out.write(value, from, i - from);
+                out.write(Json.escape(c));
+                from = i + 1;
+            }
+        }
+        out.write(value, from, value.length() - from);
+        out.write('"');
+    }
+
+    /**
+     * Checks whether a column holds numbers
+     *
+     * @param type JDBC type of the column
+     * @return true for integer, decimal and floating point columns
+     */
+    private static boolean isNumeric(int type) {
+        switch (type) {
+            case Types.TINYINT:
+            case Types.SMALLINT:
+            case Types.INTEGER:
+            case Types.BIGINT:
+            case Types.REAL:
+            case Types.FLOAT:
+            case Types.DOUBLE:
+            case Types.DECIMAL:
+            case Types.NUMERIC:
+                return true;
+            default:
+                return false;
+        }
+    }
+}
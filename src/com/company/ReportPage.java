@@ -0,0 +1,312 @@
+package com.company;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * One page of a long report, read with keyset pagination. A page is the rows whose key comes after the last key of
+ * the page before it, in key order, so MySQL starts from that key in the index and stops after one page. Unlike
+ * OFFSET, the rows before the page are never read, so every page costs the same however far into the report it
+ * is, and only one page of rows is held at a time. A row added or removed while paging does not shift the pages
+ * after it.
+ *
+ * One row more than the page size is read to tell whether there is another page in the direction read.
+ */
+class ReportPage {
+
+    /** Lowest key, a report read after it starts from its first row */
+    static final int START = Integer.MIN_VALUE;
+
+    /**
+     * Sets the parameters of the filter of a report
+     */
+    interface Binder {
+        /**
+         * Binds the parameters
+         *
+         * @param ps statement of the page query
+         * @param index index of the first parameter of the filter
+         * @return index of the parameter after the filter
+         * @throws SQLException if a parameter can not be bound
+         */
+        int bind(PreparedStatement ps, int index) throws SQLException;
+    }
+
+    /**
+     * A report that can be read a page at a time
+     */
+    static class Listing {
+        /** Query of the report without its filter, ordering and limit */
+        final String select;
+        /** Filter of the report, null to list every row */
+        final String where;
+        /** Unique, indexed integer column the rows are ordered and paged by */
+        final String key;
+        /** Label of the key column in the rows */
+        final String keyLabel;
+        /** Sets the parameters of the filter */
+        final Binder binder;
+
+        Listing(String select, String where, String key, String keyLabel, Binder binder) {
+            this.select = select;
+            this.where = where;
+            this.key = key;
+            this.keyLabel = keyLabel;
+            this.binder = binder;
+        }
+
+        /**
+         * Builds the query of a page
+         *
+         * @param forward true for the rows after a key in ascending order, false for the rows before it in
+         *                descending order
+         * @return the query, with the filter parameters first, then the key and the number of rows
+         */
+        String sql(boolean forward) {
+            return select + " WHERE " + (where == null ? "" : where + " AND ") + key + (forward ? " > ?" : " < ?")
+                    + " ORDER BY " + key + (forward ? "" : " DESC") + " LIMIT ?";
+        }
+    }
+
+    /** Report the page belongs to */
+    private final Listing listing;
+    /** Largest number of rows on a page */
+    private final int size;
+    /** Rows of the page in key order, each keyed by column label */
+    private final List<Map<String, Object>> rows;
+    /** Whether there are rows before the page */
+    private final boolean previous;
+    /** Whether there are rows after the page */
+    private final boolean next;
+
+    /**
+     * Creates a page
+     *
+     * @param listing report the page belongs to
+     * @param size largest number of rows on a page
+     * @param rows rows of the page in key order
+     * @param previous whether there are rows before the page
+     * @param next whether there are rows after the page
+     */
+    private ReportPage(Listing listing, int size, List<Map<String, Object>> rows, boolean previous, boolean next) {
+        this.listing = listing;
+        this.size = size;
+        this.rows = Collections.unmodifiableList(rows);
+        this.previous = previous;
+        this.next = next;
+    }
+
+    /**
+     * Report 20, the usage of every ward, by ward number
+     *
+     * @return the report
+     */
+    static Listing wardUsage() {
+        return new Listing("SELECT " + WardBeds.WARD_COLUMNS + ", Ward.occupants / Ward.capacity AS usagePercentage FROM Ward",
+                null, "Ward.number", "number", (ps, index) -> index);
+    }
+
+    /**
+     * Report 19, the patients checked in during a period, by patient ID. Whole months are read from the monthly
+     * census, which should be rolled forward first, other periods are matched against the check-ins. A patient
+     * checked in more than once during the period is listed once.
+     *
+     * @param range the period
+     * @return the report
+     */
+    static Listing patients(DateRange range) {
+        if (range.isWholeMonths()) {
+            return new Listing("SELECT * FROM Patient",
+                    "Patient.id IN (SELECT patientId FROM MonthlyCensus WHERE yearMonth >= ? AND yearMonth < ?)", "Patient.id", "id",
+                    (ps, index) -> {
+                        ps.setString(index, YearMonth.from(range.getStart()).toString());
+                        ps.setString(index + 1, YearMonth.from(range.getEnd()).toString());
+                        return index + 2;
+                    });
+        }
+        return new Listing("SELECT * FROM Patient", "Patient.id IN (SELECT patientId FROM CheckInInformation WHERE "
+                + DateRange.overlaps("startDate", "endDate") + ")", "Patient.id", "id", range::bindOverlaps);
+    }
+
+    /**
+     * Report 21, the patients of a doctor, by patient ID
+     *
+     * @param doctorId staff ID of the responsible doctor
+     * @return the report
+     */
+    static Listing patientsOfDoctor(int doctorId) {
+        return new Listing("SELECT * FROM Patient", "Patient.id IN (SELECT patientId FROM MedicalRecord WHERE responsibleDoctor = ?)",
+                "Patient.id", "id", (ps, index) -> {
+                    ps.setInt(index, doctorId);
+                    return index + 1;
+                });
+    }
+
+    /**
+     * Reads the first page of a report
+     *
+     * @param connection connection to the database
+     * @param listing the report
+     * @param size largest number of rows on the page
+     * @return the page
+     * @throws SQLException if the page can not be read
+     */
+    static ReportPage first(Connection connection, Listing listing, int size) throws SQLException {
+        return after(connection, listing, START, size);
+    }
+
+    /**
+     * Reads the page of rows right after a key
+     *
+     * @param connection connection to the database
+     * @param listing the report
+     * @param key last key of the page before, {@link #START} for the first page
+     * @param size largest number of rows on the page
+     * @return the page
+     * @throws SQLException if the page can not be read
+     */
+    static ReportPage after(Connection connection, Listing listing, int key, int size) throws SQLException {
+        List<Map<String, Object>> rows = read(connection, listing, true, key, size);
+        boolean more = rows.size() > size;
+        if (more) {
+            rows.remove(size);
+        }
+        return new ReportPage(listing, size, rows, key != START, more);
+    }
+
+    /**
+     * Reads the page of rows right before a key
+     *
+     * @param connection connection to the database
+     * @param listing the report
+     * @param key first key of the page after
+     * @param size largest number of rows on the page
+     * @return the page
+     * @throws SQLException if the page can not be read
+     */
+    static ReportPage before(Connection connection, Listing listing, int key, int size) throws SQLException {
+        List<Map<String, Object>> rows = read(connection, listing, false, key, size);
+        boolean more = rows.size() > size;
+        if (more) {
+            rows.remove(size);
+        }
+        Collections.reverse(rows);
+        return new ReportPage(listing, size, rows, more, true);
+    }
+
+    /**
+     * Reads the page after this one
+     *
+     * @param connection connection to the database
+     * @return the page
+     * @throws SQLException if the page can not be read
+     */
+    ReportPage next(Connection connection) throws SQLException {
+        if (!hasNext()) {
+            throw new IllegalStateException("This is the last page");
+        }
+        return after(connection, listing, getLastKey(), size);
+    }
+
+    /**
+     * Reads the page before this one
+     *
+     * @param connection connection to the database
+     * @return the page
+     * @throws SQLException if the page can not be read
+     */
+    ReportPage previous(Connection connection) throws SQLException {
+        if (!hasPrevious()) {
+            throw new IllegalStateException("This is the first page");
+        }
+        return before(connection, listing, getFirstKey(), size);
+    }
+
+    /**
+     * Gets the rows of the page
+     *
+     * @return rows in key order, each keyed by column label
+     */
+    List<Map<String, Object>> getRows() {
+        return rows;
+    }
+
+    /**
+     * Checks whether there are rows after the page
+     *
+     * @return true if {@link #next} has rows to read
+     */
+    boolean hasNext() {
+        return next && !rows.isEmpty();
+    }
+
+    /**
+     * Checks whether there are rows before the page
+     *
+     * @return true if {@link #previous} has rows to read
+     */
+    boolean hasPrevious() {
+        return previous && !rows.isEmpty();
+    }
+
+    /**
+     * Gets the key of the first row
+     *
+     * @return the key, to read the page before with {@link #before}
+     */
+    int getFirstKey() {
+        return ((Number) rows.get(0).get(listing.keyLabel)).intValue();
+    }
+
+    /**
+     * Gets the key of the last row
+     *
+     * @return the key, to read the page after with {@link #after}
+     */
+    int getLastKey() {
+        return ((Number) rows.get(rows.size() - 1).get(listing.keyLabel)).intValue();
+    }
+
+    /**
+     * Reads up to one row more than a page from a key
+     *
+     * @param connection connection to the database
+     * @param listing the report
+     * @param forward true to read after the key, false to read before it
+     * @param key key the page starts from, not included
+     * @param size largest number of rows on the page
+     * @return rows in the order read
+     * @throws SQLException if the rows can not be read
+     */
+    private static List<Map<String, Object>> read(Connection connection, Listing listing, boolean forward, int key, int size)
+            throws SQLException {
+        if (size < 1) {
+            throw new IllegalArgumentException("Page size must be at least 1");
+        }
+        PreparedStatement ps = connection.unwrap(StatementCache.class).prepare(listing.sql(forward));
+        int index = listing.binder.bind(ps, 1);
+        ps.setInt(index, key);
+        ps.setInt(index + 1, size + 1);
+        List<Map<String, Object>> rows = new ArrayList<Map<String, Object>>(size + 1);
+        try (ResultSet result = ps.executeQuery()) {
+            ResultSetMetaData meta = result.getMetaData();
+            while (result.next()) {
+                Map<String, Object> row = new LinkedHashMap<String, Object>();
+                for (int i = 1; i <= meta.getColumnCount(); i++) {
+                    row.put(meta.getColumnLabel(i), result.getObject(i));
+                }
+                rows.add(row);
+            }
+        }
+        return rows;
+    }
+}
@@ -0,0 +1,326 @@
+package com.company;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Brings the database schema up to the version this application expects. Each {@link Migration} has a version
+ * number and runs once; the versions already applied are recorded in the SchemaVersion table, so starting the
+ * application against an up to date database only reads that table. Migrations are written so that running one
+ * against a database that already has some of its tables or indexes succeeds, which lets databases created by
+ * hand before this table existed be brought under version control.
+ *
+ * A named lock is held while migrating so two application instances starting at once do not apply the same
+ * migration twice.
+ */
+class SchemaMigrator {
+
+    /** Name of the lock held while migrating */
+    private static final String LOCK_NAME = "wolfHospital.schema";
+    /** How long to wait for another instance to finish migrating */
+    private static final int LOCK_TIMEOUT_SECONDS = 60;
+    /** MySQL error code for an index name that already exists */
+    private static final int DUPLICATE_KEY_NAME = 1061;
+
+    /** Tables of the hospital, in an order that satisfies their foreign keys */
+    private static final String[] BASE_TABLES = {
+            "CREATE TABLE IF NOT EXISTS Person" +
+                    "(id INT NOT NULL, name VARCHAR(128) NOT NULL, age INT NOT NULL," +
+                    "gender CHAR (1) NOT NULL, address VARCHAR(200) NOT NULL, phone CHAR (10), "
+                    + "PRIMARY KEY(id))",
+
+            "CREATE TABLE IF NOT EXISTS Patient" +
+                    "(id INT NOT NULL, ssn CHAR (9), name VARCHAR(128) NOT NULL, dob DATE NOT NULL, gender CHAR (1) NOT NULL, "
+                    + "age INT NOT NULL, phone CHAR (10), address VARCHAR(200) NOT NULL, treatment INT NOT NULL, inWard VARCHAR(3) NOT NULL, status VARCHAR(3) NOT NULL, "
+                    + "primary key(id))",
+
+            "CREATE TABLE IF NOT EXISTS Staff" +
+                    "(id INT NOT NULL, jobTitle VARCHAR(128) NOT NULL, professionalTitle VARCHAR(128) NOT NULL, department VARCHAR(128) NOT NULL, "
+                    + "primary key(id))",
+
+            "CREATE TABLE IF NOT EXISTS Treats" +
+                    "(patientId INT NOT NULL, staffId INT NOT NULL, "
+                    + "primary key(patientId), foreign key(staffId) references Staff(id))",
+
+            "CREATE TABLE IF NOT EXISTS Test" +
+                    "(id INT NOT NULL, name VARCHAR (128) NOT NULL, results VARCHAR(200) NOT NULL, "
+                    + "primary key(id))",
+
+            "CREATE TABLE IF NOT EXISTS Recommends" +
+                    "(doctorId INT NOT NULL, testId INT NOT NULL, "
+                    + "primary key(doctorId), foreign key(testId) references Test(id))",
+
+            "CREATE TABLE IF NOT EXISTS Performs" +
+                    "(specialistId INT NOT NULL, testId INT NOT NULL, "
+                    + "primary key(specialistId), foreign key(testId) references Test(id))",
+
+            "CREATE TABLE IF NOT EXISTS AddTest" +
+                    "(testId INT NOT NULL, patientId INT NOT NULL, "
+                    + "primary key(testId), foreign key(patientId) references Patient(id))",
+
+            "CREATE TABLE IF NOT EXISTS Prescription" +
+                    "(id INT NOT NULL, name VARCHAR (128) NOT NULL, "
+                    + "primary key(id))",
+
+            "CREATE TABLE IF NOT EXISTS AddPrescription" +
+                    "(prescriptionId INT NOT NULL, patientId INT NOT NULL, "
+                    + "primary key(prescriptionId), foreign key(patientId) references Patient(id))",
+
+            "CREATE TABLE IF NOT EXISTS DiagnosisDetails" +
+                    "(id INT NOT NULL, details VARCHAR (200) NOT NULL, "
+                    + "primary key(id))",
+
+            "CREATE TABLE IF NOT EXISTS AddDiagnosis" +
+                    "(diagnosisId INT NOT NULL, patientId INT NOT NULL, "
+                    + "primary key(diagnosisId), foreign key(patientId) references Patient(id))",
+
+            "CREATE TABLE IF NOT EXISTS MedicalRecord" +
+                    "(patientId INT NOT NULL, startDate DATE NOT NULL, endDate DATE, responsibleDoctor INT NOT NULL, "
+                    + "primary key(patientId))",
+
+            "CREATE TABLE IF NOT EXISTS AssignPatient" +
+                    "(patientId INT NOT NULL, operatorId INT NOT NULL, wardNumber INT NOT NULL, "
+                    + "primary key(patientId), foreign key(operatorId) references Staff(id))",
+
+            "CREATE TABLE IF NOT EXISTS Ward" +
+                    "(number INT NOT NULL, capacity INT NOT NULL, patientIds VARCHAR(200), chargesPerDay DOUBLE NOT NULL, occupants INT NOT NULL, responsibleNurse INT NOT NULL, "
+                    + "primary key(number))",
+
+            "CREATE TABLE IF NOT EXISTS FirstTimePatient" +
+                    "(id INT NOT NULL, primary key(id))",
+
+            "CREATE TABLE IF NOT EXISTS Registers" +
+                    "(firstTimePatientId INT NOT NULL, operatorId INT NOT NULL, "
+                    + "primary key(firstTimePatientId), foreign key(operatorId) references Staff(id))",
+
+            "CREATE TABLE IF NOT EXISTS Bills" +
+                    "(patientId INT NOT NULL, operatorId INT NOT NULL, "
+                    + "primary key(patientId), foreign key(operatorId) references Staff(id))",
+
+            "CREATE TABLE IF NOT EXISTS CheckInInformation" +
+                    "(patientId INT NOT NULL, wardNumber INT NOT NULL, bedNumber INT NOT NULL, "
+                    + "startDate DATE NOT NULL, endDate DATE, "
+                    + "primary key(patientId))",
+
+            "CREATE TABLE IF NOT EXISTS ProcessCheckIn" +
+                    "(patientId INT NOT NULL, operatorId INT NOT NULL, "
+                    + "primary key(patientId), foreign key(operatorId) references Staff(id))",
+
+            "CREATE TABLE IF NOT EXISTS TracksBilling" +
+                    "(patientId INT NOT NULL, operatorId INT NOT NULL, "
+                    + "primary key(patientId), foreign key(operatorId) references Staff(id))",
+
+            "CREATE TABLE IF NOT EXISTS BillingAccount" +
+                    "(patientId INT NOT NULL, responsibleSSN CHAR(9) NOT NULL, billingAddress VARCHAR(200) NOT NULL, "
+                    + "visitDate DATE NOT NULL, paymentMethod VARCHAR(128) NOT NULL, cardNumber CHAR(16), registrationFee INT NOT NULL, "
+                    + "medicationPrescribed VARCHAR(3) NOT NULL, accommodationFee INT, "
+                    + "primary key(patientId))",
+
+            "CREATE TABLE IF NOT EXISTS BillingRecord" +
+                    "(id INT NOT NULL, total DOUBLE NOT NULL, primary key(id))",
+
+            "CREATE TABLE IF NOT EXISTS TrackFees" +
+                    "(billingRecordId INT NOT NULL, patientId INT NOT NULL, "
+                    + "primary key(billingRecordId), foreign key(patientId) references Patient(id))",
+
+            "CREATE TABLE IF NOT EXISTS Fee" +
+                    "(id INT NOT NULL, name VARCHAR(128) NOT NULL, amount DOUBLE NOT NULL, primary key(id))",
+
+            "CREATE TABLE IF NOT EXISTS AddFee" +
+                    "(feeId INT NOT NULL, billingRecordId INT NOT NULL, "
+                    + "primary key(feeId), foreign key(billingRecordId) references BillingRecord(id))",
+
+            "CREATE TABLE IF NOT EXISTS NurseResponsible" +
+                    "(wardNumber INT NOT NULL, nurseId INT NOT NULL, "
+                    + "primary key(wardNumber), foreign key(nurseId) references Staff(id))"
+    };
+
+    /**
+     * Secondary indexes for the columns the reports and ward assignment filter and group on. Each entry is the
+     * table, the index name and the indexed columns.
+     */
+    private static final String[][] REPORT_INDEXES = {
+            //Patients of a doctor
+            { "MedicalRecord", "MedicalRecord_responsibleDoctor", "responsibleDoctor" },
+            //Medical records started in a month
+            { "MedicalRecord", "MedicalRecord_startDate", "startDate, endDate" },
+            //Patients checked in during a month
+            { "CheckInInformation", "CheckInInformation_startDate", "startDate, endDate" },
+            { "CheckInInformation", "CheckInInformation_endDate", "endDate" },
+            //Wards with a free bed of a given capacity
+            { "Ward", "Ward_capacity_occupants", "capacity, occupants" },
+            //Staff grouped by role
+            { "Staff", "Staff_jobTitle", "jobTitle" }
+    };
+
+    /**
+     * A change to the schema that is applied once
+     */
+    interface Migration {
+        /**
+         * Applies the change
+         *
+         * @param connection connection to the database
+         * @throws SQLException if the change can not be applied
+         */
+        void apply(Connection connection) throws SQLException;
+    }
+
+    /** Versions of the schema in the order they are applied */
+    private final List<Integer> versions = new ArrayList<Integer>();
+    /** Description of each version */
+    private final List<String> descriptions = new ArrayList<String>();
+    /** Change applied for each version */
+    private final List<Migration> migrations = new ArrayList<Migration>();
+
+    /**
+     * Creates a migrator with every migration of the hospital schema
+     */
+    SchemaMigrator() {
+        add(1, "Create the hospital tables", connection -> {
+            try (Statement statement = connection.createStatement()) {
+                for (String table : BASE_TABLES) {
+                    statement.executeUpdate(table);
+                }
+            }
+        });
+        add(2, "Store ward occupancy one bed per row in WardBed", WardBeds::ensureSchema);
+        add(3, "Index the columns the reports filter on", connection -> {
+            for (String[] index : REPORT_INDEXES) {
+                createIndex(connection, index[0], index[1], index[2]);
+            }
+        });
+        add(4, "Materialize the monthly census of checked in patients", connection -> {
+            MonthlyCensus.ensureSchema(connection);
+            MonthlyCensus.backfillRange(connection, Integer.MIN_VALUE, Integer.MAX_VALUE);
+            MonthlyCensus.recount(connection);
+        });
+        add(5, "Allocate record IDs from the IdSequence table", IdAllocator::ensureSchema);
+        add(6, "Recompute billing record totals from their fees", BillingTotals::recomputeAll);
+    }
+
+    /**
+     * Registers a migration, versions must be added in increasing order
+     *
+     * @param version version of the schema after the migration
+     * @param description what the migration changes
+     * @param migration the change
+     */
+    void add(int version, String description, Migration migration) {
+        if (!versions.isEmpty() && version <= versions.get(versions.size() - 1)) {
+            throw new IllegalArgumentException("Schema version " + version + " must be greater than " + versions.get(versions.size() - 1));
+        }
+        versions.add(version);
+        descriptions.add(description);
+        migrations.add(migration);
+    }
+
+    /**
+     * Applies every migration newer than the version recorded in the database
+     *
+     * @param connection connection to the database
+     * @return the schema version of the database afterwards
+     * @throws SQLException if a migration fails, the versions before it stay applied
+     */
+    int migrate(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.executeUpdate("CREATE TABLE IF NOT EXISTS SchemaVersion"
+                    + "(version INT NOT NULL, description VARCHAR(200) NOT NULL, appliedAt TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP, "
+                    + "primary key(version))");
+        }
+
+        lock(connection);
+        try {
+            int current = currentVersion(connection);
+            for (int i = 0; i < versions.size(); i++) {
+                int version = versions.get(i);
+                if (version <= current) {
+                    continue;
+                }
+                long started = System.nanoTime();
+                migrations.get(i).apply(connection);
+                try (PreparedStatement insert = connection.prepareStatement("INSERT INTO SchemaVersion(version, description) VALUES(?, ?)")) {
+                    insert.setInt(1, version);
+                    insert.setString(2, descriptions.get(i));
+                    insert.executeUpdate();
+                }
+                current = version;
+                System.out.println("Applied schema version " + version + ": " + descriptions.get(i) + " ("
+                        + (System.nanoTime() - started) / 1000000 + " ms)");
+            }
+            return current;
+        } finally {
+            unlock(connection);
+        }
+    }
+
+    /**
+     * Reads the newest schema version applied to the database
+     *
+     * @param connection connection to the database
+     * @return the version, 0 if no migration has been applied
+     * @throws SQLException if the version can not be read
+     */
+    static int currentVersion(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement();
+             ResultSet result = statement.executeQuery("SELECT COALESCE(MAX(version), 0) FROM SchemaVersion")) {
+            result.next();
+            return result.getInt(1);
+        }
+    }
+
+    /**
+     * Creates an index, doing nothing if an index of that name already exists
+     *
+     * @param connection connection to the database
+     * @param table table to index
+     * @param name name of the index
+     * @param columns indexed columns
+     * @throws SQLException if the index can not be created
+     */
+    static void createIndex(Connection connection, String table, String name, String columns) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.executeUpdate("CREATE INDEX " + name + " ON " + table + "(" + columns + ")");
+        } catch (SQLException e) {
+            if (e.getErrorCode() != DUPLICATE_KEY_NAME) {
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Takes the migration lock, waiting for another instance that is migrating
+     *
+     * @param connection connection to the database
+     * @throws SQLException if the lock is not free in time
+     */
+    private static void lock(Connection connection) throws SQLException {
+        try (PreparedStatement select = connection.prepareStatement("SELECT GET_LOCK(?, ?)")) {
+            select.setString(1, LOCK_NAME);
+            select.setInt(2, LOCK_TIMEOUT_SECONDS);
+            try (ResultSet result = select.executeQuery()) {
+                if (!result.next() || result.getInt(1) != 1) {
+                    throw new SQLException("Timed out waiting for another instance to finish migrating the schema");
+                }
+            }
+        }
+    }
+
+    /**
+     * Releases the migration lock
+     *
+     * @param connection connection to the database
+     * @throws SQLException if the lock can not be released
+     */
+    private static void unlock(Connection connection) throws SQLException {
+        try (PreparedStatement select = connection.prepareStatement("SELECT RELEASE_LOCK(?)")) {
+            select.setString(1, LOCK_NAME);
+            select.executeQuery().close();
+        }
+    }
+}
@@ -0,0 +1,259 @@
+package com.company;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.FileHandler;
+import java.util.logging.Formatter;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+
+/**
+ * Log of the statements that took longer than a threshold, written to a set of rotating local files. Each entry has
+ * the time, the operation that ran the statement, how long it took, its SQL, the types of its bound values and the
+ * plan MySQL picks for it, so a full scan shows up in the log before operators notice the screens getting slower.
+ * Plans that scan a whole table are flagged.
+ *
+ * Bound values and the literals in the SQL of plain statements are never written, only their types, since they
+ * hold names, SSNs and card numbers. The plan is captured with EXPLAIN on a connection of its own, in the
+ * background, so the slow operation is not slowed down further. When statements are logged faster than they can be
+ * explained the extra ones are dropped and counted.
+ */
+class SlowQueryLog {
+
+    /** Operation the plans are explained under, its own statements are never logged */
+    static final String OPERATION = "slow query log";
+    /** Entries waiting to be explained */
+    private static final int QUEUED = 100;
+    /** Statements EXPLAIN can show the plan of */
+    private static final Pattern EXPLAINABLE = Pattern.compile("(?is)^\\s*(SELECT|INSERT|UPDATE|DELETE|REPLACE)\\b.*");
+    /** Quoted strings in SQL */
+    private static final Pattern STRING_LITERAL = Pattern.compile("'(?:[^'\\\\]|\\\\.|'')*'");
+    /** Numbers in SQL that are not part of a name */
+    private static final Pattern NUMBER_LITERAL = Pattern.compile("(?<![\\w.])-?\\d+(\\.\\d+)?(?!\\w)");
+
+    /** Pool the plans are explained on */
+    private final ConnectionPool pool;
+    /** Writes the entries to the rotating files */
+    private final Logger logger;
+    /** Files the entries are written to */
+    private final FileHandler files;
+    /** Explains the statements and writes the entries, one at a time */
+    private final ThreadPoolExecutor writer;
+    /** Statements at least this slow are logged */
+    private volatile long thresholdNanos;
+    /** Entries dropped because too many were waiting */
+    private final AtomicLong dropped = new AtomicLong();
+
+    /**
+     * Opens the log
+     *
+     * @param pool pool the plans are explained on
+     * @param pattern path of the files, %g is replaced by the number of the file, 0 being the newest
+     * @param thresholdMillis statements at least this slow are logged
+     * @param fileBytes size a file is rotated at
+     * @param fileCount number of files kept
+     * @throws IOException if the files can not be opened
+     */
+    SlowQueryLog(ConnectionPool pool, String pattern, long thresholdMillis, int fileBytes, int fileCount) throws IOException {
+        this.pool = pool;
+        setThresholdMillis(thresholdMillis);
+        files = new FileHandler(pattern, fileBytes, fileCount, true);
+        files.setFormatter(new Formatter() {
+            @Override
+            public String format(LogRecord record) {
+                return record.getMessage() + System.lineSeparator();
+            }
+        });
+        logger = Logger.getAnonymousLogger();
+        logger.setUseParentHandlers(false);
+        logger.addHandler(files);
+        writer = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<Runnable>(QUEUED), r -> {
+            Thread t = new Thread(r, "WolfHospital-slow-query-log");
+            t.setDaemon(true);
+            return t;
+        }, (r, executor) -> dropped.incrementAndGet());
+    }
+
+    /**
+     * Changes the threshold
+     *
+     * @param thresholdMillis statements at least this slow are logged
+     */
+    void setThresholdMillis(long thresholdMillis) {
+        if (thresholdMillis < 0) {
+            throw new IllegalArgumentException("Slow query threshold can not be negative");
+        }
+        thresholdNanos = TimeUnit.MILLISECONDS.toNanos(thresholdMillis);
+    }
+
+    /**
+     * Gets the threshold
+     *
+     * @return statements at least this slow are logged
+     */
+    long getThresholdMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(thresholdNanos);
+    }
+
+    /**
+     * Gets the threshold in nanoseconds, checked after every statement
+     *
+     * @return statements at least this slow are logged
+     */
+    long getThresholdNanos() {
+        return thresholdNanos;
+    }
+
+    /**
+     * Gets the number of entries dropped because too many were waiting to be explained
+     *
+     * @return number of entries
+     */
+    long getDropped() {
+        return dropped.get();
+    }
+
+    /**
+     * Queues a slow statement to be explained and written
+     *
+     * @param sql SQL of the statement, null if it is not known, such as for a batch of plain statements
+     * @param parameters values bound to a prepared statement by parameter index, index 0 unused, null for a plain
+     *                   statement
+     * @param nanos time the statement took
+     * @param operation operation that ran the statement
+     */
+    void offer(String sql, Object[] parameters, long nanos, String operation) {
+        //The plans are explained through the pool too, so they must not log themselves
+        if (sql == null || operation.equals(OPERATION)) {
+            return;
+        }
+        LocalDateTime at = LocalDateTime.now();
+        writer.execute(() -> logger.log(Level.INFO, entry(at, sql, parameters, nanos, operation)));
+    }
+
+    /**
+     * Writes the entries still waiting and closes the files
+     */
+    void close() {
+        writer.shutdown();
+        try {
+            writer.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        files.close();
+    }
+
+    /**
+     * Builds the entry of a slow statement, explaining it first
+     *
+     * @param at when the statement finished
+     * @param sql SQL of the statement
+     * @param parameters values bound to the statement, null for a plain statement
+     * @param nanos time the statement took
+     * @param operation operation that ran the statement
+     * @return the entry
+     */
+    private String entry(LocalDateTime at, String sql, Object[] parameters, long nanos, String operation) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(at).append(String.format(" %.3f ms ", nanos / 1e6)).append(operation).append(System.lineSeparator());
+        sb.append("  SQL: ").append(parameters == null ? redact(sql) : sql.trim().replaceAll("\\s+", " ")).append(System.lineSeparator());
+        if (parameters != null && parameters.length > 1) {
+            sb.append("  Binds:");
+            for (int i = 1; i < parameters.length; i++) {
+                sb.append(' ').append(i).append('=').append(describe(parameters[i]));
+            }
+            sb.append(System.lineSeparator());
+        }
+        if (!EXPLAINABLE.matcher(sql).matches()) {
+            return sb.append("  Plan: not available for this statement").toString();
+        }
+        try {
+            explain(sql, parameters, sb);
+        } catch (SQLException e) {
+            sb.append("  Plan: EXPLAIN failed, ").append(e.getMessage());
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Appends the plan of a statement, counted as an {@link #OPERATION} of its own so the EXPLAIN is never logged
+     *
+     * @param sql SQL of the statement
+     * @param parameters values bound to the statement, null for a plain statement
+     * @param sb where the plan is appended
+     * @throws SQLException if the statement can not be explained
+     */
+    private void explain(String sql, Object[] parameters, StringBuilder sb) throws SQLException {
+        QueryMetrics.run(OPERATION, () -> appendPlan(sql, parameters, sb));
+    }
+
+    /**
+     * Appends the plan of a statement, one line per table it reads
+     *
+     * @param sql SQL of the statement
+     * @param parameters values bound to the statement, null for a plain statement
+     * @param sb where the plan is appended
+     * @throws SQLException if the statement can not be explained
+     */
+    private void appendPlan(String sql, Object[] parameters, StringBuilder sb) throws SQLException {
+        try (Connection connection = pool.borrow();
+             PreparedStatement explain = connection.prepareStatement("EXPLAIN " + sql)) {
+            for (int i = 1; parameters != null && i < parameters.length; i++) {
+                explain.setObject(i, parameters[i]);
+            }
+            sb.append("  Plan:");
+            try (ResultSet plan = explain.executeQuery()) {
+                ResultSetMetaData columns = plan.getMetaData();
+                while (plan.next()) {
+                    sb.append(System.lineSeparator()).append("   ");
+                    for (int c = 1; c <= columns.getColumnCount(); c++) {
+                        sb.append(' ').append(columns.getColumnLabel(c)).append('=').append(plan.getString(c));
+                    }
+                    if ("ALL".equals(plan.getString("type"))) {
+                        sb.append(System.lineSeparator()).append("    FULL SCAN of ").append(plan.getString("table"))
+                                .append(", about ").append(plan.getString("rows")).append(" rows");
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Replaces the literals of a plain statement with ?
+     *
+     * @param sql SQL of the statement
+     * @return the SQL without its values
+     */
+    static String redact(String sql) {
+        String redacted = STRING_LITERAL.matcher(sql).replaceAll("?");
+        return NUMBER_LITERAL.matcher(redacted).replaceAll("?").trim().replaceAll("\\s+", " ");
+    }
+
+    /**
+     * Describes a bound value without giving it away
+     *
+     * @param value the value
+     * @return its type, and its length for text
+     */
+    private static String describe(Object value) {
+        if (value == null) {
+            return "NULL";
+        }
+        if (value instanceof CharSequence) {
+            return "String(" + ((CharSequence) value).length() + ")";
+        }
+        return value.getClass().getSimpleName();
+    }
+}
@@ -0,0 +1,208 @@
+package com.company;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cache of prepared statements for one physical connection, keyed by SQL text. Statements are prepared on the
+ * server once and reused by every operation that borrows the connection, so recurring lookups are not parsed
+ * again on each call. The least recently used statement is closed when the cache is full.
+ *
+ * Statements handed out by the cache belong to the cache and must not be closed by the caller. A cached statement
+ * is checked out while the result set of its last query is open, and a lookup of the same SQL meanwhile, such as a
+ * lookup nested in a loop over that result, is given a statement of its own rather than the shared one, which would
+ * close the caller's result set. Those statements close with their result set, and at the latest when the borrow of
+ * the connection ends with {@link #release()}.
+ */
+class StatementCache {
+
+    /** Hits across every connection's cache */
+    private static final AtomicLong totalHits = new AtomicLong();
+    /** Misses across every connection's cache */
+    private static final AtomicLong totalMisses = new AtomicLong();
+
+    /** Physical connection the statements are prepared on */
+    private final Connection connection;
+    /** Maximum number of statements kept open */
+    private final int maxSize;
+    /** Open statements in least recently used order */
+    private final LinkedHashMap<String, PreparedStatement> statements;
+    /** Statements of their own handed out while the cached one was checked out, open until released */
+    private final List<PreparedStatement> uncached = new ArrayList<PreparedStatement>();
+    /** Hits for this connection */
+    private long hits = 0;
+    /** Misses for this connection */
+    private long misses = 0;
+
+    /**
+     * Creates an empty cache for the given connection
+     *
+     * @param connection physical connection the statements are prepared on
+     * @param maxSize maximum number of statements kept open
+     */
+    StatementCache(Connection connection, int maxSize) {
+        this.connection = connection;
+        this.maxSize = maxSize;
+        this.statements = new LinkedHashMap<String, PreparedStatement>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest) {
+                if (size() > StatementCache.this.maxSize) {
+                    closeQuietly(eldest.getValue());
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Gets the prepared statement for the given SQL, preparing it if it is not cached yet. Parameters left from
+     * the last use are cleared. While the cached statement is checked out a statement of its own is prepared, which
+     * closes when its result set is closed.
+     *
+     * @param sql parameterized SQL text
+     * @return prepared statement owned by the cache
+     * @throws SQLException if the statement cannot be prepared
+     */
+    synchronized PreparedStatement prepare(String sql) throws SQLException {
+        PreparedStatement cached = statements.get(sql);
+        if (cached != null && !cached.isClosed() && isCheckedOut(cached)) {
+            misses++;
+            totalMisses.incrementAndGet();
+            uncached.removeIf(s -> isClosed(s));
+            PreparedStatement own = connection.prepareStatement(sql);
+            own.closeOnCompletion();
+            uncached.add(own);
+            return own;
+        }
+        if (cached != null && !cached.isClosed()) {
+            hits++;
+            totalHits.incrementAndGet();
+            cached.clearParameters();
+            return cached;
+        }
+
+        misses++;
+        totalMisses.incrementAndGet();
+        PreparedStatement prepared = connection.prepareStatement(sql);
+        statements.put(sql, prepared);
+        return prepared;
+    }
+
+    /**
+     * Checks whether the result set of the last query of a cached statement is still open
+     *
+     * @param s cached statement
+     * @return true if running the statement again would close a result set still in use
+     * @throws SQLException if the statement can not be checked
+     */
+    private static boolean isCheckedOut(PreparedStatement s) throws SQLException {
+        ResultSet open = s.getResultSet();
+        return open != null && !open.isClosed();
+    }
+
+    /**
+     * Ends a borrow of the connection, closing the statements of their own and the result sets left open on the
+     * cached statements so the next borrower finds none of them checked out
+     */
+    synchronized void release() {
+        for (PreparedStatement s : uncached) {
+            closeQuietly(s);
+        }
+        uncached.clear();
+        for (PreparedStatement s : statements.values()) {
+            try {
+                ResultSet open = s.isClosed() ? null : s.getResultSet();
+                if (open != null) {
+                    open.close();
+                }
+            } catch (SQLException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Gets the number of lookups served from this cache
+     *
+     * @return number of hits
+     */
+    synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * Gets the number of lookups that had to prepare a statement
+     *
+     * @return number of misses
+     */
+    synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * Gets the number of lookups served from the cache of any connection
+     *
+     * @return number of hits
+     */
+    static long getTotalHits() {
+        return totalHits.get();
+    }
+
+    /**
+     * Gets the number of lookups of any connection that had to prepare a statement
+     *
+     * @return number of misses
+     */
+    static long getTotalMisses() {
+        return totalMisses.get();
+    }
+
+    /**
+     * Closes every cached statement
+     */
+    synchronized void close() {
+        for (PreparedStatement s : uncached) {
+            closeQuietly(s);
+        }
+        uncached.clear();
+        for (PreparedStatement s : statements.values()) {
+            closeQuietly(s);
+        }
+        statements.clear();
+    }
+
+    /**
+     * Checks whether a statement was closed, taking one that can not be checked as closed
+     *
+     * @param s statement to check
+     * @return true if the statement is closed
+     */
+    private static boolean isClosed(PreparedStatement s) {
+        try {
+            return s.isClosed();
+        } catch (SQLException e) {
+            return true;
+        }
+    }
+
+    /**
+     * Closes a statement leaving the cache
+     *
+     * @param s statement to close
+     */
+    private static void closeQuietly(PreparedStatement s) {
+        try {
+            s.close();
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,589 @@
+package com.company;
+
+import java.io.PrintStream;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Fills the database with made up but consistent hospital data for load testing and benchmarks. Staff, wards and
+ * patients are written with their medical records, tests, prescriptions, diagnoses, check-ins, beds, billing
+ * accounts and fees, keeping to the foreign keys and the rules the application enforces: wards hold 1, 2 or 4 beds
+ * and are looked after by a nurse, medical records have a doctor as responsible staff, open stays have a bed and
+ * closed ones an end date, and each billing record total is the sum of its fees.
+ *
+ * The data depends only on the seed and the scale. Every row is drawn from its own random stream keyed by the seed
+ * and the index of the row, so the rows do not depend on how the work is split between threads and two runs with
+ * the same seed on an empty database write the same rows. New IDs start above the highest ID already stored, so
+ * generated data can be added to an existing database.
+ *
+ * Rows are written in slices, each slice in one transaction of JDBC batches on its own connection from the pool,
+ * with several slices written at once. Staff and wards are written before the patients that refer to them.
+ */
+class SyntheticDataGenerator {
+
+    /** Day the generated data is as of, fixed so the dates do not depend on when the generator runs */
+    static final LocalDate AS_OF = LocalDate.of(2025, 12, 31);
+    /** Number of staff, wards or patients written per transaction */
+    private static final int SLICE = 1000;
+    /** Fraction of beds occupied by patients still in their stay */
+    private static final double OCCUPANCY = 0.75;
+    /** Most tests, prescriptions or diagnoses of one patient, which reserves that many IDs per patient */
+    private static final int MAX_ITEMS = 4;
+
+    private static final String[] FIRST_NAMES = { "James", "Mary", "Robert", "Patricia", "John", "Jennifer", "Michael",
+            "Linda", "David", "Elizabeth", "William", "Barbara", "Richard", "Susan", "Joseph", "Jessica", "Thomas", "Sarah",
+            "Carlos", "Maria", "Wei", "Priya", "Ahmed", "Fatima", "Hiroshi", "Yuki", "Olga", "Ivan", "Kwame", "Amara" };
+    private static final String[] LAST_NAMES = { "Smith", "Johnson", "Williams", "Brown", "Jones", "Garcia", "Miller",
+            "Davis", "Rodriguez", "Martinez", "Hernandez", "Lopez", "Wilson", "Anderson", "Taylor", "Moore", "Jackson",
+            "Lee", "Nguyen", "Patel", "Kim", "Chen", "Singh", "Okafor", "Ivanova", "Tanaka", "Haddad", "Cohen" };
+    private static final String[] STREETS = { "Hillsborough St", "Glenwood Ave", "Capital Blvd", "Six Forks Rd",
+            "Wake Forest Rd", "Western Blvd", "Falls of Neuse Rd", "New Bern Ave", "Oberlin Rd", "Avent Ferry Rd" };
+    private static final String[] CITIES = { "Raleigh", "Durham", "Cary", "Chapel Hill", "Apex", "Wake Forest", "Garner" };
+    private static final String[] DEPARTMENTS = { "Oncological Surgery", "Cardiology", "Neurology", "Pediatrics",
+            "Emergency", "Radiology", "Orthopedics", "Billing", "Registration" };
+    private static final String[] TESTS = { "Blood Panel", "X-Ray", "MRI", "CT Scan", "Urinalysis", "ECG", "Ultrasound",
+            "Biopsy", "Allergy Panel", "Glucose Tolerance" };
+    private static final String[] RESULTS = { "Normal", "Abnormal, follow up required", "Inconclusive, repeat test",
+            "Within reference range", "Elevated levels observed" };
+    private static final String[] PRESCRIPTIONS = { "Amoxicillin 500mg", "Ibuprofen 400mg", "Lisinopril 10mg",
+            "Metformin 500mg", "Atorvastatin 20mg", "Physical therapy", "Albuterol inhaler", "Omeprazole 20mg" };
+    private static final String[] DIAGNOSES = { "Hypertension", "Type 2 diabetes", "Fractured radius", "Pneumonia",
+            "Migraine", "Acute appendicitis", "Asthma", "Concussion", "Influenza", "Benign tumor" };
+    private static final String[] FEES = { "Consultation", "Accommodation", "Medication", "Test", "Surgery", "Therapy",
+            "Imaging", "Laboratory" };
+    private static final String[] PAYMENT_METHODS = { "card", "insurance", "cash" };
+
+    /**
+     * Table written by the generator, in an order that satisfies the foreign keys between them
+     */
+    private enum Table {
+        PERSON("Person", "INSERT INTO Person(id, name, age, gender, address, phone) VALUES(?, ?, ?, ?, ?, ?)"),
+        STAFF("Staff", "INSERT INTO Staff(id, jobTitle, professionalTitle, department) VALUES(?, ?, ?, ?)"),
+        WARD("Ward", "INSERT INTO Ward(number, capacity, patientIds, chargesPerDay, occupants, responsibleNurse) VALUES(?, ?, NULL, ?, 0, ?)"),
+        NURSE_RESPONSIBLE("NurseResponsible", "INSERT INTO NurseResponsible(wardNumber, nurseId) VALUES(?, ?)"),
+        PATIENT("Patient", "INSERT INTO Patient(id, ssn, name, dob, gender, age, phone, address, treatment, inWard, status) "
+                + "VALUES(?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)"),
+        MEDICAL_RECORD("MedicalRecord", "INSERT INTO MedicalRecord(patientId, startDate, endDate, responsibleDoctor) VALUES(?, ?, ?, ?)"),
+        TREATS("Treats", "INSERT INTO Treats(patientId, staffId) VALUES(?, ?)"),
+        TEST("Test", "INSERT INTO Test(id, name, results) VALUES(?, ?, ?)"),
+        ADD_TEST("AddTest", "INSERT INTO AddTest(testId, patientId) VALUES(?, ?)"),
+        PRESCRIPTION("Prescription", "INSERT INTO Prescription(id, name) VALUES(?, ?)"),
+        ADD_PRESCRIPTION("AddPrescription", "INSERT INTO AddPrescription(prescriptionId, patientId) VALUES(?, ?)"),
+        DIAGNOSIS("DiagnosisDetails", "INSERT INTO DiagnosisDetails(id, details) VALUES(?, ?)"),
+        ADD_DIAGNOSIS("AddDiagnosis", "INSERT INTO AddDiagnosis(diagnosisId, patientId) VALUES(?, ?)"),
+        CHECK_IN("CheckInInformation", "INSERT INTO CheckInInformation(patientId, wardNumber, bedNumber, startDate, endDate) VALUES(?, ?, ?, ?, ?)"),
+        WARD_BED("WardBed", "INSERT INTO WardBed(wardNumber, bedNumber, patientId) VALUES(?, ?, ?)"),
+        BILLING_ACCOUNT("BillingAccount", "INSERT INTO BillingAccount(patientId, responsibleSSN, billingAddress, visitDate, paymentMethod, "
+                + "cardNumber, registrationFee, medicationPrescribed, accommodationFee) VALUES(?, ?, ?, ?, ?, ?, ?, ?, ?)"),
+        BILLING_RECORD("BillingRecord", "INSERT INTO BillingRecord(id, total) VALUES(?, ?)"),
+        TRACK_FEES("TrackFees", "INSERT INTO TrackFees(billingRecordId, patientId) VALUES(?, ?)"),
+        FEE("Fee", "INSERT INTO Fee(id, name, amount) VALUES(?, ?, ?)"),
+        ADD_FEE("AddFee", "INSERT INTO AddFee(feeId, billingRecordId) VALUES(?, ?)");
+
+        /** Name of the table */
+        final String tableName;
+        /** Insert of one row */
+        final String sql;
+
+        Table(String tableName, String sql) {
+            this.tableName = tableName;
+            this.sql = sql;
+        }
+    }
+
+    /**
+     * Random stream a row or a planned value is drawn from, so values of different kinds with the same index differ
+     */
+    private enum Stream { JOB, STAFF, CAPACITY, WARD, PATIENT }
+
+    /**
+     * Writes the rows of one slice
+     */
+    private interface SliceWriter {
+        /**
+         * Adds the rows of one slice
+         *
+         * @param rows batches of the slice
+         * @param from index of the first item of the slice
+         * @param to index after the last item of the slice
+         */
+        void write(Rows rows, int from, int to);
+    }
+
+    /** Pool the connections are borrowed from */
+    private final ConnectionPool pool;
+    /** Seed every row is drawn from */
+    private final long seed;
+    /** Number of patients to write */
+    private final int patients;
+    /** Number of wards to write */
+    private final int wards;
+    /** Number of staff to write */
+    private final int staff;
+    /** Average number of fees of a patient */
+    private final int feesPerPatient;
+    /** Number of slices written at once */
+    private final int threads;
+    /** Where progress is reported */
+    private final PrintStream out;
+    /** Rows written so far by table */
+    private final AtomicLongArray written = new AtomicLongArray(Table.values().length);
+
+    /** First new ID of each kind of record, read before writing */
+    private int personBase, patientBase, wardBase, testBase, prescriptionBase, diagnosisBase, feeBase;
+    /** IDs of the generated doctors */
+    private int[] doctors;
+    /** IDs of the generated nurses */
+    private int[] nurses;
+    /** Capacity of each generated ward */
+    private int[] capacities;
+    /** Index of the first bed of each generated ward among all generated beds, and the bed count at the end */
+    private long[] firstBeds;
+    /** Number of patients still in their stay */
+    private long occupied;
+    /** Step of the permutation that picks the patients still in their stay */
+    private long patientStep;
+    /** Step of the permutation that gives those patients their beds */
+    private long bedStep;
+
+    /**
+     * Creates a generator
+     *
+     * @param pool pool the connections are borrowed from
+     * @param seed seed every row is drawn from
+     * @param patients number of patients to write
+     * @param wards number of wards to write
+     * @param staff number of staff to write, at least 2 so there is a doctor and a nurse
+     * @param feesPerPatient average number of fees of a patient
+     * @param threads number of slices written at once
+     * @param out where progress is reported
+     */
+    SyntheticDataGenerator(ConnectionPool pool, long seed, int patients, int wards, int staff, int feesPerPatient, int threads,
+                           PrintStream out) {
+        if (patients < 0 || wards < 1 || staff < 2 || feesPerPatient < 0) {
+            throw new IllegalArgumentException("Need at least 1 ward and 2 staff, and no negative counts");
+        }
+        this.pool = pool;
+        this.seed = seed;
+        this.patients = patients;
+        this.wards = wards;
+        this.staff = staff;
+        this.feesPerPatient = feesPerPatient;
+        this.threads = Math.max(1, threads);
+        this.out = out;
+    }
+
+    /**
+     * Creates a generator with staff, wards and fees in proportion to the patients: one ward per 100 patients, one
+     * staff member per 50 and 10 fees per patient
+     *
+     * @param pool pool the connections are borrowed from
+     * @param seed seed every row is drawn from
+     * @param patients number of patients to write
+     * @param threads number of slices written at once
+     * @param out where progress is reported
+     * @return the generator
+     */
+    static SyntheticDataGenerator proportional(ConnectionPool pool, long seed, int patients, int threads, PrintStream out) {
+        return new SyntheticDataGenerator(pool, seed, patients, Math.max(1, patients / 100), Math.max(2, patients / 50), 10,
+                threads, out);
+    }
+
+    /**
+     * Writes the staff, then the wards, then the patients and everything that refers to them, then rebuilds the
+     * ward occupancy counts and the monthly census
+     *
+     * @return rows written by table
+     * @throws SQLException if a slice can not be written, the slices written before it stay
+     */
+    Map<String, Long> generate() throws SQLException {
+        try (Connection connection = pool.borrow()) {
+            readBases(connection);
+        }
+        plan();
+
+        long started = System.nanoTime();
+        inParallel("staff", staff, this::writeStaff);
+        inParallel("wards", wards, this::writeWards);
+        inParallel("patients", patients, this::writePatients);
+
+        try (Connection connection = pool.borrow();
+             PreparedStatement update = connection.prepareStatement("UPDATE Ward SET occupants = "
+                     + "(SELECT COUNT(*) FROM WardBed WHERE WardBed.wardNumber = Ward.number) WHERE number >= ?")) {
+            update.setInt(1, wardBase);
+            update.executeUpdate();
+        }
+        MonthlyCensus.backfill(pool, threads);
+        out.println("Generated in " + (System.nanoTime() - started) / 1000000 + " ms");
+
+        Map<String, Long> rows = new LinkedHashMap<String, Long>();
+        for (Table table : Table.values()) {
+            rows.put(table.tableName, written.get(table.ordinal()));
+        }
+        return rows;
+    }
+
+    /**
+     * Starts each kind of ID above the highest one stored
+     *
+     * @param connection connection to the database
+     * @throws SQLException if the IDs can not be read
+     */
+    private void readBases(Connection connection) throws SQLException {
+        personBase = nextId(connection, "SELECT MAX(id) FROM Person");
+        patientBase = nextId(connection, "SELECT MAX(id) FROM Patient");
+        wardBase = nextId(connection, "SELECT MAX(number) FROM Ward");
+        testBase = nextId(connection, "SELECT MAX(id) FROM Test");
+        prescriptionBase = nextId(connection, "SELECT MAX(id) FROM Prescription");
+        diagnosisBase = nextId(connection, "SELECT MAX(id) FROM DiagnosisDetails");
+        feeBase = nextId(connection, "SELECT MAX(id) FROM Fee");
+
+        int maxFees = 2 * feesPerPatient;
+        if ((long) personBase + staff > Integer.MAX_VALUE || (long) patientBase + patients > Integer.MAX_VALUE
+                || (long) wardBase + wards > Integer.MAX_VALUE
+                || (long) Math.max(testBase, Math.max(prescriptionBase, diagnosisBase)) + (long) patients * MAX_ITEMS > Integer.MAX_VALUE
+                || (long) feeBase + (long) patients * maxFees > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Too many records for INT IDs above the IDs already stored");
+        }
+    }
+
+    /**
+     * Reads the ID after the highest one of a table
+     *
+     * @param connection connection to the database
+     * @param sql query of the highest ID
+     * @return the next ID, 1 for an empty table
+     * @throws SQLException if the ID can not be read
+     */
+    private static int nextId(Connection connection, String sql) throws SQLException {
+        try (Statement statement = connection.createStatement();
+             ResultSet result = statement.executeQuery(sql)) {
+            result.next();
+            return result.getInt(1) + 1;
+        }
+    }
+
+    /**
+     * Picks the job of every staff member, the capacity of every ward and which patients are still in a bed
+     */
+    private void plan() {
+        List<Integer> doctorIds = new ArrayList<Integer>();
+        List<Integer> nurseIds = new ArrayList<Integer>();
+        for (int k = 0; k < staff; k++) {
+            String job = jobTitle(k);
+            if (job.equals("Doctor")) {
+                doctorIds.add(personBase + k);
+            } else if (job.equals("Nurse")) {
+                nurseIds.add(personBase + k);
+            }
+        }
+        doctors = doctorIds.stream().mapToInt(Integer::intValue).toArray();
+        nurses = nurseIds.stream().mapToInt(Integer::intValue).toArray();
+
+        capacities = new int[wards];
+        firstBeds = new long[wards + 1];
+        for (int w = 0; w < wards; w++) {
+            capacities[w] = new int[] {1, 2, 2, 4, 4, 4}[random(Stream.CAPACITY, w).nextInt(6)];
+            firstBeds[w + 1] = firstBeds[w] + capacities[w];
+        }
+
+        //Patients still in their stay and their beds are picked by two permutations, so they are spread over the
+        //patient IDs and the wards instead of filling the first ones
+        long beds = firstBeds[wards];
+        occupied = Math.min((long) (beds * OCCUPANCY), patients);
+        patientStep = coprimeStep(patients);
+        bedStep = coprimeStep(beds);
+    }
+
+    /**
+     * Picks a step that visits every index once when stepping through n indexes modulo n
+     *
+     * @param n number of indexes
+     * @return a step coprime with n
+     */
+    private static long coprimeStep(long n) {
+        long step = 1000003;
+        while (n > 1 && gcd(step, n) != 1) {
+            step += 2;
+        }
+        return step;
+    }
+
+    private static long gcd(long a, long b) {
+        return b == 0 ? a : gcd(b, a % b);
+    }
+
+    /**
+     * Gets the random stream of one row
+     *
+     * @param stream kind of row
+     * @param index index of the row
+     * @return a stream that depends only on the seed, the kind and the index
+     */
+    private SplittableRandom random(Stream stream, long index) {
+        long mixed = seed * 0x9E3779B97F4A7C15L + stream.ordinal() * 0xC2B2AE3D27D4EB4FL + index * 0x165667B19E3779F9L;
+        return new SplittableRandom(mixed);
+    }
+
+    /**
+     * Gets the job title of a staff member, the first is always a doctor and the second a nurse
+     *
+     * @param k index of the staff member
+     * @return the job title
+     */
+    private String jobTitle(int k) {
+        if (k < 2) {
+            return k == 0 ? "Doctor" : "Nurse";
+        }
+        int roll = random(Stream.JOB, k).nextInt(100);
+        return roll < 30 ? "Doctor" : roll < 80 ? "Nurse" : roll < 90 ? "Operator" : "Billing Staff";
+    }
+
+    /**
+     * Adds the Person and Staff rows of a slice of staff
+     *
+     * @param rows batches of the slice
+     * @param from index of the first staff member
+     * @param to index after the last staff member
+     */
+    private void writeStaff(Rows rows, int from, int to) {
+        for (int k = from; k < to; k++) {
+            SplittableRandom r = random(Stream.STAFF, k);
+            String job = jobTitle(k);
+            int id = personBase + k;
+            rows.add(Table.PERSON, id, name(r), 25 + r.nextInt(45), r.nextBoolean() ? "F" : "M", address(r), phone(r));
+            String title = job.equals("Doctor") ? pick(r, new String[] {"Senior Surgeon", "Attending Physician", "Resident"})
+                    : job.equals("Nurse") ? pick(r, new String[] {"Registered Nurse", "Nurse Practitioner", "Charge Nurse"})
+                    : "Staff";
+            rows.add(Table.STAFF, id, job, title, pick(r, DEPARTMENTS));
+        }
+    }
+
+    /**
+     * Adds the wards of a slice with their responsible nurses
+     *
+     * @param rows batches of the slice
+     * @param from index of the first ward
+     * @param to index after the last ward
+     */
+    private void writeWards(Rows rows, int from, int to) {
+        for (int w = from; w < to; w++) {
+            SplittableRandom r = random(Stream.WARD, w);
+            int number = wardBase + w;
+            int nurse = nurses[r.nextInt(nurses.length)];
+            rows.add(Table.WARD, number, capacities[w], 50.0 * (1 + r.nextInt(10)), nurse);
+            rows.add(Table.NURSE_RESPONSIBLE, number, nurse);
+        }
+    }
+
+    /**
+     * Adds a slice of patients with their medical records, tests, prescriptions, diagnoses, check-ins, beds,
+     * billing accounts and fees
+     *
+     * @param rows batches of the slice
+     * @param from index of the first patient
+     * @param to index after the last patient
+     */
+    private void writePatients(Rows rows, int from, int to) {
+        for (int i = from; i < to; i++) {
+            SplittableRandom r = random(Stream.PATIENT, i);
+            int id = patientBase + i;
+
+            //Patients whose place in the permutation falls below the occupied count are in a bed now
+            long place = (i * patientStep) % patients;
+            boolean inBed = place < occupied;
+
+            LocalDate dob = AS_OF.minusDays(r.nextInt(90 * 365));
+            int age = dob.until(AS_OF).getYears();
+            String address = address(r);
+            boolean record = inBed || r.nextInt(100) < 80;
+            LocalDate start = inBed ? AS_OF.minusDays(r.nextInt(30)) : AS_OF.minusDays(30 + r.nextInt(3 * 365));
+            LocalDate end = inBed || r.nextInt(100) < 10 ? null : start.plusDays(1 + r.nextInt(60));
+
+            rows.add(Table.PATIENT, id, r.nextInt(100) < 5 ? "na" : digits(r, 9), name(r), dob, r.nextBoolean() ? "F" : "M",
+                    age, phone(r), address, record && end == null ? 1 : 0, inBed ? "yes" : "no", end != null ? "yes" : "no");
+
+            int prescriptions = 0;
+            if (record) {
+                int doctor = doctors[r.nextInt(doctors.length)];
+                rows.add(Table.MEDICAL_RECORD, id, start, end, doctor);
+                rows.add(Table.TREATS, id, doctor);
+                for (int j = r.nextInt(MAX_ITEMS); j > 0; j--) {
+                    int testId = testBase + i * MAX_ITEMS + j;
+                    rows.add(Table.TEST, testId, pick(r, TESTS), pick(r, RESULTS));
+                    rows.add(Table.ADD_TEST, testId, id);
+                }
+                prescriptions = r.nextInt(MAX_ITEMS);
+                for (int j = prescriptions; j > 0; j--) {
+                    int prescriptionId = prescriptionBase + i * MAX_ITEMS + j;
+                    rows.add(Table.PRESCRIPTION, prescriptionId, pick(r, PRESCRIPTIONS));
+                    rows.add(Table.ADD_PRESCRIPTION, prescriptionId, id);
+                }
+                for (int j = 1 + r.nextInt(MAX_ITEMS - 1); j > 0; j--) {
+                    int diagnosisId = diagnosisBase + i * MAX_ITEMS + j;
+                    rows.add(Table.DIAGNOSIS, diagnosisId, pick(r, DIAGNOSES));
+                    rows.add(Table.ADD_DIAGNOSIS, diagnosisId, id);
+                }
+            }
+
+            if (inBed) {
+                long bed = (place * bedStep) % firstBeds[wards];
+                int w = Arrays.binarySearch(firstBeds, bed);
+                w = w >= 0 ? w : -w - 2;
+                int bedNumber = (int) (bed - firstBeds[w]) + 1;
+                rows.add(Table.CHECK_IN, id, wardBase + w, bedNumber, start, null);
+                rows.add(Table.WARD_BED, wardBase + w, bedNumber, id);
+            } else if (record && end != null && r.nextInt(100) < 50) {
+                //A past stay, its bed has been released
+                int w = r.nextInt(wards);
+                rows.add(Table.CHECK_IN, id, wardBase + w, 1 + r.nextInt(capacities[w]), start, end);
+            }
+
+            if (!record) {
+                continue;
+            }
+            String payment = pick(r, PAYMENT_METHODS);
+            rows.add(Table.BILLING_ACCOUNT, id, digits(r, 9), address, start, payment, payment.equals("card") ? digits(r, 16) : null,
+                    100, prescriptions > 0 ? "yes" : "no", inBed || end != null ? 100 * (1 + r.nextInt(20)) : null);
+
+            int fees = feesPerPatient == 0 ? 0 : r.nextInt(2 * feesPerPatient + 1);
+            if (fees == 0) {
+                continue;
+            }
+            double[] amounts = new double[fees];
+            double total = 0;
+            for (int j = 0; j < fees; j++) {
+                amounts[j] = Math.round(r.nextDouble(10, 5000) * 100) / 100.0;
+                total += amounts[j];
+            }
+            rows.add(Table.BILLING_RECORD, id, total);
+            rows.add(Table.TRACK_FEES, id, id);
+            for (int j = 0; j < fees; j++) {
+                int feeId = feeBase + i * 2 * feesPerPatient + j;
+                rows.add(Table.FEE, feeId, pick(r, FEES), amounts[j]);
+                rows.add(Table.ADD_FEE, feeId, id);
+            }
+        }
+    }
+
+    private static String pick(SplittableRandom r, String[] values) {
+        return values[r.nextInt(values.length)];
+    }
+
+    private static String name(SplittableRandom r) {
+        return pick(r, FIRST_NAMES) + " " + pick(r, LAST_NAMES);
+    }
+
+    private static String address(SplittableRandom r) {
+        return (1 + r.nextInt(9999)) + " " + pick(r, STREETS) + ", " + pick(r, CITIES) + ", NC";
+    }
+
+    private static String phone(SplittableRandom r) {
+        return "919" + digits(r, 7);
+    }
+
+    private static String digits(SplittableRandom r, int count) {
+        char[] digits = new char[count];
+        for (int i = 0; i < count; i++) {
+            digits[i] = (char) ('0' + r.nextInt(10));
+        }
+        return new String(digits);
+    }
+
+    /**
+     * Writes items in slices, several slices at once, and waits for every slice
+     *
+     * @param what name of the items for the progress report
+     * @param count number of items
+     * @param writer adds the rows of a slice
+     * @throws SQLException if a slice can not be written
+     */
+    private void inParallel(String what, int count, SliceWriter writer) throws SQLException {
+        long started = System.nanoTime();
+        ExecutorService workers = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> slices = new ArrayList<Future<?>>();
+            for (int from = 0; from < count; from += SLICE) {
+                int low = from;
+                int high = Math.min(count, from + SLICE);
+                slices.add(workers.submit(() -> {
+                    try (Connection connection = pool.borrow()) {
+                        Rows rows = new Rows();
+                        writer.write(rows, low, high);
+                        rows.insert(connection);
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> slice : slices) {
+                slice.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while generating " + what, e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof SQLException) {
+                throw (SQLException) e.getCause();
+            }
+            throw new SQLException("Generating " + what + " failed", e.getCause());
+        } finally {
+            workers.shutdownNow();
+        }
+        out.println("Generated " + count + " " + what + " in " + (System.nanoTime() - started) / 1000000 + " ms");
+    }
+
+    /**
+     * The rows of one slice, grouped by table so each table is sent as one batch
+     */
+    private class Rows {
+        /** Values of each row by table */
+        private final Map<Table, List<Object[]>> rows = new EnumMap<Table, List<Object[]>>(Table.class);
+
+        void add(Table table, Object... values) {
+            rows.computeIfAbsent(table, t -> new ArrayList<Object[]>()).add(values);
+        }
+
+        /**
+         * Inserts the rows one batch per table in foreign key order, all in one transaction
+         *
+         * @param connection connection to the database
+         * @throws SQLException if the rows can not be inserted, none of them are then
+         */
+        void insert(Connection connection) throws SQLException {
+            WardBeds.inTransaction(connection, () -> {
+                for (Map.Entry<Table, List<Object[]>> entry : rows.entrySet()) {
+                    try (PreparedStatement insert = connection.prepareStatement(entry.getKey().sql)) {
+                        for (Object[] values : entry.getValue()) {
+                            for (int i = 0; i < values.length; i++) {
+                                Object value = values[i];
+                                insert.setObject(i + 1, value instanceof LocalDate ? java.sql.Date.valueOf((LocalDate) value) : value);
+                            }
+                            insert.addBatch();
+                        }
+                        insert.executeBatch();
+                    }
+                }
+                return null;
+            });
+            for (Map.Entry<Table, List<Object[]>> entry : rows.entrySet()) {
+                written.addAndGet(entry.getKey().ordinal(), entry.getValue().size());
+            }
+        }
+    }
+}
@@ -0,0 +1,225 @@
+package com.company;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * The writes of one logical operation, committed together. Statements are queued with {@link #add(String, Object...)}
+ * and sent when the unit is flushed or committed. Consecutive statements with the same SQL go to the server as one
+ * JDBC batch on the cached statement of the connection, so the Person and Staff rows of a new staff member, or a
+ * test and its AddTest row, cost one commit instead of one per row. A unit that is closed without being committed
+ * is rolled back, so a failed second step leaves no half-written rows.
+ *
+ * When the connection already has a transaction open the unit joins it and leaves the commit to its owner, as
+ * {@link WardBeds#inTransaction(Connection, WardBeds.Work)} does. The after commit actions of a unit that joined a
+ * transaction run when the unit commits and again once the outermost unit or {@code inTransaction} commits, since
+ * until then other connections can still read the rows as they were.
+ *
+ * <pre>
+ * try (UnitOfWork unit = new UnitOfWork(connection)) {
+ *     unit.add("INSERT INTO Test VALUES(?, ?, ?)", testId, name, results);
+ *     unit.add("INSERT INTO AddTest VALUES(?, ?)", testId, patientId);
+ *     unit.commit();
+ * }
+ * </pre>
+ */
+class UnitOfWork implements AutoCloseable {
+
+    /** After commit actions of units that joined a transaction, by connection, run again when the transaction commits */
+    private static final Map<Connection, List<Runnable>> deferred = Collections.synchronizedMap(new WeakHashMap<Connection, List<Runnable>>());
+
+    /** Connection the unit writes on */
+    private final Connection connection;
+    /** Whether the unit opened the transaction, false if it joined one */
+    private final boolean owner;
+    /** Statements queued and not sent yet, in order */
+    private final List<Queued> queued = new ArrayList<Queued>();
+    /** Actions to run once the unit is committed */
+    private final List<Runnable> afterCommit = new ArrayList<Runnable>();
+    /** Whether the unit was committed */
+    private boolean committed = false;
+    /** Whether the unit was committed or rolled back */
+    private boolean finished = false;
+
+    /**
+     * Starts a unit on a connection, opening a transaction unless one is already open
+     *
+     * @param connection connection the unit writes on
+     * @throws SQLException if the transaction can not be opened
+     */
+    UnitOfWork(Connection connection) throws SQLException {
+        this.connection = connection;
+        this.owner = connection.getAutoCommit();
+        if (owner) {
+            connection.setAutoCommit(false);
+        }
+    }
+
+    /**
+     * Queues a statement
+     *
+     * @param sql parameterized insert, update or delete
+     * @param parameters values of the parameters in order, a null value is sent as NULL
+     * @return this unit
+     */
+    UnitOfWork add(String sql, Object... parameters) {
+        if (finished) {
+            throw new IllegalStateException("The unit of work is already finished");
+        }
+        queued.add(new Queued(sql, parameters));
+        return this;
+    }
+
+    /**
+     * Runs an action once the unit is committed, such as invalidating cached rows it changed. When the unit joined
+     * another transaction the action runs when the unit commits and again after the owner of the transaction commits.
+     *
+     * @param action the action
+     * @return this unit
+     */
+    UnitOfWork afterCommit(Runnable action) {
+        afterCommit.add(action);
+        return this;
+    }
+
+    /**
+     * Sends the queued statements without committing, so reads in the same transaction see them
+     *
+     * @return rows changed by each statement sent, in the order they were queued
+     * @throws SQLException if a statement fails, the unit is then rolled back when closed
+     */
+    int[] flush() throws SQLException {
+        int[] rows = new int[queued.size()];
+        StatementCache statements = connection.unwrap(StatementCache.class);
+        int start = 0;
+        while (start < queued.size()) {
+            //Find the run of statements with the same SQL as the first one
+            String sql = queued.get(start).sql;
+            int end = start + 1;
+            while (end < queued.size() && queued.get(end).sql.equals(sql)) {
+                end++;
+            }
+
+            PreparedStatement statement = statements.prepare(sql);
+            if (end - start == 1) {
+                queued.get(start).bind(statement);
+                rows[start] = statement.executeUpdate();
+            } else {
+                for (int i = start; i < end; i++) {
+                    queued.get(i).bind(statement);
+                    statement.addBatch();
+                }
+                int[] batch = statement.executeBatch();
+                System.arraycopy(batch, 0, rows, start, batch.length);
+            }
+            start = end;
+        }
+        queued.clear();
+        return rows;
+    }
+
+    /**
+     * Sends the queued statements and commits them in one transaction, then runs the after commit actions
+     *
+     * @throws SQLException if a statement or the commit fails, the unit is then rolled back when closed
+     */
+    void commit() throws SQLException {
+        flush();
+        if (owner) {
+            connection.commit();
+        }
+        committed = true;
+        finished = true;
+        for (Runnable action : afterCommit) {
+            action.run();
+        }
+        if (owner) {
+            committed(connection);
+        } else if (!afterCommit.isEmpty()) {
+            deferred.computeIfAbsent(connection, c -> new ArrayList<Runnable>()).addAll(afterCommit);
+        }
+    }
+
+    /**
+     * Runs the after commit actions of the units that joined the transaction of a connection, once its owner has
+     * committed it
+     *
+     * @param connection connection whose transaction was committed
+     */
+    static void committed(Connection connection) {
+        List<Runnable> actions = deferred.remove(connection);
+        if (actions != null) {
+            for (Runnable action : actions) {
+                action.run();
+            }
+        }
+    }
+
+    /**
+     * Drops the after commit actions of the units that joined the transaction of a connection, once its owner has
+     * rolled it back
+     *
+     * @param connection connection whose transaction was rolled back
+     */
+    static void rolledBack(Connection connection) {
+        deferred.remove(connection);
+    }
+
+    /**
+     * Rolls the unit back unless it was committed and gives the connection back its autocommit. A unit that joined
+     * another transaction can not roll back on its own, so its owner is left to roll back the failed transaction.
+     *
+     * @throws SQLException if the rollback fails
+     */
+    @Override
+    public void close() throws SQLException {
+        finished = true;
+        queued.clear();
+        if (!owner) {
+            return;
+        }
+        try {
+            if (!committed) {
+                rolledBack(connection);
+                connection.rollback();
+            }
+        } finally {
+            connection.setAutoCommit(true);
+        }
+    }
+
+    /**
+     * A statement waiting to be sent
+     */
+    private static class Queued {
+        /** Parameterized SQL of the statement */
+        final String sql;
+        /** Values of the parameters in order */
+        final Object[] parameters;
+
+        Queued(String sql, Object[] parameters) {
+            this.sql = sql;
+            this.parameters = parameters;
+        }
+
+        /**
+         * Sets the parameters of the statement
+         *
+         * @param statement cached statement prepared from the SQL
+         * @throws SQLException if a value can not be set
+         */
+        void bind(PreparedStatement statement) throws SQLException {
+            for (int i = 0; i < parameters.length; i++) {
+                Object value = parameters[i];
+                statement.setObject(i + 1, value instanceof LocalDate ? java.sql.Date.valueOf((LocalDate) value) : value);
+            }
+        }
+    }
+}
@@ -0,0 +1,304 @@
+package com.company;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * In memory index of the free beds in every ward, bucketed by ward capacity. Each bucket keeps the number of
+ * free beds of that capacity and a free list of the wards that still have a bed, so finding any free ward of a
+ * given capacity does not need to query the database. The database stays the authority: a bed is only taken
+ * once the claim in {@link WardBeds} commits, and a claim that fails because the index was stale refreshes
+ * that ward.
+ *
+ * The index is loaded once at start up and shared by every operator session, so every assign, release and ward
+ * insert, update and delete must report the change here.
+ */
+class WardAvailabilityIndex {
+
+    /** Times a ward is read and applied only if unchanged before {@link #refresh} applies the row it reads regardless */
+    private static final int REFRESH_ATTEMPTS = 3;
+
+    /** Capacity of each known ward */
+    private final Map<Integer, Integer> capacities = new HashMap<Integer, Integer>();
+    /** Free beds of each known ward */
+    private final Map<Integer, Integer> freeBeds = new HashMap<Integer, Integer>();
+    /** Wards with at least one free bed, bucketed by capacity */
+    private final Map<Integer, LinkedHashSet<Integer>> freeWards = new TreeMap<Integer, LinkedHashSet<Integer>>();
+    /** Total free beds, bucketed by capacity */
+    private final Map<Integer, Integer> freeBedCounts = new TreeMap<Integer, Integer>();
+    /** Number of changes to the free beds of each ward, kept when the ward is removed */
+    private final Map<Integer, Long> versions = new HashMap<Integer, Long>();
+
+    /**
+     * Replaces the contents of the index with the wards in the database
+     *
+     * @param connection connection to the database
+     * @throws SQLException if the wards can not be read
+     */
+    synchronized void load(Connection connection) throws SQLException {
+        capacities.clear();
+        freeBeds.clear();
+        freeWards.clear();
+        freeBedCounts.clear();
+        try (Statement statement = connection.createStatement();
+             ResultSet result = statement.executeQuery("SELECT number, capacity, occupants FROM Ward")) {
+            while (result.next()) {
+                put(result.getInt("number"), result.getInt("capacity"), result.getInt("occupants"));
+            }
+        }
+    }
+
+    /**
+     * Re-reads one ward from the database, used after the ward is updated or when a claim shows the
+     * index was stale. The ward is read without holding the lock, and the row read is only applied if no assign,
+     * release or other refresh changed the ward meanwhile, since the row may be older than that change. After
+     * {@link #REFRESH_ATTEMPTS} such races the last row read is applied regardless, the database is never read
+     * holding the lock.
+     *
+     * @param connection connection to the database
+     * @param number ward number
+     * @throws SQLException if the ward can not be read
+     */
+    void refresh(Connection connection, int number) throws SQLException {
+        for (int attempt = 1; attempt <= REFRESH_ATTEMPTS; attempt++) {
+            long version = version(number);
+            int[] ward = read(connection, number);
+            synchronized (this) {
+                if (version(number) == version) {
+                    apply(number, ward);
+                    return;
+                }
+            }
+        }
+        apply(number, read(connection, number));
+    }
+
+    /**
+     * Reads the capacity and occupants of a ward
+     *
+     * @param connection connection to the database
+     * @param number ward number
+     * @return capacity and occupants, or null if the ward does not exist
+     * @throws SQLException if the ward can not be read
+     */
+    private static int[] read(Connection connection, int number) throws SQLException {
+        try (PreparedStatement select = connection.prepareStatement("SELECT capacity, occupants FROM Ward WHERE number = ?")) {
+            select.setInt(1, number);
+            try (ResultSet result = select.executeQuery()) {
+                return result.next() ? new int[] {result.getInt("capacity"), result.getInt("occupants")} : null;
+            }
+        }
+    }
+
+    /**
+     * Replaces what the index knows about a ward with a row read from the database
+     *
+     * @param number ward number
+     * @param ward capacity and occupants, or null if the ward does not exist
+     */
+    private synchronized void apply(int number, int[] ward) {
+        if (ward != null) {
+            put(number, ward[0], ward[1]);
+        } else {
+            remove(number);
+        }
+    }
+
+    /**
+     * Gets the number of changes to the free beds of a ward so far. An assign or release takes it before writing
+     * the database and hands it to {@link #onAssigned} or {@link #onReleased}.
+     *
+     * @param number ward number
+     * @return number of changes
+     */
+    synchronized long version(int number) {
+        Long version = versions.get(number);
+        return version == null ? 0 : version;
+    }
+
+    /**
+     * Adds a ward to the index or replaces what the index knows about it
+     *
+     * @param number ward number
+     * @param capacity number of beds in the ward
+     * @param occupants number of occupied beds
+     */
+    synchronized void put(int number, int capacity, int occupants) {
+        remove(number);
+        capacities.put(number, capacity);
+        setFree(number, capacity, Math.max(0, capacity - occupants));
+    }
+
+    /**
+     * Removes a deleted ward from the index
+     *
+     * @param number ward number
+     */
+    synchronized void remove(int number) {
+        Integer capacity = capacities.remove(number);
+        if (capacity != null) {
+            setFree(number, capacity, 0);
+            freeBeds.remove(number);
+        }
+    }
+
+    /**
+     * Records that a bed of the ward was taken. The ward is re-read instead if it changed since the version was
+     * taken, since a refresh in between may already have counted the bed.
+     *
+     * @param connection connection to the database
+     * @param number ward number
+     * @param version {@link #version} of the ward taken before the bed was claimed
+     * @throws SQLException if the ward has to be re-read and can not be
+     */
+    void onAssigned(Connection connection, int number, long version) throws SQLException {
+        if (!changeFree(number, version, -1)) {
+            refresh(connection, number);
+        }
+    }
+
+    /**
+     * Records that a bed of the ward was released. The ward is re-read instead if it changed since the version was
+     * taken, since a refresh in between may already have counted the bed.
+     *
+     * @param connection connection to the database
+     * @param number ward number
+     * @param version {@link #version} of the ward taken before the bed was released
+     * @throws SQLException if the ward has to be re-read and can not be
+     */
+    void onReleased(Connection connection, int number, long version) throws SQLException {
+        if (!changeFree(number, version, 1)) {
+            refresh(connection, number);
+        }
+    }
+
+    /**
+     * Moves the free beds of a ward by one bed if the ward did not change since a version was taken
+     *
+     * @param number ward number
+     * @param version version of the ward the change was made against
+     * @param delta change of the free beds
+     * @return false if the ward changed meanwhile and nothing was done
+     */
+    private synchronized boolean changeFree(int number, long version, int delta) {
+        if (version(number) != version) {
+            return false;
+        }
+        Integer capacity = capacities.get(number);
+        if (capacity != null) {
+            setFree(number, capacity, Math.max(0, Math.min(capacity, freeBeds.get(number) + delta)));
+        }
+        return true;
+    }
+
+    /**
+     * Finds any ward of the given capacity with a free bed
+     *
+     * @param capacity capacity of the ward wanted
+     * @return ward number, or 0 if no ward of that capacity has a free bed
+     */
+    synchronized int anyFreeWard(int capacity) {
+        LinkedHashSet<Integer> wards = freeWards.get(capacity);
+        if (wards == null || wards.isEmpty()) {
+            return 0;
+        }
+        return wards.iterator().next();
+    }
+
+    /**
+     * Gets the wards of the given capacity that have a free bed
+     *
+     * @param capacity capacity of the wards wanted
+     * @return ward numbers in the order they became free
+     */
+    synchronized List<Integer> freeWards(int capacity) {
+        LinkedHashSet<Integer> wards = freeWards.get(capacity);
+        return wards == null ? new ArrayList<Integer>() : new ArrayList<Integer>(wards);
+    }
+
+    /**
+     * Gets the number of free beds in wards of the given capacity
+     *
+     * @param capacity capacity of the wards
+     * @return number of free beds
+     */
+    synchronized int freeBedCount(int capacity) {
+        Integer count = freeBedCounts.get(capacity);
+        return count == null ? 0 : count;
+    }
+
+    /**
+     * Gets the number of free beds of one ward
+     *
+     * @param number ward number
+     * @return number of free beds, 0 if the ward is unknown
+     */
+    synchronized int freeBeds(int number) {
+        Integer free = freeBeds.get(number);
+        return free == null ? 0 : free;
+    }
+
+    /**
+     * Gets the number of free beds for every ward capacity
+     *
+     * @return free beds keyed by capacity, in capacity order
+     */
+    synchronized Map<Integer, Integer> freeBedCounts() {
+        return new TreeMap<Integer, Integer>(freeBedCounts);
+    }
+
+    /**
+     * Updates the free beds of a ward, its bucket count and its place in the free list
+     *
+     * @param number ward number
+     * @param capacity capacity of the ward
+     * @param free new number of free beds
+     */
+    private void setFree(int number, int capacity, int free) {
+        versions.merge(number, 1L, Long::sum);
+        Integer old = freeBeds.put(number, free);
+        int delta = free - (old == null ? 0 : old);
+        freeBedCounts.merge(capacity, delta, Integer::sum);
+
+        LinkedHashSet<Integer> wards = freeWards.get(capacity);
+        if (free > 0) {
+            if (wards == null) {
+                wards = new LinkedHashSet<Integer>();
+                freeWards.put(capacity, wards);
+            }
+            wards.add(number);
+        } else if (wards != null) {
+            wards.remove(number);
+        }
+    }
+
+    /**
+     * Describes the free beds per capacity, for display
+     *
+     * @return one line per capacity
+     */
+    synchronized String describe() {
+        StringBuilder sb = new StringBuilder();
+        Iterator<Map.Entry<Integer, Integer>> it = freeBedCounts.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Integer, Integer> e = it.next();
+            LinkedHashSet<Integer> wards = freeWards.get(e.getKey());
+            sb.append(e.getKey()).append("-bed wards: ").append(e.getValue()).append(" free beds in ")
+                    .append(wards == null ? 0 : wards.size()).append(" wards");
+            if (it.hasNext()) {
+                sb.append(System.lineSeparator());
+            }
+        }
+        return sb.toString();
+    }
+}
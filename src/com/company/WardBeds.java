@@ -0,0 +1,438 @@
+package com.company;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Bed occupancy of the wards, stored one row per occupied bed in the WardBed table instead of the comma
+ * separated Ward.patientIds column. Every change to the beds of a ward updates Ward.occupants in the same
+ * transaction, so the two can not drift apart.
+ *
+ * Assigning and releasing a bed claim the bed with a conditional update of Ward.occupants instead of reading
+ * and locking the ward first. Two operators racing for the last bed of a ward can not both succeed because
+ * only one of their updates still matches {@code occupants < capacity}. A claim that loses a race on a bed
+ * number or to a deadlock is retried a bounded number of times.
+ */
+class WardBeds {
+
+    /** Number of times a bed claim is attempted before giving up */
+    private static final int MAX_ATTEMPTS = 5;
+    /** Pause before retrying a bed claim, multiplied by the attempt number */
+    private static final long RETRY_BACKOFF_MILLIS = 10;
+    /** Error code of a duplicate key, another claim took the same bed first */
+    private static final int DUPLICATE_ENTRY = 1062;
+    /** Error code of a deadlock, the transaction was rolled back */
+    private static final int DEADLOCK = 1213;
+    /** Error code of a lock wait timeout */
+    private static final int LOCK_WAIT_TIMEOUT = 1205;
+
+    /** Returned by {@link #assign} when the ward has no free bed */
+    static final int WARD_FULL = -1;
+    /** Returned by {@link #assign} when the patient already has a bed */
+    static final int ALREADY_ASSIGNED = -2;
+    /** Returned by {@link #assign} when the ward does not exist */
+    static final int NO_SUCH_WARD = -3;
+
+    /**
+     * Columns of a ward as displayed to the user. The patient list is derived from the occupied beds
+     * in bed order using the primary key of WardBed.
+     */
+    static final String WARD_COLUMNS = "Ward.number, Ward.capacity, (SELECT GROUP_CONCAT(WardBed.patientId ORDER BY WardBed.bedNumber) "
+            + "FROM WardBed WHERE WardBed.wardNumber = Ward.number) AS patientIds, Ward.chargesPerDay, Ward.occupants, Ward.responsibleNurse";
+
+    /**
+     * Work done inside a transaction
+     *
+     * @param <T> type of the value returned by the work
+     */
+    interface Work<T> {
+        T run() throws SQLException;
+    }
+
+    /**
+     * Creates the WardBed table if it does not exist yet and moves any patients still listed in the old
+     * Ward.patientIds column into it. The column is cleared for every migrated ward, so the migration
+     * only runs once per ward.
+     *
+     * @param connection connection to the database
+     * @throws SQLException if the table can not be created or the migration fails
+     */
+    static void ensureSchema(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.executeUpdate("CREATE TABLE IF NOT EXISTS WardBed" +
+                    "(wardNumber INT NOT NULL, bedNumber INT NOT NULL, patientId INT NOT NULL, "
+                    + "primary key(wardNumber, bedNumber), unique key(patientId), "
+                    + "foreign key(wardNumber) references Ward(number) ON DELETE CASCADE)");
+        }
+
+        List<Integer> wards = new ArrayList<Integer>();
+        List<String> lists = new ArrayList<String>();
+        try (Statement statement = connection.createStatement();
+             ResultSet result = statement.executeQuery("SELECT number, patientIds FROM Ward WHERE patientIds IS NOT NULL AND patientIds <> ''")) {
+            while (result.next()) {
+                wards.add(result.getInt("number"));
+                lists.add(result.getString("patientIds"));
+            }
+        }
+
+        for (int i = 0; i < wards.size(); i++) {
+            int number = wards.get(i);
+            Set<Integer> patients = parsePatientIds(lists.get(i));
+            inTransaction(connection, () -> {
+                int bed = 0;
+                try (PreparedStatement insert = connection.prepareStatement(
+                        "INSERT IGNORE INTO WardBed(wardNumber, bedNumber, patientId) VALUES(?, ?, ?)")) {
+                    for (int patientId : patients) {
+                        insert.setInt(1, number);
+                        insert.setInt(2, ++bed);
+                        insert.setInt(3, patientId);
+                        insert.addBatch();
+                    }
+                    insert.executeBatch();
+                }
+                try (PreparedStatement update = connection.prepareStatement(
+                        "UPDATE Ward SET patientIds = NULL, occupants = (SELECT COUNT(*) FROM WardBed WHERE wardNumber = ?) WHERE number = ?")) {
+                    update.setInt(1, number);
+                    update.setInt(2, number);
+                    update.executeUpdate();
+                }
+                return null;
+            });
+        }
+    }
+
+    /**
+     * Gives the patient the lowest numbered free bed in the ward and counts them as an occupant.
+     *
+     * @param connection connection to the database
+     * @param number ward number
+     * @param patientId patient to assign
+     * @return the bed number assigned, or {@link #WARD_FULL}, {@link #ALREADY_ASSIGNED} or {@link #NO_SUCH_WARD}
+     * @throws SQLException if the assignment fails
+     */
+    static int assign(Connection connection, int number, int patientId) throws SQLException {
+        return withRetry(connection, () -> {
+            if (wardOf(connection, patientId) != 0) {
+                return ALREADY_ASSIGNED;
+            }
+
+            //Claim a place in the ward, this only matches while the ward still has a free bed
+            try (PreparedStatement claim = connection.prepareStatement(
+                    "UPDATE Ward SET occupants = occupants + 1 WHERE number = ? AND occupants < capacity")) {
+                claim.setInt(1, number);
+                if (claim.executeUpdate() == 0) {
+                    return capacityOf(connection, number) == 0 ? NO_SUCH_WARD : WARD_FULL;
+                }
+            }
+
+            int bed = freeBed(connection, number, capacityOf(connection, number));
+            if (bed == 0) {
+                //Occupants said there was room but every bed is taken, undo the claim
+                throw new SQLException("Occupants of ward " + number + " do not match its beds, recount the occupants");
+            }
+            try (PreparedStatement insert = connection.prepareStatement(
+                    "INSERT INTO WardBed(wardNumber, bedNumber, patientId) VALUES(?, ?, ?)")) {
+                insert.setInt(1, number);
+                insert.setInt(2, bed);
+                insert.setInt(3, patientId);
+                insert.executeUpdate();
+            }
+            return bed;
+        });
+    }
+
+    /**
+     * Frees the bed the patient holds in the ward and removes them from the occupants.
+     *
+     * @param connection connection to the database
+     * @param number ward number
+     * @param patientId patient to release
+     * @return true if the patient held a bed in the ward
+     * @throws SQLException if the release fails
+     */
+    static boolean release(Connection connection, int number, int patientId) throws SQLException {
+        return withRetry(connection, () -> {
+            //Lock the ward before its beds, in the order a claim takes them, so the two can not deadlock
+            try (PreparedStatement ward = connection.prepareStatement("SELECT number FROM Ward WHERE number = ? FOR UPDATE")) {
+                ward.setInt(1, number);
+                try (ResultSet result = ward.executeQuery()) {
+                    if (!result.next()) {
+                        return false;
+                    }
+                }
+            }
+            try (PreparedStatement delete = connection.prepareStatement(
+                    "DELETE FROM WardBed WHERE wardNumber = ? AND patientId = ?")) {
+                delete.setInt(1, number);
+                delete.setInt(2, patientId);
+                if (delete.executeUpdate() == 0) {
+                    return false;
+                }
+            }
+            try (PreparedStatement update = connection.prepareStatement(
+                    "UPDATE Ward SET occupants = occupants - 1 WHERE number = ? AND occupants > 0")) {
+                update.setInt(1, number);
+                update.executeUpdate();
+            }
+            return true;
+        });
+    }
+
+    /**
+     * Frees whatever bed the patient holds, used before the patient is deleted.
+     *
+     * @param connection connection to the database
+     * @param patientId patient to release
+     * @return the ward the patient was released from, 0 if they held no bed
+     * @throws SQLException if the release fails
+     */
+    static int releasePatient(Connection connection, int patientId) throws SQLException {
+        return inTransaction(connection, () -> {
+            int number = wardOf(connection, patientId);
+            if (number != 0) {
+                release(connection, number, patientId);
+            }
+            return number;
+        });
+    }
+
+    /**
+     * Replaces the occupants of a ward with the given patients, numbering their beds in order.
+     *
+     * @param connection connection to the database
+     * @param number ward number
+     * @param patients patients to place in the ward
+     * @return false if there are more patients than beds or a patient holds a bed in another ward
+     * @throws SQLException if the update fails
+     */
+    static boolean replaceOccupants(Connection connection, int number, Set<Integer> patients) throws SQLException {
+        return inTransaction(connection, () -> {
+            try (PreparedStatement ward = connection.prepareStatement(
+                    "SELECT capacity FROM Ward WHERE number = ? FOR UPDATE")) {
+                ward.setInt(1, number);
+                try (ResultSet result = ward.executeQuery()) {
+                    if (!result.next() || result.getInt("capacity") < patients.size()) {
+                        return false;
+                    }
+                }
+            }
+            for (int patientId : patients) {
+                int other = wardOf(connection, patientId);
+                if (other != 0 && other != number) {
+                    return false;
+                }
+            }
+
+            try (PreparedStatement delete = connection.prepareStatement("DELETE FROM WardBed WHERE wardNumber = ?")) {
+                delete.setInt(1, number);
+                delete.executeUpdate();
+            }
+            int bed = 0;
+            try (PreparedStatement insert = connection.prepareStatement(
+                    "INSERT INTO WardBed(wardNumber, bedNumber, patientId) VALUES(?, ?, ?)")) {
+                for (int patientId : patients) {
+                    insert.setInt(1, number);
+                    insert.setInt(2, ++bed);
+                    insert.setInt(3, patientId);
+                    insert.addBatch();
+                }
+                insert.executeBatch();
+            }
+            try (PreparedStatement update = connection.prepareStatement("UPDATE Ward SET occupants = ? WHERE number = ?")) {
+                update.setInt(1, bed);
+                update.setInt(2, number);
+                update.executeUpdate();
+            }
+            return true;
+        });
+    }
+
+    /**
+     * Sets the occupants of a ward to the number of occupied beds
+     *
+     * @param connection connection to the database
+     * @param number ward number
+     * @throws SQLException if the update fails
+     */
+    static void recount(Connection connection, int number) throws SQLException {
+        try (PreparedStatement update = connection.prepareStatement(
+                "UPDATE Ward SET occupants = (SELECT COUNT(*) FROM WardBed WHERE wardNumber = ?) WHERE number = ?")) {
+            update.setInt(1, number);
+            update.setInt(2, number);
+            update.executeUpdate();
+        }
+    }
+
+    /**
+     * Finds the ward the patient holds a bed in
+     *
+     * @param connection connection to the database
+     * @param patientId patient to look for
+     * @return ward number, or 0 if the patient holds no bed
+     * @throws SQLException if the query fails
+     */
+    static int wardOf(Connection connection, int patientId) throws SQLException {
+        try (PreparedStatement select = connection.prepareStatement("SELECT wardNumber FROM WardBed WHERE patientId = ?")) {
+            select.setInt(1, patientId);
+            try (ResultSet result = select.executeQuery()) {
+                return result.next() ? result.getInt("wardNumber") : 0;
+            }
+        }
+    }
+
+    /**
+     * Parses a comma separated list of patient IDs as entered by the user or stored in the old
+     * Ward.patientIds column. Blank entries are skipped.
+     *
+     * @param patientIds comma separated patient IDs
+     * @return patient IDs in the order given, without duplicates
+     * @throws NumberFormatException if an entry is not an integer
+     */
+    static Set<Integer> parsePatientIds(String patientIds) {
+        Set<Integer> patients = new LinkedHashSet<Integer>();
+        if (patientIds == null) {
+            return patients;
+        }
+        for (String id : patientIds.split(",")) {
+            if (!id.trim().isEmpty()) {
+                patients.add(Integer.parseInt(id.trim()));
+            }
+        }
+        return patients;
+    }
+
+    /**
+     * Gets the number of beds in a ward
+     *
+     * @param connection connection to the database
+     * @param number ward number
+     * @return capacity of the ward, or 0 if the ward does not exist
+     * @throws SQLException if the query fails
+     */
+    private static int capacityOf(Connection connection, int number) throws SQLException {
+        try (PreparedStatement select = connection.prepareStatement("SELECT capacity FROM Ward WHERE number = ?")) {
+            select.setInt(1, number);
+            try (ResultSet result = select.executeQuery()) {
+                return result.next() ? result.getInt("capacity") : 0;
+            }
+        }
+    }
+
+    /**
+     * Finds the lowest numbered free bed of a ward. The beds are read with a locking read, so a release or claim
+     * committed after the transaction started is seen and the beds can not change until it ends.
+     *
+     * @param connection connection to the database
+     * @param number ward number
+     * @param capacity number of beds in the ward
+     * @return bed number, or 0 if every bed is taken
+     * @throws SQLException if the query fails
+     */
+    private static int freeBed(Connection connection, int number, int capacity) throws SQLException {
+        boolean[] taken = new boolean[capacity + 1];
+        try (PreparedStatement select = connection.prepareStatement("SELECT bedNumber FROM WardBed WHERE wardNumber = ? FOR UPDATE")) {
+            select.setInt(1, number);
+            try (ResultSet result = select.executeQuery()) {
+                while (result.next()) {
+                    int bed = result.getInt("bedNumber");
+                    if (bed >= 1 && bed <= capacity) {
+                        taken[bed] = true;
+                    }
+                }
+            }
+        }
+        for (int bed = 1; bed <= capacity; bed++) {
+            if (!taken[bed]) {
+                return bed;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Runs work in its own transaction, retrying it when it loses a race with another transaction: a duplicate
+     * key because another claim took the same bed first, or a deadlock or lock wait timeout. If the connection
+     * is already in a transaction the work joins it and is not retried, the caller sees the error instead.
+     *
+     * The transaction reads committed rows. The claims lock the ward and the beds they read, and the gap locks of
+     * repeatable read would only add deadlocks between claims on neighbouring wards, whose beds share an index gap.
+     *
+     * @param connection connection to the database
+     * @param work work to run
+     * @param <T> type of the value returned by the work
+     * @return value returned by the work
+     * @throws SQLException if the work fails for another reason or keeps losing after the last attempt
+     */
+    static <T> T withRetry(Connection connection, Work<T> work) throws SQLException {
+        if (!connection.getAutoCommit()) {
+            return work.run();
+        }
+        for (int attempt = 1; ; attempt++) {
+            int isolation = connection.getTransactionIsolation();
+            connection.setTransactionIsolation(Connection.TRANSACTION_READ_COMMITTED);
+            try {
+                return inTransaction(connection, work);
+            } catch (SQLException e) {
+                if (attempt >= MAX_ATTEMPTS || !isRetryable(e)) {
+                    throw e;
+                }
+            } finally {
+                connection.setTransactionIsolation(isolation);
+            }
+            try {
+                Thread.sleep(RETRY_BACKOFF_MILLIS * attempt);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new SQLException("Interrupted while retrying a bed claim", e);
+            }
+        }
+    }
+
+    /**
+     * Checks whether a failed claim lost a race and can be tried again
+     *
+     * @param e error thrown by the claim
+     * @return true for duplicate keys, deadlocks and lock wait timeouts. Other integrity errors such as a missing
+     * foreign key will fail again and are not retried.
+     */
+    private static boolean isRetryable(SQLException e) {
+        int code = e.getErrorCode();
+        return code == DUPLICATE_ENTRY || code == DEADLOCK || code == LOCK_WAIT_TIMEOUT;
+    }
+
+    /**
+     * Runs work in a transaction on the connection. If the connection is already in a transaction the work
+     * joins it and the caller decides when to commit.
+     *
+     * @param connection connection to the database
+     * @param work work to run
+     * @param <T> type of the value returned by the work
+     * @return value returned by the work
+     * @throws SQLException if the work fails, in which case a transaction started here is rolled back
+     */
+    static <T> T inTransaction(Connection connection, Work<T> work) throws SQLException {
+        if (!connection.getAutoCommit()) {
+            return work.run();
+        }
+        connection.setAutoCommit(false);
+        try {
+            T value = work.run();
+            connection.commit();
+            UnitOfWork.committed(connection);
+            return value;
+        } catch (SQLException | RuntimeException e) {
+            UnitOfWork.rolledBack(connection);
+            connection.rollback();
+            throw e;
+        } finally {
+            connection.setAutoCommit(true);
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package com.company;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Batch files run against the embedded database. Operations on the same record keep their file order across the
+ * lanes, and a failed line is reported with its line number without stopping the rest of the batch.
+ */
+class BatchRunnerTest {
+
+    /** Operations run at once */
+    private static final int LANES = 4;
+    /** Patients created and updated by the pipelined batch */
+    private static final int PATIENTS = 200;
+
+    private static EmbeddedDatabase database;
+    private static WardAvailabilityIndex wardIndex;
+    private static EntityCache entityCache;
+    private static IdAllocator ids;
+
+    @BeforeAll
+    static void start() throws SQLException {
+        database = new EmbeddedDatabase(LANES + 1);
+        wardIndex = new WardAvailabilityIndex();
+        entityCache = Lookups.register(new EntityCache(100, 60000));
+        ids = new IdAllocator(database.getPool(), 10);
+        try (Connection connection = database.getPool().borrow()) {
+            wardIndex.load(connection);
+        }
+    }
+
+    @AfterAll
+    static void stop() {
+        database.close();
+    }
+
+    @Test
+    void operationsRunInFileOrderAndFailuresAreReported() throws Exception {
+        Path file = write("# A nurse, a ward of two beds and two patients",
+                "{\"op\":\"newStaff\",\"id\":900,\"name\":\"Nina Park\",\"age\":35,\"gender\":\"F\",\"address\":\"2 Oak St\","
+                        + "\"phone\":\"9195550199\",\"jobTitle\":\"Nurse\",\"professionalTitle\":\"RN\",\"department\":\"Ward\"}",
+                "{\"op\":\"addWard\",\"number\":1,\"capacity\":2,\"chargesPerDay\":100,\"responsibleNurse\":900}",
+                patient(500),
+                patient(501),
+                "",
+                "{\"op\":\"assignBedToPatient\",\"patientId\":500,\"capacity\":2,\"wardNumber\":1}",
+                "{\"op\":\"assignBedToPatient\",\"patientId\":501,\"capacity\":2,\"wardNumber\":1}",
+                "{\"op\":\"updateWard\",\"number\":1,\"capacity\":1}",
+                "{\"op\":\"newPatient\",\"id\":502",
+                "{\"op\":\"dischargeEveryone\"}",
+                "{\"op\":\"deletePatient\"}");
+        ByteArrayOutputStream printed = new ByteArrayOutputStream();
+        BatchRunner.Report report = new BatchRunner(database.getPool(), wardIndex, entityCache, ids, 1).run(file);
+        report.print(new PrintStream(printed, true, "UTF-8"));
+        String output = printed.toString("UTF-8");
+
+        assertEquals(4, report.getFailureCount(), output);
+        assertTrue(output.contains("Line 9 (updateWard): Ward can not hold more patients than its capacity"), output);
+        assertTrue(output.contains("Line 10 (?): "), output);
+        assertTrue(output.contains("Line 11 (dischargeEveryone): Unknown operation dischargeEveryone"), output);
+        assertTrue(output.contains("Line 12 (deletePatient): Missing id"), output);
+
+        try (Connection connection = database.getPool().borrow();
+             PreparedStatement select = connection.prepareStatement(
+                     "SELECT capacity, occupants, (SELECT COUNT(*) FROM WardBed WHERE wardNumber = 1) AS beds FROM Ward WHERE number = 1");
+             ResultSet result = select.executeQuery()) {
+            assertTrue(result.next(), "Ward 1 was not added");
+            assertEquals(2, result.getInt("capacity"));
+            assertEquals(2, result.getInt("occupants"));
+            assertEquals(2, result.getInt("beds"));
+        }
+        assertEquals(0, wardIndex.freeBeds(1));
+    }
+
+    @Test
+    void operationsOnTheSameRecordKeepTheirOrderAcrossLanes() throws Exception {
+        List<String> lines = new ArrayList<String>();
+        for (int id = 1000; id < 1000 + PATIENTS; id++) {
+            lines.add(patient(id));
+            lines.add("{\"op\":\"updatePatient\",\"id\":" + id + ",\"phone\":\"9195550100\"}");
+            lines.add("{\"op\":\"updatePatient\",\"id\":" + id + ",\"status\":\"yes\"}");
+        }
+        BatchRunner.Report report = new BatchRunner(database.getPool(), wardIndex, entityCache, ids, LANES)
+                .run(write(lines.toArray(new String[0])));
+        ByteArrayOutputStream printed = new ByteArrayOutputStream();
+        report.print(new PrintStream(printed, true, "UTF-8"));
+        assertEquals(0, report.getFailureCount(), printed.toString("UTF-8"));
+
+        try (Connection connection = database.getPool().borrow();
+             PreparedStatement select = connection.prepareStatement(
+                     "SELECT COUNT(*) FROM Patient WHERE id >= 1000 AND phone = '9195550100' AND status = 'yes'");
+             ResultSet result = select.executeQuery()) {
+            assertTrue(result.next());
+            assertEquals(PATIENTS, result.getInt(1));
+        }
+    }
+
+    /**
+     * Builds a newPatient operation
+     *
+     * @param id ID of the patient
+     * @return the operation
+     */
+    private static String patient(int id) {
+        return "{\"op\":\"newPatient\",\"id\":" + id + ",\"ssn\":\"" + (100000000 + id) + "\",\"name\":\"Pat " + id + "\","
+                + "\"dob\":\"1990-01-02\",\"gender\":\"M\",\"age\":34,\"phone\":\"9195551234\",\"address\":\"1 Main St\","
+                + "\"treatment\":1,\"inWard\":\"no\",\"status\":\"no\"}";
+    }
+
+    /**
+     * Writes a batch file
+     *
+     * @param lines lines of the file
+     * @return the file, deleted when the tests exit
+     * @throws IOException if the file can not be written
+     */
+    private static Path write(String... lines) throws IOException {
+        Path file = Files.createTempFile("batch", ".jsonl");
+        file.toFile().deleteOnExit();
+        Files.write(file, Arrays.asList(lines), StandardCharsets.UTF_8);
+        return file;
+    }
+}
@@ -0,0 +1,171 @@
+package com.company;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * The ranges the reports cover. Every range ends on the first day after it, so a month needs no "last day of the
+ * month" arithmetic, and the predicates built from a range must match exactly the days inside it when the database
+ * runs them.
+ */
+class DateRangeTest {
+
+    private static EmbeddedDatabase database;
+
+    @BeforeAll
+    static void start() throws SQLException {
+        database = new EmbeddedDatabase(1);
+    }
+
+    @AfterAll
+    static void stop() {
+        database.close();
+    }
+
+    @Test
+    void decemberEndsOnTheFirstOfJanuary() {
+        DateRange december = DateRange.month(YearMonth.of(2023, 12));
+        assertEquals(LocalDate.of(2023, 12, 1), december.getStart());
+        assertEquals(LocalDate.of(2024, 1, 1), december.getEnd());
+        assertEquals("2023-12", december.toString());
+    }
+
+    @Test
+    void februaryOfALeapYearHas29Days() {
+        DateRange leap = DateRange.month(YearMonth.of(2024, 2));
+        assertEquals(LocalDate.of(2024, 3, 1), leap.getEnd());
+        assertEquals(29, ChronoUnit.DAYS.between(leap.getStart(), leap.getEnd()));
+
+        DateRange common = DateRange.month(YearMonth.of(2023, 2));
+        assertEquals(28, ChronoUnit.DAYS.between(common.getStart(), common.getEnd()));
+    }
+
+    @Test
+    void endIsTheFirstDayAfterTheRange() {
+        DateRange range = DateRange.of(LocalDate.of(2024, 3, 5), LocalDate.of(2024, 3, 8));
+        assertEquals("2024-03-05 to 2024-03-07", range.toString());
+        assertFalse(range.isWholeMonths());
+        assertThrows(IllegalArgumentException.class, () -> DateRange.of(LocalDate.of(2024, 3, 5), LocalDate.of(2024, 3, 5)));
+    }
+
+    @Test
+    void monthsAreListedInOrder() {
+        DateRange range = DateRange.of(LocalDate.of(2023, 11, 15), LocalDate.of(2024, 2, 1));
+        assertEquals(Arrays.asList(YearMonth.of(2023, 11), YearMonth.of(2023, 12), YearMonth.of(2024, 1)), range.months());
+        assertEquals(Arrays.asList(YearMonth.of(2024, 1)), DateRange.month(YearMonth.of(2024, 1)).months());
+        assertTrue(DateRange.month(YearMonth.of(2024, 1)).isWholeMonths());
+    }
+
+    @Test
+    void quarterCoversThreeMonths() {
+        DateRange fourth = DateRange.quarter(2023, 4);
+        assertEquals(LocalDate.of(2023, 10, 1), fourth.getStart());
+        assertEquals(LocalDate.of(2024, 1, 1), fourth.getEnd());
+        assertEquals("2023-Q4", fourth.toString());
+        assertThrows(IllegalArgumentException.class, () -> DateRange.quarter(2023, 5));
+    }
+
+    @Test
+    void weekRunsMondayToSunday() {
+        //Week 1 of 2021 starts on 4 January, and 2020 has a week 53
+        DateRange first = DateRange.week(2021, 1);
+        assertEquals(LocalDate.of(2021, 1, 4), first.getStart());
+        assertEquals(LocalDate.of(2021, 1, 11), first.getEnd());
+        assertEquals("2021-W01", first.toString());
+        assertEquals(LocalDate.of(2020, 12, 28), DateRange.week(2020, 53).getStart());
+        assertThrows(IllegalArgumentException.class, () -> DateRange.week(2021, 53));
+    }
+
+    @Test
+    void parseReadsEveryPeriod() {
+        assertEquals(DateRange.year(2024).getStart(), DateRange.parse("2024", "all").getStart());
+        assertEquals(LocalDate.of(2025, 1, 1), DateRange.parse("2024", "").getEnd());
+        assertEquals(LocalDate.of(2024, 2, 1), DateRange.parse("2024", "02").getStart());
+        assertEquals(LocalDate.of(2024, 4, 1), DateRange.parse("2024", "Q2").getStart());
+        assertEquals(LocalDate.of(2024, 1, 1), DateRange.parse(" 2024 ", "w01").getStart());
+        assertThrows(IllegalArgumentException.class, () -> DateRange.parse("20x4", "01"));
+        assertThrows(IllegalArgumentException.class, () -> DateRange.parse("2024", "13"));
+        assertThrows(IllegalArgumentException.class, () -> DateRange.parse("2024", "march"));
+    }
+
+    @Test
+    void withinMatchesTheDaysOfTheRange() throws SQLException {
+        DateRange february = DateRange.month(YearMonth.of(2024, 2));
+        try (Connection connection = database.getPool().borrow()) {
+            createDays(connection);
+            try (PreparedStatement select = connection.prepareStatement(
+                    "SELECT day FROM RangeDay WHERE " + DateRange.within("day") + " ORDER BY day")) {
+                assertEquals(3, february.bindWithin(select, 1));
+                assertEquals(Arrays.asList(LocalDate.of(2024, 2, 1), LocalDate.of(2024, 2, 29)), days(select));
+            }
+        }
+    }
+
+    @Test
+    void overlapsMatchesStaysTouchingTheRange() throws SQLException {
+        DateRange february = DateRange.month(YearMonth.of(2024, 2));
+        try (Connection connection = database.getPool().borrow()) {
+            createDays(connection);
+            //A stay that ended the day before the range or starts the day after it does not overlap it, an open stay does
+            try (PreparedStatement select = connection.prepareStatement(
+                    "SELECT day FROM RangeDay WHERE " + DateRange.overlaps("day", "lastDay") + " ORDER BY day")) {
+                assertEquals(3, february.bindOverlaps(select, 1));
+                assertEquals(Arrays.asList(LocalDate.of(2024, 2, 1), LocalDate.of(2024, 2, 29)), days(select));
+            }
+        }
+    }
+
+    /**
+     * Creates a temporary table of the days either side of February 2024. Each day is the start of a stay that ends
+     * on the same day, except the first of February whose stay is still open.
+     *
+     * @param connection connection to the database
+     * @throws SQLException if the table can not be created
+     */
+    private static void createDays(Connection connection) throws SQLException {
+        try (PreparedStatement create = connection.prepareStatement(
+                "CREATE TEMPORARY TABLE IF NOT EXISTS RangeDay(day DATE NOT NULL, lastDay DATE NULL)");
+             PreparedStatement clear = connection.prepareStatement("DELETE FROM RangeDay");
+             PreparedStatement insert = connection.prepareStatement(
+                     "INSERT INTO RangeDay VALUES('2024-01-31', '2024-01-31'), ('2024-02-01', NULL), "
+                             + "('2024-02-29', '2024-02-29'), ('2024-03-01', '2024-03-01')")) {
+            create.executeUpdate();
+            clear.executeUpdate();
+            insert.executeUpdate();
+        }
+    }
+
+    /**
+     * Runs a query and reads the days it returns
+     *
+     * @param select query returning a date column
+     * @return the days in order
+     * @throws SQLException if the query fails
+     */
+    private static List<LocalDate> days(PreparedStatement select) throws SQLException {
+        List<LocalDate> days = new ArrayList<LocalDate>();
+        try (ResultSet result = select.executeQuery()) {
+            while (result.next()) {
+                days.add(result.getDate(1).toLocalDate());
+            }
+        }
+        return days;
+    }
+}
@@ -0,0 +1,156 @@
+package com.company;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Patches of ward rows written to the embedded database. A value equal to the stored one or a null value is not a
+ * change, so a patch that changes nothing sends nothing, and a new capacity is only written while the ward's
+ * occupants still fit in it.
+ */
+class EntityPatchTest {
+
+    /** Capacity every ward starts with */
+    private static final int CAPACITY = 2;
+    /** Charges per day every ward starts with */
+    private static final double CHARGES = 100;
+
+    private static EmbeddedDatabase database;
+    private static EntityCache entityCache;
+
+    @BeforeAll
+    static void start() throws SQLException {
+        database = new EmbeddedDatabase(1);
+        entityCache = new EntityCache(100, 60000);
+    }
+
+    @AfterAll
+    static void stop() {
+        database.close();
+    }
+
+    @Test
+    void patchEqualToTheBaselineChangesNothing() throws SQLException {
+        try (Connection connection = database.getPool().borrow()) {
+            addWard(connection, 1, 0);
+            EntityPatch patch = new EntityPatch(EntityPatch.Table.WARD, 1)
+                    .set("capacity", CAPACITY)
+                    .set("chargesPerDay", "100");
+            assertTrue(patch.isDirty());
+            try (ResultSet row = readWard(connection, 1)) {
+                patch.baseline(row);
+            }
+            assertFalse(patch.isDirty(), "Values equal to the stored ones are still changes: " + patch.getChanges());
+
+            //Values set after the baseline are compared with it as well
+            patch.set("capacity", String.valueOf(CAPACITY));
+            assertFalse(patch.isDirty());
+            patch.set("capacity", 4);
+            assertTrue(patch.changes("capacity"));
+            patch.set("capacity", CAPACITY);
+            assertFalse(patch.isDirty());
+
+            assertArrayEquals(new int[] { 0 }, EntityPatch.applyAll(connection, entityCache, Collections.singletonList(patch)));
+        }
+    }
+
+    @Test
+    void nullLeavesTheColumnUnchanged() throws SQLException {
+        try (Connection connection = database.getPool().borrow()) {
+            addWard(connection, 2, 0);
+            EntityPatch patch = new EntityPatch(EntityPatch.Table.WARD, 2)
+                    .set("capacity", null)
+                    .set("responsibleNurse", null);
+            assertFalse(patch.isDirty());
+
+            patch.set("chargesPerDay", 150);
+            assertEquals(Collections.singletonMap("chargesPerDay", 150.0), patch.getChanges());
+            assertEquals("UPDATE Ward SET chargesPerDay = ? WHERE number = ?", patch.toSql());
+            assertArrayEquals(new int[] { 1 }, EntityPatch.applyAll(connection, entityCache, Collections.singletonList(patch)));
+            try (ResultSet row = readWard(connection, 2)) {
+                assertEquals(CAPACITY, row.getInt("capacity"));
+                assertEquals(150, row.getDouble("chargesPerDay"));
+                assertEquals(1, row.getInt("responsibleNurse"));
+            }
+        }
+    }
+
+    @Test
+    void capacityIsOnlyWrittenWhileTheOccupantsFit() throws SQLException {
+        try (Connection connection = database.getPool().borrow()) {
+            addWard(connection, 3, 2);
+            EntityPatch shrink = new EntityPatch(EntityPatch.Table.WARD, 3).set("capacity", 1);
+            assertEquals("UPDATE Ward SET capacity = ? WHERE number = ? AND occupants <= ?", shrink.toSql());
+            assertArrayEquals(new int[] { 0 }, EntityPatch.applyAll(connection, entityCache, Collections.singletonList(shrink)));
+            try (ResultSet row = readWard(connection, 3)) {
+                assertEquals(CAPACITY, row.getInt("capacity"), "Ward was shrunk below its occupants");
+            }
+
+            EntityPatch grow = new EntityPatch(EntityPatch.Table.WARD, 3).set("capacity", 4);
+            EntityPatch missing = new EntityPatch(EntityPatch.Table.WARD, 99).set("capacity", 4);
+            assertArrayEquals(new int[] { 1, 0 }, EntityPatch.applyAll(connection, entityCache, Arrays.asList(grow, missing)));
+            try (ResultSet row = readWard(connection, 3)) {
+                assertEquals(4, row.getInt("capacity"));
+            }
+        }
+    }
+
+    @Test
+    void invalidValuesAreRejected() {
+        EntityPatch patch = new EntityPatch(EntityPatch.Table.WARD, 1);
+        assertThrows(IllegalArgumentException.class, () -> patch.set("capacity", 3));
+        assertThrows(IllegalArgumentException.class, () -> patch.set("capacity", "two"));
+        assertThrows(IllegalArgumentException.class, () -> patch.set("occupants", 1));
+        assertFalse(patch.isDirty());
+    }
+
+    /**
+     * Adds a ward with the starting capacity and charges, looked after by nurse 1
+     *
+     * @param connection connection to the database
+     * @param number ward number
+     * @param occupants patients in the ward
+     * @throws SQLException if the ward can not be added
+     */
+    private static void addWard(Connection connection, int number, int occupants) throws SQLException {
+        try (PreparedStatement insert = connection.prepareStatement(
+                "INSERT INTO Ward(number, capacity, patientIds, chargesPerDay, occupants, responsibleNurse) VALUES(?, ?, NULL, ?, ?, 1)")) {
+            insert.setInt(1, number);
+            insert.setInt(2, CAPACITY);
+            insert.setDouble(3, CHARGES);
+            insert.setInt(4, occupants);
+            insert.executeUpdate();
+        }
+    }
+
+    /**
+     * Reads a ward
+     *
+     * @param connection connection to the database
+     * @param number ward number
+     * @return result positioned on the ward, the statement is closed with it
+     * @throws SQLException if the ward can not be read
+     */
+    private static ResultSet readWard(Connection connection, int number) throws SQLException {
+        PreparedStatement select = connection.prepareStatement("SELECT * FROM Ward WHERE number = ?");
+        select.setInt(1, number);
+        select.closeOnCompletion();
+        ResultSet row = select.executeQuery();
+        assertTrue(row.next(), "Ward " + number + " is missing");
+        return row;
+    }
+}
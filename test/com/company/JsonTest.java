@@ -0,0 +1,126 @@
+package com.company;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * The JSON read from batch files and HTTP requests and written in HTTP responses. Objects are flat, integers are
+ * read as Long and other numbers as Double, and a row written from the embedded database must read back the same.
+ */
+class JsonTest {
+
+    private static EmbeddedDatabase database;
+
+    @BeforeAll
+    static void start() throws SQLException {
+        database = new EmbeddedDatabase(1);
+    }
+
+    @AfterAll
+    static void stop() {
+        database.close();
+    }
+
+    @Test
+    void parsesEveryKindOfValue() {
+        Map<String, Object> members = Json.parseObject(
+                " {\"op\":\"newPatient\", \"id\":7, \"rate\":-1.5e2, \"paid\":true, \"ended\":false, \"endDate\":null} ");
+        assertEquals(Arrays.asList("op", "id", "rate", "paid", "ended", "endDate"), new ArrayList<String>(members.keySet()));
+        assertEquals("newPatient", members.get("op"));
+        assertEquals(7L, members.get("id"));
+        assertEquals(-150.0, members.get("rate"));
+        assertEquals(Boolean.TRUE, members.get("paid"));
+        assertEquals(Boolean.FALSE, members.get("ended"));
+        assertTrue(members.containsKey("endDate"));
+        assertNull(members.get("endDate"));
+        assertTrue(Json.parseObject("{ }").isEmpty());
+    }
+
+    @Test
+    void parsesEscapes() {
+        Map<String, Object> members = Json.parseObject("{\"address\":\"1 \\\"Main\\\" St\\n\\\\ \\/ \\u00e9\\t\"}");
+        assertEquals("1 \"Main\" St\n\\ / \u00e9\t", members.get("address"));
+    }
+
+    @Test
+    void rejectsTextThatIsNotAFlatObject() {
+        assertThrows(IllegalArgumentException.class, () -> Json.parseObject(""));
+        assertThrows(IllegalArgumentException.class, () -> Json.parseObject("[1]"));
+        assertThrows(IllegalArgumentException.class, () -> Json.parseObject("{\"id\":1"));
+        assertThrows(IllegalArgumentException.class, () -> Json.parseObject("{\"id\":1} {}"));
+        assertThrows(IllegalArgumentException.class, () -> Json.parseObject("{\"id\":1 \"name\":\"x\"}"));
+        assertThrows(IllegalArgumentException.class, () -> Json.parseObject("{\"id\":{\"nested\":1}}"));
+        assertThrows(IllegalArgumentException.class, () -> Json.parseObject("{\"id\":1-2}"));
+        assertThrows(IllegalArgumentException.class, () -> Json.parseObject("{\"name\":\"\\x\"}"));
+        assertThrows(IllegalArgumentException.class, () -> Json.parseObject("{\"name\":\"\\u12\"}"));
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> Json.parseObject("{\"id\":nope}"));
+        assertEquals("Expected a string, number, boolean or null at position 6", e.getMessage());
+    }
+
+    @Test
+    void gettersConvertAndReportBadMembers() {
+        Map<String, Object> members = Json.parseObject(
+                "{\"id\":\"12\", \"age\":40, \"big\":3000000000, \"fee\":\"12.50\", \"dob\":\"1990-01-02\", \"bad\":\"x\"}");
+        assertEquals(12, Json.getInt(members, "id"));
+        assertEquals(40, Json.getInt(members, "age"));
+        assertEquals("40", Json.getString(members, "age"));
+        assertEquals(12.5, Json.getDouble(members, "fee"));
+        assertEquals(LocalDate.of(1990, 1, 2), Json.getDate(members, "dob"));
+
+        assertEquals("Missing phone", assertThrows(IllegalArgumentException.class, () -> Json.getString(members, "phone")).getMessage());
+        assertEquals("big must be an integer", assertThrows(IllegalArgumentException.class, () -> Json.getInt(members, "big")).getMessage());
+        assertEquals("bad must be a number", assertThrows(IllegalArgumentException.class, () -> Json.getDouble(members, "bad")).getMessage());
+        assertEquals("bad must be in form yyyy-mm-dd", assertThrows(IllegalArgumentException.class, () -> Json.getDate(members, "bad")).getMessage());
+    }
+
+    @Test
+    void writtenMembersReadBack() {
+        StringBuilder sb = new StringBuilder("{");
+        Json.appendMember("name", "Ann \"Nan\" Lee\n\u0001", sb);
+        Json.appendMember("age", 40, sb);
+        Json.appendMember("paid", false, sb);
+        Json.appendMember("endDate", null, sb);
+        Json.appendMember("dob", LocalDate.of(1990, 1, 2), sb);
+        sb.append('}');
+        assertEquals("{\"name\":\"Ann \\\"Nan\\\" Lee\\n\\u0001\",\"age\":40,\"paid\":false,\"endDate\":null,\"dob\":\"1990-01-02\"}",
+                sb.toString());
+
+        Map<String, Object> members = Json.parseObject(sb.toString());
+        assertEquals("Ann \"Nan\" Lee\n\u0001", members.get("name"));
+        assertEquals(40L, members.get("age"));
+        assertEquals(LocalDate.of(1990, 1, 2), Json.getDate(members, "dob"));
+    }
+
+    @Test
+    void rowIsWrittenByColumnLabel() throws SQLException {
+        try (Connection connection = database.getPool().borrow();
+             PreparedStatement select = connection.prepareStatement(
+                     "SELECT 7 AS id, 'Ward \"A\"' AS name, 12.5 AS fee, NULL AS endDate");
+             ResultSet result = select.executeQuery()) {
+            assertTrue(result.next());
+            StringBuilder sb = new StringBuilder();
+            Json.appendRow(result, sb);
+            Map<String, Object> members = Json.parseObject(sb.toString());
+            assertEquals(Arrays.asList("id", "name", "fee", "endDate"), new ArrayList<String>(members.keySet()));
+            assertEquals(7, Json.getInt(members, "id"));
+            assertEquals("Ward \"A\"", members.get("name"));
+            assertEquals(12.5, Json.getDouble(members, "fee"));
+            assertNull(members.get("endDate"));
+        }
+    }
+}
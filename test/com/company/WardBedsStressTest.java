@@ -0,0 +1,132 @@
+package com.company;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Operators racing for the beds of a few wards from many threads at once. Every thread claims a bed for its own
+ * patients and releases it again, and counts the beds it holds per ward. A ward must never hold more patients than
+ * it has beds, and when the threads are done the occupants of every ward must match its beds.
+ */
+class WardBedsStressTest {
+
+    /** Threads claiming beds at once */
+    private static final int THREADS = 12;
+    /** Beds each thread claims and releases */
+    private static final int ROUNDS = 200;
+    /** Capacity of every ward */
+    private static final int CAPACITY = 2;
+    /** Number of wards, fewer beds than threads so the threads race for them */
+    private static final int WARDS = 3;
+
+    private static EmbeddedDatabase database;
+
+    @BeforeAll
+    static void start() throws SQLException {
+        database = new EmbeddedDatabase(THREADS + 1);
+        try (Connection connection = database.getPool().borrow();
+             PreparedStatement insert = connection.prepareStatement(
+                     "INSERT INTO Ward(number, capacity, patientIds, chargesPerDay, occupants, responsibleNurse) VALUES(?, ?, NULL, 100, 0, 1)")) {
+            for (int number = 1; number <= WARDS; number++) {
+                insert.setInt(1, number);
+                insert.setInt(2, CAPACITY);
+                insert.executeUpdate();
+            }
+        }
+    }
+
+    @AfterAll
+    static void stop() {
+        database.close();
+    }
+
+    @Test
+    void capacityIsNeverExceeded() throws Exception {
+        AtomicIntegerArray held = new AtomicIntegerArray(WARDS + 1);
+        AtomicInteger mostHeld = new AtomicInteger();
+        AtomicInteger claimed = new AtomicInteger();
+        List<Callable<Void>> operators = new ArrayList<Callable<Void>>();
+        for (int thread = 0; thread < THREADS; thread++) {
+            int firstPatient = thread * ROUNDS;
+            operators.add(() -> {
+                try (Connection connection = database.getPool().borrow()) {
+                    for (int round = 0; round < ROUNDS; round++) {
+                        int patientId = firstPatient + round + 1;
+                        int number = round % WARDS + 1;
+                        int bed = WardBeds.assign(connection, number, patientId);
+                        if (bed == WardBeds.WARD_FULL) {
+                            continue;
+                        }
+                        assertTrue(bed >= 1 && bed <= CAPACITY, "Bed " + bed + " is not a bed of ward " + number);
+                        claimed.incrementAndGet();
+                        mostHeld.accumulateAndGet(held.incrementAndGet(number), Math::max);
+                        assertWithinCapacity(connection, number);
+                        held.decrementAndGet(number);
+                        assertTrue(WardBeds.release(connection, number, patientId), "Patient " + patientId + " lost their bed");
+                    }
+                }
+                return null;
+            });
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        try {
+            for (Future<Void> operator : pool.invokeAll(operators)) {
+                operator.get();
+            }
+        } finally {
+            pool.shutdown();
+            pool.awaitTermination(1, TimeUnit.MINUTES);
+        }
+
+        assertTrue(claimed.get() > 0, "No bed was ever claimed");
+        assertTrue(mostHeld.get() <= CAPACITY, mostHeld.get() + " patients held beds of a ward with " + CAPACITY + " beds");
+        try (Connection connection = database.getPool().borrow();
+             PreparedStatement select = connection.prepareStatement(
+                     "SELECT number, occupants, (SELECT COUNT(*) FROM WardBed WHERE wardNumber = number) AS beds FROM Ward");
+             ResultSet result = select.executeQuery()) {
+            while (result.next()) {
+                assertEquals(0, result.getInt("occupants"), "Occupants of ward " + result.getInt("number"));
+                assertEquals(0, result.getInt("beds"), "Beds taken in ward " + result.getInt("number"));
+            }
+        }
+    }
+
+    /**
+     * Checks that neither the occupants nor the taken beds of a ward exceed its capacity
+     *
+     * @param connection connection to the database
+     * @param number ward number
+     * @throws SQLException if the ward can not be read
+     */
+    private static void assertWithinCapacity(Connection connection, int number) throws SQLException {
+        try (PreparedStatement select = connection.prepareStatement(
+                "SELECT occupants, (SELECT COUNT(*) FROM WardBed WHERE wardNumber = ?) AS beds FROM Ward WHERE number = ?")) {
+            select.setInt(1, number);
+            select.setInt(2, number);
+            try (ResultSet result = select.executeQuery()) {
+                assertTrue(result.next(), "Ward " + number + " is missing");
+                assertTrue(result.getInt("occupants") <= CAPACITY, "Ward " + number + " has " + result.getInt("occupants") + " occupants");
+                assertTrue(result.getInt("beds") <= CAPACITY, "Ward " + number + " has " + result.getInt("beds") + " beds taken");
+            }
+        }
+    }
+}
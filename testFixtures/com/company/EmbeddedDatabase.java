@@ -0,0 +1,81 @@
+package com.company;
+
+import ch.vorburger.exec.ManagedProcessException;
+import ch.vorburger.mariadb4j.DB;
+import ch.vorburger.mariadb4j.DBConfigurationBuilder;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * A MariaDB server started inside the test or benchmark JVM, on a free port and in a temporary data directory that
+ * is deleted when it stops. The schema is created with the {@link SchemaMigrator} of the application, and the pool
+ * connects with the same driver and URL options as the application, so the tests and benchmarks run the statements
+ * the application runs. Nothing here reads the database settings of the application, so a test can never reach the
+ * hospital database.
+ */
+class EmbeddedDatabase implements AutoCloseable {
+
+    /** Name of the database created on the server */
+    private static final String DATABASE = "wolfHospital";
+    /** Options the application connects with */
+    private static final String OPTIONS = "?useServerPrepStmts=true&rewriteBatchedStatements=true&useSSL=false";
+
+    /** The running server */
+    private final DB server;
+    /** Pool of connections to the database */
+    private final ConnectionPool pool;
+
+    /**
+     * Starts a server and creates an empty database with the current schema
+     *
+     * @param maxConnections most connections open at once
+     * @throws SQLException if the database can not be created
+     */
+    EmbeddedDatabase(int maxConnections) throws SQLException {
+        DBConfigurationBuilder config = DBConfigurationBuilder.newBuilder();
+        config.setPort(0);
+        //The server refuses to run as root unless told to, and containers usually run as root
+        config.addArg("--user=" + System.getProperty("user.name"));
+        try {
+            server = DB.newEmbeddedDB(config.build());
+            server.start();
+        } catch (ManagedProcessException e) {
+            throw new SQLException("The embedded database could not be started", e);
+        }
+
+        String url = "jdbc:mysql://localhost:" + server.getConfiguration().getPort() + "/";
+        try (Connection connection = DriverManager.getConnection(url + OPTIONS, "root", "");
+             Statement statement = connection.createStatement()) {
+            statement.executeUpdate("CREATE DATABASE " + DATABASE);
+        }
+        pool = new ConnectionPool(url + DATABASE + OPTIONS, "root", "", 1, maxConnections, 60000, "SELECT 1");
+        try (Connection connection = pool.borrow()) {
+            new SchemaMigrator().migrate(connection);
+        }
+    }
+
+    /**
+     * Gets the pool of connections to the database
+     *
+     * @return the pool
+     */
+    ConnectionPool getPool() {
+        return pool;
+    }
+
+    /**
+     * Closes the pool and stops the server, deleting its data
+     */
+    @Override
+    public void close() {
+        pool.close();
+        try {
+            server.stop();
+        } catch (ManagedProcessException e) {
+            e.printStackTrace();
+        }
+    }
+}